@@ -17,11 +17,12 @@
 
 package net.krotscheck.dfr.filter.column;
 
-import net.krotscheck.dfr.IDataFilter;
+import net.krotscheck.dfr.IProjectionFilter;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowSchema;
 
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -32,16 +33,33 @@ import java.util.Set;
  * should be included in your data stream. Provided a string[] list of column
  * headers, only the data in these columns will be included in the output from
  * the filter.
+ * <p>
+ * When added to a decoder as its first filter, the decoder skips decoding
+ * all other columns.
+ * <p>
+ * For {@link Row} input, the filter resolves the position of each requested
+ * column once per input schema; every further row of that schema is then
+ * projected with a single array copy into a row of a fixed output schema.
  *
  * @author Michael Krotscheck
  */
-public final class ColumnFilter implements IDataFilter {
+public final class ColumnFilter implements IProjectionFilter {
 
     /**
      * The columns that we're filtering.
      */
     private final Set<String> columns;
 
+    /**
+     * The schema of the filtered rows.
+     */
+    private final RowSchema schema;
+
+    /**
+     * The column positions resolved for the last input schema seen.
+     */
+    private volatile Projection projection;
+
     /**
      * Retrieve the set of columns in this filter.
      *
@@ -51,6 +69,16 @@ public final class ColumnFilter implements IDataFilter {
         return Collections.unmodifiableSet(columns);
     }
 
+    /**
+     * The columns this filter reads, which are the columns it emits.
+     *
+     * @return The current set of columns.
+     */
+    @Override
+    public Set<String> getRequiredColumns() {
+        return getColumns();
+    }
+
     /**
      * Create a new instance of the column filter.
      *
@@ -63,6 +91,7 @@ public final class ColumnFilter implements IDataFilter {
         } else {
             columns = new LinkedHashSet<>(Arrays.asList(columnNames));
         }
+        schema = new RowSchema(columns.toArray(new String[columns.size()]));
     }
 
     /**
@@ -77,6 +106,7 @@ public final class ColumnFilter implements IDataFilter {
         } else {
             columns = new LinkedHashSet<>(columnNames);
         }
+        schema = new RowSchema(columns.toArray(new String[columns.size()]));
     }
 
     /**
@@ -91,6 +121,7 @@ public final class ColumnFilter implements IDataFilter {
         } else {
             columns = new LinkedHashSet<>(columnNames);
         }
+        schema = new RowSchema(columns.toArray(new String[columns.size()]));
     }
 
     /**
@@ -101,28 +132,68 @@ public final class ColumnFilter implements IDataFilter {
      */
     @Override
     public Map<String, Object> apply(final Map<String, Object> row) {
-        Map<String, Object> cleanRow, filteredRow;
-
-        // Make sure the row isn't null.
-        if (row == null) {
-            cleanRow = new LinkedHashMap<>();
-        } else {
-            cleanRow = new LinkedHashMap<>(row);
+        if (row instanceof Row) {
+            Row source = (Row) row;
+            return source.project(schema, resolve(source.getSchema()));
         }
 
-        // Copy the row so we avoid concurrent modifications.
-        filteredRow = new LinkedHashMap<>();
-
         // Iterate through the requested columns and add/override the ones
         // the user wants to see.
-        for (String column : columns) {
-            if (cleanRow.containsKey(column)) {
-                filteredRow.put(column, cleanRow.get(column));
-            } else {
-                filteredRow.put(column, null);
+        Row filteredRow = new Row(schema);
+        if (row != null) {
+            int index = 0;
+            for (String column : columns) {
+                filteredRow.set(index, row.get(column));
+                index++;
             }
         }
-
         return filteredRow;
     }
+
+    /**
+     * Resolve the position of each configured column in an input schema,
+     * reusing the last resolution if the schema has not changed.
+     *
+     * @param input The schema of the input row.
+     * @return The index of each configured column, -1 if not present.
+     */
+    private int[] resolve(final RowSchema input) {
+        Projection current = projection;
+        if (current == null || current.source != input) {
+            int[] indexes = new int[schema.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = input.indexOf(schema.getName(i));
+            }
+            current = new Projection(input, indexes);
+            projection = current;
+        }
+        return current.indexes;
+    }
+
+    /**
+     * The resolved column positions for one input schema.
+     */
+    private static final class Projection {
+
+        /**
+         * The input schema.
+         */
+        private final RowSchema source;
+
+        /**
+         * The index of each configured column in the input schema.
+         */
+        private final int[] indexes;
+
+        /**
+         * Create a new projection.
+         *
+         * @param input     The input schema.
+         * @param positions The index of each configured column.
+         */
+        Projection(final RowSchema input, final int[] positions) {
+            this.source = input;
+            this.indexes = positions;
+        }
+    }
 }
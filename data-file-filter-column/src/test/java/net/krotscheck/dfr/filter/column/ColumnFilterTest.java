@@ -17,6 +17,8 @@
 
 package net.krotscheck.dfr.filter.column;
 
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowSchema;
 import net.krotscheck.test.UnitTest;
 import org.junit.Assert;
 import org.junit.Test;
@@ -74,6 +76,65 @@ public final class ColumnFilterTest {
         Assert.assertEquals(2, columns3.size());
     }
 
+    /**
+     * Assert that the filter requires exactly the columns it emits.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testRequiredColumns() throws Exception {
+        ColumnFilter filter = new ColumnFilter(new String[]{"One", "Two"});
+        Set<String> required = filter.getRequiredColumns();
+
+        Assert.assertEquals(filter.getColumns(), required);
+        Assert.assertEquals(2, required.size());
+    }
+
+    /**
+     * Assert that rows are projected by position, keeping unboxed values,
+     * and that the resolved positions follow schema changes.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testRowApply() throws Exception {
+        ColumnFilter filter =
+                new ColumnFilter(new String[]{"Two", "Four", "One"});
+
+        Row row = new Row(new RowSchema(new String[]{"One", "Two", "Three"}));
+        row.setLong(0, 1);
+        row.set(1, "Test2");
+        row.set(2, "Test3");
+
+        Row filtered = (Row) filter.apply(row);
+        Assert.assertEquals(Arrays.asList("Two", "Four", "One"),
+                filtered.getSchema().getNames());
+        Assert.assertEquals("Test2", filtered.get("Two"));
+        Assert.assertTrue(filtered.containsKey("Four"));
+        Assert.assertNull(filtered.get("Four"));
+        Assert.assertEquals(1L, filtered.getLong(2));
+        Assert.assertEquals(1L, filtered.get("One"));
+
+        // Rows of the same schema share the output schema.
+        Row second = new Row(row);
+        second.remove("Two");
+        Row filteredSecond = (Row) filter.apply(second);
+        Assert.assertSame(filtered.getSchema(), filteredSecond.getSchema());
+        Assert.assertTrue(filteredSecond.containsKey("Two"));
+        Assert.assertNull(filteredSecond.get("Two"));
+
+        // A different schema is resolved again.
+        Row other = new Row(new RowSchema(new String[]{"Four", "One"}));
+        other.set(0, "Test4");
+        Row filteredOther = (Row) filter.apply(other);
+        Assert.assertEquals("Test4", filteredOther.get("Four"));
+        Assert.assertNull(filteredOther.get("One"));
+
+        // Changing the output leaves the input alone.
+        filtered.put("Two", "Changed");
+        Assert.assertEquals("Test2", row.get("Two"));
+    }
+
     /**
      * Assert that our constructors work with null input.
      *
@@ -118,7 +179,7 @@ public final class ColumnFilterTest {
         Map<String, Object> filteredData = filter.apply(testData);
 
         Assert.assertNotSame(filteredData, testData);
-        Assert.assertTrue(filteredData instanceof LinkedHashMap);
+        Assert.assertTrue(filteredData instanceof Row);
 
         Assert.assertTrue(filteredData.containsKey("One"));
         Assert.assertTrue(filteredData.containsKey("Two"));
@@ -17,18 +17,45 @@
 
 package net.krotscheck.dfr.all;
 
+import net.krotscheck.dfr.CodecRegistry;
+import net.krotscheck.dfr.FormatDetector;
 import net.krotscheck.dfr.IDataDecoder;
 import net.krotscheck.dfr.IDataEncoder;
 import net.krotscheck.dfr.bson.BSONDataDecoder;
 import net.krotscheck.dfr.bson.BSONDataEncoder;
+import net.krotscheck.dfr.compress.CompressionCodecs;
+import net.krotscheck.dfr.compress.DeflateCodec;
+import net.krotscheck.dfr.compress.GzipCodec;
 import net.krotscheck.dfr.csv.CSVDataDecoder;
 import net.krotscheck.dfr.csv.CSVDataEncoder;
+import net.krotscheck.dfr.filter.column.ColumnFilter;
 import net.krotscheck.dfr.json.JSONDataDecoder;
 import net.krotscheck.dfr.json.JSONDataEncoder;
+import net.krotscheck.dfr.json.JSONStreamDecoder;
+import net.krotscheck.dfr.json.JSONStreamEncoder;
+import net.krotscheck.dfr.json.NDJSONStreamDecoder;
+import net.krotscheck.dfr.stream.IStreamEncoder;
+import net.krotscheck.dfr.text.ITextEncoder;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Test that all packages are registered.
@@ -146,4 +173,177 @@ public final class AllPackagesTest {
 
         Assert.fail();
     }
+
+    /**
+     * Assert that the format of every encoder's output is detected, also
+     * when compressed, and that the detected decoder reads it from the
+     * first row.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testDetectDecoders() throws Exception {
+        byte[] json = encode(new JSONStreamEncoder());
+        byte[] bson = encode(new BSONDataEncoder());
+        byte[] csv = encode(new CSVDataEncoder());
+        byte[] ndjson = ("{\"id\":0,\"name\":\"row 0\"}\n"
+                + "{\"id\":1,\"name\":\"row 1\"}\n")
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertDecodes(json, JSONStreamDecoder.class);
+        assertDecodes(bson, BSONDataDecoder.class);
+        assertDecodes(csv, CSVDataDecoder.class);
+        assertDecodes(ndjson, NDJSONStreamDecoder.class);
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gzip), csv);
+        assertDecodes(gzip.toByteArray(), CSVDataDecoder.class);
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        write(new DeflaterOutputStream(zlib), bson);
+        assertDecodes(zlib.toByteArray(), BSONDataDecoder.class);
+    }
+
+    /**
+     * Assert that a decoder which one caller configured and released is
+     * handed to the format detector like a new one: a row limit left behind
+     * does not cut the next stream short.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testPooledDecoderIsRestored() throws Exception {
+        CodecRegistry<IDataDecoder> registry = CodecRegistry.decoders();
+        BSONDataDecoder first =
+                (BSONDataDecoder) registry.acquire("application/bson");
+        first.setMaxRows(1L);
+        first.setParallelism(4);
+        first.addFilter(new ColumnFilter(Arrays.asList("id")));
+        registry.release(first);
+
+        List<IDataDecoder> idle = new ArrayList<>();
+        IDataDecoder pooled = registry.acquire("application/bson");
+        while (pooled != first && idle.size() <= CodecRegistry.POOL_SIZE) {
+            idle.add(pooled);
+            pooled = registry.acquire("application/bson");
+        }
+        Assert.assertSame(first, pooled);
+        Assert.assertNull(first.getMaxRows());
+        Assert.assertNull(first.getParallelism());
+        Assert.assertTrue(first.getFilters().isEmpty());
+        registry.release(first);
+        for (IDataDecoder decoder : idle) {
+            registry.release(decoder);
+        }
+
+        assertDecodes(encode(new BSONDataEncoder()), BSONDataDecoder.class);
+    }
+
+    /**
+     * Assert that stream encoders write compressed data that the format
+     * detector unwraps, and that stream decoders read it directly.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testCompressedStreams() throws Exception {
+        JSONStreamEncoder jsonEncoder = new JSONStreamEncoder();
+        jsonEncoder.setCompression(new GzipCodec());
+        byte[] json = encode(jsonEncoder);
+        BSONDataEncoder bsonEncoder = new BSONDataEncoder();
+        bsonEncoder.setCompression(new DeflateCodec());
+        byte[] bson = encode(bsonEncoder);
+
+        assertDecodes(json, JSONStreamDecoder.class);
+        assertDecodes(bson, BSONDataDecoder.class);
+
+        JSONStreamDecoder jsonDecoder = new JSONStreamDecoder();
+        jsonDecoder.setCompression(CompressionCodecs.get("application/gzip"));
+        jsonDecoder.setInputStream(new ByteArrayInputStream(json));
+        assertRows(jsonDecoder);
+        jsonDecoder.close();
+
+        BSONDataDecoder bsonDecoder = new BSONDataDecoder();
+        bsonDecoder.setCompression(CompressionCodecs.get("application/zlib"));
+        bsonDecoder.setInputStream(new ByteArrayInputStream(bson));
+        assertRows(bsonDecoder);
+        bsonDecoder.close();
+    }
+
+    /**
+     * Detect the decoder of some bytes, read through a stream that does not
+     * support mark and reset, and check the rows it decodes.
+     *
+     * @param bytes The encoded rows.
+     * @param type  The expected decoder class.
+     * @throws Exception Unexpected exceptions.
+     */
+    private void assertDecodes(final byte[] bytes,
+                               final Class<? extends IDataDecoder> type)
+            throws Exception {
+        InputStream stream = new FilterInputStream(
+                new ByteArrayInputStream(bytes)) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+        IDataDecoder decoder = FormatDetector.createDecoder(stream);
+        Assert.assertEquals(type, decoder.getClass());
+        assertRows(decoder);
+        CodecRegistry.decoders().release(decoder);
+    }
+
+    /**
+     * Check that a decoder reads the two encoded rows.
+     *
+     * @param decoder The decoder.
+     */
+    private void assertRows(final IDataDecoder decoder) {
+        Iterator<Map<String, Object>> rows = decoder.iterator();
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> row = rows.next();
+            Assert.assertEquals(String.valueOf(i),
+                    String.valueOf(row.get("id")));
+            Assert.assertEquals("row " + i, row.get("name"));
+        }
+        Assert.assertFalse(rows.hasNext());
+    }
+
+    /**
+     * Encode two rows.
+     *
+     * @param encoder The encoder.
+     * @return The encoded rows.
+     * @throws IOException Unexpected exceptions.
+     */
+    private byte[] encode(final IDataEncoder encoder) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        if (encoder instanceof IStreamEncoder) {
+            ((IStreamEncoder) encoder).setOutputStream(baos);
+        } else {
+            ((ITextEncoder) encoder).setWriter(new OutputStreamWriter(baos,
+                    StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < 2; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("id", i);
+            row.put("name", "row " + i);
+            encoder.write(row);
+        }
+        encoder.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Write and close a stream.
+     *
+     * @param stream The stream.
+     * @param bytes  The bytes to write.
+     * @throws IOException Unexpected exceptions.
+     */
+    private void write(final OutputStream stream, final byte[] bytes)
+            throws IOException {
+        stream.write(bytes);
+        stream.close();
+    }
 }
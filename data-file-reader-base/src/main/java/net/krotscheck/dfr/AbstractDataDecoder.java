@@ -17,9 +17,12 @@
 
 package net.krotscheck.dfr;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * An abstract implementation of the data decoder, to consolidate some common
@@ -37,12 +40,113 @@ public abstract class AbstractDataDecoder
     private Long maxRows;
 
     /**
-     * Returns an iterator for the file.
+     * The iterator that feeds batch reads, created on the first batch.
+     */
+    private FilteredIterator batchIterator;
+
+    /**
+     * Returns an iterator for the file. Every row it returns is a new
+     * {@link Row} that belongs to the caller, who may modify it without
+     * copying it first.
      *
      * @return An iterator.
      */
     public final Iterator<Map<String, Object>> iterator() {
-        return new FilteredIterator(buildIterator(), getFilters(), maxRows);
+        return new FilteredIterator(buildIterator(), getFilterChain(),
+                maxRows);
+    }
+
+    /**
+     * Decode the next batch of rows.
+     *
+     * @param batchSize The maximum number of rows in the batch.
+     * @return The next batch, empty once all rows have been read.
+     */
+    @Override
+    public final RowBatch nextBatch(final int batchSize) {
+        if (batchIterator == null) {
+            batchIterator = new FilteredIterator(buildIterator(),
+                    getFilterChain(), maxRows);
+        }
+        RowBatch.Builder builder = new RowBatch.Builder(batchSize);
+        batchIterator.fill(builder, batchSize);
+        return builder.build();
+    }
+
+    /**
+     * Forget how far batch reads have got, so that the next batch is read
+     * from the start of a new source.
+     */
+    protected final void rewind() {
+        batchIterator = null;
+    }
+
+    /**
+     * Return the decoder to the configuration of a new instance, by
+     * removing its filters and row limit and restoring the settings of the
+     * child implementation. Buffers and caches are kept. The registry does
+     * this to a decoder it pools, after resetting it.
+     */
+    final void restoreDefaults() {
+        clearFilters();
+        maxRows = null;
+        restoreSettings();
+    }
+
+    /**
+     * Protected extension point, for child implementations that have
+     * settings of their own: set them back to the values of a new instance.
+     */
+    protected void restoreSettings() {
+    }
+
+    /**
+     * The predicates at the front of the filter chain. They see the rows
+     * exactly as decoded, so decoders may evaluate them while reading a row
+     * and skip the rows they reject. Rows a decoder lets through are still
+     * tested again by the filter chain.
+     *
+     * @return The leading predicates, possibly empty.
+     */
+    protected final List<RowPredicate> getRowPredicates() {
+        List<RowPredicate> predicates = new ArrayList<>();
+        for (IDataFilter filter : getFilters()) {
+            if (!(filter instanceof RowPredicate)) {
+                break;
+            }
+            predicates.add((RowPredicate) filter);
+        }
+        return predicates;
+    }
+
+    /**
+     * The columns the filters need, for decoders that can skip the others.
+     * Only the first filter after the leading predicates sees the decoded
+     * row, so columns are only narrowed when that filter is an
+     * {@link IProjectionFilter}. The columns of the leading predicates are
+     * always included.
+     *
+     * @return The required column names, or null if every column is needed.
+     */
+    protected final Set<String> getRequiredColumns() {
+        List<IDataFilter> filters = getFilters();
+        List<RowPredicate> predicates = getRowPredicates();
+        if (filters.size() == predicates.size()) {
+            return null;
+        }
+        IDataFilter first = filters.get(predicates.size());
+        if (!(first instanceof IProjectionFilter)) {
+            return null;
+        }
+        Set<String> columns = ((IProjectionFilter) first).getRequiredColumns();
+        if (predicates.isEmpty()) {
+            return columns;
+        }
+        Set<String> required = new LinkedHashSet<>(columns);
+        for (RowPredicate predicate : predicates) {
+            required.add(predicate.getColumn());
+        }
+        return required;
     }
 
     /**
@@ -73,15 +177,19 @@ public abstract class AbstractDataDecoder
     }
 
     /**
-     * An internal iterator that applies all of our filters.
+     * An internal iterator that applies all of our filters. Rows from
+     * decoders that do not produce {@link Row} instances natively are
+     * converted on the way through, so every consumer sees the same type.
+     * When the filters include a {@link RowPredicate}, the iterator reads
+     * ahead to the next selected row, and drops null rows.
      */
     private static final class FilteredIterator
             implements Iterator<Map<String, Object>> {
 
         /**
-         * The internal list of filters to apply to each row.
+         * The filters to apply to each row.
          */
-        private final List<IDataFilter> filters;
+        private final FilterChain filters;
 
         /**
          * The internal iterator.
@@ -98,6 +206,16 @@ public abstract class AbstractDataDecoder
          */
         private Long currentRow = (long) 0;
 
+        /**
+         * Converts foreign map implementations into rows.
+         */
+        private final RowBuilder builder = new RowBuilder();
+
+        /**
+         * The next selected row, read ahead by a selective iterator.
+         */
+        private Map<String, Object> pending;
+
         /**
          * Create a new filtered iterator with a maximum number of allowed
          * rows.
@@ -108,7 +226,7 @@ public abstract class AbstractDataDecoder
          *                rows.
          */
         FilteredIterator(final Iterator<Map<String, Object>> itr,
-                                final List<IDataFilter> fltrs,
+                                final FilterChain fltrs,
                                 final Long maxRows) {
             this.iterator = itr;
             this.filters = fltrs;
@@ -122,10 +240,13 @@ public abstract class AbstractDataDecoder
          */
         @Override
         public boolean hasNext() {
-            if (rows == null || currentRow < rows) {
-                return iterator.hasNext();
+            if (rows != null && currentRow >= rows) {
+                return false;
             }
-            return false;
+            if (filters.isSelective()) {
+                return advance();
+            }
+            return iterator.hasNext();
         }
 
         /**
@@ -140,14 +261,77 @@ public abstract class AbstractDataDecoder
                 return null;
             }
 
-            Map<String, Object> row = iterator.next();
-            for (IDataFilter filter : filters) {
-                row = filter.apply(row);
+            Map<String, Object> row;
+            if (filters.isSelective()) {
+                if (!advance()) {
+                    return null;
+                }
+                row = pending;
+                pending = null;
+            } else {
+                row = filter(iterator.next());
             }
             currentRow++;
             return row;
         }
 
+        /**
+         * Read ahead to the next row that passes all filters.
+         *
+         * @return Whether there is such a row.
+         */
+        private boolean advance() {
+            while (pending == null && iterator.hasNext()) {
+                Map<String, Object> row = iterator.next();
+                if (row != null) {
+                    pending = filter(row);
+                }
+            }
+            return pending != null;
+        }
+
+        /**
+         * Run a row through the filters. Decoded rows are fresh, so they are
+         * filtered in place.
+         *
+         * @param decoded The row as decoded.
+         * @return The filtered row, or null if a predicate rejected it.
+         */
+        private Map<String, Object> filter(final Map<String, Object> decoded) {
+            Map<String, Object> row = decoded;
+            if (row != null && !(row instanceof Row)) {
+                row = builder.build(row);
+            }
+            return filters.apply(row, true);
+        }
+
+        /**
+         * Decode rows into a batch. Unfiltered decoders that support it write
+         * straight into the batch, everything else goes row by row.
+         *
+         * @param batch     The batch to fill.
+         * @param batchSize The maximum number of rows to add.
+         */
+        void fill(final RowBatch.Builder batch, final int batchSize) {
+            int limit = batchSize;
+            if (rows != null) {
+                limit = (int) Math.min(limit, Math.max(rows - currentRow, 0));
+            }
+
+            if (filters.isEmpty() && iterator instanceof IBatchIterator) {
+                int added = ((IBatchIterator) iterator).nextBatch(batch, limit);
+                currentRow += added;
+                return;
+            }
+
+            for (int i = 0; i < limit && hasNext(); i++) {
+                Map<String, Object> row = next();
+                if (row != null) {
+                    batch.add(row);
+                }
+            }
+        }
+
         /**
          * Remove the current row.
          */
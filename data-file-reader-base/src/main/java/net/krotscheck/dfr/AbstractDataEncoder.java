@@ -31,7 +31,8 @@ public abstract class AbstractDataEncoder
         implements IDataEncoder {
 
     /**
-     * Write a row to the file.
+     * Write a row to the file. Rows rejected by the filters, such as by a
+     * {@link RowPredicate}, are not written.
      *
      * @param row A row of data.
      * @throws java.io.IOException Thrown when there are problems writing to the
@@ -40,10 +41,31 @@ public abstract class AbstractDataEncoder
     @Override
     public final void write(final Map<String, Object> row) throws IOException {
         Map<String, Object> filteredRow = applyFilters(row);
+        if (filteredRow == null) {
+            return;
+        }
 
         writeToOutput(filteredRow);
     }
 
+    /**
+     * Return the encoder to the configuration of a new instance, by
+     * removing its filters and restoring the settings of the child
+     * implementation. Buffers and caches are kept. The registry does this to
+     * an encoder it pools, after resetting it.
+     */
+    final void restoreDefaults() {
+        clearFilters();
+        restoreSettings();
+    }
+
+    /**
+     * Protected extension point, for child implementations that have
+     * settings of their own: set them back to the values of a new instance.
+     */
+    protected void restoreSettings() {
+    }
+
     /**
      * Protected write-to-stream method. Implement this.
      *
@@ -19,7 +19,6 @@ package net.krotscheck.dfr;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -37,6 +36,11 @@ public abstract class AbstractFilteredDataStream
      */
     private List<IDataFilter> filters;
 
+    /**
+     * The filters as a chain, built on first use.
+     */
+    private FilterChain chain;
+
     /**
      * Assert that the list of filters is set.
      */
@@ -55,6 +59,7 @@ public abstract class AbstractFilteredDataStream
         assertFilterListExists();
         if (!containsFilter(filter)) {
             filters.add(filter);
+            chain = null;
         }
     }
 
@@ -99,6 +104,7 @@ public abstract class AbstractFilteredDataStream
     public final void removeFilter(final IDataFilter filter) {
         if (containsFilter(filter)) {
             this.filters.remove(filter);
+            chain = null;
         }
     }
 
@@ -109,22 +115,33 @@ public abstract class AbstractFilteredDataStream
         if (filters != null) {
             this.filters = null;
         }
+        chain = null;
+    }
+
+    /**
+     * Retrieve the filters as a chain, which may be fused with the chains
+     * of other streams.
+     *
+     * @return The filter chain.
+     */
+    final FilterChain getFilterChain() {
+        if (chain == null) {
+            chain = FilterChain.of(getFilters());
+        }
+        return chain;
     }
 
     /**
-     * Apply the filters.
+     * Apply the filters. The filters work on a copy of the row, so the row
+     * passed in is never modified; without filters, the row is returned as
+     * is.
      *
      * @param row The row to filter.
-     * @return The filtered row.
+     * @return The filtered row, or null if a {@link RowPredicate} rejected
+     * it.
      */
     public final Map<String, Object> applyFilters(
             final Map<String, Object> row) {
-        Map<String, Object> filteringRow = new LinkedHashMap<>(row);
-        assertFilterListExists();
-        for (IDataFilter filter : getFilters()) {
-            filteringRow = filter.apply(filteringRow);
-        }
-
-        return filteringRow;
+        return getFilterChain().apply(row, false);
     }
 }
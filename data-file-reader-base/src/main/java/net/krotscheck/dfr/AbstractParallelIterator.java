@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * A row iterator for decoders that split their input into independent parts
+ * and decode the parts on a fork/join pool. Implementations hand out one
+ * task per part; each task decodes its part into a list of rows. Only a few
+ * parts are decoded ahead of the consumer, so memory use does not grow with
+ * the size of the input. Rows are returned in the order the tasks were handed
+ * out, or, if unordered, part by part as soon as each part is decoded.
+ *
+ * @author Michael Krotscheck
+ */
+public abstract class AbstractParallelIterator
+        implements Iterator<Map<String, Object>>, Closeable {
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(AbstractParallelIterator.class);
+
+    /**
+     * The number of parts decoded ahead per thread.
+     */
+    private static final int PARTS_PER_THREAD = 2;
+
+    /**
+     * The pool parts are decoded on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Whether rows are returned in the order of their parts.
+     */
+    private final boolean ordered;
+
+    /**
+     * The maximum number of parts being decoded at a time.
+     */
+    private final int window;
+
+    /**
+     * Parts in the order they were handed out, used when ordered.
+     */
+    private final Deque<Future<List<Map<String, Object>>>> pending =
+            new ArrayDeque<>();
+
+    /**
+     * Parts in order of completion, used when unordered.
+     */
+    private final CompletionService<List<Map<String, Object>>> completed;
+
+    /**
+     * The number of parts submitted but not yet returned.
+     */
+    private int inFlight = 0;
+
+    /**
+     * Whether all parts have been handed out, or decoding failed.
+     */
+    private boolean exhausted = false;
+
+    /**
+     * Whether this iterator was closed.
+     */
+    private boolean closed = false;
+
+    /**
+     * The rows of the current part.
+     */
+    private Iterator<Map<String, Object>> current =
+            Collections.<Map<String, Object>>emptyList().iterator();
+
+    /**
+     * Create a new parallel iterator.
+     *
+     * @param threads   The number of threads to decode on.
+     * @param keepOrder Whether to return rows in the order of their parts.
+     */
+    protected AbstractParallelIterator(final int threads,
+                                       final boolean keepOrder) {
+        this.pool = new ForkJoinPool(threads);
+        this.ordered = keepOrder;
+        this.window = threads * PARTS_PER_THREAD;
+        this.completed = new ExecutorCompletionService<>(pool);
+    }
+
+    /**
+     * The pool parts are decoded on, which implementations may also use to
+     * prepare their parts.
+     *
+     * @return The pool.
+     */
+    protected final ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Hand out the task that decodes the next part. Called on the consumer's
+     * thread.
+     *
+     * @return The task, or null if there are no more parts.
+     * @throws Exception Thrown if the next part cannot be found; no further
+     *                   parts are decoded.
+     */
+    protected abstract Callable<List<Map<String, Object>>> nextPart()
+            throws Exception;
+
+    /**
+     * Release the resources of the implementation. Called once, when the
+     * iterator is closed or exhausted.
+     */
+    protected abstract void dispose();
+
+    /**
+     * Do we have another row?
+     *
+     * @return true if there's another one, otherwise false.
+     */
+    @Override
+    public final boolean hasNext() {
+        while (!current.hasNext()) {
+            submit();
+            if (inFlight == 0) {
+                close();
+                return false;
+            }
+            current = await().iterator();
+        }
+        return true;
+    }
+
+    /**
+     * Return the next row.
+     *
+     * @return The next row, or null if there is none.
+     */
+    @Override
+    public final Map<String, Object> next() {
+        if (!hasNext()) {
+            return null;
+        }
+        return current.next();
+    }
+
+    /**
+     * Submit parts until the window is full.
+     */
+    private void submit() {
+        while (inFlight < window && !exhausted && !closed) {
+            Callable<List<Map<String, Object>>> task;
+            try {
+                task = nextPart();
+            } catch (Exception e) {
+                logger.error("Unable to split input.", e);
+                task = null;
+            }
+            if (task == null) {
+                exhausted = true;
+                return;
+            }
+            if (ordered) {
+                pending.add(pool.submit(task));
+            } else {
+                completed.submit(task);
+            }
+            inFlight++;
+        }
+    }
+
+    /**
+     * Wait for the next decoded part.
+     *
+     * @return Its rows. If decoding failed, no rows, and no further parts
+     * are decoded.
+     */
+    private List<Map<String, Object>> await() {
+        inFlight--;
+        try {
+            if (ordered) {
+                return pending.poll().get();
+            }
+            return completed.take().get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while decoding.", ie);
+        } catch (ExecutionException ee) {
+            logger.error("Unable to decode part.", ee.getCause());
+        }
+        exhausted = true;
+        pending.clear();
+        inFlight = 0;
+        return Collections.emptyList();
+    }
+
+    /**
+     * Stop decoding, and release all resources.
+     */
+    @Override
+    public final void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        exhausted = true;
+        pending.clear();
+        inFlight = 0;
+        pool.shutdownNow();
+        dispose();
+    }
+
+    /**
+     * We cannot remove from a decoder.
+     */
+    @Override
+    public final void remove() {
+        // Does nothing.
+    }
+}
@@ -0,0 +1,683 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr;
+
+import net.krotscheck.dfr.stream.IStreamDecoder;
+import net.krotscheck.dfr.stream.IStreamEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A registry of the decoders or encoders available at runtime, keyed by
+ * mime type. A mime type may be served by more than one codec, for example
+ * by a text and a stream variant; the first one discovered is the default,
+ * and the others can be asked for by their interface.
+ * <p>
+ * A registry is built once, when it is first asked for, and is immutable
+ * afterwards, so it may be shared between threads without locking. Codecs
+ * are created through a factory bound to their public no-argument
+ * constructor, rather than by reflection.
+ * <p>
+ * Codecs are found in the service files of their interface, in the order
+ * listed, followed by those that appear only in a codec index. The mime
+ * type of a codec is taken from the index, which the build writes for
+ * classes annotated with {@link DataCodec}, or else from the annotation
+ * itself; only codecs that have neither are created to be asked for it.
+ * <p>
+ * Codecs may also be borrowed from a pool, and given back once their
+ * source is done with. A returned codec is reset, and goes back to its
+ * defaults: no filters, no row limit, no compression, and default
+ * settings. Only its internal buffers and caches are kept, which spares
+ * the cost of allocating them for every small file. This differs from
+ * {@link IDataDecoder#reset()} and {@link IDataEncoder#reset()}, which
+ * keep the filters and settings of a codec. Every codec class keeps at
+ * most {@link #POOL_SIZE} idle codecs.
+ *
+ * @param <T> The kind of codec, {@link IDataDecoder} or {@link IDataEncoder}.
+ * @author Michael Krotscheck
+ */
+public final class CodecRegistry<T> {
+
+    /**
+     * The resource that holds the codec index of a module.
+     */
+    public static final String INDEX_RESOURCE =
+            "META-INF/net.krotscheck.dfr.codecs";
+
+    /**
+     * The kind of decoder lines in the codec index.
+     */
+    public static final String DECODER = "decoder";
+
+    /**
+     * The kind of encoder lines in the codec index.
+     */
+    public static final String ENCODER = "encoder";
+
+    /**
+     * The largest number of idle codecs pooled for each codec class.
+     */
+    public static final int POOL_SIZE = 16;
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(CodecRegistry.class);
+
+    /**
+     * The name of the codecs, for messages.
+     */
+    private final String kind;
+
+    /**
+     * The codecs of every mime type, in order of discovery.
+     */
+    private final Map<String, List<Codec<T>>> codecs;
+
+    /**
+     * The codecs, by class.
+     */
+    private final Map<Class<?>, Codec<T>> byType;
+
+    /**
+     * Create a registry of the given codecs.
+     *
+     * @param codecKind The name of the codecs, for messages.
+     * @param discovered The codecs, in order of discovery.
+     */
+    CodecRegistry(final String codecKind,
+                  final List<Codec<T>> discovered) {
+        this.kind = codecKind;
+        Map<String, List<Codec<T>>> byMimeType = new LinkedHashMap<>();
+        Map<Class<?>, Codec<T>> types = new HashMap<>();
+        for (Codec<T> codec : discovered) {
+            if (!types.containsKey(codec.getType())) {
+                types.put(codec.getType(), codec);
+            }
+            List<Codec<T>> list = byMimeType.get(codec.getMimeType());
+            if (list == null) {
+                list = new ArrayList<>();
+                byMimeType.put(codec.getMimeType(), list);
+            }
+            list.add(codec);
+        }
+        for (Map.Entry<String, List<Codec<T>>> entry
+                : byMimeType.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        this.codecs = Collections.unmodifiableMap(byMimeType);
+        this.byType = Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * Get the registry of decoders.
+     *
+     * @return The registry.
+     */
+    public static CodecRegistry<IDataDecoder> decoders() {
+        return Decoders.REGISTRY;
+    }
+
+    /**
+     * Get the registry of encoders.
+     *
+     * @return The registry.
+     */
+    public static CodecRegistry<IDataEncoder> encoders() {
+        return Encoders.REGISTRY;
+    }
+
+    /**
+     * Return a set of all supported mimetypes.
+     *
+     * @return The mimetypes, in order of discovery.
+     */
+    public Set<String> getMimeTypes() {
+        return codecs.keySet();
+    }
+
+    /**
+     * Returns whether a given mimetype is supported.
+     *
+     * @param mimeType The mimetype to check.
+     * @return True if the mimetype is supported, otherwise false.
+     */
+    public boolean isSupported(final String mimeType) {
+        return codecs.containsKey(mimeType);
+    }
+
+    /**
+     * Create the default codec of a mime type.
+     *
+     * @param mimeType The mimetype.
+     * @return A new codec.
+     * @throws ClassNotFoundException Thrown when no codec for the mimetype
+     *                                is found.
+     */
+    public T create(final String mimeType) throws ClassNotFoundException {
+        return find(mimeType).create();
+    }
+
+    /**
+     * Create a codec of a mime type that implements a given interface, such
+     * as a stream or a text variant.
+     *
+     * @param mimeType The mimetype.
+     * @param variant  The interface the codec must implement.
+     * @param <V>      The type of the codec.
+     * @return A new codec.
+     * @throws ClassNotFoundException Thrown when no codec for the mimetype
+     *                                implements the interface.
+     */
+    public <V extends T> V create(final String mimeType,
+                                  final Class<V> variant)
+            throws ClassNotFoundException {
+        return variant.cast(find(mimeType, variant).create());
+    }
+
+    /**
+     * Borrow the default codec of a mime type from the pool, or create one
+     * if none is idle. Give it back with {@link #release(Object)}.
+     *
+     * @param mimeType The mimetype.
+     * @return A codec, which may have been used before, but is configured
+     * like a new one.
+     * @throws ClassNotFoundException Thrown when no codec for the mimetype
+     *                                is found.
+     */
+    public T acquire(final String mimeType) throws ClassNotFoundException {
+        return find(mimeType).acquire();
+    }
+
+    /**
+     * Borrow a codec of a mime type that implements a given interface from
+     * the pool, or create one if none is idle. Give it back with
+     * {@link #release(Object)}.
+     *
+     * @param mimeType The mimetype.
+     * @param variant  The interface the codec must implement.
+     * @param <V>      The type of the codec.
+     * @return A codec, which may have been used before, but is configured
+     * like a new one.
+     * @throws ClassNotFoundException Thrown when no codec for the mimetype
+     *                                implements the interface.
+     */
+    public <V extends T> V acquire(final String mimeType,
+                                   final Class<V> variant)
+            throws ClassNotFoundException {
+        return variant.cast(find(mimeType, variant).acquire());
+    }
+
+    /**
+     * Give a codec back to the pool. The codec is reset, which closes its
+     * source, and must be neither used nor released again by the caller
+     * afterwards. Before it is pooled, it is returned to the configuration
+     * of a new instance: its filters, row limit, compression and settings
+     * are removed, so the next caller does not inherit them. Codecs that
+     * this registry does not know, that do not extend the abstract codecs
+     * and so cannot be restored, or that do not fit in the pool, are reset
+     * and dropped.
+     *
+     * @param codec The codec.
+     */
+    public void release(final T codec) {
+        if (codec instanceof IDataDecoder) {
+            ((IDataDecoder) codec).reset();
+        } else if (codec instanceof IDataEncoder) {
+            ((IDataEncoder) codec).reset();
+        }
+        Codec<T> entry = byType.get(codec.getClass());
+        if (entry != null && restoreDefaults(codec)) {
+            entry.release(codec);
+        }
+    }
+
+    /**
+     * Return a codec to the configuration of a new instance.
+     *
+     * @param codec The codec, which has been reset.
+     * @return False if the codec cannot be restored.
+     */
+    private static boolean restoreDefaults(final Object codec) {
+        if (codec instanceof AbstractDataDecoder) {
+            ((AbstractDataDecoder) codec).restoreDefaults();
+        } else if (codec instanceof AbstractDataEncoder) {
+            ((AbstractDataEncoder) codec).restoreDefaults();
+        } else {
+            return false;
+        }
+        if (codec instanceof IStreamDecoder) {
+            ((IStreamDecoder) codec).setCompression(null);
+        } else if (codec instanceof IStreamEncoder) {
+            ((IStreamEncoder) codec).setCompression(null);
+        }
+        return true;
+    }
+
+    /**
+     * Find the default codec of a mime type.
+     *
+     * @param mimeType The mimetype.
+     * @return The codec entry.
+     * @throws ClassNotFoundException Thrown when no codec for the mimetype
+     *                                is found.
+     */
+    private Codec<T> find(final String mimeType)
+            throws ClassNotFoundException {
+        List<Codec<T>> list = codecs.get(mimeType);
+        if (list == null) {
+            throw new ClassNotFoundException(
+                    String.format("%s for mimeType [%s] not found.",
+                            kind, mimeType));
+        }
+        return list.get(0);
+    }
+
+    /**
+     * Find the first codec of a mime type that implements an interface.
+     *
+     * @param mimeType The mimetype.
+     * @param variant  The interface the codec must implement.
+     * @return The codec entry.
+     * @throws ClassNotFoundException Thrown when no codec for the mimetype
+     *                                implements the interface.
+     */
+    private Codec<T> find(final String mimeType, final Class<?> variant)
+            throws ClassNotFoundException {
+        List<Codec<T>> list = codecs.get(mimeType);
+        if (list != null) {
+            for (Codec<T> codec : list) {
+                if (variant.isAssignableFrom(codec.getType())) {
+                    return codec;
+                }
+            }
+        }
+        throw new ClassNotFoundException(
+                String.format("%s for mimeType [%s] not found.",
+                        variant.getSimpleName(), mimeType));
+    }
+
+    /**
+     * Discover the codecs of a service interface, from its service files
+     * and from the codec index.
+     *
+     * @param service The service interface.
+     * @param kind    The kind of codec in the index.
+     * @param loader  The class loader to search.
+     * @param <T>     The kind of codec.
+     * @return The codecs, in order of discovery.
+     */
+    static <T> List<Codec<T>> discover(final Class<T> service,
+                                       final String kind,
+                                       final ClassLoader loader) {
+        Map<String, String> index = readIndex(loader, kind);
+        Set<String> names = new LinkedHashSet<>(readServices(loader,
+                "META-INF/services/" + service.getName()));
+        names.addAll(index.keySet());
+
+        logger.info(String.format("%ss found:", service.getSimpleName()));
+        List<Codec<T>> discovered = new ArrayList<>();
+        for (String name : names) {
+            try {
+                Class<? extends T> type = Class.forName(name, false, loader)
+                        .asSubclass(service);
+                Supplier<T> factory = factory(type);
+                String mimeType = index.get(name);
+                if (mimeType == null) {
+                    mimeType = mimeTypeOf(type, factory);
+                }
+                logger.info(String.format("    %s -> %s", mimeType, name));
+                discovered.add(new Codec<T>(mimeType, type, factory));
+            } catch (ClassNotFoundException | ClassCastException
+                    | IllegalStateException e) {
+                logger.error(String.format("Unable to load %s %s.",
+                        service.getSimpleName(), name), e);
+            }
+        }
+        return discovered;
+    }
+
+    /**
+     * Get the mime type of a codec that is not in the index, from its
+     * annotation or else from an instance.
+     *
+     * @param type    The codec class.
+     * @param factory Creates the codec.
+     * @param <T>     The kind of codec.
+     * @return The mime type.
+     */
+    private static <T> String mimeTypeOf(final Class<? extends T> type,
+                                         final Supplier<T> factory) {
+        DataCodec annotation = type.getAnnotation(DataCodec.class);
+        if (annotation != null) {
+            return annotation.value();
+        }
+        Object instance = factory.get();
+        if (instance instanceof IDataDecoder) {
+            return ((IDataDecoder) instance).getMimeType();
+        }
+        return ((IDataEncoder) instance).getMimeType();
+    }
+
+    /**
+     * Read the codecs of one kind from every codec index.
+     *
+     * @param loader The class loader to search.
+     * @param kind   The kind of codec.
+     * @return The mime type of every codec class, in order of appearance.
+     */
+    static Map<String, String> readIndex(final ClassLoader loader,
+                                         final String kind) {
+        Map<String, String> index = new LinkedHashMap<>();
+        for (String line : readServices(loader, INDEX_RESOURCE)) {
+            String[] fields = line.split("\\s+");
+            if (fields.length == 3 && fields[0].equals(kind)) {
+                index.put(fields[2], fields[1]);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Read the lines of every copy of a resource, without comments or
+     * blank lines, as the service loader does.
+     *
+     * @param loader   The class loader to search.
+     * @param resource The name of the resource.
+     * @return The lines, in order of appearance.
+     */
+    static List<String> readServices(final ClassLoader loader,
+                                     final String resource) {
+        List<String> lines = new ArrayList<>();
+        try {
+            Enumeration<URL> urls = loader.getResources(resource);
+            while (urls.hasMoreElements()) {
+                readLines(urls.nextElement(), lines);
+            }
+        } catch (IOException ioe) {
+            logger.error(String.format("Unable to read %s.", resource), ioe);
+        }
+        return lines;
+    }
+
+    /**
+     * Read the lines of a resource, without comments or blank lines.
+     *
+     * @param url   The resource.
+     * @param lines The list to add the lines to.
+     * @throws IOException Thrown if the resource cannot be read.
+     */
+    private static void readLines(final URL url, final List<String> lines)
+            throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                url.openStream(), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while (line != null) {
+                int comment = line.indexOf('#');
+                if (comment >= 0) {
+                    line = line.substring(0, comment);
+                }
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+                line = reader.readLine();
+            }
+        }
+    }
+
+    /**
+     * Get the class loader codecs are discovered with: the context class
+     * loader of the current thread, as for the service loader.
+     *
+     * @return The class loader.
+     */
+    private static ClassLoader classLoader() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = CodecRegistry.class.getClassLoader();
+        }
+        return loader;
+    }
+
+    /**
+     * Bind a factory to the public no-argument constructor of a codec. The
+     * factory is spun by the lambda metafactory, so that creating a codec
+     * costs no more than calling its constructor; if that fails, the
+     * constructor's method handle is invoked instead.
+     *
+     * @param type The codec class.
+     * @param <T>  The kind of codec.
+     * @return The factory.
+     * @throws IllegalStateException Thrown if the codec has no public
+     *                               no-argument constructor.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<T> factory(final Class<? extends T> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final MethodHandle constructor;
+        try {
+            constructor = MethodHandles.publicLookup().findConstructor(type,
+                    MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException roe) {
+            throw new IllegalStateException(roe.getMessage(), roe);
+        }
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class), constructor,
+                    MethodType.methodType(type));
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable t) {
+            logger.debug(String.format("Using a method handle for %s.",
+                    type.getCanonicalName()), t);
+        }
+        return new Supplier<T>() {
+            @Override
+            public T get() {
+                try {
+                    return (T) constructor.invoke();
+                } catch (RuntimeException | Error e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t.getMessage(), t);
+                }
+            }
+        };
+    }
+
+    /**
+     * A codec class, its mime type, the factory that creates it, and the
+     * pool of its idle instances.
+     *
+     * @param <T> The kind of codec.
+     */
+    static final class Codec<T> {
+
+        /**
+         * The mime type of the codec.
+         */
+        private final String mimeType;
+
+        /**
+         * The codec class.
+         */
+        private final Class<? extends T> type;
+
+        /**
+         * Creates the codec.
+         */
+        private final Supplier<T> factory;
+
+        /**
+         * The idle codecs.
+         */
+        private final ConcurrentLinkedQueue<T> idle =
+                new ConcurrentLinkedQueue<>();
+
+        /**
+         * The number of idle codecs, counted separately since the size of
+         * the queue is not constant time.
+         */
+        private final AtomicInteger idleCount = new AtomicInteger();
+
+        /**
+         * Create a new codec entry.
+         *
+         * @param codecMimeType The mime type of the codec.
+         * @param codecType     The codec class.
+         * @param codecFactory  Creates the codec.
+         */
+        Codec(final String codecMimeType, final Class<? extends T> codecType,
+              final Supplier<T> codecFactory) {
+            this.mimeType = codecMimeType;
+            this.type = codecType;
+            this.factory = codecFactory;
+        }
+
+        /**
+         * Get the mime type of the codec.
+         *
+         * @return The mime type.
+         */
+        String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * Get the codec class.
+         *
+         * @return The class.
+         */
+        Class<? extends T> getType() {
+            return type;
+        }
+
+        /**
+         * Create a new codec.
+         *
+         * @return The codec.
+         */
+        T create() {
+            return factory.get();
+        }
+
+        /**
+         * Take an idle codec, or create a new one if there is none.
+         *
+         * @return The codec.
+         */
+        T acquire() {
+            T codec = idle.poll();
+            if (codec == null) {
+                return create();
+            }
+            idleCount.decrementAndGet();
+            return codec;
+        }
+
+        /**
+         * Add a reset codec to the idle ones, unless the pool is full.
+         *
+         * @param codec The codec.
+         * @return True if the codec was pooled, false if it was dropped.
+         */
+        boolean release(final T codec) {
+            if (idleCount.incrementAndGet() > POOL_SIZE) {
+                idleCount.decrementAndGet();
+                return false;
+            }
+            idle.offer(codec);
+            return true;
+        }
+
+        /**
+         * Get the number of idle codecs.
+         *
+         * @return The number of codecs in the pool.
+         */
+        int getIdleCount() {
+            return idleCount.get();
+        }
+    }
+
+    /**
+     * Holds the decoder registry, which the class loader builds and
+     * publishes the first time it is asked for.
+     */
+    private static final class Decoders {
+
+        /**
+         * The registry of decoders.
+         */
+        private static final CodecRegistry<IDataDecoder> REGISTRY =
+                new CodecRegistry<>("IDataDecoder", discover(
+                        IDataDecoder.class, DECODER, classLoader()));
+
+        /**
+         * Holder class, private constructor.
+         */
+        private Decoders() {
+        }
+    }
+
+    /**
+     * Holds the encoder registry, which the class loader builds and
+     * publishes the first time it is asked for.
+     */
+    private static final class Encoders {
+
+        /**
+         * The registry of encoders.
+         */
+        private static final CodecRegistry<IDataEncoder> REGISTRY =
+                new CodecRegistry<>("IDataEncoder", discover(
+                        IDataEncoder.class, ENCODER, classLoader()));
+
+        /**
+         * Holder class, private constructor.
+         */
+        private Encoders() {
+        }
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.Arrays;
+
+/**
+ * A single column of a {@link RowBatch}. Integer, long and boolean columns
+ * are stored in a <code>long[]</code>, float and double columns in a
+ * <code>double[]</code>, and everything else in an <code>Object[]</code>.
+ * When a column sees mixed values it is widened: integers to longs, integer
+ * types to doubles, and anything else to objects.
+ *
+ * @author Michael Krotscheck
+ */
+public final class ColumnVector {
+
+    /**
+     * The type of the column, null while it has only seen nulls.
+     */
+    private Type type;
+
+    /**
+     * Whether this column stores boxed objects.
+     */
+    private boolean boxed;
+
+    /**
+     * Integer, long and boolean storage.
+     */
+    private long[] longs;
+
+    /**
+     * Float and double storage.
+     */
+    private double[] doubles;
+
+    /**
+     * Object storage.
+     */
+    private Object[] objects;
+
+    /**
+     * Null flags.
+     */
+    private boolean[] nulls;
+
+    /**
+     * The number of values in this column.
+     */
+    private int size;
+
+    /**
+     * Create a new, empty column.
+     *
+     * @param capacity The expected number of values.
+     */
+    ColumnVector(final int capacity) {
+        nulls = new boolean[Math.max(capacity, 1)];
+    }
+
+    /**
+     * The type of the column. Columns holding arbitrary objects, and columns
+     * that hold only nulls, report {@link Type#STRING}.
+     *
+     * @return The column type.
+     */
+    public Type getType() {
+        if (type == null || boxed) {
+            return Type.STRING;
+        }
+        return type;
+    }
+
+    /**
+     * The number of values in this column.
+     *
+     * @return The size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether the value at an index is null.
+     *
+     * @param index The row index.
+     * @return True if null.
+     */
+    public boolean isNull(final int index) {
+        return nulls[index];
+    }
+
+    /**
+     * Direct access to the long storage. Only valid for integer, long and
+     * boolean columns; booleans are stored as 1 or 0. Null slots hold 0.
+     *
+     * @return The backing array, which may be longer than the column.
+     */
+    public long[] getLongs() {
+        return longs;
+    }
+
+    /**
+     * Direct access to the double storage. Only valid for float and double
+     * columns. Null slots hold 0.
+     *
+     * @return The backing array, which may be longer than the column.
+     */
+    public double[] getDoubles() {
+        return doubles;
+    }
+
+    /**
+     * Direct access to the object storage. Only valid for string (and other
+     * object) columns.
+     *
+     * @return The backing array, which may be longer than the column.
+     */
+    public Object[] getObjects() {
+        return objects;
+    }
+
+    /**
+     * Read a value as a long.
+     *
+     * @param index The row index.
+     * @return The value, or 0 for nulls.
+     */
+    public long getLong(final int index) {
+        if (longs != null) {
+            return longs[index];
+        }
+        if (doubles != null) {
+            return (long) doubles[index];
+        }
+        Object value = get(index);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        return 0;
+    }
+
+    /**
+     * Read a value as a double.
+     *
+     * @param index The row index.
+     * @return The value, or 0 for nulls.
+     */
+    public double getDouble(final int index) {
+        if (doubles != null) {
+            return doubles[index];
+        }
+        if (longs != null) {
+            return longs[index];
+        }
+        Object value = get(index);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return 0;
+    }
+
+    /**
+     * Read a value as a boolean.
+     *
+     * @param index The row index.
+     * @return The value, or false for nulls.
+     */
+    public boolean getBoolean(final int index) {
+        if (longs != null) {
+            return longs[index] != 0;
+        }
+        if (doubles != null) {
+            return doubles[index] != 0;
+        }
+        return Boolean.TRUE.equals(get(index));
+    }
+
+    /**
+     * Read a value, boxing it if necessary.
+     *
+     * @param index The row index.
+     * @return The value.
+     */
+    public Object get(final int index) {
+        if (nulls[index]) {
+            return null;
+        }
+        if (boxed) {
+            return objects[index];
+        }
+        switch (type) {
+            case INTEGER:
+                return (int) longs[index];
+            case LONG:
+                return longs[index];
+            case BOOLEAN:
+                return longs[index] != 0;
+            case FLOAT:
+                return (float) doubles[index];
+            case DOUBLE:
+                return doubles[index];
+            default:
+                return objects[index];
+        }
+    }
+
+    /**
+     * Append a null.
+     */
+    void appendNull() {
+        ensureCapacity();
+        nulls[size] = true;
+        size++;
+    }
+
+    /**
+     * Append an integer, long or boolean value.
+     *
+     * @param valueType The type of the value.
+     * @param value     The value.
+     */
+    void appendLong(final Type valueType, final long value) {
+        ensureCapacity();
+        widen(valueType);
+        if (boxed) {
+            objects[size] = box(valueType, value, value);
+        } else if (doubles != null) {
+            doubles[size] = value;
+        } else {
+            longs[size] = value;
+        }
+        size++;
+    }
+
+    /**
+     * Append a float or double value.
+     *
+     * @param valueType The type of the value.
+     * @param value     The value.
+     */
+    void appendDouble(final Type valueType, final double value) {
+        ensureCapacity();
+        widen(valueType);
+        if (boxed) {
+            objects[size] = box(valueType, (long) value, value);
+        } else {
+            doubles[size] = value;
+        }
+        size++;
+    }
+
+    /**
+     * Append a boxed value. Numbers and booleans are stored unboxed.
+     *
+     * @param value The value.
+     */
+    void append(final Object value) {
+        if (value == null) {
+            appendNull();
+            return;
+        }
+        Type valueType = Type.getTypeForValue(value);
+        switch (valueType) {
+            case INTEGER:
+            case LONG:
+                appendLong(valueType, ((Number) value).longValue());
+                return;
+            case BOOLEAN:
+                long bit = 0;
+                if ((Boolean) value) {
+                    bit = 1;
+                }
+                appendLong(valueType, bit);
+                return;
+            case FLOAT:
+            case DOUBLE:
+                appendDouble(valueType, ((Number) value).doubleValue());
+                return;
+            default:
+                ensureCapacity();
+                widenToObjects(valueType);
+                objects[size] = value;
+                size++;
+        }
+    }
+
+    /**
+     * Box a primitive according to its type.
+     *
+     * @param valueType The type.
+     * @param bits      The integral value.
+     * @param real      The floating point value.
+     * @return The boxed value.
+     */
+    private static Object box(final Type valueType, final long bits,
+                              final double real) {
+        switch (valueType) {
+            case INTEGER:
+                return (int) bits;
+            case LONG:
+                return bits;
+            case BOOLEAN:
+                return bits != 0;
+            case FLOAT:
+                return (float) real;
+            default:
+                return real;
+        }
+    }
+
+    /**
+     * Make room for one more value.
+     */
+    private void ensureCapacity() {
+        if (size < nulls.length) {
+            return;
+        }
+        int capacity = nulls.length * 2;
+        nulls = Arrays.copyOf(nulls, capacity);
+        if (longs != null) {
+            longs = Arrays.copyOf(longs, capacity);
+        }
+        if (doubles != null) {
+            doubles = Arrays.copyOf(doubles, capacity);
+        }
+        if (objects != null) {
+            objects = Arrays.copyOf(objects, capacity);
+        }
+    }
+
+    /**
+     * Adjust the storage of this column so it can hold a value of the given
+     * primitive type.
+     *
+     * @param valueType The incoming type.
+     */
+    private void widen(final Type valueType) {
+        if (boxed) {
+            return;
+        }
+        if (type == null) {
+            type = valueType;
+            if (isFloating(valueType)) {
+                doubles = new double[nulls.length];
+            } else {
+                longs = new long[nulls.length];
+            }
+            return;
+        }
+        if (type == valueType) {
+            return;
+        }
+
+        boolean wasBoolean = type == Type.BOOLEAN;
+        boolean isBoolean = valueType == Type.BOOLEAN;
+        if (wasBoolean || isBoolean) {
+            widenToObjects(valueType);
+        } else if (isFloating(valueType) || isFloating(type)) {
+            if (longs != null) {
+                doubles = new double[nulls.length];
+                for (int i = 0; i < size; i++) {
+                    doubles[i] = longs[i];
+                }
+                longs = null;
+            }
+            type = Type.DOUBLE;
+        } else {
+            type = Type.LONG;
+        }
+    }
+
+    /**
+     * Switch this column to object storage, boxing any values it holds.
+     *
+     * @param valueType The incoming type.
+     */
+    private void widenToObjects(final Type valueType) {
+        if (boxed) {
+            return;
+        }
+        objects = new Object[nulls.length];
+        if (type != null) {
+            for (int i = 0; i < size; i++) {
+                objects[i] = get(i);
+            }
+        }
+        longs = null;
+        doubles = null;
+        boxed = true;
+        type = valueType;
+    }
+
+    /**
+     * Whether a type is stored as a double.
+     *
+     * @param valueType The type.
+     * @return True for FLOAT and DOUBLE.
+     */
+    private static boolean isFloating(final Type valueType) {
+        return valueType == Type.FLOAT || valueType == Type.DOUBLE;
+    }
+}
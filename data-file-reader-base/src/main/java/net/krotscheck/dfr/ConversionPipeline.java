@@ -0,0 +1,415 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a conversion as three pipelined stages: a decoding thread, one or more
+ * filtering threads, and the encoding stage on the calling thread. Rows move
+ * between the stages in chunks, through single producer, single consumer
+ * {@link RingBuffer}s. With several filtering threads, the decoder deals the
+ * chunks out round robin, and the encoder collects them in the same order,
+ * so rows are written in the order they were decoded.
+ *
+ * @author Michael Krotscheck
+ */
+final class ConversionPipeline {
+
+    /**
+     * The number of rows handed from one stage to the next at a time.
+     */
+    static final int CHUNK_SIZE = 256;
+
+    /**
+     * The number of chunks each ring buffer can hold.
+     */
+    static final int RING_CAPACITY = 16;
+
+    /**
+     * The number of empty polls a stage spins through before yielding.
+     */
+    private static final int SPIN_LIMIT = 100;
+
+    /**
+     * The number of empty polls a stage yields through before parking.
+     */
+    private static final int YIELD_LIMIT = 200;
+
+    /**
+     * How long an idle stage parks at a time.
+     */
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * Marks the end of the stream.
+     */
+    private static final List<Map<String, Object>> END = new ArrayList<>(0);
+
+    /**
+     * The decoder.
+     */
+    private final IDataDecoder decoder;
+
+    /**
+     * The fused filter chain.
+     */
+    private final FilterChain chain;
+
+    /**
+     * Whether the decoder's rows may be filtered in place.
+     */
+    private final boolean owned;
+
+    /**
+     * Writes a row to the output.
+     */
+    private final IRowSink sink;
+
+    /**
+     * The rings from the decoder to each filtering thread. Empty if the
+     * chain is empty, in which case the decoder feeds the encoder directly.
+     */
+    private final List<RingBuffer<List<Map<String, Object>>>> inbound =
+            new ArrayList<>();
+
+    /**
+     * The rings into the encoder.
+     */
+    private final List<RingBuffer<List<Map<String, Object>>>> outbound =
+            new ArrayList<>();
+
+    /**
+     * The first error raised by any stage.
+     */
+    private final AtomicReference<Throwable> failure =
+            new AtomicReference<>();
+
+    /**
+     * Create a new pipeline.
+     *
+     * @param dataDecoder   The decoder.
+     * @param filterChain   The filter chain.
+     * @param ownedRows     Whether decoded rows may be filtered in place.
+     * @param rowSink       Writes a filtered row.
+     * @param filterThreads The number of filtering threads.
+     */
+    ConversionPipeline(final IDataDecoder dataDecoder,
+                       final FilterChain filterChain,
+                       final boolean ownedRows,
+                       final IRowSink rowSink,
+                       final int filterThreads) {
+        this.decoder = dataDecoder;
+        this.chain = filterChain;
+        this.owned = ownedRows;
+        this.sink = rowSink;
+
+        int rings = 1;
+        if (!filterChain.isEmpty()) {
+            rings = filterThreads;
+        }
+        for (int i = 0; i < rings; i++) {
+            outbound.add(new RingBuffer<List<Map<String, Object>>>(
+                    RING_CAPACITY));
+            if (!filterChain.isEmpty()) {
+                inbound.add(new RingBuffer<List<Map<String, Object>>>(
+                        RING_CAPACITY));
+            }
+        }
+    }
+
+    /**
+     * Run the conversion, and wait until all rows are written. If any stage
+     * fails, all stages stop, and the first error is rethrown.
+     *
+     * @throws IOException Thrown if the encoder could not write a row.
+     */
+    void run() throws IOException {
+        List<Thread> threads = new ArrayList<>();
+        List<RingBuffer<List<Map<String, Object>>>> decoderRings = outbound;
+        if (!inbound.isEmpty()) {
+            decoderRings = inbound;
+        }
+        threads.add(stage("dfr-decode", new Decoder(decoderRings)));
+        for (int i = 0; i < inbound.size(); i++) {
+            threads.add(stage("dfr-filter-" + i,
+                    new Filter(inbound.get(i), outbound.get(i))));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        try {
+            encode();
+        } catch (IOException | RuntimeException | Error e) {
+            fail(e);
+        }
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                fail(ie);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Throwable error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new RuntimeException("Conversion interrupted.", error);
+        }
+    }
+
+    /**
+     * The encoding stage: collect chunks in order and write their rows.
+     *
+     * @throws IOException Thrown if the encoder could not write a row.
+     */
+    private void encode() throws IOException {
+        int next = 0;
+        while (true) {
+            List<Map<String, Object>> chunk = take(outbound.get(next));
+            if (chunk == null || chunk == END) {
+                return;
+            }
+            for (Map<String, Object> row : chunk) {
+                if (row != null) {
+                    sink.write(row);
+                }
+            }
+            next = (next + 1) % outbound.size();
+        }
+    }
+
+    /**
+     * Create a daemon thread for a stage, which records any error it raises.
+     *
+     * @param name The thread name.
+     * @param task The stage.
+     * @return The thread, not yet started.
+     */
+    private Thread stage(final String name, final Runnable task) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException | Error e) {
+                    fail(e);
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Record an error, unless another stage already failed.
+     *
+     * @param error The error.
+     */
+    private void fail(final Throwable error) {
+        failure.compareAndSet(null, error);
+    }
+
+    /**
+     * Add a chunk to a ring, waiting while it is full.
+     *
+     * @param ring  The ring.
+     * @param chunk The chunk.
+     * @return False if the pipeline failed while waiting.
+     */
+    private boolean put(final RingBuffer<List<Map<String, Object>>> ring,
+                        final List<Map<String, Object>> chunk) {
+        int idle = 0;
+        while (!ring.offer(chunk)) {
+            if (failure.get() != null) {
+                return false;
+            }
+            idle = idle(idle);
+        }
+        return true;
+    }
+
+    /**
+     * Remove a chunk from a ring, waiting while it is empty.
+     *
+     * @param ring The ring.
+     * @return The chunk, or null if the pipeline failed while waiting.
+     */
+    private List<Map<String, Object>> take(
+            final RingBuffer<List<Map<String, Object>>> ring) {
+        int idle = 0;
+        List<Map<String, Object>> chunk = ring.poll();
+        while (chunk == null) {
+            if (failure.get() != null) {
+                return null;
+            }
+            idle = idle(idle);
+            chunk = ring.poll();
+        }
+        return chunk;
+    }
+
+    /**
+     * Back off after an unsuccessful poll or offer: spin at first, then
+     * yield, then park.
+     *
+     * @param idle The number of unsuccessful attempts so far.
+     * @return The new number of unsuccessful attempts.
+     */
+    private static int idle(final int idle) {
+        if (idle < SPIN_LIMIT) {
+            return idle + 1;
+        }
+        if (idle < YIELD_LIMIT) {
+            Thread.yield();
+            return idle + 1;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        return idle;
+    }
+
+    /**
+     * Receives the rows that passed the filters, in decoding order.
+     */
+    interface IRowSink {
+
+        /**
+         * Write a row.
+         *
+         * @param row The row.
+         * @throws IOException Thrown if the row could not be written.
+         */
+        void write(Map<String, Object> row) throws IOException;
+    }
+
+    /**
+     * The decoding stage: read rows into chunks, and deal them out to the
+     * next stage round robin.
+     */
+    private final class Decoder implements Runnable {
+
+        /**
+         * The rings to deal chunks into.
+         */
+        private final List<RingBuffer<List<Map<String, Object>>>> rings;
+
+        /**
+         * Create a new decoding stage.
+         *
+         * @param targets The rings to deal chunks into.
+         */
+        Decoder(final List<RingBuffer<List<Map<String, Object>>>> targets) {
+            this.rings = targets;
+        }
+
+        /**
+         * Decode all rows, then send the end marker to every ring.
+         */
+        @Override
+        public void run() {
+            int next = 0;
+            List<Map<String, Object>> chunk = new ArrayList<>(CHUNK_SIZE);
+            Iterator<Map<String, Object>> rows = decoder.iterator();
+            while (rows.hasNext()) {
+                chunk.add(rows.next());
+                if (chunk.size() == CHUNK_SIZE) {
+                    if (!put(rings.get(next), chunk)) {
+                        return;
+                    }
+                    next = (next + 1) % rings.size();
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                if (!put(rings.get(next), chunk)) {
+                    return;
+                }
+            }
+            for (RingBuffer<List<Map<String, Object>>> ring : rings) {
+                if (!put(ring, END)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A filtering stage: apply the chain to every row of a chunk, replacing
+     * rejected rows with null.
+     */
+    private final class Filter implements Runnable {
+
+        /**
+         * The ring to read from.
+         */
+        private final RingBuffer<List<Map<String, Object>>> source;
+
+        /**
+         * The ring to write to.
+         */
+        private final RingBuffer<List<Map<String, Object>>> target;
+
+        /**
+         * Create a new filtering stage.
+         *
+         * @param from The ring to read from.
+         * @param to   The ring to write to.
+         */
+        Filter(final RingBuffer<List<Map<String, Object>>> from,
+               final RingBuffer<List<Map<String, Object>>> to) {
+            this.source = from;
+            this.target = to;
+        }
+
+        /**
+         * Filter chunks until the end marker arrives, and pass it on.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                List<Map<String, Object>> chunk = take(source);
+                if (chunk == null) {
+                    return;
+                }
+                if (chunk != END) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        chunk.set(i, chain.apply(chunk.get(i), owned));
+                    }
+                }
+                if (!put(target, chunk) || chunk == END) {
+                    return;
+                }
+            }
+        }
+    }
+}
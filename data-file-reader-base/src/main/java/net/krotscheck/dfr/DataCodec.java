@@ -0,0 +1,47 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the mime type of a decoder or encoder, so that it can be found
+ * without creating it. When a module is compiled, the codec index processor
+ * records every annotated class in the module's codec index, which the
+ * {@link CodecRegistry} reads at runtime. The value must be the one the
+ * codec returns from getMimeType().
+ *
+ * @author Michael Krotscheck
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface DataCodec {
+
+    /**
+     * The mime type of the codec.
+     *
+     * @return The mime type.
+     */
+    String value();
+}
@@ -17,32 +17,20 @@
 
 package net.krotscheck.dfr;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.ServiceLoader;
 import java.util.Set;
 
 /**
- * Our runtime cache of discovered IDataDecoders.
+ * Our runtime cache of discovered IDataDecoders. A mime type may be served by
+ * more than one decoder, for example by a text and a stream variant; the
+ * first one discovered is the default, and the others can be asked for by
+ * their interface. This is a static view of
+ * {@link CodecRegistry#decoders()}, which is built once and is safe to use
+ * from many threads.
  *
  * @author Michael Krotscheck
  */
 public final class DecoderCache {
 
-    /**
-     * Logger instance.
-     */
-    private static Logger logger =
-            LoggerFactory.getLogger(DecoderCache.class);
-
-    /**
-     * The static cache of discovered decoders.
-     */
-    private static Map<String, Class<? extends IDataDecoder>> cache;
-
     /**
      * This is a utility class, therefore a private constructor.
      */
@@ -50,38 +38,13 @@ public final class DecoderCache {
 
     }
 
-    /**
-     * Populates the cache.
-     */
-    private static void populateCache() {
-        if (cache == null) {
-            cache = new LinkedHashMap<>();
-
-            logger.info("IDataDecoders found:");
-
-            ServiceLoader<IDataDecoder> loader =
-                    ServiceLoader.load(IDataDecoder.class);
-
-            // Logging.
-            for (IDataDecoder discoveredDecoder : loader) {
-                String name = discoveredDecoder.getClass().getCanonicalName();
-                String decoderMimeType = discoveredDecoder.getMimeType();
-                logger.info(String.format("    %s -> %s",
-                        decoderMimeType, name));
-                cache.put(decoderMimeType, discoveredDecoder.getClass());
-            }
-        }
-    }
-
     /**
      * Return a set of all supported mimetypes.
      *
      * @return A set of the mimetypes supported by discovered IDataDecoders.
      */
     public static Set<String> supportedMimeTypes() {
-        populateCache();
-
-        return cache.keySet();
+        return CodecRegistry.decoders().getMimeTypes();
     }
 
     /**
@@ -91,9 +54,7 @@ public final class DecoderCache {
      * @return True if the mimetype is supported, otherwise false.
      */
     public static Boolean isMimeTypeSupported(final String mimeType) {
-        populateCache();
-
-        return cache.containsKey(mimeType);
+        return CodecRegistry.decoders().isSupported(mimeType);
     }
 
     /**
@@ -103,27 +64,36 @@ public final class DecoderCache {
      * @return An instance of the decoder.
      * @throws ClassNotFoundException Thrown when no decoder for a mimetype is
      *                                found.
-     * @throws IllegalAccessException Thrown when the decoder's constructor is
-     *                                not accessible. Never thrown, as the
-     *                                service loader would throw it first.
-     * @throws InstantiationException Thrown when the decoder's constructor is
-     *                                not accessible. Never thrown, as the
-     *                                service loader would throw it first.
+     * @throws IllegalAccessException Never thrown, as decoders are created
+     *                                through the registry.
+     * @throws InstantiationException Never thrown, as decoders are created
+     *                                through the registry.
      */
     public static IDataDecoder getDecoder(final String mimeType)
             throws ClassNotFoundException, IllegalAccessException,
             InstantiationException {
+        return CodecRegistry.decoders().create(mimeType);
+    }
 
-        populateCache();
-
-        if (!cache.containsKey(mimeType)) {
-            throw new ClassNotFoundException(
-                    String.format("IDataDecoder for"
-                            + " mimeType [%s] not found.", mimeType));
-        }
-
-        Class<? extends IDataDecoder> decoderClass = cache.get(mimeType);
-
-        return decoderClass.newInstance();
+    /**
+     * Retrieve a decoder for a specified mime type that implements a given
+     * interface, such as a stream or a text variant.
+     *
+     * @param mimeType The mimetype to scan for.
+     * @param variant  The interface the decoder must implement.
+     * @param <T>      The type of the decoder.
+     * @return An instance of the decoder.
+     * @throws ClassNotFoundException Thrown when no decoder for a mimetype is
+     *                                found.
+     * @throws IllegalAccessException Never thrown, as decoders are created
+     *                                through the registry.
+     * @throws InstantiationException Never thrown, as decoders are created
+     *                                through the registry.
+     */
+    public static <T extends IDataDecoder> T getDecoder(
+            final String mimeType, final Class<T> variant)
+            throws ClassNotFoundException, IllegalAccessException,
+            InstantiationException {
+        return CodecRegistry.decoders().create(mimeType, variant);
     }
 }
@@ -17,32 +17,20 @@
 
 package net.krotscheck.dfr;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.ServiceLoader;
 import java.util.Set;
 
 /**
- * Our runtime cache of discovered IDataEncoders.
+ * Our runtime cache of discovered IDataEncoders. A mime type may be served by
+ * more than one encoder, for example by a text and a stream variant; the
+ * first one discovered is the default, and the others can be asked for by
+ * their interface. This is a static view of
+ * {@link CodecRegistry#encoders()}, which is built once and is safe to use
+ * from many threads.
  *
  * @author Michael Krotscheck
  */
 public final class EncoderCache {
 
-    /**
-     * Logger instance.
-     */
-    private static Logger logger =
-            LoggerFactory.getLogger(EncoderCache.class);
-
-    /**
-     * The static cache of discovered encoders.
-     */
-    private static Map<String, Class<? extends IDataEncoder>> cache;
-
     /**
      * This is a utility class, therefore a private constructor.
      */
@@ -50,38 +38,13 @@ public final class EncoderCache {
 
     }
 
-    /**
-     * Populates the cache.
-     */
-    private static void populateCache() {
-        if (cache == null) {
-            cache = new LinkedHashMap<>();
-
-            logger.info("IDataEncoders found:");
-
-            ServiceLoader<IDataEncoder> loader =
-                    ServiceLoader.load(IDataEncoder.class);
-
-            // Logging.
-            for (IDataEncoder discoveredDecoder : loader) {
-                String name = discoveredDecoder.getClass().getCanonicalName();
-                String encoderMimeType = discoveredDecoder.getMimeType();
-                logger.info(String.format("    %s -> %s",
-                        encoderMimeType, name));
-                cache.put(encoderMimeType, discoveredDecoder.getClass());
-            }
-        }
-    }
-
     /**
      * Return a set of all supported mimetypes.
      *
      * @return A set of the mimetypes supported by discovered IDataEncoders.
      */
     public static Set<String> supportedMimeTypes() {
-        populateCache();
-
-        return cache.keySet();
+        return CodecRegistry.encoders().getMimeTypes();
     }
 
     /**
@@ -91,39 +54,46 @@ public final class EncoderCache {
      * @return True if the mimetype is supported, otherwise false.
      */
     public static Boolean isMimeTypeSupported(final String mimeType) {
-        populateCache();
-
-        return cache.containsKey(mimeType);
+        return CodecRegistry.encoders().isSupported(mimeType);
     }
 
     /**
-     * Retrieve a encoder for a specified mime type.
+     * Retrieve an encoder for a specified mime type.
      *
      * @param mimeType The mimetype to scan for.
      * @return An instance of the encoder.
      * @throws ClassNotFoundException Thrown when no encoder for a mimetype is
      *                                found.
-     * @throws IllegalAccessException Thrown when the encoder's constructor is
-     *                                not accessible. Never thrown, as the
-     *                                service loader would throw it first.
-     * @throws InstantiationException Thrown when the encoder's constructor is
-     *                                not accessible. Never thrown, as the
-     *                                service loader would throw it first.
+     * @throws IllegalAccessException Never thrown, as encoders are created
+     *                                through the registry.
+     * @throws InstantiationException Never thrown, as encoders are created
+     *                                through the registry.
      */
     public static IDataEncoder getEncoder(final String mimeType)
             throws ClassNotFoundException, IllegalAccessException,
             InstantiationException {
+        return CodecRegistry.encoders().create(mimeType);
+    }
 
-        populateCache();
-
-        if (!cache.containsKey(mimeType)) {
-            throw new ClassNotFoundException(
-                    String.format("IDataEncoder for"
-                            + " mimeType [%s] not found.", mimeType));
-        }
-
-        Class<? extends IDataEncoder> encoderClass = cache.get(mimeType);
-
-        return encoderClass.newInstance();
+    /**
+     * Retrieve an encoder for a specified mime type that implements a given
+     * interface, such as a stream or a text variant.
+     *
+     * @param mimeType The mimetype to scan for.
+     * @param variant  The interface the encoder must implement.
+     * @param <T>      The type of the encoder.
+     * @return An instance of the encoder.
+     * @throws ClassNotFoundException Thrown when no encoder for a mimetype is
+     *                                found.
+     * @throws IllegalAccessException Never thrown, as encoders are created
+     *                                through the registry.
+     * @throws InstantiationException Never thrown, as encoders are created
+     *                                through the registry.
+     */
+    public static <T extends IDataEncoder> T getEncoder(
+            final String mimeType, final Class<T> variant)
+            throws ClassNotFoundException, IllegalAccessException,
+            InstantiationException {
+        return CodecRegistry.encoders().create(mimeType, variant);
     }
 }
@@ -49,6 +49,16 @@ public final class FileStreamConverter
      */
     private IDataDecoder dataDecoder;
 
+    /**
+     * Whether to run decoding, filtering and encoding on separate threads.
+     */
+    private boolean pipelined = false;
+
+    /**
+     * The number of filtering threads in pipelined mode.
+     */
+    private int filterThreads = 1;
+
     /**
      * Create a new instance of the filestream converter. Accepts an encoder and
      * a decoder.
@@ -70,13 +80,81 @@ public final class FileStreamConverter
     }
 
     /**
-     * Run the converter.
+     * Enable or disable pipelined conversion. When enabled, rows are decoded
+     * on one thread, filtered on one or more others, and encoded on the
+     * thread that calls {@link #run()}, so decoding and encoding overlap.
+     * The decoder and encoder are still only used by one thread each.
+     *
+     * @param enabled Whether to pipeline the conversion.
+     */
+    public void setPipelined(final boolean enabled) {
+        this.pipelined = enabled;
+    }
+
+    /**
+     * Whether conversions are pipelined.
+     *
+     * @return True if pipelined.
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Set the number of threads that apply filters in pipelined mode. Rows
+     * are written in their original order regardless of this number. With
+     * more than one thread, all filters must be thread safe.
+     *
+     * @param threads The number of filtering threads, at least one.
+     */
+    public void setFilterThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(
+                    "At least one filter thread is required.");
+        }
+        this.filterThreads = threads;
+    }
+
+    /**
+     * The number of threads that apply filters in pipelined mode.
+     *
+     * @return The number of filtering threads.
+     */
+    public int getFilterThreads() {
+        return filterThreads;
+    }
+
+    /**
+     * Run the converter. The converter's filters and, if the encoder is an
+     * {@link AbstractDataEncoder}, the encoder's filters are fused into a
+     * single chain that each row passes through once. Rows from an
+     * {@link AbstractDataDecoder} belong to the converter and are filtered in
+     * place; rows from other decoders are copied once, before the first
+     * filter.
      */
     @Override
     public void run() {
+        FilterChain chain = getFilterChain();
+        AbstractDataEncoder fusedEncoder = null;
+        if (dataEncoder instanceof AbstractDataEncoder) {
+            fusedEncoder = (AbstractDataEncoder) dataEncoder;
+            chain = chain.then(fusedEncoder.getFilterChain());
+        }
+        boolean owned = dataDecoder instanceof AbstractDataDecoder;
+
         try {
-            for (Map<String, Object> row : dataDecoder) {
-                dataEncoder.write(applyFilters(row));
+            EncoderSink sink = new EncoderSink(fusedEncoder);
+            if (pipelined) {
+                ConversionPipeline pipeline = new ConversionPipeline(
+                        dataDecoder, chain, owned, sink, filterThreads);
+                pipeline.run();
+            } else {
+                for (Map<String, Object> row : dataDecoder) {
+                    Map<String, Object> filteredRow = chain.apply(row, owned);
+                    if (filteredRow != null) {
+                        sink.write(filteredRow);
+                    }
+                }
             }
 
             dataDecoder.close();
@@ -86,4 +164,40 @@ public final class FileStreamConverter
         }
 
     }
+
+    /**
+     * Writes filtered rows to the encoder. If the encoder's filters were
+     * fused into the converter's chain, rows bypass them.
+     */
+    private final class EncoderSink implements ConversionPipeline.IRowSink {
+
+        /**
+         * The encoder whose filters were fused, or null.
+         */
+        private final AbstractDataEncoder fusedEncoder;
+
+        /**
+         * Create a new sink.
+         *
+         * @param fused The encoder whose filters were fused, or null.
+         */
+        EncoderSink(final AbstractDataEncoder fused) {
+            this.fusedEncoder = fused;
+        }
+
+        /**
+         * Write a row.
+         *
+         * @param row The row.
+         * @throws IOException Thrown if the encoder could not write the row.
+         */
+        @Override
+        public void write(final Map<String, Object> row) throws IOException {
+            if (fusedEncoder != null) {
+                fusedEncoder.writeToOutput(row);
+            } else {
+                dataEncoder.write(row);
+            }
+        }
+    }
 }
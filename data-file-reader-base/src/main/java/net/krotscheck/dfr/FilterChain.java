@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, flattened list of filters, applied to rows in a single pass.
+ * Several streams' filter lists can be fused into one chain, so a row that
+ * passes from a decoder through a converter into an encoder is copied at
+ * most once on the way, instead of once per stream. A caller that owns the
+ * row it passes in, such as the consumer of a decoder, can skip that copy
+ * as well.
+ *
+ * @author Michael Krotscheck
+ */
+final class FilterChain {
+
+    /**
+     * A chain without filters.
+     */
+    static final FilterChain EMPTY = new FilterChain(new IDataFilter[0]);
+
+    /**
+     * The filters, in order.
+     */
+    private final IDataFilter[] filters;
+
+    /**
+     * Whether any filter is a row predicate.
+     */
+    private final boolean selective;
+
+    /**
+     * Create a new chain.
+     *
+     * @param chainFilters The filters, in order.
+     */
+    private FilterChain(final IDataFilter[] chainFilters) {
+        this.filters = chainFilters;
+        boolean hasPredicate = false;
+        for (IDataFilter filter : chainFilters) {
+            if (filter instanceof RowPredicate) {
+                hasPredicate = true;
+            }
+        }
+        this.selective = hasPredicate;
+    }
+
+    /**
+     * Create a new chain from a list of filters.
+     *
+     * @param chainFilters The filters, in order.
+     * @return The chain.
+     */
+    static FilterChain of(final List<IDataFilter> chainFilters) {
+        if (chainFilters.isEmpty()) {
+            return EMPTY;
+        }
+        return new FilterChain(
+                chainFilters.toArray(new IDataFilter[chainFilters.size()]));
+    }
+
+    /**
+     * Fuse another chain behind this one.
+     *
+     * @param next The chain to run after this one.
+     * @return The fused chain.
+     */
+    FilterChain then(final FilterChain next) {
+        if (next.filters.length == 0) {
+            return this;
+        }
+        if (filters.length == 0) {
+            return next;
+        }
+        List<IDataFilter> fused = new ArrayList<>(
+                filters.length + next.filters.length);
+        for (IDataFilter filter : filters) {
+            fused.add(filter);
+        }
+        for (IDataFilter filter : next.filters) {
+            fused.add(filter);
+        }
+        return of(fused);
+    }
+
+    /**
+     * Whether this chain has no filters.
+     *
+     * @return True if rows pass through unchanged.
+     */
+    boolean isEmpty() {
+        return filters.length == 0;
+    }
+
+    /**
+     * Whether this chain may drop rows.
+     *
+     * @return True if any filter is a row predicate.
+     */
+    boolean isSelective() {
+        return selective;
+    }
+
+    /**
+     * Run a row through the chain. A row that is not owned by the caller is
+     * copied once before the first filter sees it, so the filters may modify
+     * it freely; an empty chain never copies.
+     *
+     * @param row   The row.
+     * @param owned Whether the caller owns the row and hands it over.
+     * @return The filtered row, or null if a predicate rejected it.
+     */
+    Map<String, Object> apply(final Map<String, Object> row,
+                              final boolean owned) {
+        if (filters.length == 0) {
+            return row;
+        }
+        Map<String, Object> filteringRow = row;
+        if (!owned && row != null) {
+            filteringRow = Row.copyOf(row);
+        }
+        for (IDataFilter filter : filters) {
+            if (filter instanceof RowPredicate) {
+                if (!((RowPredicate) filter).matches(filteringRow)) {
+                    return null;
+                }
+            } else {
+                filteringRow = filter.apply(filteringRow);
+            }
+        }
+        return filteringRow;
+    }
+}
@@ -0,0 +1,547 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.krotscheck.dfr;
+
+import net.krotscheck.dfr.compress.CompressionCodecs;
+import net.krotscheck.dfr.stream.IStreamDecoder;
+import net.krotscheck.dfr.text.ITextDecoder;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Detects the format of a stream from its first bytes, so that a decoder
+ * can be chosen without knowing the mime type up front. Only a small
+ * prefix is read, and the stream is reset to where it was afterwards, so
+ * the decoder still sees every byte.
+ * <p>
+ * Formats are recognized as follows:
+ * <ul>
+ * <li>Compressed streams by their magic numbers. Streams with a codec in
+ * {@link CompressionCodecs}, such as gzip and zlib, are unwrapped, and the
+ * format inside them is detected in turn.</li>
+ * <li>BSON by a document length followed by a valid element type and a
+ * terminated element name. A length of zero, as written by encoders that
+ * stream their output, is accepted.</li>
+ * <li>A JSON array by a leading bracket, and newline-delimited JSON by a
+ * leading brace, after any byte order mark and whitespace.</li>
+ * <li>Any other text, without control characters, as CSV.</li>
+ * </ul>
+ *
+ * @author Michael Krotscheck
+ */
+public final class FormatDetector {
+
+    /**
+     * The number of bytes read to detect a format.
+     */
+    public static final int PREFIX_SIZE = 512;
+
+    /**
+     * The mime type of BSON.
+     */
+    public static final String BSON = "application/bson";
+
+    /**
+     * The mime type of a JSON array.
+     */
+    public static final String JSON = "application/json";
+
+    /**
+     * The mime type of newline-delimited JSON.
+     */
+    public static final String NDJSON = "application/x-ndjson";
+
+    /**
+     * The mime type of CSV.
+     */
+    public static final String CSV = "text/csv";
+
+    /**
+     * The mime type of gzip compressed data.
+     */
+    public static final String GZIP = "application/gzip";
+
+    /**
+     * The mime type of zlib compressed data.
+     */
+    public static final String ZLIB = "application/zlib";
+
+    /**
+     * The mime type of bzip2 compressed data.
+     */
+    public static final String BZIP2 = "application/x-bzip2";
+
+    /**
+     * The mime type of xz compressed data.
+     */
+    public static final String XZ = "application/x-xz";
+
+    /**
+     * The mime type of zstandard compressed data.
+     */
+    public static final String ZSTD = "application/zstd";
+
+    /**
+     * The mime type of LZ4 frames.
+     */
+    public static final String LZ4 = "application/x-lz4";
+
+    /**
+     * The mime type of zip archives.
+     */
+    public static final String ZIP = "application/zip";
+
+    /**
+     * The largest number of compressed wrappers unwrapped.
+     */
+    private static final int MAX_WRAPPERS = 4;
+
+    /**
+     * The size of the buffer a stream is wrapped in if it does not support
+     * mark and reset.
+     */
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * The UTF-8 byte order mark.
+     */
+    private static final byte[] UTF8_BOM =
+            {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * The gzip magic number.
+     */
+    private static final byte[] GZIP_MAGIC = {0x1F, (byte) 0x8B};
+
+    /**
+     * The bzip2 magic number, without the block size that follows it.
+     */
+    private static final byte[] BZIP2_MAGIC = {'B', 'Z', 'h'};
+
+    /**
+     * The magic number of the first bzip2 block.
+     */
+    private static final byte[] BZIP2_BLOCK =
+            {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+
+    /**
+     * The xz magic number.
+     */
+    private static final byte[] XZ_MAGIC =
+            {(byte) 0xFD, '7', 'z', 'X', 'Z', 0x00};
+
+    /**
+     * The zstandard magic number.
+     */
+    private static final byte[] ZSTD_MAGIC =
+            {0x28, (byte) 0xB5, 0x2F, (byte) 0xFD};
+
+    /**
+     * The LZ4 frame magic number.
+     */
+    private static final byte[] LZ4_MAGIC = {0x04, 0x22, 0x4D, 0x18};
+
+    /**
+     * The zip magic number.
+     */
+    private static final byte[] ZIP_MAGIC = {'P', 'K', 0x03, 0x04};
+
+    /**
+     * Utility class, private constructor.
+     */
+    private FormatDetector() {
+    }
+
+    /**
+     * Detect the format of a stream, without consuming it. Compressed
+     * streams are reported as such, and not unwrapped.
+     *
+     * @param stream The stream, which must support mark and reset.
+     * @return The mime type of the format, or null if it is not recognized.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    public static String detect(final InputStream stream) throws IOException {
+        if (!stream.markSupported()) {
+            throw new IllegalArgumentException(
+                    "The stream does not support mark and reset.");
+        }
+        byte[] prefix = new byte[PREFIX_SIZE];
+        int length = peek(stream, prefix);
+        return detect(prefix, length);
+    }
+
+    /**
+     * Detect the format of a prefix of a stream.
+     *
+     * @param prefix The first bytes of the stream.
+     * @param length The number of bytes in the prefix.
+     * @return The mime type of the format, or null if it is not recognized.
+     */
+    static String detect(final byte[] prefix, final int length) {
+        if (length == 0) {
+            return null;
+        }
+        String compression = detectCompression(prefix, length);
+        if (compression != null) {
+            return compression;
+        }
+        if (isBson(prefix, length)) {
+            return BSON;
+        }
+        if (!isText(prefix, length)) {
+            return null;
+        }
+        int start = 0;
+        if (startsWith(prefix, length, UTF8_BOM)) {
+            start = UTF8_BOM.length;
+        }
+        while (start < length && isWhitespace(prefix[start])) {
+            start++;
+        }
+        if (start < length && prefix[start] == '[') {
+            return JSON;
+        }
+        if (start < length && prefix[start] == '{') {
+            return NDJSON;
+        }
+        return CSV;
+    }
+
+    /**
+     * Detect the format of a stream, and create a decoder that reads it
+     * from the start. Compressed streams are decompressed first, by their
+     * codecs in {@link CompressionCodecs}. Stream decoders are preferred;
+     * text decoders read the stream as UTF-8. The decoder is borrowed from
+     * the pool of the decoder registry, and may be given back with
+     * {@link CodecRegistry#release(Object)}.
+     *
+     * @param stream The stream, which need not support mark and reset.
+     * @return A decoder, ready to read.
+     * @throws IOException            Thrown if the stream cannot be read,
+     *                                or its format is not recognized or
+     *                                cannot be decompressed.
+     * @throws ClassNotFoundException Thrown if no decoder is available for
+     *                                the detected format.
+     */
+    public static IDataDecoder createDecoder(final InputStream stream)
+            throws IOException, ClassNotFoundException {
+        InputStream input = markable(stream);
+        String mimeType = detect(input);
+        for (int i = 0; i < MAX_WRAPPERS && isCompression(mimeType); i++) {
+            input = markable(unwrap(input, mimeType));
+            mimeType = detect(input);
+        }
+        if (mimeType == null || isCompression(mimeType)) {
+            throw new IOException(String.format(
+                    "Unable to detect the format of the stream [%s].",
+                    mimeType));
+        }
+
+        CodecRegistry<IDataDecoder> registry = CodecRegistry.decoders();
+        try {
+            IStreamDecoder decoder =
+                    registry.acquire(mimeType, IStreamDecoder.class);
+            decoder.setInputStream(input);
+            return decoder;
+        } catch (ClassNotFoundException cnfe) {
+            ITextDecoder decoder =
+                    registry.acquire(mimeType, ITextDecoder.class);
+            skipBom(input);
+            decoder.setReader(new InputStreamReader(input,
+                    StandardCharsets.UTF_8));
+            return decoder;
+        }
+    }
+
+    /**
+     * Whether a mime type is one of the compressed formats.
+     *
+     * @param mimeType The mime type, may be null.
+     * @return True if it is a compressed format.
+     */
+    public static boolean isCompression(final String mimeType) {
+        return GZIP.equals(mimeType) || ZLIB.equals(mimeType)
+                || BZIP2.equals(mimeType) || XZ.equals(mimeType)
+                || ZSTD.equals(mimeType) || LZ4.equals(mimeType)
+                || ZIP.equals(mimeType);
+    }
+
+    /**
+     * Decompress a stream.
+     *
+     * @param stream      The compressed stream.
+     * @param compression The mime type of its compression.
+     * @return The decompressed stream.
+     * @throws IOException Thrown if the compression is not supported.
+     */
+    private static InputStream unwrap(final InputStream stream,
+                                      final String compression)
+            throws IOException {
+        try {
+            return CompressionCodecs.get(compression).decompress(stream);
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException(String.format(
+                    "Unsupported compression [%s].", compression), cnfe);
+        }
+    }
+
+    /**
+     * Detect a compressed format by its magic number.
+     *
+     * @param prefix The first bytes of the stream.
+     * @param length The number of bytes in the prefix.
+     * @return The mime type of the compression, or null.
+     */
+    private static String detectCompression(final byte[] prefix,
+                                            final int length) {
+        if (startsWith(prefix, length, GZIP_MAGIC)) {
+            return GZIP;
+        }
+        if (startsWith(prefix, length, XZ_MAGIC)) {
+            return XZ;
+        }
+        if (startsWith(prefix, length, ZSTD_MAGIC)) {
+            return ZSTD;
+        }
+        if (startsWith(prefix, length, LZ4_MAGIC)) {
+            return LZ4;
+        }
+        if (startsWith(prefix, length, ZIP_MAGIC)) {
+            return ZIP;
+        }
+        if (isBzip2(prefix, length)) {
+            return BZIP2;
+        }
+        if (isZlib(prefix, length)) {
+            return ZLIB;
+        }
+        return null;
+    }
+
+    /**
+     * Whether a prefix starts a bzip2 stream: the magic number, a block
+     * size digit, and the magic number of the first block.
+     *
+     * @param prefix The first bytes of the stream.
+     * @param length The number of bytes in the prefix.
+     * @return True if the prefix is bzip2.
+     */
+    private static boolean isBzip2(final byte[] prefix, final int length) {
+        int block = BZIP2_MAGIC.length + 1;
+        if (length < block + BZIP2_BLOCK.length
+                || !startsWith(prefix, length, BZIP2_MAGIC)
+                || prefix[BZIP2_MAGIC.length] < '1'
+                || prefix[BZIP2_MAGIC.length] > '9') {
+            return false;
+        }
+        for (int i = 0; i < BZIP2_BLOCK.length; i++) {
+            if (prefix[block + i] != BZIP2_BLOCK[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a prefix starts a zlib stream. The two header bytes are a
+     * weak signature, and may be printable, so the prefix must also
+     * inflate into at least one byte.
+     *
+     * @param prefix The first bytes of the stream.
+     * @param length The number of bytes in the prefix.
+     * @return True if the prefix is zlib.
+     */
+    private static boolean isZlib(final byte[] prefix, final int length) {
+        if (length < 2) {
+            return false;
+        }
+        int method = prefix[0] & 0xFF;
+        int header = method << 8 | (prefix[1] & 0xFF);
+        if ((method & 0x0F) != 8 || (method >> 4) > 7 || header % 31 != 0) {
+            return false;
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(prefix, 0, length);
+            int inflated = inflater.inflate(new byte[PREFIX_SIZE]);
+            return inflated > 0 || inflater.finished()
+                    || inflater.needsDictionary();
+        } catch (DataFormatException dfe) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Whether a prefix starts a BSON document: a length that is zero or at
+     * least that of an empty document, then either the end of an empty
+     * document, or a valid element type and a terminated name.
+     *
+     * @param prefix The first bytes of the stream.
+     * @param length The number of bytes in the prefix.
+     * @return True if the prefix is BSON.
+     */
+    private static boolean isBson(final byte[] prefix, final int length) {
+        if (length < 5) {
+            return false;
+        }
+        int size = (prefix[0] & 0xFF) | (prefix[1] & 0xFF) << 8
+                | (prefix[2] & 0xFF) << 16 | (prefix[3] & 0xFF) << 24;
+        int type = prefix[4] & 0xFF;
+        if (size == 5) {
+            return type == 0;
+        }
+        if (size != 0 && size < 5) {
+            return false;
+        }
+        if (!isBsonType(type)) {
+            return false;
+        }
+        for (int i = 5; i < length; i++) {
+            if (prefix[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a byte is a BSON element type.
+     *
+     * @param type The type byte.
+     * @return True if it is a valid element type.
+     */
+    private static boolean isBsonType(final int type) {
+        return (type >= 0x01 && type <= 0x13) || type == 0x7F
+                || type == 0xFF;
+    }
+
+    /**
+     * Whether a prefix is text: it holds no control characters other than
+     * whitespace. Bytes of multibyte characters are not checked, so text
+     * in any ASCII compatible encoding passes.
+     *
+     * @param prefix The first bytes of the stream.
+     * @param length The number of bytes in the prefix.
+     * @return True if the prefix is text.
+     */
+    private static boolean isText(final byte[] prefix, final int length) {
+        for (int i = 0; i < length; i++) {
+            int b = prefix[i] & 0xFF;
+            if ((b < 0x20 && !isWhitespace(prefix[i])) || b == 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a byte is whitespace.
+     *
+     * @param b The byte.
+     * @return True if it is a space, tab, line feed, carriage return or
+     * form feed.
+     */
+    private static boolean isWhitespace(final byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    /**
+     * Whether a prefix starts with a sequence of bytes.
+     *
+     * @param prefix   The first bytes of the stream.
+     * @param length   The number of bytes in the prefix.
+     * @param expected The bytes.
+     * @return True if the prefix starts with them.
+     */
+    private static boolean startsWith(final byte[] prefix, final int length,
+                                      final byte[] expected) {
+        if (length < expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (prefix[i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the prefix of a stream, and reset the stream to where it was.
+     *
+     * @param stream The stream, which supports mark and reset.
+     * @param prefix The array to read the prefix into.
+     * @return The number of bytes read.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    private static int peek(final InputStream stream, final byte[] prefix)
+            throws IOException {
+        stream.mark(prefix.length);
+        try {
+            int length = 0;
+            while (length < prefix.length) {
+                int read = stream.read(prefix, length, prefix.length - length);
+                if (read < 0) {
+                    break;
+                }
+                length += read;
+            }
+            return length;
+        } finally {
+            stream.reset();
+        }
+    }
+
+    /**
+     * Skip a UTF-8 byte order mark at the start of a stream, which readers
+     * would otherwise pass on as a character.
+     *
+     * @param stream The stream, which supports mark and reset.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    private static void skipBom(final InputStream stream) throws IOException {
+        byte[] prefix = new byte[UTF8_BOM.length];
+        int length = peek(stream, prefix);
+        if (startsWith(prefix, length, UTF8_BOM)) {
+            long skipped = 0;
+            while (skipped < UTF8_BOM.length) {
+                skipped += stream.skip(UTF8_BOM.length - skipped);
+            }
+        }
+    }
+
+    /**
+     * Make sure a stream supports mark and reset.
+     *
+     * @param stream The stream.
+     * @return The stream, or a buffered stream around it.
+     */
+    private static InputStream markable(final InputStream stream) {
+        if (stream.markSupported()) {
+            return stream;
+        }
+        return new BufferedInputStream(stream, BUFFER_SIZE);
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An iterator that can also write its rows directly into a columnar batch.
+ * Decoders whose internal iterators implement this interface skip the
+ * per-row iterator protocol entirely in
+ * {@link IDataDecoder#nextBatch(int)}, as long as no filters are configured.
+ *
+ * @author Michael Krotscheck
+ */
+public interface IBatchIterator extends Iterator<Map<String, Object>> {
+
+    /**
+     * Decode up to a number of rows into a batch.
+     *
+     * @param batch   The batch to append rows to.
+     * @param maxRows The maximum number of rows to append.
+     * @return The number of rows appended. Less than maxRows only when the
+     * source is exhausted.
+     */
+    int nextBatch(RowBatch.Builder batch, int maxRows);
+
+}
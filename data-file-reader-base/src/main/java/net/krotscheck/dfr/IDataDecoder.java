@@ -18,6 +18,9 @@
 package net.krotscheck.dfr;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -51,4 +54,52 @@ public interface IDataDecoder
      */
     void setMaxRows(Long rows);
 
+    /**
+     * Decode the next batch of rows, column by column. Successive calls
+     * continue where the previous batch ended; filters and the row limit
+     * apply just as they do to the iterator. Do not mix batch reads with
+     * iteration over the same decoder.
+     *
+     * <p>
+     * The default implementation copies up to maxRows rows from
+     * {@link #iterator()} into a batch. It relies on the iterator to pick up
+     * where the previous one stopped, as iterators over a stream do;
+     * decoders that can do better, or that restart their iterators, should
+     * override it.
+     *
+     * @param maxRows The maximum number of rows in the batch.
+     * @return The next batch, which is empty once all rows have been read.
+     */
+    default RowBatch nextBatch(final int maxRows) {
+        RowBatch.Builder builder = new RowBatch.Builder(maxRows);
+        Iterator<Map<String, Object>> rows = iterator();
+        for (int i = 0; i < maxRows && rows.hasNext(); i++) {
+            Map<String, Object> row = rows.next();
+            if (row != null) {
+                builder.add(row);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Close the current source and rewind the decoder, so that it can read
+     * another one. Unlike a closed decoder, a reset decoder may be used
+     * again: its filters, row limit and settings are kept, as are the
+     * buffers and caches it has built up.
+     * <p>
+     * The default implementation only closes the source, through
+     * {@link #close()}; decoders that can read again afterwards should
+     * override it.
+     *
+     * @throws UncheckedIOException Thrown if the source cannot be closed.
+     */
+    default void reset() {
+        try {
+            close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
 }
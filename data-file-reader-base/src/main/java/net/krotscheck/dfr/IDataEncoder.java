@@ -19,6 +19,7 @@ package net.krotscheck.dfr;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
 
 /**
@@ -45,4 +46,25 @@ public interface IDataEncoder extends IFilteringDataStream, Closeable {
      */
     void write(Map<String, Object> row) throws IOException;
 
+    /**
+     * Finish and close the current destination, so that the encoder can
+     * write another one. Unlike a closed encoder, a reset encoder may be
+     * used again: its filters and settings are kept, as are the buffers and
+     * caches it has built up.
+     * <p>
+     * The default implementation only closes the destination, through
+     * {@link #close()}; encoders that can write again afterwards should
+     * override it.
+     *
+     * @throws UncheckedIOException Thrown if the destination cannot be
+     *                              closed.
+     */
+    default void reset() {
+        try {
+            close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+/**
+ * A cell that is still encoded in the input it was read from. Decoders may
+ * store such cells in a {@link Row} instead of decoded values; the row
+ * decodes each cell the first time it is read, and keeps the decoded value
+ * in its place. Cells that are never read, because a filter drops their row
+ * or their column, are never decoded at all.
+ * <p>
+ * A cell must stay decodable for as long as its row may be read, so it has
+ * to hold on to its input rather than point into a buffer that is reused.
+ *
+ * @author Michael Krotscheck
+ */
+public interface ILazyCell {
+
+    /**
+     * Decode the cell.
+     *
+     * @return The value: a string, a boxed number or boolean, or null.
+     */
+    Object decode();
+}
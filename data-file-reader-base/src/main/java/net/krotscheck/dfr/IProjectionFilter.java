@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.Set;
+
+/**
+ * A data filter that only reads a known set of columns. When a projection
+ * filter is the first filter on a decoder, the decoder is told which columns
+ * are needed and may skip decoding all others. Rows handed to the filter may
+ * then lack any column outside of that set.
+ *
+ * @author Michael Krotscheck
+ */
+public interface IProjectionFilter extends IDataFilter {
+
+    /**
+     * The columns this filter reads.
+     *
+     * @return The names of the required columns.
+     */
+    Set<String> getRequiredColumns();
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps column names in the form an encoder writes them, so a name is only
+ * escaped or encoded the first time it is written. The names of the last
+ * schema are kept as an array, as rows usually share one. Names are kept
+ * until there are too many of them, after which new names are encoded
+ * every time.
+ *
+ * @param <N> The type of an encoded name.
+ * @author Michael Krotscheck
+ */
+public abstract class NameCache<N> {
+
+    /**
+     * The largest number of names that are kept.
+     */
+    public static final int MAX_NAMES = 4096;
+
+    /**
+     * The encoded names seen so far.
+     */
+    private final Map<String, N> names = new HashMap<>();
+
+    /**
+     * The schema of the last row.
+     */
+    private RowSchema lastSchema;
+
+    /**
+     * The encoded names of the columns of the last schema.
+     */
+    private N[] lastNames;
+
+    /**
+     * Get the encoded name of a column.
+     *
+     * @param name The name.
+     * @return The encoded name.
+     */
+    public final N name(final String name) {
+        N encoded = names.get(name);
+        if (encoded == null) {
+            encoded = encode(name);
+            if (names.size() < MAX_NAMES) {
+                names.put(name, encoded);
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Get the encoded names of the columns of a schema.
+     *
+     * @param schema The schema.
+     * @return The encoded name of every column.
+     */
+    public final N[] names(final RowSchema schema) {
+        if (schema != lastSchema) {
+            N[] encoded = newArray(schema.size());
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = name(schema.getName(i));
+            }
+            lastSchema = schema;
+            lastNames = encoded;
+        }
+        return lastNames;
+    }
+
+    /**
+     * Encode a name.
+     *
+     * @param name The name.
+     * @return The encoded name.
+     */
+    protected abstract N encode(final String name);
+
+    /**
+     * Create an array of encoded names.
+     *
+     * @param size The size of the array.
+     * @return The array.
+     */
+    protected abstract N[] newArray(final int size);
+}
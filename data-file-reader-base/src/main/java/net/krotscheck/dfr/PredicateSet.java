@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates a list of row predicates while a decoder reads a row, one cell
+ * at a time. Predicates are grouped by column into numbered slots; a decoder
+ * looks up the slot of a column once, tests the raw value as soon as it has
+ * parsed it, and abandons the row on the first rejection. Once the row is
+ * read, {@link #testMissing()} tests the columns the row did not contain.
+ * A predicate set is not thread safe; use one per iterator.
+ *
+ * @author Michael Krotscheck
+ */
+public final class PredicateSet {
+
+    /**
+     * The predicates of each slot.
+     */
+    private final RowPredicate[][] predicates;
+
+    /**
+     * The slot of each column.
+     */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /**
+     * Whether each slot was tested for the current row.
+     */
+    private final boolean[] tested;
+
+    /**
+     * Create a new predicate set.
+     *
+     * @param rowPredicates The predicates, all of which must match.
+     */
+    public PredicateSet(final List<RowPredicate> rowPredicates) {
+        List<List<RowPredicate>> grouped = new ArrayList<>();
+        for (RowPredicate predicate : rowPredicates) {
+            Integer slot = slots.get(predicate.getColumn());
+            if (slot == null) {
+                slot = grouped.size();
+                slots.put(predicate.getColumn(), slot);
+                grouped.add(new ArrayList<RowPredicate>());
+            }
+            grouped.get(slot).add(predicate);
+        }
+
+        predicates = new RowPredicate[grouped.size()][];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = grouped.get(i).toArray(new RowPredicate[0]);
+        }
+        tested = new boolean[predicates.length];
+    }
+
+    /**
+     * Whether this set has no predicates.
+     *
+     * @return True if every row is selected.
+     */
+    public boolean isEmpty() {
+        return predicates.length == 0;
+    }
+
+    /**
+     * Look up the slot of a column.
+     *
+     * @param column The column name.
+     * @return The slot, or -1 if no predicate tests this column.
+     */
+    public int slot(final String column) {
+        Integer slot = slots.get(column);
+        if (slot == null) {
+            return -1;
+        }
+        return slot;
+    }
+
+    /**
+     * Start a new row.
+     */
+    public void reset() {
+        Arrays.fill(tested, false);
+    }
+
+    /**
+     * Test a value.
+     *
+     * @param slot  The slot of the value's column.
+     * @param value The value, null for null cells.
+     * @return True if all predicates of the slot select the value.
+     */
+    public boolean test(final int slot, final Object value) {
+        tested[slot] = true;
+        for (RowPredicate predicate : predicates[slot]) {
+            if (!predicate.test(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test an integral value.
+     *
+     * @param slot  The slot of the value's column.
+     * @param value The value.
+     * @return True if all predicates of the slot select the value.
+     */
+    public boolean test(final int slot, final long value) {
+        tested[slot] = true;
+        for (RowPredicate predicate : predicates[slot]) {
+            if (!predicate.test(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test a floating point value.
+     *
+     * @param slot  The slot of the value's column.
+     * @param value The value.
+     * @return True if all predicates of the slot select the value.
+     */
+    public boolean test(final int slot, final double value) {
+        tested[slot] = true;
+        for (RowPredicate predicate : predicates[slot]) {
+            if (!predicate.test(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test a boolean value.
+     *
+     * @param slot  The slot of the value's column.
+     * @param value The value.
+     * @return True if all predicates of the slot select the value.
+     */
+    public boolean test(final int slot, final boolean value) {
+        tested[slot] = true;
+        for (RowPredicate predicate : predicates[slot]) {
+            if (!predicate.test(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Test a string value.
+     *
+     * @param slot  The slot of the value's column.
+     * @param value The value.
+     * @return True if all predicates of the slot select the value.
+     */
+    public boolean test(final int slot, final String value) {
+        tested[slot] = true;
+        for (RowPredicate predicate : predicates[slot]) {
+            if (!predicate.test(value)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Leave a value to be tested later by the filter chain, for values the
+     * decoder cannot test without materializing them.
+     *
+     * @param slot The slot of the value's column.
+     */
+    public void defer(final int slot) {
+        tested[slot] = true;
+    }
+
+    /**
+     * Test the columns that were not present in the current row, as nulls.
+     *
+     * @return True if the row is still selected.
+     */
+    public boolean testMissing() {
+        for (int i = 0; i < predicates.length; i++) {
+            if (!tested[i] && !test(i, (Object) null)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock free queue for exactly one producer thread and exactly one
+ * consumer thread. Each side only ever writes its own counter, so neither
+ * offer nor poll needs a lock or a compare-and-set.
+ *
+ * @param <T> The type of the elements.
+ * @author Michael Krotscheck
+ */
+final class RingBuffer<T> {
+
+    /**
+     * The slots.
+     */
+    private final Object[] slots;
+
+    /**
+     * The mask that maps a sequence number to a slot.
+     */
+    private final int mask;
+
+    /**
+     * The sequence number of the next element to read. Only written by the
+     * consumer.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number of the next element to write. Only written by the
+     * producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Create a new ring buffer.
+     *
+     * @param capacity The minimum capacity, rounded up to a power of two.
+     */
+    RingBuffer(final int capacity) {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Invalid ring buffer capacity: "
+                    + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size = size << 1;
+        }
+        this.slots = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * The number of elements this buffer can hold.
+     *
+     * @return The capacity.
+     */
+    int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Add an element. May only be called by the producer thread.
+     *
+     * @param value The element, not null.
+     * @return False if the buffer is full.
+     */
+    boolean offer(final T value) {
+        long sequence = tail.get();
+        if (sequence - head.get() == slots.length) {
+            return false;
+        }
+        slots[(int) sequence & mask] = value;
+        // The ordered write publishes the slot before the new tail.
+        tail.lazySet(sequence + 1);
+        return true;
+    }
+
+    /**
+     * Remove the oldest element. May only be called by the consumer thread.
+     *
+     * @return The element, or null if the buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    T poll() {
+        long sequence = head.get();
+        if (sequence == tail.get()) {
+            return null;
+        }
+        int index = (int) sequence & mask;
+        T value = (T) slots[index];
+        slots[index] = null;
+        head.lazySet(sequence + 1);
+        return value;
+    }
+}
@@ -0,0 +1,878 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A single row of data. Rows carry only an array of values; the column names
+ * live in a {@link RowSchema} that is shared between all rows of the same
+ * layout. A row is still a fully mutable, ordered
+ * <code>Map&lt;String, Object&gt;</code>, so existing filters keep working:
+ * putting an unknown key switches the row to an extended (and cached) schema,
+ * and removing a key only marks its cell as absent.
+ * <p>
+ * Numeric and boolean cells may also be written and read as primitives, via
+ * the typed accessors such as {@link #setLong(int, long)} and
+ * {@link #getLong(int)}. Such cells are stored unboxed and are only boxed
+ * when read through the map interface.
+ * <p>
+ * Cells may also hold an {@link ILazyCell}, which is decoded the first time
+ * it is read and replaced by its value.
+ *
+ * @author Michael Krotscheck
+ */
+public final class Row extends AbstractMap<String, Object> {
+
+    /**
+     * Marker for a cell whose key has been removed from the row.
+     */
+    private static final Object ABSENT = new Object();
+
+    /**
+     * Markers for unboxed cells, indexed by the ordinal of their type. The
+     * raw value of such a cell lives in the primitive array.
+     */
+    private static final Unboxed[] UNBOXED = new Unboxed[Type.values().length];
+
+    static {
+        for (Type type : Type.values()) {
+            UNBOXED[type.ordinal()] = new Unboxed(type);
+        }
+    }
+
+    /**
+     * The schema of this row.
+     */
+    private RowSchema schema;
+
+    /**
+     * The cell values, indexed by schema position.
+     */
+    private Object[] values;
+
+    /**
+     * The raw bits of unboxed cells, indexed by schema position. Doubles and
+     * floats are stored as their long bit patterns. Created on first use.
+     */
+    private long[] primitives;
+
+    /**
+     * The number of absent cells.
+     */
+    private int absent;
+
+    /**
+     * The lazily created entry set view.
+     */
+    private Set<Map.Entry<String, Object>> entries;
+
+    /**
+     * Create a new row in which every column is null.
+     *
+     * @param rowSchema The schema of the row.
+     */
+    public Row(final RowSchema rowSchema) {
+        this(rowSchema, new Object[rowSchema.size()]);
+    }
+
+    /**
+     * Create a new row from a schema and its values. The value array is owned
+     * by the row afterwards.
+     *
+     * @param rowSchema The schema of the row.
+     * @param rowValues The values, one per schema column.
+     */
+    public Row(final RowSchema rowSchema, final Object[] rowValues) {
+        if (rowValues.length != rowSchema.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %s values, got %s.",
+                    rowSchema.size(), rowValues.length));
+        }
+        this.schema = rowSchema;
+        this.values = rowValues;
+    }
+
+    /**
+     * Copy a row. The copy shares the schema, but not the values.
+     *
+     * @param row The row to copy.
+     */
+    public Row(final Row row) {
+        this.schema = row.schema;
+        this.values = row.values.clone();
+        this.absent = row.absent;
+        if (row.primitives != null) {
+            this.primitives = row.primitives.clone();
+        }
+    }
+
+    /**
+     * Create a new row from a schema, its values and the raw bits of any
+     * unboxed cells. Both arrays are owned by the row afterwards.
+     *
+     * @param rowSchema     The schema of the row.
+     * @param rowValues     The values, one per schema column.
+     * @param rowPrimitives The raw bits, or null if no cell is unboxed.
+     */
+    Row(final RowSchema rowSchema, final Object[] rowValues,
+        final long[] rowPrimitives) {
+        this(rowSchema, rowValues);
+        this.primitives = rowPrimitives;
+    }
+
+    /**
+     * Return the marker that flags a cell as unboxed.
+     *
+     * @param type The type of the cell.
+     * @return The marker to store in place of a value.
+     */
+    static Object marker(final Type type) {
+        return UNBOXED[type.ordinal()];
+    }
+
+    /**
+     * Append this row to a batch, without boxing any cells.
+     *
+     * @param batch The batch builder.
+     */
+    void appendTo(final RowBatch.Builder batch) {
+        for (int i = 0; i < values.length; i++) {
+            cell(i);
+        }
+        batch.append(schema, values, primitives);
+    }
+
+    /**
+     * Append a single stored cell to a column, without boxing it.
+     *
+     * @param column The column to append to.
+     * @param cell   The stored cell, which may be a marker.
+     * @param bits   The raw bits of unboxed cells, may be null.
+     * @param index  The index of the cell.
+     */
+    static void appendCell(final ColumnVector column, final Object cell,
+                           final long[] bits, final int index) {
+        if (cell == ABSENT || cell == null) {
+            column.appendNull();
+        } else if (cell instanceof ILazyCell) {
+            column.append(((ILazyCell) cell).decode());
+        } else if (cell instanceof Unboxed) {
+            Type type = ((Unboxed) cell).type;
+            switch (type) {
+                case FLOAT:
+                case DOUBLE:
+                    column.appendDouble(type,
+                            Double.longBitsToDouble(bits[index]));
+                    break;
+                default:
+                    column.appendLong(type, bits[index]);
+                    break;
+            }
+        } else {
+            column.append(cell);
+        }
+    }
+
+    /**
+     * Copy selected cells into a new row of another schema. Unboxed cells
+     * stay unboxed, and no map lookups are made, so a projection that has
+     * resolved its column indexes once can apply them to every row of the
+     * same schema with a single array copy.
+     *
+     * @param target  The schema of the new row.
+     * @param indexes For each column of the target schema, the index of the
+     *                cell in this row to copy, or -1 for a null cell.
+     * @return A new row.
+     */
+    public Row project(final RowSchema target, final int[] indexes) {
+        if (indexes.length != target.size()) {
+            throw new IllegalArgumentException(String.format(
+                    "Expected %s indexes, got %s.",
+                    target.size(), indexes.length));
+        }
+        Object[] projected = new Object[indexes.length];
+        long[] bits = null;
+        for (int i = 0; i < indexes.length; i++) {
+            int index = indexes[i];
+            if (index < 0 || values[index] == ABSENT) {
+                continue;
+            }
+            Object value = values[index];
+            projected[i] = value;
+            if (value instanceof Unboxed) {
+                if (bits == null) {
+                    bits = new long[indexes.length];
+                }
+                bits[i] = primitives[index];
+            }
+        }
+        return new Row(target, projected, bits);
+    }
+
+    /**
+     * Copy any map into a row. Rows are copied with their schema, other maps
+     * get a new schema built from their key order.
+     *
+     * @param row The map to copy.
+     * @return A new row with the same content.
+     */
+    public static Row copyOf(final Map<String, Object> row) {
+        if (row instanceof Row) {
+            return new Row((Row) row);
+        }
+        RowBuilder builder = new RowBuilder();
+        return builder.build(row);
+    }
+
+    /**
+     * Retrieve the schema of this row.
+     *
+     * @return The schema.
+     */
+    public RowSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Retrieve a value by column index.
+     *
+     * @param index The column index.
+     * @return The value, or null if the cell is null or absent.
+     */
+    public Object get(final int index) {
+        return box(index, cell(index));
+    }
+
+    /**
+     * Return the stored cell at an index, decoding it first if it is lazy.
+     *
+     * @param index The column index.
+     * @return The stored cell, which may be a marker.
+     */
+    private Object cell(final int index) {
+        Object value = values[index];
+        if (value instanceof ILazyCell) {
+            value = ((ILazyCell) value).decode();
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Convert a stored cell into the value the map interface exposes.
+     *
+     * @param index The column index.
+     * @param value The stored cell.
+     * @return The boxed value, or null for absent cells.
+     */
+    private Object box(final int index, final Object value) {
+        if (value == ABSENT) {
+            return null;
+        }
+        if (value instanceof Unboxed) {
+            long bits = primitives[index];
+            switch (((Unboxed) value).type) {
+                case INTEGER:
+                    return (int) bits;
+                case LONG:
+                    return bits;
+                case FLOAT:
+                    return (float) Double.longBitsToDouble(bits);
+                case DOUBLE:
+                    return Double.longBitsToDouble(bits);
+                default:
+                    return bits != 0;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Set a value by column index. The cell becomes present if it was
+     * removed before.
+     *
+     * @param index The column index.
+     * @param value The new value.
+     * @return The previous value.
+     */
+    public Object set(final int index, final Object value) {
+        Object previous = box(index, cell(index));
+        if (values[index] == ABSENT) {
+            absent--;
+        }
+        values[index] = value;
+        return previous;
+    }
+
+    /**
+     * Store a raw value into an unboxed cell.
+     *
+     * @param index The column index.
+     * @param type  The type of the value.
+     * @param bits  The raw bits of the value.
+     */
+    private void setPrimitive(final int index, final Type type,
+                              final long bits) {
+        if (primitives == null) {
+            primitives = new long[values.length];
+        }
+        if (values[index] == ABSENT) {
+            absent--;
+        }
+        values[index] = UNBOXED[type.ordinal()];
+        primitives[index] = bits;
+    }
+
+    /**
+     * Set an int value, without boxing.
+     *
+     * @param index The column index.
+     * @param value The value.
+     */
+    public void setInt(final int index, final int value) {
+        setPrimitive(index, Type.INTEGER, value);
+    }
+
+    /**
+     * Set a long value, without boxing.
+     *
+     * @param index The column index.
+     * @param value The value.
+     */
+    public void setLong(final int index, final long value) {
+        setPrimitive(index, Type.LONG, value);
+    }
+
+    /**
+     * Set a float value, without boxing.
+     *
+     * @param index The column index.
+     * @param value The value.
+     */
+    public void setFloat(final int index, final float value) {
+        setPrimitive(index, Type.FLOAT, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Set a double value, without boxing.
+     *
+     * @param index The column index.
+     * @param value The value.
+     */
+    public void setDouble(final int index, final double value) {
+        setPrimitive(index, Type.DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Set a boolean value, without boxing.
+     *
+     * @param index The column index.
+     * @param value The value.
+     */
+    public void setBoolean(final int index, final boolean value) {
+        long bits = 0;
+        if (value) {
+            bits = 1;
+        }
+        setPrimitive(index, Type.BOOLEAN, bits);
+    }
+
+    /**
+     * Whether the cell at the given index is null or absent.
+     *
+     * @param index The column index.
+     * @return True if there is no value in this cell.
+     */
+    public boolean isNull(final int index) {
+        Object value = cell(index);
+        return value == null || value == ABSENT;
+    }
+
+    /**
+     * Return the type of the value in a cell. Unboxed cells report the type
+     * they were written with, other cells are classified by
+     * {@link Type#getTypeForValue(Object)}.
+     *
+     * @param index The column index.
+     * @return The type of the cell.
+     */
+    public Type getType(final int index) {
+        Object value = cell(index);
+        if (value instanceof Unboxed) {
+            return ((Unboxed) value).type;
+        }
+        return Type.getTypeForValue(box(index, value));
+    }
+
+    /**
+     * Read a cell as a long. Unboxed cells are read without allocation,
+     * numbers are narrowed, strings are parsed and booleans map to 1 or 0.
+     * Null cells read as 0; use {@link #isNull(int)} to tell them apart.
+     *
+     * @param index The column index.
+     * @return The value.
+     */
+    public long getLong(final int index) {
+        Object value = cell(index);
+        if (value instanceof Unboxed) {
+            long bits = primitives[index];
+            switch (((Unboxed) value).type) {
+                case FLOAT:
+                case DOUBLE:
+                    return (long) Double.longBitsToDouble(bits);
+                default:
+                    return bits;
+            }
+        }
+        return toNumber(value).longValue();
+    }
+
+    /**
+     * Read a cell as an int. See {@link #getLong(int)} for conversions.
+     *
+     * @param index The column index.
+     * @return The value.
+     */
+    public int getInt(final int index) {
+        return (int) getLong(index);
+    }
+
+    /**
+     * Read a cell as a double. Unboxed cells are read without allocation,
+     * numbers are widened, strings are parsed and booleans map to 1 or 0.
+     * Null cells read as 0; use {@link #isNull(int)} to tell them apart.
+     *
+     * @param index The column index.
+     * @return The value.
+     */
+    public double getDouble(final int index) {
+        Object value = cell(index);
+        if (value instanceof Unboxed) {
+            long bits = primitives[index];
+            switch (((Unboxed) value).type) {
+                case FLOAT:
+                case DOUBLE:
+                    return Double.longBitsToDouble(bits);
+                default:
+                    return bits;
+            }
+        }
+        return toNumber(value).doubleValue();
+    }
+
+    /**
+     * Read a cell as a boolean. Numbers are true when non-zero, strings are
+     * parsed with {@link Boolean#parseBoolean(String)}, and null cells read
+     * as false.
+     *
+     * @param index The column index.
+     * @return The value.
+     */
+    public boolean getBoolean(final int index) {
+        Object value = cell(index);
+        if (value instanceof Unboxed) {
+            return getDouble(index) != 0;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() != 0;
+        }
+        if (value instanceof String) {
+            return Boolean.parseBoolean((String) value);
+        }
+        return false;
+    }
+
+    /**
+     * Read a cell as a string.
+     *
+     * @param index The column index.
+     * @return The string form of the value, or null for null cells.
+     */
+    public String getString(final int index) {
+        Object value = get(index);
+        if (value == null) {
+            return null;
+        }
+        return value.toString();
+    }
+
+    /**
+     * Convert a boxed cell into a number.
+     *
+     * @param value The stored cell.
+     * @return The value as a number.
+     */
+    private static Number toNumber(final Object value) {
+        if (value instanceof Number) {
+            return (Number) value;
+        }
+        if (value instanceof Boolean) {
+            if ((Boolean) value) {
+                return 1;
+            }
+            return 0;
+        }
+        if (value instanceof String) {
+            String text = ((String) value).trim();
+            if (text.indexOf('.') < 0 && text.indexOf('e') < 0
+                    && text.indexOf('E') < 0) {
+                return Long.parseLong(text);
+            }
+            return Double.parseDouble(text);
+        }
+        if (value == null || value == ABSENT) {
+            return 0;
+        }
+        throw new ClassCastException(String.format(
+                "Cannot read %s as a number.", value.getClass().getName()));
+    }
+
+    /**
+     * Whether the cell at the given index is present in the row.
+     *
+     * @param index The column index.
+     * @return True if the key at this index is part of the map.
+     */
+    public boolean isPresent(final int index) {
+        return values[index] != ABSENT;
+    }
+
+    /**
+     * The number of present cells.
+     *
+     * @return The size of this map.
+     */
+    @Override
+    public int size() {
+        return values.length - absent;
+    }
+
+    /**
+     * Check for a key.
+     *
+     * @param key The key to look for.
+     * @return True if the key is present.
+     */
+    @Override
+    public boolean containsKey(final Object key) {
+        int index = schema.indexOf(key);
+        return index >= 0 && values[index] != ABSENT;
+    }
+
+    /**
+     * Retrieve a value by column name.
+     *
+     * @param key The column name.
+     * @return The value, or null.
+     */
+    @Override
+    public Object get(final Object key) {
+        int index = schema.indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        return get(index);
+    }
+
+    /**
+     * Set a value by column name. Unknown names extend the schema.
+     *
+     * @param key   The column name.
+     * @param value The value.
+     * @return The previous value.
+     */
+    @Override
+    public Object put(final String key, final Object value) {
+        int index = schema.indexOf(key);
+        if (index >= 0) {
+            return set(index, value);
+        }
+        schema = schema.append(key);
+        values = Arrays.copyOf(values, values.length + 1);
+        values[values.length - 1] = value;
+        if (primitives != null) {
+            primitives = Arrays.copyOf(primitives, values.length);
+        }
+        return null;
+    }
+
+    /**
+     * Remove a value by column name.
+     *
+     * @param key The column name.
+     * @return The previous value.
+     */
+    @Override
+    public Object remove(final Object key) {
+        int index = schema.indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        return clear(index);
+    }
+
+    /**
+     * Mark every cell absent.
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(values, ABSENT);
+        absent = values.length;
+    }
+
+    /**
+     * Mark a single cell as absent.
+     *
+     * @param index The column index.
+     * @return The previous value.
+     */
+    private Object clear(final int index) {
+        if (values[index] == ABSENT) {
+            return null;
+        }
+        Object previous = box(index, cell(index));
+        values[index] = ABSENT;
+        absent++;
+        return previous;
+    }
+
+    /**
+     * Return a view of the present cells, in schema order.
+     *
+     * @return The entry set.
+     */
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        if (entries == null) {
+            entries = new EntrySet();
+        }
+        return entries;
+    }
+
+    /**
+     * Entry set view over the row's cells.
+     */
+    private final class EntrySet extends AbstractSet<Map.Entry<String, Object>> {
+
+        /**
+         * The number of present cells.
+         *
+         * @return The size.
+         */
+        @Override
+        public int size() {
+            return Row.this.size();
+        }
+
+        /**
+         * Iterate over the present cells.
+         *
+         * @return An iterator.
+         */
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+            return new CellIterator();
+        }
+    }
+
+    /**
+     * Iterates over the present cells of the row.
+     */
+    private final class CellIterator
+            implements Iterator<Map.Entry<String, Object>> {
+
+        /**
+         * The index of the next present cell.
+         */
+        private int next = advance(0);
+
+        /**
+         * The index of the last returned cell.
+         */
+        private int last = -1;
+
+        /**
+         * Find the first present cell at or after an index.
+         *
+         * @param from The starting index.
+         * @return The index of the next present cell.
+         */
+        private int advance(final int from) {
+            int i = from;
+            while (i < values.length && values[i] == ABSENT) {
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Whether more cells remain.
+         *
+         * @return True if there is another cell.
+         */
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        /**
+         * Return the next cell.
+         *
+         * @return The next entry.
+         */
+        @Override
+        public Map.Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            return new Cell(last);
+        }
+
+        /**
+         * Remove the last returned cell.
+         */
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            clear(last);
+            last = -1;
+        }
+    }
+
+    /**
+     * A write-through entry for a single cell.
+     */
+    private final class Cell implements Map.Entry<String, Object> {
+
+        /**
+         * The column index.
+         */
+        private final int index;
+
+        /**
+         * Create a new cell entry.
+         *
+         * @param cellIndex The column index.
+         */
+        Cell(final int cellIndex) {
+            this.index = cellIndex;
+        }
+
+        /**
+         * The column name.
+         *
+         * @return The key.
+         */
+        @Override
+        public String getKey() {
+            return schema.getName(index);
+        }
+
+        /**
+         * The cell value.
+         *
+         * @return The value.
+         */
+        @Override
+        public Object getValue() {
+            return get(index);
+        }
+
+        /**
+         * Write a new value into the row.
+         *
+         * @param value The new value.
+         * @return The previous value.
+         */
+        @Override
+        public Object setValue(final Object value) {
+            return set(index, value);
+        }
+
+        /**
+         * Entry equality, as defined by Map.Entry.
+         *
+         * @param o The other object.
+         * @return True if key and value are equal.
+         */
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return Objects.equals(getKey(), e.getKey())
+                    && Objects.equals(getValue(), e.getValue());
+        }
+
+        /**
+         * Entry hash code, as defined by Map.Entry.
+         *
+         * @return The hash code.
+         */
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        /**
+         * Readable form.
+         *
+         * @return key=value.
+         */
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    /**
+     * Marks a cell whose value is stored in the primitive array.
+     */
+    private static final class Unboxed {
+
+        /**
+         * The type of the unboxed value.
+         */
+        private final Type type;
+
+        /**
+         * Create a new marker.
+         *
+         * @param cellType The type of the unboxed value.
+         */
+        Unboxed(final Type cellType) {
+            this.type = cellType;
+        }
+    }
+}
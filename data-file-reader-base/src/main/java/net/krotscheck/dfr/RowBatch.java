@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of decoded rows, stored column by column. Numeric and boolean
+ * columns are held in primitive arrays, so consumers that work on whole
+ * columns never box a value. Batches are produced by
+ * {@link IDataDecoder#nextBatch(int)}.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowBatch {
+
+    /**
+     * The union schema of all rows in the batch.
+     */
+    private final RowSchema schema;
+
+    /**
+     * The columns, in schema order.
+     */
+    private final List<ColumnVector> columns;
+
+    /**
+     * The number of rows.
+     */
+    private final int size;
+
+    /**
+     * Create a new batch.
+     *
+     * @param batchSchema  The schema.
+     * @param batchColumns The columns.
+     * @param batchSize    The number of rows.
+     */
+    private RowBatch(final RowSchema batchSchema,
+                     final List<ColumnVector> batchColumns,
+                     final int batchSize) {
+        this.schema = batchSchema;
+        this.columns = batchColumns;
+        this.size = batchSize;
+    }
+
+    /**
+     * The number of rows in this batch.
+     *
+     * @return The row count. Zero once the decoder is exhausted.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The schema shared by all columns of this batch.
+     *
+     * @return The schema.
+     */
+    public RowSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Retrieve a column by index.
+     *
+     * @param index The column index.
+     * @return The column.
+     */
+    public ColumnVector getColumn(final int index) {
+        return columns.get(index);
+    }
+
+    /**
+     * Retrieve a column by name.
+     *
+     * @param name The column name.
+     * @return The column, or null if no row in the batch had this column.
+     */
+    public ColumnVector getColumn(final String name) {
+        int index = schema.indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        return columns.get(index);
+    }
+
+    /**
+     * Materialize a single row of this batch.
+     *
+     * @param index The row index.
+     * @return A new row.
+     */
+    public Row getRow(final int index) {
+        Row row = new Row(schema);
+        for (int i = 0; i < columns.size(); i++) {
+            ColumnVector column = columns.get(i);
+            if (column.isNull(index)) {
+                continue;
+            }
+            switch (column.getType()) {
+                case INTEGER:
+                    row.setInt(i, (int) column.getLong(index));
+                    break;
+                case LONG:
+                    row.setLong(i, column.getLong(index));
+                    break;
+                case BOOLEAN:
+                    row.setBoolean(i, column.getBoolean(index));
+                    break;
+                case FLOAT:
+                    row.setFloat(i, (float) column.getDouble(index));
+                    break;
+                case DOUBLE:
+                    row.setDouble(i, column.getDouble(index));
+                    break;
+                default:
+                    row.set(i, column.get(index));
+                    break;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Assembles a batch, one row at a time. Rows with differing layouts are
+     * merged into a union schema; cells a row does not have are null.
+     */
+    public static final class Builder {
+
+        /**
+         * The expected number of rows.
+         */
+        private final int capacity;
+
+        /**
+         * The union schema so far.
+         */
+        private RowSchema schema = RowSchema.EMPTY;
+
+        /**
+         * The columns so far.
+         */
+        private final List<ColumnVector> columns = new ArrayList<>();
+
+        /**
+         * The number of rows so far.
+         */
+        private int size = 0;
+
+        /**
+         * Create a new batch builder.
+         *
+         * @param expectedRows The expected number of rows.
+         */
+        public Builder(final int expectedRows) {
+            this.capacity = expectedRows;
+        }
+
+        /**
+         * The number of rows added so far.
+         *
+         * @return The row count.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Add a row.
+         *
+         * @param row The row to add.
+         */
+        public void add(final Map<String, Object> row) {
+            if (row instanceof Row) {
+                ((Row) row).appendTo(this);
+                return;
+            }
+            for (Map.Entry<String, Object> entry : row.entrySet()) {
+                column(entry.getKey()).append(entry.getValue());
+            }
+            finishRow();
+        }
+
+        /**
+         * Add a row from a schema and an array of aligned values. This is the
+         * allocation free path used by decoders. The value array may be longer
+         * than the schema, and may contain {@link Row}'s internal markers.
+         *
+         * @param rowSchema  The schema of the values.
+         * @param values     The values.
+         * @param primitives The raw bits of unboxed values, or null.
+         */
+        void append(final RowSchema rowSchema, final Object[] values,
+                    final long[] primitives) {
+            adopt(rowSchema);
+            boolean aligned = rowSchema == schema;
+            for (int i = 0; i < rowSchema.size(); i++) {
+                ColumnVector column;
+                if (aligned) {
+                    column = columns.get(i);
+                } else {
+                    column = column(rowSchema.getName(i));
+                }
+                Row.appendCell(column, values[i], primitives, i);
+            }
+            finishRow();
+        }
+
+        /**
+         * Add a row from a schema and an array of boxed values. Values beyond
+         * the end of the array are treated as null.
+         *
+         * @param rowSchema The schema of the values.
+         * @param values    The values, aligned with the schema. Lazy cells
+         *                  are decoded.
+         */
+        public void append(final RowSchema rowSchema, final Object[] values) {
+            adopt(rowSchema);
+            boolean aligned = rowSchema == schema;
+            int width = Math.min(rowSchema.size(), values.length);
+            for (int i = 0; i < width; i++) {
+                ColumnVector column;
+                if (aligned) {
+                    column = columns.get(i);
+                } else {
+                    column = column(rowSchema.getName(i));
+                }
+                Object value = values[i];
+                if (value instanceof ILazyCell) {
+                    value = ((ILazyCell) value).decode();
+                }
+                column.append(value);
+            }
+            finishRow();
+        }
+
+        /**
+         * Build the batch.
+         *
+         * @return The batch.
+         */
+        public RowBatch build() {
+            return new RowBatch(schema, columns, size);
+        }
+
+        /**
+         * Take over the schema of the first row, so that following rows of
+         * the same schema can skip the name lookup.
+         *
+         * @param rowSchema The schema of the row being added.
+         */
+        private void adopt(final RowSchema rowSchema) {
+            if (size > 0 || !columns.isEmpty()) {
+                return;
+            }
+            schema = rowSchema;
+            for (int i = 0; i < rowSchema.size(); i++) {
+                columns.add(new ColumnVector(capacity));
+            }
+        }
+
+        /**
+         * Look up a column by name, adding it if necessary.
+         *
+         * @param name The column name.
+         * @return The column.
+         */
+        private ColumnVector column(final String name) {
+            int index = schema.indexOf(name);
+            if (index >= 0) {
+                return columns.get(index);
+            }
+            schema = schema.append(name);
+            ColumnVector column = new ColumnVector(capacity);
+            for (int i = 0; i < size; i++) {
+                column.appendNull();
+            }
+            columns.add(column);
+            return column;
+        }
+
+        /**
+         * Complete the current row, padding columns it did not touch.
+         */
+        private void finishRow() {
+            size++;
+            for (ColumnVector column : columns) {
+                if (column.size() < size) {
+                    column.appendNull();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Assembles rows from a sequence of name/value pairs, for decoders whose
+ * formats do not declare a schema up front. The builder remembers the schema
+ * of the last row it built and reuses it as long as the following rows have
+ * the same keys in the same order, which is the common case for JSON and
+ * BSON files. A few other recent schemas are kept as well, so files that
+ * alternate between a handful of layouts do not create a schema per row.
+ * Numeric and boolean values may be added as primitives, in
+ * which case they are carried into the row unboxed. A builder is not thread
+ * safe; use one per iterator.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowBuilder {
+
+    /**
+     * The initial capacity of the name and value buffers.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The number of recent schemas kept for reuse.
+     */
+    private static final int RECENT_SCHEMAS = 8;
+
+    /**
+     * The schema of the last row built.
+     */
+    private RowSchema schema = RowSchema.EMPTY;
+
+    /**
+     * Recently created schemas, replaced in rotation.
+     */
+    private final RowSchema[] recent = new RowSchema[RECENT_SCHEMAS];
+
+    /**
+     * The slot of the next schema to add to the recent schemas.
+     */
+    private int nextRecent = 0;
+
+    /**
+     * The buffered column names.
+     */
+    private String[] names = new String[INITIAL_CAPACITY];
+
+    /**
+     * The buffered values.
+     */
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    /**
+     * The raw bits of buffered primitive values, created on first use.
+     */
+    private long[] primitives;
+
+    /**
+     * Whether any primitive was buffered for the current row.
+     */
+    private boolean hasPrimitives = false;
+
+    /**
+     * The number of buffered pairs.
+     */
+    private int count = 0;
+
+    /**
+     * Buffer a single name/value pair for the next row.
+     *
+     * @param name  The column name.
+     * @param value The value.
+     */
+    public void add(final String name, final Object value) {
+        if (count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        names[count] = name;
+        values[count] = value;
+        count++;
+    }
+
+    /**
+     * Buffer an unboxed value for the next row.
+     *
+     * @param name The column name.
+     * @param type The type of the value.
+     * @param bits The raw bits of the value.
+     */
+    private void addPrimitive(final String name, final Type type,
+                              final long bits) {
+        add(name, Row.marker(type));
+        if (primitives == null) {
+            primitives = new long[names.length];
+        } else if (primitives.length < names.length) {
+            primitives = Arrays.copyOf(primitives, names.length);
+        }
+        primitives[count - 1] = bits;
+        hasPrimitives = true;
+    }
+
+    /**
+     * Buffer an int value without boxing it.
+     *
+     * @param name  The column name.
+     * @param value The value.
+     */
+    public void addInt(final String name, final int value) {
+        addPrimitive(name, Type.INTEGER, value);
+    }
+
+    /**
+     * Buffer a long value without boxing it.
+     *
+     * @param name  The column name.
+     * @param value The value.
+     */
+    public void addLong(final String name, final long value) {
+        addPrimitive(name, Type.LONG, value);
+    }
+
+    /**
+     * Buffer a double value without boxing it.
+     *
+     * @param name  The column name.
+     * @param value The value.
+     */
+    public void addDouble(final String name, final double value) {
+        addPrimitive(name, Type.DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Buffer a boolean value without boxing it.
+     *
+     * @param name  The column name.
+     * @param value The value.
+     */
+    public void addBoolean(final String name, final boolean value) {
+        long bits = 0;
+        if (value) {
+            bits = 1;
+        }
+        addPrimitive(name, Type.BOOLEAN, bits);
+    }
+
+    /**
+     * Build a row from all pairs buffered since the last call, and reset the
+     * buffer. If a name was added more than once, the last value wins and the
+     * column keeps its first position, just like a LinkedHashMap.
+     *
+     * @return The new row.
+     */
+    public Row build() {
+        long[] rowPrimitives = null;
+        if (hasPrimitives) {
+            rowPrimitives = Arrays.copyOf(primitives, count);
+        }
+
+        Object[] rowValues;
+        if (reuseSchema()) {
+            rowValues = Arrays.copyOf(values, count);
+        } else {
+            rowValues = resolveSchema(rowPrimitives);
+        }
+        reset();
+        return new Row(schema, rowValues, rowPrimitives);
+    }
+
+    /**
+     * Append all pairs buffered since the last call to a batch instead of
+     * building a row, and reset the buffer. While the layout matches the
+     * previous row, this does not allocate.
+     *
+     * @param batch The batch builder.
+     */
+    public void appendTo(final RowBatch.Builder batch) {
+        long[] rowPrimitives = null;
+        if (hasPrimitives) {
+            rowPrimitives = primitives;
+        }
+
+        if (reuseSchema()) {
+            batch.append(schema, values, rowPrimitives);
+        } else {
+            if (rowPrimitives != null) {
+                rowPrimitives = Arrays.copyOf(rowPrimitives, count);
+            }
+            Object[] rowValues = resolveSchema(rowPrimitives);
+            batch.append(schema, rowValues, rowPrimitives);
+        }
+        reset();
+    }
+
+    /**
+     * Discard all pairs buffered since the last row, for example because a
+     * decoder rejected the row before reading all of it.
+     */
+    public void reset() {
+        Arrays.fill(names, 0, count, null);
+        Arrays.fill(values, 0, count, null);
+        count = 0;
+        hasPrimitives = false;
+    }
+
+    /**
+     * Build a row from the contents of a map.
+     *
+     * @param map The map to copy.
+     * @return The new row.
+     */
+    public Row build(final Map<String, Object> map) {
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            add(entry.getKey(), entry.getValue());
+        }
+        return build();
+    }
+
+    /**
+     * The schema of the most recently built row.
+     *
+     * @return The current schema.
+     */
+    public RowSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * Look for the schema of the buffered names among the last and the
+     * recent schemas, and make it the current schema.
+     *
+     * @return True if a schema was found.
+     */
+    private boolean reuseSchema() {
+        if (schema.matches(names, count)) {
+            return true;
+        }
+        for (RowSchema candidate : recent) {
+            if (candidate == null) {
+                return false;
+            }
+            if (candidate.matches(names, count)) {
+                schema = candidate;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create a new schema for the buffered names, collapsing duplicates,
+     * and remember it among the recent schemas.
+     *
+     * @param rowPrimitives The raw bits of the row, compacted in place along
+     *                      with the values. May be null.
+     * @return The values for the new schema.
+     */
+    private Object[] resolveSchema(final long[] rowPrimitives) {
+        Map<String, Integer> positions = new HashMap<>(count * 2);
+        String[] uniqueNames = new String[count];
+        Object[] uniqueValues = new Object[count];
+        int unique = 0;
+
+        for (int i = 0; i < count; i++) {
+            Integer position = positions.get(names[i]);
+            if (position == null) {
+                positions.put(names[i], unique);
+                uniqueNames[unique] = names[i];
+                uniqueValues[unique] = values[i];
+                if (rowPrimitives != null) {
+                    rowPrimitives[unique] = rowPrimitives[i];
+                }
+                unique++;
+            } else {
+                uniqueValues[position] = values[i];
+                if (rowPrimitives != null) {
+                    rowPrimitives[position] = rowPrimitives[i];
+                }
+            }
+        }
+
+        schema = new RowSchema(Arrays.copyOf(uniqueNames, unique));
+        if (unique == count) {
+            recent[nextRecent] = schema;
+            nextRecent = (nextRecent + 1) % RECENT_SCHEMAS;
+        }
+        return Arrays.copyOf(uniqueValues, unique);
+    }
+}
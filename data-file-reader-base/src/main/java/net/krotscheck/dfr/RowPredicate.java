@@ -0,0 +1,740 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A filter that selects rows by the value of a single column. Unlike other
+ * filters, a predicate does not transform a row; it either keeps it or drops
+ * it. Decoders skip rejected rows entirely, and predicates at the front of a
+ * decoder's filter chain are handed to the decoder itself, which may then
+ * test the raw parsed value and reject a row before the rest of it is read.
+ * <p>
+ * Numbers are compared numerically, strings lexically, and booleans with
+ * false before true. A string cell is compared numerically when the operand
+ * is a number, and a numeric cell matches a string operand that holds the
+ * same number. Values that cannot be compared with the operand never match,
+ * except for {@link #notEqualTo(String, Object)}. Null or missing cells only
+ * match {@link #isNull(String)}.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowPredicate implements IDataFilter {
+
+    /**
+     * The result of comparing two values that cannot be ordered.
+     */
+    private static final int INCOMPARABLE = Integer.MIN_VALUE;
+
+    /**
+     * The comparison operators.
+     */
+    private enum Operator {
+
+        /**
+         * The cell equals the operand.
+         */
+        EQUAL_TO,
+
+        /**
+         * The cell does not equal the operand.
+         */
+        NOT_EQUAL_TO,
+
+        /**
+         * The cell is less than the operand.
+         */
+        LESS_THAN,
+
+        /**
+         * The cell is less than or equal to the operand.
+         */
+        LESS_THAN_OR_EQUAL_TO,
+
+        /**
+         * The cell is greater than the operand.
+         */
+        GREATER_THAN,
+
+        /**
+         * The cell is greater than or equal to the operand.
+         */
+        GREATER_THAN_OR_EQUAL_TO,
+
+        /**
+         * The cell lies within the two operands, inclusive.
+         */
+        BETWEEN,
+
+        /**
+         * The cell equals one of the operands.
+         */
+        IN,
+
+        /**
+         * The cell is null or missing.
+         */
+        IS_NULL,
+
+        /**
+         * The cell is present and not null.
+         */
+        IS_NOT_NULL
+    }
+
+    /**
+     * The name of the tested column.
+     */
+    private final String column;
+
+    /**
+     * The operator.
+     */
+    private final Operator operator;
+
+    /**
+     * The operands, pre-parsed.
+     */
+    private final Operand[] operands;
+
+    /**
+     * For IN predicates whose operands are all strings, the operands as a
+     * set, so string cells are tested with a single lookup.
+     */
+    private final Set<String> textOperands;
+
+    /**
+     * Create a new predicate.
+     *
+     * @param columnName The name of the tested column.
+     * @param op         The operator.
+     * @param values     The operands.
+     */
+    private RowPredicate(final String columnName, final Operator op,
+                         final Object... values) {
+        if (columnName == null) {
+            throw new IllegalArgumentException("Column name is null");
+        }
+        this.column = columnName;
+        this.operator = op;
+        this.operands = new Operand[values.length];
+
+        boolean allText = op == Operator.IN;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException(
+                        "Predicate operands may not be null, use isNull().");
+            }
+            operands[i] = new Operand(values[i]);
+            allText = allText && operands[i].string;
+        }
+
+        if (allText) {
+            textOperands = new HashSet<>(values.length * 2);
+            for (Operand operand : operands) {
+                textOperands.add(operand.text);
+            }
+        } else {
+            textOperands = null;
+        }
+    }
+
+    /**
+     * Select rows where a column equals a value.
+     *
+     * @param column The column name.
+     * @param value  The value.
+     * @return A new predicate.
+     */
+    public static RowPredicate equalTo(final String column,
+                                       final Object value) {
+        return new RowPredicate(column, Operator.EQUAL_TO, value);
+    }
+
+    /**
+     * Select rows where a column does not equal a value. Rows where the
+     * column is null are not selected.
+     *
+     * @param column The column name.
+     * @param value  The value.
+     * @return A new predicate.
+     */
+    public static RowPredicate notEqualTo(final String column,
+                                          final Object value) {
+        return new RowPredicate(column, Operator.NOT_EQUAL_TO, value);
+    }
+
+    /**
+     * Select rows where a column is less than a value.
+     *
+     * @param column The column name.
+     * @param value  The value.
+     * @return A new predicate.
+     */
+    public static RowPredicate lessThan(final String column,
+                                        final Object value) {
+        return new RowPredicate(column, Operator.LESS_THAN, value);
+    }
+
+    /**
+     * Select rows where a column is less than or equal to a value.
+     *
+     * @param column The column name.
+     * @param value  The value.
+     * @return A new predicate.
+     */
+    public static RowPredicate lessThanOrEqualTo(final String column,
+                                                 final Object value) {
+        return new RowPredicate(column, Operator.LESS_THAN_OR_EQUAL_TO,
+                value);
+    }
+
+    /**
+     * Select rows where a column is greater than a value.
+     *
+     * @param column The column name.
+     * @param value  The value.
+     * @return A new predicate.
+     */
+    public static RowPredicate greaterThan(final String column,
+                                           final Object value) {
+        return new RowPredicate(column, Operator.GREATER_THAN, value);
+    }
+
+    /**
+     * Select rows where a column is greater than or equal to a value.
+     *
+     * @param column The column name.
+     * @param value  The value.
+     * @return A new predicate.
+     */
+    public static RowPredicate greaterThanOrEqualTo(final String column,
+                                                    final Object value) {
+        return new RowPredicate(column, Operator.GREATER_THAN_OR_EQUAL_TO,
+                value);
+    }
+
+    /**
+     * Select rows where a column lies within a range, bounds included.
+     *
+     * @param column The column name.
+     * @param low    The lower bound.
+     * @param high   The upper bound.
+     * @return A new predicate.
+     */
+    public static RowPredicate between(final String column, final Object low,
+                                       final Object high) {
+        return new RowPredicate(column, Operator.BETWEEN, low, high);
+    }
+
+    /**
+     * Select rows where a column equals any of a set of values.
+     *
+     * @param column The column name.
+     * @param values The values.
+     * @return A new predicate.
+     */
+    public static RowPredicate in(final String column,
+                                  final Collection<?> values) {
+        return new RowPredicate(column, Operator.IN, values.toArray());
+    }
+
+    /**
+     * Select rows where a column is null or missing.
+     *
+     * @param column The column name.
+     * @return A new predicate.
+     */
+    public static RowPredicate isNull(final String column) {
+        return new RowPredicate(column, Operator.IS_NULL);
+    }
+
+    /**
+     * Select rows where a column is present and not null.
+     *
+     * @param column The column name.
+     * @return A new predicate.
+     */
+    public static RowPredicate isNotNull(final String column) {
+        return new RowPredicate(column, Operator.IS_NOT_NULL);
+    }
+
+    /**
+     * The name of the column this predicate tests.
+     *
+     * @return The column name.
+     */
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     * Apply the predicate.
+     *
+     * @param row The data row to apply this filter to.
+     * @return The row if it is selected, otherwise null.
+     */
+    @Override
+    public Map<String, Object> apply(final Map<String, Object> row) {
+        if (matches(row)) {
+            return row;
+        }
+        return null;
+    }
+
+    /**
+     * Test a row. Cells of a {@link Row} are read without boxing.
+     *
+     * @param row The row.
+     * @return True if the row is selected.
+     */
+    public boolean matches(final Map<String, Object> row) {
+        if (row instanceof Row) {
+            return matches((Row) row);
+        }
+        if (row == null) {
+            return test((Object) null);
+        }
+        return test(row.get(column));
+    }
+
+    /**
+     * Test a row by reading its cell in its stored type.
+     *
+     * @param row The row.
+     * @return True if the row is selected.
+     */
+    private boolean matches(final Row row) {
+        int index = row.getSchema().indexOf(column);
+        if (index < 0 || row.isNull(index)) {
+            return test((Object) null);
+        }
+        switch (row.getType(index)) {
+            case INTEGER:
+            case LONG:
+                return test(row.getLong(index));
+            case FLOAT:
+            case DOUBLE:
+                return test(row.getDouble(index));
+            case BOOLEAN:
+                return test(row.getBoolean(index));
+            default:
+                return test(row.get(index));
+        }
+    }
+
+    /**
+     * Test a cell value.
+     *
+     * @param value The value, null for null or missing cells.
+     * @return True if the value is selected.
+     */
+    public boolean test(final Object value) {
+        if (value == null) {
+            return operator == Operator.IS_NULL;
+        }
+        if (value instanceof String) {
+            return test((String) value);
+        }
+        if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            return test(((Number) value).longValue());
+        }
+        if (value instanceof Number) {
+            return test(((Number) value).doubleValue());
+        }
+        if (value instanceof Boolean) {
+            return test(((Boolean) value).booleanValue());
+        }
+        return test(value.toString());
+    }
+
+    /**
+     * Test an integral cell value.
+     *
+     * @param value The value.
+     * @return True if the value is selected.
+     */
+    public boolean test(final long value) {
+        if (operands.length == 0) {
+            return operator == Operator.IS_NOT_NULL;
+        }
+        if (operator == Operator.IN) {
+            for (Operand operand : operands) {
+                if (compare(value, operand) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int second = INCOMPARABLE;
+        if (operands.length > 1) {
+            second = compare(value, operands[1]);
+        }
+        return accept(compare(value, operands[0]), second);
+    }
+
+    /**
+     * Test a floating point cell value.
+     *
+     * @param value The value.
+     * @return True if the value is selected.
+     */
+    public boolean test(final double value) {
+        if (operands.length == 0) {
+            return operator == Operator.IS_NOT_NULL;
+        }
+        if (operator == Operator.IN) {
+            for (Operand operand : operands) {
+                if (compare(value, operand) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int second = INCOMPARABLE;
+        if (operands.length > 1) {
+            second = compare(value, operands[1]);
+        }
+        return accept(compare(value, operands[0]), second);
+    }
+
+    /**
+     * Test a boolean cell value.
+     *
+     * @param value The value.
+     * @return True if the value is selected.
+     */
+    public boolean test(final boolean value) {
+        if (operands.length == 0) {
+            return operator == Operator.IS_NOT_NULL;
+        }
+        if (operator == Operator.IN) {
+            for (Operand operand : operands) {
+                if (compare(value, operand) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int second = INCOMPARABLE;
+        if (operands.length > 1) {
+            second = compare(value, operands[1]);
+        }
+        return accept(compare(value, operands[0]), second);
+    }
+
+    /**
+     * Test a string cell value.
+     *
+     * @param value The value.
+     * @return True if the value is selected.
+     */
+    public boolean test(final String value) {
+        if (value == null) {
+            return operator == Operator.IS_NULL;
+        }
+        if (operands.length == 0) {
+            return operator == Operator.IS_NOT_NULL;
+        }
+        if (operator == Operator.IN) {
+            if (textOperands != null) {
+                return textOperands.contains(value);
+            }
+            for (Operand operand : operands) {
+                if (compare(value, operand) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        int second = INCOMPARABLE;
+        if (operands.length > 1) {
+            second = compare(value, operands[1]);
+        }
+        return accept(compare(value, operands[0]), second);
+    }
+
+    /**
+     * Decide on a value, given how it compares to the operands.
+     *
+     * @param first  The comparison with the first operand.
+     * @param second The comparison with the second operand, if any.
+     * @return True if the value is selected.
+     */
+    private boolean accept(final int first, final int second) {
+        switch (operator) {
+            case EQUAL_TO:
+                return first == 0;
+            case NOT_EQUAL_TO:
+                return first != 0;
+            case LESS_THAN:
+                return first != INCOMPARABLE && first < 0;
+            case LESS_THAN_OR_EQUAL_TO:
+                return first != INCOMPARABLE && first <= 0;
+            case GREATER_THAN:
+                return first > 0;
+            case GREATER_THAN_OR_EQUAL_TO:
+                return first >= 0;
+            case BETWEEN:
+                return first >= 0 && second != INCOMPARABLE && second <= 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Compare an integral value to an operand.
+     *
+     * @param value   The value.
+     * @param operand The operand.
+     * @return The sign of the comparison, or INCOMPARABLE.
+     */
+    private static int compare(final long value, final Operand operand) {
+        if (!operand.numeric) {
+            return INCOMPARABLE;
+        }
+        if (operand.integral) {
+            return Long.compare(value, operand.longValue);
+        }
+        return compare((double) value, operand.doubleValue);
+    }
+
+    /**
+     * Compare a floating point value to an operand.
+     *
+     * @param value   The value.
+     * @param operand The operand.
+     * @return The sign of the comparison, or INCOMPARABLE.
+     */
+    private static int compare(final double value, final Operand operand) {
+        if (!operand.numeric) {
+            return INCOMPARABLE;
+        }
+        return compare(value, operand.doubleValue);
+    }
+
+    /**
+     * Compare two doubles. Unlike {@link Double#compare(double, double)},
+     * negative and positive zero are equal, and NaN is incomparable.
+     *
+     * @param value The value.
+     * @param other The value to compare to.
+     * @return The sign of the comparison, or INCOMPARABLE.
+     */
+    private static int compare(final double value, final double other) {
+        if (value < other) {
+            return -1;
+        }
+        if (value > other) {
+            return 1;
+        }
+        if (value == other) {
+            return 0;
+        }
+        return INCOMPARABLE;
+    }
+
+    /**
+     * Compare a boolean value to an operand.
+     *
+     * @param value   The value.
+     * @param operand The operand.
+     * @return The sign of the comparison, or INCOMPARABLE.
+     */
+    private static int compare(final boolean value, final Operand operand) {
+        if (operand.bool == null) {
+            return INCOMPARABLE;
+        }
+        return Boolean.compare(value, operand.bool);
+    }
+
+    /**
+     * Compare a string value to an operand. Strings are compared to string
+     * operands as text, and parsed when compared to other operands.
+     *
+     * @param value   The value.
+     * @param operand The operand.
+     * @return The sign of the comparison, or INCOMPARABLE.
+     */
+    private static int compare(final String value, final Operand operand) {
+        if (operand.string) {
+            return Integer.signum(value.compareTo(operand.text));
+        }
+        if (operand.numeric) {
+            if (Operand.isIntegral(value)) {
+                return compare(Long.parseLong(value), operand);
+            }
+            if (Operand.isNumeric(value)) {
+                return compare(Double.parseDouble(value), operand);
+            }
+            return INCOMPARABLE;
+        }
+        if ("true".equalsIgnoreCase(value)) {
+            return compare(true, operand);
+        }
+        if ("false".equalsIgnoreCase(value)) {
+            return compare(false, operand);
+        }
+        return INCOMPARABLE;
+    }
+
+    /**
+     * An operand, parsed once into every form it may be compared in.
+     */
+    private static final class Operand {
+
+        /**
+         * The longest run of digits that always fits into a long.
+         */
+        private static final int SAFE_LONG_DIGITS = 18;
+
+        /**
+         * The operand as text.
+         */
+        private final String text;
+
+        /**
+         * Whether the operand is compared to strings as text.
+         */
+        private final boolean string;
+
+        /**
+         * Whether the operand has a numeric value.
+         */
+        private final boolean numeric;
+
+        /**
+         * Whether the numeric value is integral.
+         */
+        private final boolean integral;
+
+        /**
+         * The integral value.
+         */
+        private final long longValue;
+
+        /**
+         * The floating point value.
+         */
+        private final double doubleValue;
+
+        /**
+         * The boolean value, or null if the operand is not a boolean.
+         */
+        private final Boolean bool;
+
+        /**
+         * Parse an operand.
+         *
+         * @param value The operand value.
+         */
+        Operand(final Object value) {
+            this.text = value.toString();
+            this.string = !(value instanceof Number)
+                    && !(value instanceof Boolean);
+
+            if (value instanceof Long || value instanceof Integer
+                    || value instanceof Short || value instanceof Byte) {
+                this.integral = true;
+                this.longValue = ((Number) value).longValue();
+            } else {
+                this.integral = value instanceof String
+                        && isIntegral((String) value);
+                if (integral) {
+                    this.longValue = Long.parseLong((String) value);
+                } else {
+                    this.longValue = 0;
+                }
+            }
+
+            if (value instanceof Number) {
+                this.numeric = true;
+                this.doubleValue = ((Number) value).doubleValue();
+            } else if (value instanceof String && isNumeric(text)) {
+                this.numeric = true;
+                this.doubleValue = Double.parseDouble(text);
+            } else {
+                this.numeric = false;
+                this.doubleValue = 0;
+            }
+
+            if (value instanceof Boolean) {
+                this.bool = (Boolean) value;
+            } else if ("true".equalsIgnoreCase(text)) {
+                this.bool = Boolean.TRUE;
+            } else if ("false".equalsIgnoreCase(text)) {
+                this.bool = Boolean.FALSE;
+            } else {
+                this.bool = null;
+            }
+        }
+
+        /**
+         * Whether a string is a plain integer that fits into a long.
+         *
+         * @param value The string.
+         * @return True if it can be parsed by {@link Long#parseLong(String)}.
+         */
+        static boolean isIntegral(final String value) {
+            int length = value.length();
+            int start = 0;
+            if (length > 0 && value.charAt(0) == '-') {
+                start = 1;
+            }
+            if (start == length || length - start > SAFE_LONG_DIGITS) {
+                return false;
+            }
+            for (int i = start; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Whether a string is a decimal number.
+         *
+         * @param value The string.
+         * @return True if it can be parsed by
+         * {@link Double#parseDouble(String)}.
+         */
+        static boolean isNumeric(final String value) {
+            if (value.isEmpty()) {
+                return false;
+            }
+            char first = value.charAt(0);
+            if (first != '-' && first != '+' && first != '.'
+                    && (first < '0' || first > '9')) {
+                return false;
+            }
+            try {
+                Double.parseDouble(value);
+                return true;
+            } catch (NumberFormatException nfe) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, ordered list of column names, shared by every row that a
+ * decoder produces from the same layout. It maps each column name to its
+ * position in a row's value array, so that rows themselves only need to carry
+ * their values.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowSchema {
+
+    /**
+     * The empty schema.
+     */
+    public static final RowSchema EMPTY = new RowSchema(new String[0]);
+
+    /**
+     * The column names, in order.
+     */
+    private final String[] names;
+
+    /**
+     * Lookup from column name to index.
+     */
+    private final Map<String, Integer> indices;
+
+    /**
+     * Schemas derived from this one by appending a single column, so that
+     * rows which all grow the same way end up sharing the same schema.
+     */
+    private final Map<String, RowSchema> extensions = new HashMap<>();
+
+    /**
+     * Create a new schema from a list of column names.
+     *
+     * @param columnNames The column names, in order.
+     * @throws IllegalArgumentException Thrown if a name appears twice.
+     */
+    public RowSchema(final List<String> columnNames) {
+        this(columnNames.toArray(new String[columnNames.size()]));
+    }
+
+    /**
+     * Create a new schema from an array of column names. The array is owned
+     * by the schema afterwards.
+     *
+     * @param columnNames The column names, in order.
+     * @throws IllegalArgumentException Thrown if a name appears twice.
+     */
+    public RowSchema(final String[] columnNames) {
+        this.names = columnNames;
+        this.indices = new HashMap<>(columnNames.length * 2);
+        for (int i = 0; i < columnNames.length; i++) {
+            if (indices.put(columnNames[i], i) != null) {
+                throw new IllegalArgumentException(String.format(
+                        "Duplicate column [%s] in schema.", columnNames[i]));
+            }
+        }
+    }
+
+    /**
+     * The number of columns in this schema.
+     *
+     * @return The column count.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Retrieve the name of the column at a given index.
+     *
+     * @param index The column index.
+     * @return The column name.
+     */
+    public String getName(final int index) {
+        return names[index];
+    }
+
+    /**
+     * Retrieve all column names, in order.
+     *
+     * @return An unmodifiable list of column names.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * Resolve a column name to its index.
+     *
+     * @param name The column name.
+     * @return The index, or -1 if the column is not in this schema.
+     */
+    public int indexOf(final Object name) {
+        Integer index = indices.get(name);
+        if (index == null) {
+            return -1;
+        }
+        return index;
+    }
+
+    /**
+     * Whether this schema lists exactly the given column names, in order.
+     *
+     * @param columnNames The names to compare against.
+     * @param count       The number of names to compare.
+     * @return True if the names match this schema.
+     */
+    public boolean matches(final Object[] columnNames, final int count) {
+        if (count != names.length) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (!names[i].equals(columnNames[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return a schema that contains all of this schema's columns, followed
+     * by one more. Derived schemas are cached, so repeated calls with the
+     * same name return the same instance.
+     *
+     * @param name The column to append.
+     * @return The extended schema.
+     */
+    public RowSchema append(final String name) {
+        synchronized (extensions) {
+            RowSchema extended = extensions.get(name);
+            if (extended == null) {
+                String[] extendedNames = Arrays.copyOf(names, names.length + 1);
+                extendedNames[names.length] = name;
+                extended = new RowSchema(extendedNames);
+                extensions.put(name, extended);
+            }
+            return extended;
+        }
+    }
+
+    /**
+     * Two schemas are equal if they list the same names in the same order.
+     *
+     * @param o The other object.
+     * @return True if equal, otherwise false.
+     */
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RowSchema)) {
+            return false;
+        }
+        return Arrays.equals(names, ((RowSchema) o).names);
+    }
+
+    /**
+     * Hash code, derived from the column names.
+     *
+     * @return The hash code.
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(names);
+    }
+
+    /**
+     * A readable representation of this schema.
+     *
+     * @return The column names.
+     */
+    @Override
+    public String toString() {
+        return Arrays.toString(names);
+    }
+}
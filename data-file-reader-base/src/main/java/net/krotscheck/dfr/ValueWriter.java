@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import java.io.IOException;
+
+/**
+ * Dispatches values to typed write methods, for encoders that write cells
+ * one at a time. Cells of a {@link Row} are dispatched by
+ * {@link Row#getType(int)} and read without boxing; other values are
+ * dispatched by {@link Type#getTypeForValue(Object)}. Encoders only
+ * implement how each type is emitted.
+ *
+ * @author Michael Krotscheck
+ */
+public abstract class ValueWriter {
+
+    /**
+     * Write a cell of a row. Absent cells are written as nulls; encoders
+     * that leave them out should check {@link Row#isPresent(int)} first.
+     *
+     * @param row   The row.
+     * @param index The column index of the cell.
+     * @throws IOException Thrown if the cell cannot be written.
+     */
+    public final void writeCell(final Row row, final int index)
+            throws IOException {
+        if (row.isNull(index)) {
+            writeNull();
+            return;
+        }
+        switch (row.getType(index)) {
+            case INTEGER:
+                writeInt(row.getInt(index));
+                break;
+            case LONG:
+                writeLong(row.getLong(index));
+                break;
+            case FLOAT:
+                writeFloat((float) row.getDouble(index));
+                break;
+            case DOUBLE:
+                writeDouble(row.getDouble(index));
+                break;
+            case BOOLEAN:
+                writeBoolean(row.getBoolean(index));
+                break;
+            default:
+                writeValue(row.get(index));
+                break;
+        }
+    }
+
+    /**
+     * Write a value. Strings, numbers and booleans are written by their
+     * type, everything else by {@link #writeObject(Object)}.
+     *
+     * @param value The value, may be null.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    public final void writeValue(final Object value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        switch (Type.getTypeForValue(value)) {
+            case INTEGER:
+                writeInt((Integer) value);
+                break;
+            case LONG:
+                writeLong((Long) value);
+                break;
+            case FLOAT:
+                writeFloat((Float) value);
+                break;
+            case DOUBLE:
+                writeDouble((Double) value);
+                break;
+            case BOOLEAN:
+                writeBoolean((Boolean) value);
+                break;
+            default:
+                if (value instanceof String) {
+                    writeString((String) value);
+                } else {
+                    writeObject(value);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Write a null.
+     *
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    protected abstract void writeNull() throws IOException;
+
+    /**
+     * Write an int.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    protected abstract void writeInt(final int value) throws IOException;
+
+    /**
+     * Write a long.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    protected abstract void writeLong(final long value) throws IOException;
+
+    /**
+     * Write a float.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    protected abstract void writeFloat(final float value) throws IOException;
+
+    /**
+     * Write a double.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    protected abstract void writeDouble(final double value) throws IOException;
+
+    /**
+     * Write a boolean.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    protected abstract void writeBoolean(final boolean value)
+            throws IOException;
+
+    /**
+     * Write a string.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    protected abstract void writeString(final String value) throws IOException;
+
+    /**
+     * Write a value that is not a string, number or boolean.
+     *
+     * @param value The value, never null.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    protected abstract void writeObject(final Object value) throws IOException;
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * The compression codecs on the classpath, listed in the service files of
+ * {@link ICompressionCodec}. They are discovered the first time they are
+ * asked for; when two codecs share a mime type, the first one wins.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CompressionCodecs {
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(CompressionCodecs.class);
+
+    /**
+     * Utility class, private constructor.
+     */
+    private CompressionCodecs() {
+    }
+
+    /**
+     * Get the codec of a mime type.
+     *
+     * @param mimeType The mime type of the compressed format.
+     * @return The codec.
+     * @throws ClassNotFoundException Thrown if no codec is available.
+     */
+    public static ICompressionCodec get(final String mimeType)
+            throws ClassNotFoundException {
+        ICompressionCodec codec = Codecs.CODECS.get(mimeType);
+        if (codec == null) {
+            throw new ClassNotFoundException(String.format(
+                    "ICompressionCodec for mimeType [%s] not found.",
+                    mimeType));
+        }
+        return codec;
+    }
+
+    /**
+     * Whether a codec is available for a mime type.
+     *
+     * @param mimeType The mime type, may be null.
+     * @return True if it can be compressed and decompressed.
+     */
+    public static boolean isSupported(final String mimeType) {
+        return mimeType != null && Codecs.CODECS.containsKey(mimeType);
+    }
+
+    /**
+     * Get the mime types of all available codecs.
+     *
+     * @return The mime types, in order of discovery.
+     */
+    public static Set<String> getMimeTypes() {
+        return Codecs.CODECS.keySet();
+    }
+
+    /**
+     * Discover the codecs of a class loader.
+     *
+     * @param loader The class loader to search.
+     * @return The codecs by mime type, in order of discovery.
+     */
+    static Map<String, ICompressionCodec> discover(final ClassLoader loader) {
+        logger.info("ICompressionCodecs found:");
+        Map<String, ICompressionCodec> codecs = new LinkedHashMap<>();
+        Iterator<ICompressionCodec> iterator =
+                ServiceLoader.load(ICompressionCodec.class, loader)
+                        .iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                ICompressionCodec codec = iterator.next();
+                String mimeType = codec.getMimeType();
+                if (!codecs.containsKey(mimeType)) {
+                    logger.info(String.format("    %s -> %s", mimeType,
+                            codec.getClass().getName()));
+                    codecs.put(mimeType, codec);
+                }
+            } catch (ServiceConfigurationError sce) {
+                logger.error("Unable to load ICompressionCodec.", sce);
+            }
+        }
+        return Collections.unmodifiableMap(codecs);
+    }
+
+    /**
+     * Holds the codecs, which the class loader discovers and publishes the
+     * first time they are asked for.
+     */
+    private static final class Codecs {
+
+        /**
+         * The codecs by mime type.
+         */
+        private static final Map<String, ICompressionCodec> CODECS =
+                discover(classLoader());
+
+        /**
+         * Holder class, private constructor.
+         */
+        private Codecs() {
+        }
+
+        /**
+         * Get the class loader to search, preferring the one of the
+         * current thread.
+         *
+         * @return The class loader.
+         */
+        private static ClassLoader classLoader() {
+            ClassLoader loader =
+                    Thread.currentThread().getContextClassLoader();
+            if (loader == null) {
+                loader = CompressionCodecs.class.getClassLoader();
+            }
+            return loader;
+        }
+    }
+}
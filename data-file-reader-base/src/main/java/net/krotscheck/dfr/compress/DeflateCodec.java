@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The deflate codec, for zlib wrapped streams. Streams are decompressed
+ * ahead of the reader, on their own thread.
+ *
+ * @author Michael Krotscheck
+ */
+public final class DeflateCodec implements ICompressionCodec {
+
+    /**
+     * The mime type of zlib.
+     */
+    public static final String MIME_TYPE = "application/zlib";
+
+    /**
+     * The size of the buffers, in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Retrieve the mime type of zlib.
+     *
+     * @return application/zlib
+     */
+    @Override
+    public String getMimeType() {
+        return MIME_TYPE;
+    }
+
+    /**
+     * Wrap a zlib stream, inflating it ahead of the reader.
+     *
+     * @param stream The compressed stream.
+     * @return The decompressed stream.
+     */
+    @Override
+    public InputStream decompress(final InputStream stream) {
+        return new ReadAheadInputStream(new InflaterInputStream(
+                new BufferedInputStream(stream, BUFFER_SIZE)));
+    }
+
+    /**
+     * Wrap a stream in a zlib stream.
+     *
+     * @param stream The destination of the compressed bytes.
+     * @return The stream to write to.
+     */
+    @Override
+    public OutputStream compress(final OutputStream stream) {
+        return new DeflaterOutputStream(
+                new BufferedOutputStream(stream, BUFFER_SIZE));
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The gzip codec. Streams are decompressed on their own threads: members
+ * are inflated in parallel, and read ahead of the decoder.
+ *
+ * @author Michael Krotscheck
+ */
+public final class GzipCodec implements ICompressionCodec {
+
+    /**
+     * The mime type of gzip.
+     */
+    public static final String MIME_TYPE = "application/gzip";
+
+    /**
+     * The size of the buffers, in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of threads members are inflated on.
+     */
+    private final int threads;
+
+    /**
+     * The number of compressed bytes inflated per thread at a time.
+     */
+    private final int partSize;
+
+    /**
+     * Create a new codec, which decompresses on as many threads as there
+     * are processors.
+     */
+    public GzipCodec() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a new codec.
+     *
+     * @param threadCount The number of threads to decompress with.
+     */
+    public GzipCodec(final int threadCount) {
+        this(threadCount, ParallelGzipInputStream.DEFAULT_PART_SIZE);
+    }
+
+    /**
+     * Create a new codec.
+     *
+     * @param threadCount The number of threads to decompress with.
+     * @param bytes       The number of compressed bytes inflated per thread
+     *                    at a time. Members larger than all threads
+     *                    together inflate at a time are read sequentially.
+     */
+    public GzipCodec(final int threadCount, final int bytes) {
+        if (threadCount < 1 || bytes < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid parts: %s threads of %s bytes.",
+                    threadCount, bytes));
+        }
+        this.threads = threadCount;
+        this.partSize = bytes;
+    }
+
+    /**
+     * Get the number of threads members are inflated on.
+     *
+     * @return The number of threads.
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Retrieve the mime type of gzip.
+     *
+     * @return application/gzip
+     */
+    @Override
+    public String getMimeType() {
+        return MIME_TYPE;
+    }
+
+    /**
+     * Wrap a gzip stream, decompressing it ahead of the reader.
+     *
+     * @param stream The compressed stream.
+     * @return The decompressed stream.
+     */
+    @Override
+    public InputStream decompress(final InputStream stream) {
+        return new ReadAheadInputStream(
+                new ParallelGzipInputStream(stream, threads, partSize));
+    }
+
+    /**
+     * Wrap a stream in a gzip stream. The header is written into a buffer,
+     * and reaches the stream with the first compressed bytes.
+     *
+     * @param stream The destination of the compressed bytes.
+     * @return The stream to write to.
+     */
+    @Override
+    public OutputStream compress(final OutputStream stream) {
+        try {
+            return new GZIPOutputStream(
+                    new BufferedOutputStream(stream, BUFFER_SIZE),
+                    BUFFER_SIZE);
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compression codec, which wraps the streams of a decoder or an encoder.
+ * Codecs are discovered through the service file of this interface, and
+ * are shared between threads, so implementations must be stateless.
+ * Wrapping a stream must not read from or write to it; that happens when
+ * the returned stream is first used.
+ *
+ * @author Michael Krotscheck
+ */
+public interface ICompressionCodec {
+
+    /**
+     * Retrieve the mime type of the compressed format.
+     *
+     * @return The mime type.
+     */
+    String getMimeType();
+
+    /**
+     * Wrap a compressed stream, so that reading it returns the original
+     * bytes. Closing the returned stream closes the compressed one.
+     *
+     * @param stream The compressed stream.
+     * @return The decompressed stream.
+     */
+    InputStream decompress(InputStream stream);
+
+    /**
+     * Wrap a stream, so that bytes written to it are compressed. Closing
+     * the returned stream finishes the compressed format, and closes the
+     * wrapped one.
+     *
+     * @param stream The destination of the compressed bytes.
+     * @return The stream to write the original bytes to.
+     */
+    OutputStream compress(OutputStream stream);
+}
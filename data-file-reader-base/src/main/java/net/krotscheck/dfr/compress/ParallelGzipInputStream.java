@@ -0,0 +1,947 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses gzip streams of many members, such as concatenated or
+ * block-compressed files, on several threads.
+ * <p>
+ * The compressed stream is read one window at a time. The window is split
+ * into as many parts as there are threads, each starting at a byte
+ * sequence that looks like a member header, and every part is inflated
+ * member by member until it reaches the start of the next part. Since a
+ * header may also appear by chance inside compressed data, the results are
+ * only used while each part starts where the previous one ended; the rest
+ * of the window is carried over into the next one. A member that does not
+ * fit into a window, such as the single member of most gzip files, is
+ * inflated sequentially, a window at a time, after which the following
+ * members are split into parts again. Members are read until the source
+ * itself ends, whatever {@link InputStream#available()} reports.
+ *
+ * @author Michael Krotscheck
+ */
+final class ParallelGzipInputStream extends InputStream {
+
+    /**
+     * The default number of compressed bytes in a window, per thread.
+     */
+    static final int DEFAULT_PART_SIZE = 1024 * 1024;
+
+    /**
+     * The compression method of gzip members.
+     */
+    private static final int DEFLATED = 8;
+
+    /**
+     * The size of a member header, without its optional fields.
+     */
+    private static final int HEADER_SIZE = 10;
+
+    /**
+     * The size of a member trailer.
+     */
+    private static final int TRAILER_SIZE = 8;
+
+    /**
+     * The header flag of a header checksum.
+     */
+    private static final int FHCRC = 2;
+
+    /**
+     * The header flag of extra fields.
+     */
+    private static final int FEXTRA = 4;
+
+    /**
+     * The header flag of a file name.
+     */
+    private static final int FNAME = 8;
+
+    /**
+     * The header flag of a comment.
+     */
+    private static final int FCOMMENT = 16;
+
+    /**
+     * The reserved header flags.
+     */
+    private static final int FRESERVED = 0xE0;
+
+    /**
+     * The highest operating system code of a header, other than unknown.
+     */
+    private static final int MAX_OS = 13;
+
+    /**
+     * The operating system code of an unknown system.
+     */
+    private static final int UNKNOWN_OS = 255;
+
+    /**
+     * The initial size of the window, which grows as far as the source
+     * fills it.
+     */
+    private static final int INITIAL_WINDOW_SIZE = 8 * 1024;
+
+    /**
+     * The size of the buffer members are inflated into.
+     */
+    private static final int INFLATE_SIZE = 64 * 1024;
+
+    /**
+     * The source of compressed bytes.
+     */
+    private final InputStream in;
+
+    /**
+     * The number of threads.
+     */
+    private final int threads;
+
+    /**
+     * The number of compressed bytes inflated per thread.
+     */
+    private final int partSize;
+
+    /**
+     * The largest number of compressed bytes in a window.
+     */
+    private final int windowSize;
+
+    /**
+     * Decompressed bytes, in order, that have not been read.
+     */
+    private final Deque<byte[]> output = new ArrayDeque<>();
+
+    /**
+     * A buffer for single byte reads.
+     */
+    private final byte[] single = new byte[1];
+
+    /**
+     * The compressed window, null until the first read.
+     */
+    private byte[] window;
+
+    /**
+     * The number of compressed bytes in the window.
+     */
+    private int limit;
+
+    /**
+     * Whether the source has ended.
+     */
+    private boolean eof;
+
+    /**
+     * Whether a member has been read.
+     */
+    private boolean started;
+
+    /**
+     * Whether all members have been read.
+     */
+    private boolean finished;
+
+    /**
+     * The decompressed bytes being read, null if none.
+     */
+    private byte[] current;
+
+    /**
+     * The position in the current bytes.
+     */
+    private int position;
+
+    /**
+     * Inflates a member that did not fit into the window, null unless one
+     * is being read.
+     */
+    private Inflater sequential;
+
+    /**
+     * The checksum of the member being inflated sequentially.
+     */
+    private final CRC32 sequentialCrc = new CRC32();
+
+    /**
+     * The threads that inflate parts, null until needed.
+     */
+    private ForkJoinPool pool;
+
+    /**
+     * Create a new stream.
+     *
+     * @param stream      The compressed stream.
+     * @param threadCount The number of threads to decompress with.
+     * @param partBytes   The number of compressed bytes per thread.
+     */
+    ParallelGzipInputStream(final InputStream stream,
+                            final int threadCount,
+                            final int partBytes) {
+        if (threadCount < 1 || partBytes < 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid parts: %s threads of %s bytes.",
+                    threadCount, partBytes));
+        }
+        this.in = stream;
+        this.threads = threadCount;
+        this.partSize = partBytes;
+        this.windowSize = (int) Math.min(Integer.MAX_VALUE - HEADER_SIZE,
+                (long) threadCount * partBytes);
+    }
+
+    /**
+     * Read a single byte.
+     *
+     * @return The byte, or -1 at the end of the stream.
+     * @throws IOException Thrown if the stream cannot be decompressed.
+     */
+    @Override
+    public int read() throws IOException {
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+        return single[0] & 0xFF;
+    }
+
+    /**
+     * Read decompressed bytes into an array.
+     *
+     * @param buffer The destination.
+     * @param offset The offset in the destination.
+     * @param length The maximum number of bytes to read.
+     * @return The number of bytes read, or -1 at the end of the stream.
+     * @throws IOException Thrown if the stream cannot be decompressed.
+     */
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length)
+            throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (true) {
+            if (current != null && position < current.length) {
+                int count = Math.min(length, current.length - position);
+                System.arraycopy(current, position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+            current = output.poll();
+            position = 0;
+            if (current == null) {
+                if (sequential != null) {
+                    int count = inflateSequentially(buffer, offset, length);
+                    if (count > 0) {
+                        return count;
+                    }
+                    continue;
+                }
+                if (finished) {
+                    return -1;
+                }
+                decompressWindow();
+            }
+        }
+    }
+
+    /**
+     * Stop the threads, and close the source. This may be called while
+     * another thread reads, so the buffers are left to the garbage
+     * collector rather than cleared.
+     *
+     * @throws IOException Thrown if the source cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        finished = true;
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+        in.close();
+    }
+
+    /**
+     * Fill the window, and decompress the members that start in it.
+     *
+     * @throws IOException Thrown if the stream cannot be decompressed.
+     */
+    private void decompressWindow() throws IOException {
+        fill();
+        if (limit == 0) {
+            if (!started) {
+                throw new EOFException("Unexpected end of GZIP input");
+            }
+            finished = true;
+            return;
+        }
+
+        int[] starts = split();
+        List<Future<Part>> futures = new ArrayList<>();
+        for (int i = 1; i < starts.length; i++) {
+            futures.add(submit(starts[i], end(starts, i)));
+        }
+        Part first = inflate(window, 0, end(starts, 0), limit);
+
+        int offset = 0;
+        Part part = first;
+        try {
+            for (int i = 0; part != null; i++) {
+                offset = accept(part, offset);
+                if (finished || part.getStatus() != Part.COMPLETE) {
+                    break;
+                }
+                part = null;
+                while (i < futures.size() && starts[i + 1] < offset) {
+                    i++;
+                }
+                if (i < futures.size() && starts[i + 1] == offset) {
+                    part = await(futures.get(i));
+                }
+            }
+        } finally {
+            // Parts still read the window, which is about to be refilled.
+            for (Future<Part> future : futures) {
+                awaitQuietly(future);
+            }
+        }
+        if (!finished) {
+            carryOver(offset, part);
+        }
+    }
+
+    /**
+     * Use a part that starts where the previous one ended.
+     *
+     * @param part   The part.
+     * @param offset The start of the part.
+     * @return The end of the members read.
+     * @throws IOException Thrown if the part is corrupt.
+     */
+    private int accept(final Part part, final int offset)
+            throws IOException {
+        if (part.getBytes().length > 0) {
+            output.add(part.getBytes());
+        }
+        if (part.getEnd() > offset) {
+            started = true;
+        }
+        if (part.getStatus() == Part.CORRUPT) {
+            throw new ZipException(part.getError());
+        }
+        if (part.getStatus() == Part.NOT_GZIP) {
+            if (!started) {
+                throw new ZipException("Not in GZIP format");
+            }
+            // Like GZIPInputStream, ignore anything after the last member.
+            finished = true;
+        }
+        return part.getEnd();
+    }
+
+    /**
+     * Move the bytes that were not decompressed to the start of the window.
+     * If none were, the member does not fit, and it is inflated
+     * sequentially.
+     *
+     * @param offset The end of the members read.
+     * @param last   The last part used, null if it ended a member.
+     * @throws IOException Thrown if the source ends within a member.
+     */
+    private void carryOver(final int offset, final Part last)
+            throws IOException {
+        boolean incomplete = last != null
+                && last.getStatus() == Part.INCOMPLETE;
+        if (offset == 0 && incomplete) {
+            if (eof) {
+                if (started && !isMagic(window, 0, limit)) {
+                    finished = true;
+                    return;
+                }
+                throw new EOFException("Unexpected end of GZIP input");
+            }
+            startSequential();
+            return;
+        }
+        System.arraycopy(window, offset, window, 0, limit - offset);
+        limit -= offset;
+        if (eof && limit == 0) {
+            finished = true;
+        }
+    }
+
+    /**
+     * Start inflating the member at the start of the window sequentially.
+     * A header that is larger than the window grows the window until it
+     * fits.
+     *
+     * @throws IOException Thrown if the source ends within the header.
+     */
+    private void startSequential() throws IOException {
+        int data = skipHeader(window, 0, limit);
+        while (data == -1 && !eof) {
+            window = Arrays.copyOf(window, window.length * 2);
+            fill();
+            data = skipHeader(window, 0, limit);
+        }
+        if (data < 0) {
+            throw new EOFException("Unexpected end of GZIP input");
+        }
+        started = true;
+        sequential = new Inflater(true);
+        sequentialCrc.reset();
+        sequential.setInput(window, data, limit - data);
+    }
+
+    /**
+     * Inflate the member that did not fit into the window, refilling the
+     * window from the source as the inflater needs it. At the end of the
+     * member, its trailer is checked, and the rest of the window is left
+     * for the following members.
+     *
+     * @param buffer The destination.
+     * @param offset The offset in the destination.
+     * @param length The maximum number of bytes to inflate.
+     * @return The number of bytes inflated, zero at the end of the member.
+     * @throws IOException Thrown if the member is corrupt or incomplete.
+     */
+    private int inflateSequentially(final byte[] buffer, final int offset,
+                                    final int length) throws IOException {
+        try {
+            while (!sequential.finished()) {
+                int count = sequential.inflate(buffer, offset, length);
+                if (count > 0) {
+                    sequentialCrc.update(buffer, offset, count);
+                    return count;
+                }
+                if (sequential.needsDictionary()) {
+                    throw new ZipException("Unsupported preset dictionary");
+                }
+                if (sequential.needsInput()) {
+                    limit = 0;
+                    fill();
+                    if (limit == 0) {
+                        throw new EOFException(
+                                "Unexpected end of ZLIB input stream");
+                    }
+                    sequential.setInput(window, 0, limit);
+                }
+            }
+        } catch (DataFormatException dfe) {
+            throw new ZipException(dfe.getMessage());
+        }
+        endSequential();
+        return 0;
+    }
+
+    /**
+     * Check the trailer of the member inflated sequentially, and go back
+     * to splitting the window into parts.
+     *
+     * @throws IOException Thrown if the trailer is missing or wrong.
+     */
+    private void endSequential() throws IOException {
+        int trailer = limit - sequential.getRemaining();
+        long size = sequential.getBytesWritten() & 0xFFFFFFFFL;
+        sequential.end();
+        sequential = null;
+
+        System.arraycopy(window, trailer, window, 0, limit - trailer);
+        limit -= trailer;
+        fill();
+        if (limit < TRAILER_SIZE) {
+            throw new EOFException("Unexpected end of ZLIB input stream");
+        }
+        if (readInt(window, 0) != sequentialCrc.getValue()
+                || readInt(window, 4) != size) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+        System.arraycopy(window, TRAILER_SIZE, window, 0,
+                limit - TRAILER_SIZE);
+        limit -= TRAILER_SIZE;
+        if (eof && limit == 0) {
+            finished = true;
+        }
+    }
+
+    /**
+     * Read from the source until the window is full, or the source ends.
+     * The window starts small, and doubles each time the source fills it,
+     * up to its largest size; short streams never allocate more than they
+     * need.
+     *
+     * @throws IOException Thrown if the source cannot be read.
+     */
+    private void fill() throws IOException {
+        if (window == null) {
+            window = new byte[Math.min(windowSize, INITIAL_WINDOW_SIZE)];
+        }
+        while (!eof) {
+            if (limit == window.length) {
+                if (window.length >= windowSize) {
+                    return;
+                }
+                window = Arrays.copyOf(window,
+                        (int) Math.min(windowSize, 2L * window.length));
+            }
+            int count = in.read(window, limit, window.length - limit);
+            if (count < 0) {
+                eof = true;
+            } else {
+                limit += count;
+            }
+        }
+    }
+
+    /**
+     * Choose where the parts of the window start: at the first candidate
+     * header after each even share of the window. There is one part for
+     * every part size of bytes in the window, up to one per thread, so a
+     * short stream is inflated in a single part.
+     *
+     * @return The starts of the parts, the first of which is zero.
+     */
+    private int[] split() {
+        int parts = (int) Math.min(threads,
+                ((long) limit + partSize - 1) / partSize);
+        int[] starts = new int[Math.max(1, parts)];
+        int count = 1;
+        for (int i = 1; i < parts; i++) {
+            int from = (int) ((long) limit * i / parts);
+            from = Math.max(from, starts[count - 1] + 1);
+            for (int p = from; p + HEADER_SIZE <= limit; p++) {
+                if (isCandidate(window, p)) {
+                    starts[count++] = p;
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /**
+     * Get the end of a part, which is the start of the next one.
+     *
+     * @param starts The starts of the parts.
+     * @param index  The index of the part.
+     * @return The end of the part.
+     */
+    private int end(final int[] starts, final int index) {
+        if (index + 1 < starts.length) {
+            return starts[index + 1];
+        }
+        return limit;
+    }
+
+    /**
+     * Get the size of the window, for tests.
+     *
+     * @return The number of bytes allocated for the window, zero if none.
+     */
+    int getWindowCapacity() {
+        if (window == null) {
+            return 0;
+        }
+        return window.length;
+    }
+
+    /**
+     * Whether any part has been inflated on the thread pool, for tests.
+     *
+     * @return True if the thread pool has been started.
+     */
+    boolean isParallel() {
+        return pool != null;
+    }
+
+    /**
+     * Inflate a part on the thread pool.
+     *
+     * @param start The start of the part.
+     * @param stop  The end of the part.
+     * @return The future part.
+     */
+    private Future<Part> submit(final int start, final int stop) {
+        if (pool == null) {
+            pool = new ForkJoinPool(threads - 1);
+        }
+        final byte[] bytes = window;
+        final int end = limit;
+        return pool.submit(new Callable<Part>() {
+            @Override
+            public Part call() {
+                return inflate(bytes, start, stop, end);
+            }
+        });
+    }
+
+    /**
+     * Wait for a part.
+     *
+     * @param future The future part.
+     * @return The part.
+     * @throws IOException Thrown if the wait is interrupted.
+     */
+    private static Part await(final Future<Part> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while decompressing.");
+        } catch (ExecutionException ee) {
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    /**
+     * Wait for a part whose result is not needed.
+     *
+     * @param future The future part.
+     */
+    private static void awaitQuietly(final Future<Part> future) {
+        try {
+            future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            return;
+        }
+    }
+
+    /**
+     * Inflate whole members, from the start of a part until a member ends
+     * at or after the end of the part.
+     *
+     * @param bytes The compressed bytes.
+     * @param start The start of the part.
+     * @param stop  The end of the part.
+     * @param limit The number of compressed bytes.
+     * @return The decompressed members of the part.
+     */
+    static Part inflate(final byte[] bytes, final int start, final int stop,
+                        final int limit) {
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[INFLATE_SIZE];
+        int position = start;
+        try {
+            while (position < stop) {
+                int data = skipHeader(bytes, position, limit);
+                if (data == -2) {
+                    return new Part(out, position, Part.NOT_GZIP, null);
+                }
+                int committed = out.size();
+                if (data < 0) {
+                    return new Part(out, position, Part.INCOMPLETE, null);
+                }
+                inflater.reset();
+                crc.reset();
+                inflater.setInput(bytes, data, limit - data);
+                while (!inflater.finished()) {
+                    int count = inflater.inflate(buffer);
+                    if (count > 0) {
+                        out.write(buffer, 0, count);
+                        crc.update(buffer, 0, count);
+                    } else if (inflater.needsInput()) {
+                        return new Part(out, committed, position,
+                                Part.INCOMPLETE);
+                    } else if (inflater.needsDictionary()) {
+                        return new Part(out, committed, position,
+                                Part.CORRUPT);
+                    }
+                }
+                int trailer = limit - inflater.getRemaining();
+                if (trailer + TRAILER_SIZE > limit) {
+                    return new Part(out, committed, position,
+                            Part.INCOMPLETE);
+                }
+                if (readInt(bytes, trailer) != crc.getValue()
+                        || readInt(bytes, trailer + 4)
+                        != (inflater.getBytesWritten() & 0xFFFFFFFFL)) {
+                    return new Part(out, committed, position, Part.CORRUPT);
+                }
+                position = trailer + TRAILER_SIZE;
+            }
+            return new Part(out, position, Part.COMPLETE, null);
+        } catch (DataFormatException dfe) {
+            return new Part(new ByteArrayOutputStream(), position,
+                    Part.CORRUPT, dfe.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Skip the header of a member.
+     *
+     * @param bytes    The compressed bytes.
+     * @param position The start of the header.
+     * @param limit    The number of compressed bytes.
+     * @return The start of the compressed data, -1 if the header is not
+     * complete, or -2 if it is not a gzip header.
+     */
+    private static int skipHeader(final byte[] bytes, final int position,
+                                  final int limit) {
+        if (limit - position < HEADER_SIZE) {
+            if (isMagic(bytes, position, limit)) {
+                return -1;
+            }
+            return -2;
+        }
+        int flags = bytes[position + 3] & 0xFF;
+        if (!isMagic(bytes, position, limit)
+                || bytes[position + 2] != DEFLATED
+                || (flags & FRESERVED) != 0) {
+            return -2;
+        }
+        int p = position + HEADER_SIZE;
+        if ((flags & FEXTRA) != 0) {
+            if (p + 2 > limit) {
+                return -1;
+            }
+            p += 2 + ((bytes[p] & 0xFF) | ((bytes[p + 1] & 0xFF) << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            p = skipString(bytes, p, limit);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            p = skipString(bytes, p, limit);
+        }
+        if ((flags & FHCRC) != 0 && p >= 0) {
+            p += 2;
+        }
+        if (p < 0 || p > limit) {
+            return -1;
+        }
+        return p;
+    }
+
+    /**
+     * Skip a zero terminated string of a header.
+     *
+     * @param bytes    The compressed bytes.
+     * @param position The start of the string, negative if not known.
+     * @param limit    The number of compressed bytes.
+     * @return The position after the string, -1 if it is not complete.
+     */
+    private static int skipString(final byte[] bytes, final int position,
+                                  final int limit) {
+        if (position < 0) {
+            return -1;
+        }
+        for (int p = position; p < limit; p++) {
+            if (bytes[p] == 0) {
+                return p + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Whether the bytes at a position start with the gzip magic number, or
+     * with as much of it as there is.
+     *
+     * @param bytes    The compressed bytes.
+     * @param position The position.
+     * @param limit    The number of compressed bytes.
+     * @return True if they do.
+     */
+    private static boolean isMagic(final byte[] bytes, final int position,
+                                   final int limit) {
+        if (position < limit && bytes[position] != (byte) 0x1F) {
+            return false;
+        }
+        return position + 1 >= limit || bytes[position + 1] == (byte) 0x8B;
+    }
+
+    /**
+     * Whether a header plausibly starts at a position. At least a full
+     * header must follow it.
+     *
+     * @param bytes    The compressed bytes.
+     * @param position The position.
+     * @return True if the bytes look like a member header.
+     */
+    private static boolean isCandidate(final byte[] bytes,
+                                       final int position) {
+        if (bytes[position] != (byte) 0x1F
+                || bytes[position + 1] != (byte) 0x8B
+                || bytes[position + 2] != DEFLATED
+                || (bytes[position + 3] & FRESERVED) != 0) {
+            return false;
+        }
+        int xfl = bytes[position + 8] & 0xFF;
+        int os = bytes[position + 9] & 0xFF;
+        return (xfl == 0 || xfl == 2 || xfl == 4)
+                && (os <= MAX_OS || os == UNKNOWN_OS);
+    }
+
+    /**
+     * Read an unsigned little-endian integer.
+     *
+     * @param bytes    The bytes.
+     * @param position The position of the integer.
+     * @return The integer.
+     */
+    private static long readInt(final byte[] bytes, final int position) {
+        return (bytes[position] & 0xFFL)
+                | ((bytes[position + 1] & 0xFFL) << 8)
+                | ((bytes[position + 2] & 0xFFL) << 16)
+                | ((bytes[position + 3] & 0xFFL) << 24);
+    }
+
+    /**
+     * The decompressed members of a part.
+     */
+    static final class Part {
+
+        /**
+         * Every member up to the end of the part was read.
+         */
+        static final int COMPLETE = 0;
+
+        /**
+         * A member did not end before the end of the window.
+         */
+        static final int INCOMPLETE = 1;
+
+        /**
+         * A member did not start with a gzip header.
+         */
+        static final int NOT_GZIP = 2;
+
+        /**
+         * A member could not be inflated.
+         */
+        static final int CORRUPT = 3;
+
+        /**
+         * The decompressed bytes of the members read.
+         */
+        private final byte[] bytes;
+
+        /**
+         * The end of the members read.
+         */
+        private final int end;
+
+        /**
+         * Why the part stopped.
+         */
+        private final int status;
+
+        /**
+         * The error of a corrupt member, null if none.
+         */
+        private final String error;
+
+        /**
+         * Create a part of whole members.
+         *
+         * @param out       The decompressed bytes.
+         * @param endOffset The end of the members read.
+         * @param why       Why the part stopped.
+         * @param message   The error of a corrupt member.
+         */
+        private Part(final ByteArrayOutputStream out, final int endOffset,
+                     final int why, final String message) {
+            this.bytes = out.toByteArray();
+            this.end = endOffset;
+            this.status = why;
+            if (message == null && why == CORRUPT) {
+                this.error = "Corrupt GZIP member";
+            } else {
+                this.error = message;
+            }
+        }
+
+        /**
+         * Create a part that stopped within a member, keeping only the
+         * bytes of the members before it.
+         *
+         * @param out       The decompressed bytes.
+         * @param committed The number of bytes of the members before it.
+         * @param endOffset The start of the member.
+         * @param why       Why the part stopped.
+         */
+        private Part(final ByteArrayOutputStream out, final int committed,
+                     final int endOffset, final int why) {
+            this.bytes = Arrays.copyOf(out.toByteArray(), committed);
+            this.end = endOffset;
+            this.status = why;
+            this.error = "Corrupt GZIP member";
+        }
+
+        /**
+         * Get the decompressed bytes.
+         *
+         * @return The bytes of the members read.
+         */
+        byte[] getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Get the error of a corrupt member.
+         *
+         * @return The error, null if none.
+         */
+        String getError() {
+            return error;
+        }
+
+        /**
+         * Get the end of the members read.
+         *
+         * @return The offset after the last member read.
+         */
+        int getEnd() {
+            return end;
+        }
+
+        /**
+         * Get why the part stopped.
+         *
+         * @return The status.
+         */
+        int getStatus() {
+            return status;
+        }
+    }
+}
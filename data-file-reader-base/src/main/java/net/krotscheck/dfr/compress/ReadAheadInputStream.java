@@ -0,0 +1,315 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream that reads its source ahead on a separate thread. A
+ * fixed number of chunks circulate between the two threads: the reader
+ * thread fills free chunks from the source, and the consuming thread
+ * copies them out and hands them back. Wrapped around a decompressing
+ * stream, this moves the decompression off the thread that decodes rows.
+ * <p>
+ * The reader thread is started by the first read, and stopped when the
+ * stream is closed. Errors of the source are thrown by the read that
+ * reaches them.
+ *
+ * @author Michael Krotscheck
+ */
+public final class ReadAheadInputStream extends InputStream {
+
+    /**
+     * The default size of a chunk, in bytes.
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The default number of chunks.
+     */
+    public static final int DEFAULT_CHUNKS = 4;
+
+    /**
+     * Marks the end of the source.
+     */
+    private static final Chunk END = new Chunk(0);
+
+    /**
+     * The source.
+     */
+    private final InputStream source;
+
+    /**
+     * Chunks that may be filled by the reader thread.
+     */
+    private final BlockingQueue<Chunk> free;
+
+    /**
+     * Chunks that have been filled, in order.
+     */
+    private final BlockingQueue<Chunk> filled;
+
+    /**
+     * A buffer for single byte reads.
+     */
+    private final byte[] single = new byte[1];
+
+    /**
+     * The chunk being read, null if none.
+     */
+    private Chunk current;
+
+    /**
+     * The position in the current chunk.
+     */
+    private int position;
+
+    /**
+     * The reader thread, null until the first read.
+     */
+    private Thread reader;
+
+    /**
+     * The error of the source, null if none.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Whether the stream has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Create a new stream, with the default number and size of chunks.
+     *
+     * @param stream The source.
+     */
+    public ReadAheadInputStream(final InputStream stream) {
+        this(stream, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNKS);
+    }
+
+    /**
+     * Create a new stream.
+     *
+     * @param stream    The source.
+     * @param chunkSize The size of a chunk, in bytes.
+     * @param chunks    The number of chunks, at least two.
+     */
+    public ReadAheadInputStream(final InputStream stream,
+                                final int chunkSize,
+                                final int chunks) {
+        if (chunkSize < 1 || chunks < 2) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid read-ahead of %s chunks of %s bytes.",
+                    chunks, chunkSize));
+        }
+        this.source = stream;
+        this.free = new ArrayBlockingQueue<>(chunks);
+        this.filled = new ArrayBlockingQueue<>(chunks + 1);
+        for (int i = 0; i < chunks; i++) {
+            free.add(new Chunk(chunkSize));
+        }
+    }
+
+    /**
+     * Read a single byte.
+     *
+     * @return The byte, or -1 at the end of the stream.
+     * @throws IOException Thrown if the source cannot be read.
+     */
+    @Override
+    public int read() throws IOException {
+        if (read(single, 0, 1) < 0) {
+            return -1;
+        }
+        return single[0] & 0xFF;
+    }
+
+    /**
+     * Read bytes into an array.
+     *
+     * @param buffer The destination.
+     * @param offset The offset in the destination.
+     * @param length The maximum number of bytes to read.
+     * @return The number of bytes read, or -1 at the end of the stream.
+     * @throws IOException Thrown if the source cannot be read.
+     */
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (!next()) {
+            return -1;
+        }
+        int count = Math.min(length, current.length - position);
+        System.arraycopy(current.data, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    /**
+     * The number of bytes that can be read without blocking.
+     *
+     * @return The bytes left in the current chunk.
+     */
+    @Override
+    public int available() {
+        if (current == null || current == END) {
+            return 0;
+        }
+        return current.length - position;
+    }
+
+    /**
+     * Stop the reader thread, and close the source.
+     *
+     * @throws IOException Thrown if the source cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (reader != null) {
+            reader.interrupt();
+        }
+        source.close();
+    }
+
+    /**
+     * Make sure that the current chunk has bytes left, waiting for the
+     * reader thread if it has not.
+     *
+     * @return False at the end of the stream.
+     * @throws IOException Thrown if the source failed.
+     */
+    private boolean next() throws IOException {
+        if (reader == null) {
+            start();
+        }
+        while (current == null || position == current.length) {
+            if (current == END) {
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            if (current != null) {
+                free.add(current);
+            }
+            try {
+                current = filled.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                current = null;
+                throw new InterruptedIOException(
+                        "Interrupted while reading ahead.");
+            }
+            position = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Start the reader thread.
+     */
+    private void start() {
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                fill();
+            }
+        }, "dfr-read-ahead");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Fill free chunks from the source, until it ends, fails, or the
+     * stream is closed. Runs on the reader thread. Whatever happens, the
+     * end of the stream is queued, so the consuming thread never waits for
+     * a reader that has stopped.
+     */
+    private void fill() {
+        try {
+            while (!closed) {
+                Chunk chunk = free.take();
+                int count = source.read(chunk.data);
+                if (count < 0) {
+                    break;
+                }
+                chunk.length = count;
+                filled.put(chunk);
+            }
+        } catch (IOException ioe) {
+            fail(ioe);
+        } catch (RuntimeException | Error e) {
+            fail(new IOException("Read-ahead failed.", e));
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            filled.offer(END);
+        }
+    }
+
+    /**
+     * Record the error of the source, unless the stream has been closed.
+     *
+     * @param e The error.
+     */
+    private void fail(final IOException e) {
+        if (!closed) {
+            failure = e;
+        }
+    }
+
+    /**
+     * A buffer passed between the threads.
+     */
+    private static final class Chunk {
+
+        /**
+         * The bytes.
+         */
+        private final byte[] data;
+
+        /**
+         * The number of bytes filled.
+         */
+        private int length;
+
+        /**
+         * Create a new chunk.
+         *
+         * @param size The size of the chunk.
+         */
+        private Chunk(final int size) {
+            this.data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.index;
+
+import net.krotscheck.dfr.CodecRegistry;
+import net.krotscheck.dfr.DataCodec;
+import net.krotscheck.dfr.IDataDecoder;
+import net.krotscheck.dfr.IDataEncoder;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Writes the codec index of a module while it is compiled. Every class
+ * annotated with {@link DataCodec} is recorded with its mime type, once
+ * for each of {@link IDataDecoder} and {@link IDataEncoder} it implements,
+ * so that the {@link CodecRegistry} can find it without creating it. The
+ * index is a text file of lines of the form "decoder text/csv
+ * net.krotscheck.dfr.csv.CSVDataDecoder".
+ * <p>
+ * The processor is registered as a service, so it runs in every module
+ * that has this one on its class path.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CodecIndexProcessor extends AbstractProcessor {
+
+    /**
+     * The lines of the index, sorted so that builds are repeatable.
+     */
+    private final Set<String> lines = new TreeSet<>();
+
+    /**
+     * The annotations this processor handles.
+     *
+     * @return The name of {@link DataCodec}.
+     */
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(DataCodec.class.getCanonicalName());
+    }
+
+    /**
+     * The source versions this processor handles.
+     *
+     * @return The latest supported version.
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Record the annotated classes of a round, and write the index once
+     * the last round is over.
+     *
+     * @param annotations The annotations of this round.
+     * @param round       The round.
+     * @return True, as no other processor needs the annotation.
+     */
+    @Override
+    public boolean process(final Set<? extends TypeElement> annotations,
+                           final RoundEnvironment round) {
+        for (Element element : round.getElementsAnnotatedWith(
+                DataCodec.class)) {
+            record(element);
+        }
+        if (round.processingOver() && !lines.isEmpty()) {
+            writeIndex();
+        }
+        return true;
+    }
+
+    /**
+     * Record an annotated class, or report why it cannot be a codec.
+     *
+     * @param element The annotated element.
+     */
+    private void record(final Element element) {
+        Messager messager = processingEnv.getMessager();
+        if (element.getKind() != ElementKind.CLASS
+                || element.getModifiers().contains(Modifier.ABSTRACT)
+                || !element.getModifiers().contains(Modifier.PUBLIC)) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "A codec must be a public, concrete class.", element);
+            return;
+        }
+        if (!hasPublicConstructor((TypeElement) element)) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "A codec must have a public no-argument constructor.",
+                    element);
+            return;
+        }
+
+        String name = processingEnv.getElementUtils()
+                .getBinaryName((TypeElement) element).toString();
+        String mimeType = element.getAnnotation(DataCodec.class).value();
+        boolean recorded = false;
+        if (implementsType(element, IDataDecoder.class)) {
+            lines.add(line(CodecRegistry.DECODER, mimeType, name));
+            recorded = true;
+        }
+        if (implementsType(element, IDataEncoder.class)) {
+            lines.add(line(CodecRegistry.ENCODER, mimeType, name));
+            recorded = true;
+        }
+        if (!recorded) {
+            messager.printMessage(Diagnostic.Kind.ERROR,
+                    "A codec must implement IDataDecoder or IDataEncoder.",
+                    element);
+        }
+    }
+
+    /**
+     * Does a class have a public constructor without arguments?
+     *
+     * @param type The class.
+     * @return True if it does.
+     */
+    private boolean hasPublicConstructor(final TypeElement type) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(
+                type.getEnclosedElements())) {
+            if (constructor.getParameters().isEmpty()
+                    && constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Does a class implement an interface?
+     *
+     * @param element The class.
+     * @param type    The interface.
+     * @return True if it does.
+     */
+    private boolean implementsType(final Element element,
+                                   final Class<?> type) {
+        TypeElement typeElement = processingEnv.getElementUtils()
+                .getTypeElement(type.getCanonicalName());
+        if (typeElement == null) {
+            return false;
+        }
+        Types types = processingEnv.getTypeUtils();
+        TypeMirror erased = types.erasure(typeElement.asType());
+        return types.isAssignable(types.erasure(element.asType()), erased);
+    }
+
+    /**
+     * Format a line of the index.
+     *
+     * @param kind     The kind of codec.
+     * @param mimeType The mime type.
+     * @param name     The binary name of the class.
+     * @return The line.
+     */
+    private static String line(final String kind, final String mimeType,
+                               final String name) {
+        return kind + " " + mimeType + " " + name;
+    }
+
+    /**
+     * Write the index into the class output.
+     */
+    private void writeIndex() {
+        try {
+            FileObject file = processingEnv.getFiler().createResource(
+                    StandardLocation.CLASS_OUTPUT, "",
+                    CodecRegistry.INDEX_RESOURCE);
+            try (Writer writer = new OutputStreamWriter(
+                    file.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException ioe) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Unable to write the codec index: " + ioe.getMessage());
+        }
+    }
+}
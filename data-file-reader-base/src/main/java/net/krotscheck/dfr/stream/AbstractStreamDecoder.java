@@ -18,6 +18,7 @@
 package net.krotscheck.dfr.stream;
 
 import net.krotscheck.dfr.AbstractDataDecoder;
+import net.krotscheck.dfr.compress.ICompressionCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,13 +46,30 @@ public abstract class AbstractStreamDecoder
     private InputStream inputStream;
 
     /**
-     * Get the input stream for this decoder.
+     * The compression of the input stream, null if none.
+     */
+    private ICompressionCodec compression;
+
+    /**
+     * The decompressed input stream, created when first asked for.
+     */
+    private InputStream decompressed;
+
+    /**
+     * Get the input stream for this decoder. If a compression is set, the
+     * stream is wrapped in its decompressing stream.
      *
      * @return The inputstream.
      */
     @Override
     public final InputStream getInputStream() {
-        return inputStream;
+        if (compression == null || inputStream == null) {
+            return inputStream;
+        }
+        if (decompressed == null) {
+            decompressed = compression.decompress(inputStream);
+        }
+        return decompressed;
     }
 
     /**
@@ -62,26 +80,74 @@ public abstract class AbstractStreamDecoder
     @Override
     public final void setInputStream(final InputStream stream) {
         inputStream = stream;
+        decompressed = null;
     }
 
     /**
-     * Close the input stream.
+     * Get the compression of the input stream.
+     *
+     * @return The codec, or null if the stream is not compressed.
+     */
+    @Override
+    public final ICompressionCodec getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the compression of the input stream.
+     *
+     * @param codec The codec, or null if the stream is not compressed.
+     */
+    @Override
+    public final void setCompression(final ICompressionCodec codec) {
+        compression = codec;
+        decompressed = null;
+    }
+
+    /**
+     * Close the input stream, and its decompressing stream.
      */
     @Override
     public final void close() {
-        if (this.inputStream != null) {
+        InputStream stream = this.inputStream;
+        if (this.decompressed != null) {
+            stream = this.decompressed;
+        }
+        if (stream != null) {
             try {
-                this.inputStream.close();
+                stream.close();
             } catch (IOException ioe) {
                 logger.error("Unable to close output stream.", ioe);
             } finally {
                 this.inputStream = null;
+                this.decompressed = null;
             }
         }
 
         dispose();
     }
 
+    /**
+     * Close the input stream and rewind the decoder, keeping its filters,
+     * settings and caches, so that it can read another stream.
+     */
+    @Override
+    public final void reset() {
+        close();
+        rewind();
+    }
+
+    /**
+     * Reset the decoder, and read from another stream.
+     *
+     * @param stream The input stream.
+     */
+    @Override
+    public final void reset(final InputStream stream) {
+        reset();
+        setInputStream(stream);
+    }
+
     /**
      * Protected close method, for child implementations.
      */
@@ -18,6 +18,7 @@
 package net.krotscheck.dfr.stream;
 
 import net.krotscheck.dfr.AbstractDataEncoder;
+import net.krotscheck.dfr.compress.ICompressionCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,13 +47,30 @@ public abstract class AbstractStreamEncoder
     private OutputStream outputStream;
 
     /**
-     * Get the destination for our output stream.
+     * The compression of the output stream, null if none.
+     */
+    private ICompressionCodec compression;
+
+    /**
+     * The compressing output stream, created when first asked for.
+     */
+    private OutputStream compressed;
+
+    /**
+     * Get the destination for our output stream. If a compression is set,
+     * the destination is wrapped in its compressing stream.
      *
      * @return The destination.
      */
     @Override
     public final OutputStream getOutputStream() {
-        return outputStream;
+        if (compression == null || outputStream == null) {
+            return outputStream;
+        }
+        if (compressed == null) {
+            compressed = compression.compress(outputStream);
+        }
+        return compressed;
     }
 
     /**
@@ -63,26 +81,74 @@ public abstract class AbstractStreamEncoder
     @Override
     public final void setOutputStream(final OutputStream stream) {
         this.outputStream = stream;
+        this.compressed = null;
+    }
+
+    /**
+     * Get the compression of the output stream.
+     *
+     * @return The codec, or null if the stream is not compressed.
+     */
+    @Override
+    public final ICompressionCodec getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the compression of the output stream.
+     *
+     * @param codec The codec, or null if the stream is not compressed.
+     */
+    @Override
+    public final void setCompression(final ICompressionCodec codec) {
+        this.compression = codec;
+        this.compressed = null;
     }
 
     /**
-     * Close the internal stream.
+     * Close the internal stream. A compressing stream is closed as well,
+     * which finishes the compressed format.
      */
     @Override
     public final void close() {
         dispose();
 
-        if (this.outputStream != null) {
+        OutputStream stream = this.outputStream;
+        if (this.compressed != null) {
+            stream = this.compressed;
+        }
+        if (stream != null) {
             try {
-                this.outputStream.close();
+                stream.close();
             } catch (IOException ioe) {
                 logger.error("Unable to close output stream.", ioe);
             } finally {
                 this.outputStream = null;
+                this.compressed = null;
             }
         }
     }
 
+    /**
+     * Finish and close the output stream, keeping the filters, settings and
+     * caches of the encoder, so that it can write to another.
+     */
+    @Override
+    public final void reset() {
+        close();
+    }
+
+    /**
+     * Reset the encoder, and write to another output stream.
+     *
+     * @param stream The output stream.
+     */
+    @Override
+    public final void reset(final OutputStream stream) {
+        reset();
+        setOutputStream(stream);
+    }
+
     /**
      * Protected close method, for child implementations.
      */
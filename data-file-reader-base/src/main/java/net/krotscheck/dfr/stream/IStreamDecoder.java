@@ -18,6 +18,7 @@
 package net.krotscheck.dfr.stream;
 
 import net.krotscheck.dfr.IDataDecoder;
+import net.krotscheck.dfr.compress.ICompressionCodec;
 
 import java.io.InputStream;
 
@@ -32,6 +33,7 @@ public interface IStreamDecoder
 
     /**
      * Retrieve the input stream from which the decoder is reading its data.
+     * If a compression is set, this is the decompressed stream.
      *
      * @return The input stream.
      */
@@ -44,4 +46,45 @@ public interface IStreamDecoder
      */
     void setInputStream(InputStream stream);
 
+    /**
+     * Reset the decoder, and read from another input stream. The default
+     * implementation resets the decoder, then sets the stream.
+     *
+     * @param stream The input stream.
+     */
+    default void reset(final InputStream stream) {
+        reset();
+        setInputStream(stream);
+    }
+
+    /**
+     * Retrieve the compression of the input stream.
+     *
+     * @return The codec, or null if the stream is not compressed. The
+     * default implementation supports no compression, and returns null.
+     */
+    default ICompressionCodec getCompression() {
+        return null;
+    }
+
+    /**
+     * Set the compression of the input stream, which is then decompressed
+     * as it is read. The compression is kept when the decoder is reset.
+     * <p>
+     * The default implementation supports no compression, and only accepts
+     * null.
+     *
+     * @param codec The codec, or null if the stream is not compressed.
+     * @throws UnsupportedOperationException Thrown if a codec is given,
+     *                                       but the decoder does not
+     *                                       support compression.
+     */
+    default void setCompression(final ICompressionCodec codec) {
+        if (codec != null) {
+            throw new UnsupportedOperationException(String.format(
+                    "%s does not support compression.",
+                    getClass().getName()));
+        }
+    }
+
 }
@@ -18,6 +18,7 @@
 package net.krotscheck.dfr.stream;
 
 import net.krotscheck.dfr.IDataEncoder;
+import net.krotscheck.dfr.compress.ICompressionCodec;
 
 import java.io.OutputStream;
 
@@ -31,6 +32,7 @@ public interface IStreamEncoder extends IDataEncoder {
 
     /**
      * Retrieve the output stream to which the encoder is writing its data.
+     * If a compression is set, this is the compressing stream.
      *
      * @return The stream.
      */
@@ -43,4 +45,46 @@ public interface IStreamEncoder extends IDataEncoder {
      */
     void setOutputStream(OutputStream stream);
 
+    /**
+     * Reset the encoder, and write to another output stream. The default
+     * implementation resets the encoder, then sets the stream.
+     *
+     * @param stream The stream.
+     */
+    default void reset(final OutputStream stream) {
+        reset();
+        setOutputStream(stream);
+    }
+
+    /**
+     * Retrieve the compression of the output stream.
+     *
+     * @return The codec, or null if the stream is not compressed. The
+     * default implementation supports no compression, and returns null.
+     */
+    default ICompressionCodec getCompression() {
+        return null;
+    }
+
+    /**
+     * Set the compression of the output stream, to which data is then
+     * written compressed. The compression is kept when the encoder is
+     * reset.
+     * <p>
+     * The default implementation supports no compression, and only accepts
+     * null.
+     *
+     * @param codec The codec, or null if the stream is not compressed.
+     * @throws UnsupportedOperationException Thrown if a codec is given,
+     *                                       but the encoder does not
+     *                                       support compression.
+     */
+    default void setCompression(final ICompressionCodec codec) {
+        if (codec != null) {
+            throw new UnsupportedOperationException(String.format(
+                    "%s does not support compression.",
+                    getClass().getName()));
+        }
+    }
+
 }
@@ -82,6 +82,27 @@ public abstract class AbstractTextDecoder
         dispose();
     }
 
+    /**
+     * Close the input reader and rewind the decoder, keeping its filters,
+     * settings and caches, so that it can read another reader.
+     */
+    @Override
+    public final void reset() {
+        close();
+        rewind();
+    }
+
+    /**
+     * Reset the decoder, and read from another reader.
+     *
+     * @param reader The input reader.
+     */
+    @Override
+    public final void reset(final Reader reader) {
+        reset();
+        setReader(reader);
+    }
+
     /**
      * Protected close method, for child implementations.
      */
@@ -83,6 +83,26 @@ public abstract class AbstractTextEncoder
         }
     }
 
+    /**
+     * Finish and close the writer, keeping the filters, settings and
+     * caches of the encoder, so that it can write to another.
+     */
+    @Override
+    public final void reset() {
+        close();
+    }
+
+    /**
+     * Reset the encoder, and write to another writer.
+     *
+     * @param writer The writer.
+     */
+    @Override
+    public final void reset(final Writer writer) {
+        reset();
+        setWriter(writer);
+    }
+
     /**
      * Protected close method, for child implementations.
      */
@@ -44,4 +44,15 @@ public interface ITextDecoder
      */
     void setReader(Reader reader);
 
+    /**
+     * Reset the decoder, and read from another reader. The default
+     * implementation resets the decoder, then sets the reader.
+     *
+     * @param reader The Reader.
+     */
+    default void reset(final Reader reader) {
+        reset();
+        setReader(reader);
+    }
+
 }
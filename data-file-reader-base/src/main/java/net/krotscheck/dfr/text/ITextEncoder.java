@@ -44,4 +44,15 @@ public interface ITextEncoder
      */
     void setWriter(Writer stream);
 
+    /**
+     * Reset the encoder, and write to another writer. The default
+     * implementation resets the encoder, then sets the writer.
+     *
+     * @param writer The writer.
+     */
+    default void reset(final Writer writer) {
+        reset();
+        setWriter(writer);
+    }
+
 }
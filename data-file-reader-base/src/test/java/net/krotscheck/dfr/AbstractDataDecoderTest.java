@@ -18,22 +18,28 @@
 package net.krotscheck.dfr;
 
 import net.krotscheck.test.dfr.TestDataDecoder;
+import net.krotscheck.test.dfr.TestDataFilter;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for the AbstractDataDecoder.
@@ -159,6 +165,103 @@ public final class AbstractDataDecoderTest {
         Assert.assertNull(i.next());
     }
 
+    /**
+     * Assert that batches read through all rows, honoring the row limit and
+     * applying filters.
+     *
+     * @throws Exception Should not throw an exception.
+     */
+    @Test
+    public void testNextBatch() throws Exception {
+        IDataDecoder decoder = new TestDataDecoder(testData);
+        decoder.setMaxRows((long) 25);
+
+        RowBatch batch = decoder.nextBatch(10);
+        Assert.assertEquals(10, batch.size());
+        Assert.assertEquals("column_one_row_0",
+                batch.getColumn("one").get(0));
+
+        Assert.assertEquals(10, decoder.nextBatch(10).size());
+        batch = decoder.nextBatch(10);
+        Assert.assertEquals(5, batch.size());
+        Assert.assertEquals("column_four_row_24",
+                batch.getColumn("four").get(4));
+        Assert.assertEquals(0, decoder.nextBatch(10).size());
+
+        // Filtered decoders go row by row.
+        decoder = new TestDataDecoder(testData);
+        decoder.addFilter(new TestDataFilter());
+        Assert.assertEquals(100, decoder.nextBatch(1000).size());
+        Assert.assertEquals(0, decoder.nextBatch(1000).size());
+    }
+
+    /**
+     * Assert that required columns are only reported when the first filter
+     * is a projection.
+     *
+     * @throws Exception Should not throw an exception.
+     */
+    @Test
+    public void testRequiredColumns() throws Exception {
+        Set<String> columns = Collections.singleton("two");
+        IProjectionFilter projection = mock(IProjectionFilter.class);
+        when(projection.getRequiredColumns()).thenReturn(columns);
+
+        TestDataDecoder decoder = new TestDataDecoder(testData);
+        Assert.assertNull(decoder.getRequiredColumns());
+
+        decoder.addFilter(projection);
+        decoder.addFilter(new TestDataFilter());
+        Assert.assertSame(columns, decoder.getRequiredColumns());
+
+        decoder = new TestDataDecoder(testData);
+        decoder.addFilter(new TestDataFilter());
+        decoder.addFilter(projection);
+        Assert.assertNull(decoder.getRequiredColumns());
+    }
+
+    /**
+     * Assert that predicates drop rows, that leading predicates are handed to
+     * the decoder, and that their columns are added to a projection.
+     *
+     * @throws Exception Should not throw an exception.
+     */
+    @Test
+    public void testRowPredicates() throws Exception {
+        RowPredicate predicate = RowPredicate.in("one",
+                Arrays.asList("column_one_row_3", "column_one_row_50"));
+        IProjectionFilter projection = mock(IProjectionFilter.class);
+        when(projection.getRequiredColumns())
+                .thenReturn(Collections.singleton("two"));
+
+        TestDataDecoder decoder = new TestDataDecoder(testData);
+        decoder.addFilter(predicate);
+        decoder.addFilter(projection);
+        decoder.addFilter(RowPredicate.isNotNull("four"));
+
+        Assert.assertEquals(Collections.singletonList(predicate),
+                decoder.getRowPredicates());
+        Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("two", "one")),
+                decoder.getRequiredColumns());
+
+        // Only rows that pass all predicates are returned.
+        decoder = new TestDataDecoder(testData);
+        decoder.addFilter(predicate);
+        decoder.addFilter(new TestDataFilter());
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals("column_two_row_3", iterator.next().get("two"));
+        Assert.assertEquals("column_two_row_50", iterator.next().get("two"));
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+        Assert.assertNull(decoder.getRequiredColumns());
+
+        // The row limit counts selected rows.
+        decoder.setMaxRows((long) 1);
+        Assert.assertEquals(1, decoder.nextBatch(10).size());
+        Assert.assertEquals(0, decoder.nextBatch(10).size());
+    }
+
     /**
      * Ensure the constructor is abstract.
      *
@@ -23,7 +23,9 @@ import java.lang.reflect.Constructor;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -67,4 +69,25 @@ public final class AbstractDataEncoderTest {
         verify(encoder, times(1)).writeToOutput(testMap);
     }
 
+    /**
+     * Assert that rows rejected by a predicate are not written.
+     *
+     * @throws Exception Any unexpected exception.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWriteRejected() throws Exception {
+        AbstractDataEncoder encoder = mock(AbstractDataEncoder.class);
+        encoder.addFilter(RowPredicate.equalTo("one", 1));
+
+        Map<String, Object> testMap = new LinkedHashMap<>();
+        testMap.put("one", 2);
+        encoder.write(testMap);
+        verify(encoder, never()).writeToOutput(anyMap());
+
+        testMap.put("one", 1);
+        encoder.write(testMap);
+        verify(encoder, times(1)).writeToOutput(testMap);
+    }
+
 }
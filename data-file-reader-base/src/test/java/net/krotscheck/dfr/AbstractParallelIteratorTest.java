@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Unit tests for the parallel iterator.
+ *
+ * @author Michael Krotscheck
+ */
+public final class AbstractParallelIteratorTest {
+
+    /**
+     * Assert that ordered rows come out in the order of their parts.
+     */
+    @Test
+    public void testOrdered() {
+        TestIterator iterator = new TestIterator(20, true, -1);
+        int count = 0;
+        while (iterator.hasNext()) {
+            Assert.assertEquals(count, iterator.next().get("id"));
+            count++;
+        }
+        Assert.assertEquals(20 * TestIterator.ROWS, count);
+        Assert.assertNull(iterator.next());
+        Assert.assertTrue(iterator.disposed);
+    }
+
+    /**
+     * Assert that unordered rows are all returned once.
+     */
+    @Test
+    public void testUnordered() {
+        TestIterator iterator = new TestIterator(20, false, -1);
+        Set<Object> seen = new HashSet<>();
+        while (iterator.hasNext()) {
+            Assert.assertTrue(seen.add(iterator.next().get("id")));
+        }
+        Assert.assertEquals(20 * TestIterator.ROWS, seen.size());
+    }
+
+    /**
+     * Assert that a failing part ends the iteration.
+     */
+    @Test
+    public void testFailure() {
+        TestIterator iterator = new TestIterator(20, true, 3);
+        int count = 0;
+        while (iterator.hasNext()) {
+            iterator.next();
+            count++;
+        }
+        Assert.assertEquals(3 * TestIterator.ROWS, count);
+        Assert.assertTrue(iterator.disposed);
+    }
+
+    /**
+     * Assert that closing the iterator disposes it once, and stops it.
+     */
+    @Test
+    public void testClose() {
+        TestIterator iterator = new TestIterator(20, true, -1);
+        iterator.close();
+        iterator.close();
+        Assert.assertTrue(iterator.disposed);
+        Assert.assertFalse(iterator.hasNext());
+        iterator.remove();
+    }
+
+    /**
+     * A parallel iterator over numbered rows.
+     */
+    private static final class TestIterator extends AbstractParallelIterator {
+
+        /**
+         * The number of rows per part.
+         */
+        private static final int ROWS = 10;
+
+        /**
+         * The number of parts.
+         */
+        private final int parts;
+
+        /**
+         * The part that fails, or -1.
+         */
+        private final int failing;
+
+        /**
+         * The number of parts handed out.
+         */
+        private int handedOut = 0;
+
+        /**
+         * Whether dispose was called.
+         */
+        private boolean disposed = false;
+
+        /**
+         * Create a new test iterator.
+         *
+         * @param partCount   The number of parts.
+         * @param keepOrder   Whether to keep rows in order.
+         * @param failingPart The part that fails, or -1.
+         */
+        TestIterator(final int partCount, final boolean keepOrder,
+                     final int failingPart) {
+            super(4, keepOrder);
+            this.parts = partCount;
+            this.failing = failingPart;
+        }
+
+        /**
+         * Hand out the next part.
+         *
+         * @return The part, or null.
+         */
+        @Override
+        protected Callable<List<Map<String, Object>>> nextPart() {
+            if (handedOut == parts) {
+                return null;
+            }
+            final int part = handedOut++;
+            return new Callable<List<Map<String, Object>>>() {
+                @Override
+                public List<Map<String, Object>> call() throws Exception {
+                    if (part == failing) {
+                        throw new IllegalStateException();
+                    }
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (int i = 0; i < ROWS; i++) {
+                        rows.add(Collections.<String, Object>singletonMap(
+                                "id", part * ROWS + i));
+                    }
+                    return rows;
+                }
+            };
+        }
+
+        /**
+         * Remember that this iterator was disposed.
+         */
+        @Override
+        protected void dispose() {
+            Assert.assertFalse(disposed);
+            disposed = true;
+        }
+    }
+}
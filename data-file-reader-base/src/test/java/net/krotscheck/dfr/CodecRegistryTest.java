@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr;
+
+import net.krotscheck.dfr.compress.GzipCodec;
+import net.krotscheck.dfr.stream.IStreamDecoder;
+import net.krotscheck.dfr.stream.IStreamEncoder;
+import net.krotscheck.dfr.text.ITextDecoder;
+import net.krotscheck.test.dfr.DirectStreamDecoder;
+import net.krotscheck.test.dfr.TestDataDecoder;
+import net.krotscheck.test.dfr.TestDataEncoder;
+import net.krotscheck.test.dfr.TestDataFilter;
+import net.krotscheck.test.dfr.TestStreamDecoder;
+import net.krotscheck.test.dfr.TestStreamEncoder;
+import net.krotscheck.test.dfr.TestTextDecoder;
+import net.krotscheck.test.dfr.TestTextEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the codec registry.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CodecRegistryTest {
+
+    /**
+     * Assert that the registries are built once, and hold the discovered
+     * codecs.
+     */
+    @Test
+    public void testRegistries() {
+        Assert.assertSame(CodecRegistry.decoders(),
+                CodecRegistry.decoders());
+        Assert.assertSame(CodecRegistry.encoders(),
+                CodecRegistry.encoders());
+        Assert.assertEquals(Arrays.asList("raw/mock", "stream/mock",
+                "text/mock"), new ArrayList<>(
+                CodecRegistry.decoders().getMimeTypes()));
+        Assert.assertTrue(CodecRegistry.encoders().isSupported("text/mock"));
+        Assert.assertFalse(CodecRegistry.encoders().isSupported("none"));
+    }
+
+    /**
+     * Assert that codecs are created new, by mime type and by variant.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testCreate() throws Exception {
+        IDataDecoder first = CodecRegistry.decoders().create("text/mock");
+        IDataDecoder second = CodecRegistry.decoders().create("text/mock");
+        Assert.assertTrue(first instanceof TestTextDecoder);
+        Assert.assertNotSame(first, second);
+
+        IStreamDecoder stream = CodecRegistry.decoders()
+                .create("stream/mock", IStreamDecoder.class);
+        Assert.assertTrue(stream instanceof TestStreamDecoder);
+        Assert.assertTrue(CodecRegistry.encoders().create("text/mock")
+                instanceof TestTextEncoder);
+    }
+
+    /**
+     * Assert that a missing mime type or variant is reported.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testNotFound() throws Exception {
+        try {
+            CodecRegistry.decoders().create("test/unavailable");
+            Assert.fail();
+        } catch (ClassNotFoundException e) {
+            Assert.assertEquals("IDataDecoder for mimeType "
+                    + "[test/unavailable] not found.", e.getMessage());
+        }
+        try {
+            CodecRegistry.encoders().create("text/mock",
+                    IStreamEncoder.class);
+            Assert.fail();
+        } catch (ClassNotFoundException e) {
+            Assert.assertEquals("IStreamEncoder for mimeType "
+                    + "[text/mock] not found.", e.getMessage());
+        }
+    }
+
+    /**
+     * Assert that the first codec of a mime type is its default, and that
+     * variants are found among the others.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testVariants() throws Exception {
+        List<CodecRegistry.Codec<IDataDecoder>> codecs = new ArrayList<>();
+        codecs.add(codec("mock", TestStreamDecoder.class));
+        codecs.add(codec("mock", TestTextDecoder.class));
+        codecs.add(codec("other", TestDataDecoder.class));
+        CodecRegistry<IDataDecoder> registry =
+                new CodecRegistry<>("IDataDecoder", codecs);
+
+        Assert.assertEquals(Arrays.asList("mock", "other"),
+                new ArrayList<>(registry.getMimeTypes()));
+        Assert.assertTrue(registry.create("mock")
+                instanceof TestStreamDecoder);
+        Assert.assertTrue(registry.create("mock", ITextDecoder.class)
+                instanceof TestTextDecoder);
+    }
+
+    /**
+     * Assert that factories are spun as lambdas and create new instances,
+     * and that they refuse classes without a public no-argument
+     * constructor.
+     */
+    @Test
+    public void testFactory() {
+        Supplier<IDataDecoder> factory =
+                CodecRegistry.factory(TestTextDecoder.class);
+        Assert.assertTrue(factory.getClass().isSynthetic());
+        IDataDecoder decoder = factory.get();
+        Assert.assertTrue(decoder instanceof TestTextDecoder);
+        Assert.assertNotSame(decoder, factory.get());
+
+        try {
+            CodecRegistry.factory(DecoderCache.class);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertNotNull(e.getCause());
+        }
+    }
+
+    /**
+     * Assert that codecs may be created from many threads at once.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testConcurrentCreate() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int created = 0;
+                        for (int j = 0; j < 1000; j++) {
+                            if (CodecRegistry.decoders()
+                                    .create("raw/mock") != null) {
+                                created++;
+                            }
+                        }
+                        return created;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                Assert.assertEquals(1000, (int) result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Assert that released codecs are reset and handed out again, and that
+     * variants are pooled apart.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testAcquire() throws Exception {
+        List<CodecRegistry.Codec<IDataDecoder>> codecs = new ArrayList<>();
+        codecs.add(codec("mock", TestStreamDecoder.class));
+        codecs.add(codec("mock", TestTextDecoder.class));
+        CodecRegistry<IDataDecoder> registry =
+                new CodecRegistry<>("IDataDecoder", codecs);
+
+        IStreamDecoder decoder = registry.acquire("mock",
+                IStreamDecoder.class);
+        Assert.assertNotSame(decoder, registry.acquire("mock"));
+        IDataFilter filter = new TestDataFilter();
+        decoder.addFilter(filter);
+        InputStream stream = mock(InputStream.class);
+        decoder.setInputStream(stream);
+
+        registry.release(decoder);
+        verify(stream).close();
+        Assert.assertNull(decoder.getInputStream());
+        Assert.assertEquals(1, codecs.get(0).getIdleCount());
+
+        Assert.assertTrue(registry.acquire("mock", ITextDecoder.class)
+                instanceof TestTextDecoder);
+        IDataDecoder pooled = registry.acquire("mock");
+        Assert.assertSame(decoder, pooled);
+        Assert.assertFalse(pooled.containsFilter(filter));
+        Assert.assertEquals(0, codecs.get(0).getIdleCount());
+        Assert.assertNotSame(decoder, registry.acquire("mock"));
+
+        try {
+            registry.acquire("none");
+            Assert.fail();
+        } catch (ClassNotFoundException e) {
+            Assert.assertEquals("IDataDecoder for mimeType [none] not found.",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Assert that the pool keeps no more than its size of idle codecs, and
+     * that codecs of unknown classes are reset but not pooled.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReleaseBounded() throws Exception {
+        List<CodecRegistry.Codec<IDataDecoder>> codecs = new ArrayList<>();
+        codecs.add(codec("mock", TestStreamDecoder.class));
+        CodecRegistry<IDataDecoder> registry =
+                new CodecRegistry<>("IDataDecoder", codecs);
+
+        List<IDataDecoder> borrowed = new ArrayList<>();
+        for (int i = 0; i < CodecRegistry.POOL_SIZE + 4; i++) {
+            borrowed.add(registry.acquire("mock"));
+        }
+        for (IDataDecoder decoder : borrowed) {
+            registry.release(decoder);
+        }
+        Assert.assertEquals(CodecRegistry.POOL_SIZE,
+                codecs.get(0).getIdleCount());
+
+        IDataDecoder unknown = mock(IDataDecoder.class);
+        registry.release(unknown);
+        verify(unknown).reset();
+        Assert.assertEquals(CodecRegistry.POOL_SIZE,
+                codecs.get(0).getIdleCount());
+
+        IDataEncoder encoder = mock(IDataEncoder.class);
+        CodecRegistry.encoders().release(encoder);
+        verify(encoder).reset();
+    }
+
+    /**
+     * Assert that a codec released by one caller reaches the next caller
+     * configured like a new codec, without the filters, row limit or
+     * compression of the first.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReleaseRestoresDefaults() throws Exception {
+        List<CodecRegistry.Codec<IDataDecoder>> codecs = new ArrayList<>();
+        codecs.add(codec("mock", TestStreamDecoder.class));
+        CodecRegistry<IDataDecoder> registry =
+                new CodecRegistry<>("IDataDecoder", codecs);
+
+        IStreamDecoder first = registry.acquire("mock",
+                IStreamDecoder.class);
+        first.addFilter(new TestDataFilter());
+        first.setMaxRows(1L);
+        first.setCompression(new GzipCodec());
+        registry.release(first);
+
+        IStreamDecoder second = registry.acquire("mock",
+                IStreamDecoder.class);
+        Assert.assertSame(first, second);
+        Assert.assertTrue(second.getFilters().isEmpty());
+        Assert.assertNull(second.getMaxRows());
+        Assert.assertNull(second.getCompression());
+
+        List<CodecRegistry.Codec<IDataEncoder>> encoders =
+                new ArrayList<>();
+        encoders.add(new CodecRegistry.Codec<IDataEncoder>("mock",
+                TestStreamEncoder.class, CodecRegistry.<IDataEncoder>factory(
+                TestStreamEncoder.class)));
+        CodecRegistry<IDataEncoder> encoderRegistry =
+                new CodecRegistry<>("IDataEncoder", encoders);
+        IStreamEncoder encoder = encoderRegistry.acquire("mock",
+                IStreamEncoder.class);
+        encoder.addFilter(new TestDataFilter());
+        encoder.setCompression(new GzipCodec());
+        encoderRegistry.release(encoder);
+        IStreamEncoder next = encoderRegistry.acquire("mock",
+                IStreamEncoder.class);
+        Assert.assertSame(encoder, next);
+        Assert.assertTrue(next.getFilters().isEmpty());
+        Assert.assertNull(next.getCompression());
+    }
+
+    /**
+     * Assert that codecs which implement the interfaces directly are not
+     * pooled, since their settings cannot be restored.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReleaseDirectCodec() throws Exception {
+        List<CodecRegistry.Codec<IDataDecoder>> codecs = new ArrayList<>();
+        codecs.add(new CodecRegistry.Codec<IDataDecoder>("direct",
+                DirectStreamDecoder.class, new Supplier<IDataDecoder>() {
+                    @Override
+                    public IDataDecoder get() {
+                        return new DirectStreamDecoder(
+                                new ArrayList<Map<String, Object>>());
+                    }
+                }));
+        CodecRegistry<IDataDecoder> registry =
+                new CodecRegistry<>("IDataDecoder", codecs);
+
+        DirectStreamDecoder decoder =
+                (DirectStreamDecoder) registry.acquire("direct");
+        registry.release(decoder);
+        Assert.assertTrue(decoder.isClosed());
+        Assert.assertEquals(0, codecs.get(0).getIdleCount());
+        Assert.assertNotSame(decoder, registry.acquire("direct"));
+    }
+
+    /**
+     * Assert that codecs may be borrowed and returned from many threads at
+     * once, and that no codec is handed to two threads at a time.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testConcurrentAcquire() throws Exception {
+        List<CodecRegistry.Codec<IDataDecoder>> codecs = new ArrayList<>();
+        codecs.add(codec("mock", TestStreamDecoder.class));
+        final CodecRegistry<IDataDecoder> registry =
+                new CodecRegistry<>("IDataDecoder", codecs);
+        final Set<IDataDecoder> inUse = Collections.newSetFromMap(
+                new ConcurrentHashMap<IDataDecoder, Boolean>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int exclusive = 0;
+                        for (int j = 0; j < 1000; j++) {
+                            IDataDecoder decoder = registry.acquire("mock");
+                            if (inUse.add(decoder)) {
+                                exclusive++;
+                            }
+                            inUse.remove(decoder);
+                            registry.release(decoder);
+                        }
+                        return exclusive;
+                    }
+                }));
+            }
+            for (Future<Integer> result : results) {
+                Assert.assertEquals(1000, (int) result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(codecs.get(0).getIdleCount() > 0);
+        Assert.assertTrue(codecs.get(0).getIdleCount()
+                <= CodecRegistry.POOL_SIZE);
+    }
+
+    /**
+     * Assert that the index is read by kind, with the mime types the build
+     * recorded for the annotated codecs.
+     */
+    @Test
+    public void testReadIndex() {
+        ClassLoader loader = getClass().getClassLoader();
+        Map<String, String> decoders =
+                CodecRegistry.readIndex(loader, CodecRegistry.DECODER);
+        Assert.assertEquals("text/mock",
+                decoders.get(TestTextDecoder.class.getName()));
+        Assert.assertEquals("raw/mock",
+                decoders.get(TestDataDecoder.class.getName()));
+        Assert.assertFalse(decoders.containsKey(
+                TestTextEncoder.class.getName()));
+
+        Map<String, String> encoders =
+                CodecRegistry.readIndex(loader, CodecRegistry.ENCODER);
+        Assert.assertEquals("text/mock",
+                encoders.get(TestTextEncoder.class.getName()));
+        Assert.assertFalse(encoders.containsKey(
+                TestDataEncoder.class.getName()));
+    }
+
+    /**
+     * Assert that codecs keep the order of the service files, and that
+     * codecs missing from the index are still found.
+     */
+    @Test
+    public void testDiscover() {
+        List<CodecRegistry.Codec<IDataEncoder>> codecs =
+                CodecRegistry.discover(IDataEncoder.class,
+                        CodecRegistry.ENCODER, getClass().getClassLoader());
+        List<Class<?>> types = new ArrayList<>();
+        for (CodecRegistry.Codec<IDataEncoder> codec : codecs) {
+            types.add(codec.getType());
+        }
+        Assert.assertEquals(Arrays.<Class<?>>asList(TestDataEncoder.class,
+                TestTextEncoder.class, TestStreamEncoder.class), types);
+        Assert.assertEquals("raw/mock", codecs.get(0).getMimeType());
+    }
+
+    /**
+     * Assert that every codec reports the mime type it is registered for.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testMimeTypesMatch() throws Exception {
+        for (String mimeType : CodecRegistry.decoders().getMimeTypes()) {
+            Assert.assertEquals(mimeType, CodecRegistry.decoders()
+                    .create(mimeType).getMimeType());
+        }
+        for (String mimeType : CodecRegistry.encoders().getMimeTypes()) {
+            Assert.assertEquals(mimeType, CodecRegistry.encoders()
+                    .create(mimeType).getMimeType());
+        }
+    }
+
+    /**
+     * Create a registry entry for a decoder class.
+     *
+     * @param mimeType The mime type.
+     * @param type     The decoder class.
+     * @return The entry.
+     */
+    private CodecRegistry.Codec<IDataDecoder> codec(
+            final String mimeType, final Class<? extends IDataDecoder> type) {
+        return new CodecRegistry.Codec<IDataDecoder>(mimeType, type,
+                CodecRegistry.<IDataDecoder>factory(type));
+    }
+}
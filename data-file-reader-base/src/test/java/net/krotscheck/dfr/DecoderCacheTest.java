@@ -17,6 +17,8 @@
 
 package net.krotscheck.dfr;
 
+import net.krotscheck.dfr.stream.IStreamDecoder;
+import net.krotscheck.dfr.text.ITextDecoder;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -57,6 +59,30 @@ public final class DecoderCacheTest {
         DecoderCache.getDecoder("test/unavailable");
     }
 
+    /**
+     * Assert that a decoder can be requested by its interface.
+     *
+     * @throws Exception Thrown when we can't find the decoder.
+     */
+    @Test
+    public void testVariant() throws Exception {
+        IStreamDecoder decoder =
+                DecoderCache.getDecoder("stream/mock", IStreamDecoder.class);
+        Assert.assertNotNull(decoder);
+        Assert.assertEquals("stream/mock", decoder.getMimeType());
+    }
+
+    /**
+     * Test that an exception is thrown when no decoder of the mime type
+     * implements the requested interface.
+     *
+     * @throws Exception Thrown when we can't find the decoder.
+     */
+    @Test(expected = ClassNotFoundException.class)
+    public void testNoVariant() throws Exception {
+        DecoderCache.getDecoder("stream/mock", ITextDecoder.class);
+    }
+
     /**
      * Assert that the constructor is private.
      *
@@ -17,6 +17,8 @@
 
 package net.krotscheck.dfr;
 
+import net.krotscheck.dfr.stream.IStreamEncoder;
+import net.krotscheck.dfr.text.ITextEncoder;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -57,6 +59,30 @@ public final class EncoderCacheTest {
         EncoderCache.getEncoder("test/unavailable");
     }
 
+    /**
+     * Assert that a encoder can be requested by its interface.
+     *
+     * @throws Exception Thrown when we can't find the encoder.
+     */
+    @Test
+    public void testVariant() throws Exception {
+        IStreamEncoder encoder =
+                EncoderCache.getEncoder("stream/mock", IStreamEncoder.class);
+        Assert.assertNotNull(encoder);
+        Assert.assertEquals("stream/mock", encoder.getMimeType());
+    }
+
+    /**
+     * Test that an exception is thrown when no encoder of the mime type
+     * implements the requested interface.
+     *
+     * @throws Exception Thrown when we can't find the encoder.
+     */
+    @Test(expected = ClassNotFoundException.class)
+    public void testNoVariant() throws Exception {
+        EncoderCache.getEncoder("stream/mock", ITextEncoder.class);
+    }
+
     /**
      * Assert that the constructor is private.
      *
@@ -17,6 +17,7 @@
 
 package net.krotscheck.dfr;
 
+import net.krotscheck.test.dfr.TestDataDecoder;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -29,6 +30,8 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -158,6 +161,132 @@ public final class FileStreamConverterTest {
         }
     }
 
+    /**
+     * Test that the converter and encoder filters run as one chain, passing
+     * the decoder's rows along without copying them.
+     *
+     * @throws java.lang.Exception Unexpected Exception
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFusedConversion() throws Exception {
+        IDataDecoder decoder = new TestDataDecoder(data);
+        CapturingEncoder encoder = new CapturingEncoder();
+        IDataFilter converterFilter = mock(IDataFilter.class);
+        IDataFilter encoderFilter = mock(IDataFilter.class);
+        when(converterFilter.apply(anyMap())).then(returnsFirstArg());
+        when(encoderFilter.apply(anyMap())).then(returnsFirstArg());
+
+        FileStreamConverter fsc = new FileStreamConverter(decoder, encoder);
+        fsc.addFilter(converterFilter);
+        encoder.addFilter(RowPredicate.notEqualTo("foo", 3));
+        encoder.addFilter(encoderFilter);
+        fsc.run();
+
+        ArgumentCaptor<Map> converterCaptor =
+                ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Map> encoderCaptor = ArgumentCaptor.forClass(Map.class);
+        verify(converterFilter, times(10)).apply(converterCaptor.capture());
+        verify(encoderFilter, times(9)).apply(encoderCaptor.capture());
+
+        List<Map> converted = converterCaptor.getAllValues();
+        List<Map> encoded = encoderCaptor.getAllValues();
+        Assert.assertEquals(9, encoder.rows.size());
+        for (int i = 0; i < encoder.rows.size(); i++) {
+            int source = i;
+            if (i >= 3) {
+                source = i + 1;
+            }
+            Assert.assertSame(converted.get(source), encoded.get(i));
+            Assert.assertSame(encoded.get(i), encoder.rows.get(i));
+            Assert.assertEquals(data.get(source), encoder.rows.get(i));
+        }
+    }
+
+    /**
+     * Test that a pipelined conversion writes every row that passes the
+     * filters, in the order it was decoded.
+     *
+     * @throws java.lang.Exception Unexpected Exception
+     */
+    @Test
+    public void testPipelinedConversion() throws Exception {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("foo", i);
+            rows.add(row);
+        }
+        IDataDecoder decoder = new TestDataDecoder(rows);
+        CapturingEncoder encoder = new CapturingEncoder();
+
+        FileStreamConverter fsc = new FileStreamConverter(decoder, encoder);
+        fsc.setPipelined(true);
+        fsc.setFilterThreads(4);
+        fsc.addFilter(RowPredicate.notEqualTo("foo", 10));
+        encoder.addFilter(RowPredicate.lessThan("foo", 4000));
+        Assert.assertTrue(fsc.isPipelined());
+        Assert.assertEquals(4, fsc.getFilterThreads());
+        fsc.run();
+
+        Assert.assertEquals(3999, encoder.rows.size());
+        for (int i = 0; i < encoder.rows.size(); i++) {
+            int expected = i;
+            if (i >= 10) {
+                expected = i + 1;
+            }
+            Assert.assertEquals(rows.get(expected), encoder.rows.get(i));
+        }
+    }
+
+    /**
+     * Test that a pipelined conversion without filters writes every row.
+     *
+     * @throws java.lang.Exception Unexpected Exception
+     */
+    @Test
+    public void testPipelinedUnfiltered() throws Exception {
+        IDataDecoder decoder = new TestDataDecoder(data);
+        CapturingEncoder encoder = new CapturingEncoder();
+
+        FileStreamConverter fsc = new FileStreamConverter(decoder, encoder);
+        fsc.setPipelined(true);
+        fsc.run();
+
+        Assert.assertEquals(data, encoder.rows);
+    }
+
+    /**
+     * Test that an error in a filtering thread stops the pipeline and is
+     * rethrown to the caller.
+     *
+     * @throws java.lang.Exception Unexpected Exception
+     */
+    @Test(expected = IllegalStateException.class)
+    @SuppressWarnings("unchecked")
+    public void testPipelinedFailure() throws Exception {
+        IDataDecoder decoder = new TestDataDecoder(data);
+        CapturingEncoder encoder = new CapturingEncoder();
+        IDataFilter filter = mock(IDataFilter.class);
+        when(filter.apply(anyMap())).thenThrow(new IllegalStateException());
+
+        FileStreamConverter fsc = new FileStreamConverter(decoder, encoder);
+        fsc.setPipelined(true);
+        fsc.setFilterThreads(2);
+        fsc.addFilter(filter);
+        fsc.run();
+    }
+
+    /**
+     * Test that the number of filter threads must be positive.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFilterThreads() {
+        IDataDecoder decoder = mock(IDataDecoder.class);
+        IDataEncoder encoder = mock(IDataEncoder.class);
+        new FileStreamConverter(decoder, encoder).setFilterThreads(0);
+    }
+
     /**
      * Test close with exception.
      *
@@ -257,4 +386,51 @@ public final class FileStreamConverterTest {
             // Do nothing.
         }
     }
+
+    /**
+     * An encoder that remembers every row written to its output.
+     */
+    private static final class CapturingEncoder extends AbstractDataEncoder {
+
+        /**
+         * The rows written so far.
+         */
+        private final List<Map<String, Object>> rows = new ArrayList<>();
+
+        /**
+         * Mock mimetype.
+         *
+         * @return "raw/mock"
+         */
+        @Override
+        public String getMimeType() {
+            return "raw/mock";
+        }
+
+        /**
+         * Remember the row.
+         *
+         * @param row A row of data.
+         */
+        @Override
+        protected void writeToOutput(final Map<String, Object> row) {
+            rows.add(row);
+        }
+
+        /**
+         * Close this encoder.
+         */
+        @Override
+        public void close() {
+
+        }
+
+        /**
+         * Reset this encoder.
+         */
+        @Override
+        public void reset() {
+
+        }
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import net.krotscheck.test.dfr.TestDataFilter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for the filter chain.
+ *
+ * @author Michael Krotscheck
+ */
+public final class FilterChainTest {
+
+    /**
+     * Assert that an empty chain passes rows through without copying them.
+     */
+    @Test
+    public void testEmpty() {
+        FilterChain chain =
+                FilterChain.of(Collections.<IDataFilter>emptyList());
+        Map<String, Object> row = new LinkedHashMap<>();
+
+        Assert.assertSame(FilterChain.EMPTY, chain);
+        Assert.assertTrue(chain.isEmpty());
+        Assert.assertFalse(chain.isSelective());
+        Assert.assertSame(row, chain.apply(row, false));
+        Assert.assertSame(chain, chain.then(FilterChain.EMPTY));
+    }
+
+    /**
+     * Assert that rows are only copied if the caller does not own them.
+     */
+    @Test
+    public void testOwnership() {
+        FilterChain chain = FilterChain.of(
+                Collections.<IDataFilter>singletonList(
+                        RowPredicate.isNotNull("one")));
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("one", 1);
+
+        Map<String, Object> copied = chain.apply(row, false);
+        Assert.assertNotSame(row, copied);
+        Assert.assertEquals(row, copied);
+        Assert.assertSame(row, chain.apply(row, true));
+    }
+
+    /**
+     * Assert that fused chains run all filters in order, and stop at a
+     * rejecting predicate.
+     */
+    @Test
+    public void testThen() {
+        FilterChain first = FilterChain.of(Arrays.<IDataFilter>asList(
+                new TestDataFilter()));
+        FilterChain second = FilterChain.of(Arrays.<IDataFilter>asList(
+                RowPredicate.greaterThan("one", 1)));
+        FilterChain fused = first.then(second);
+
+        Assert.assertFalse(first.isSelective());
+        Assert.assertTrue(fused.isSelective());
+        Assert.assertSame(second, FilterChain.EMPTY.then(second));
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("one", 1);
+        Assert.assertNull(fused.apply(row, true));
+
+        row.put("one", 2);
+        Map<String, Object> result = fused.apply(row, true);
+        Assert.assertNotSame(row, result);
+        Assert.assertEquals(row, result);
+    }
+}
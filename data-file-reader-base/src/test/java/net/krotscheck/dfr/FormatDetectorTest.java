@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Unit tests for the format detector.
+ *
+ * @author Michael Krotscheck
+ */
+public final class FormatDetectorTest {
+
+    /**
+     * Assert that text formats are told apart by their first characters.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testText() throws Exception {
+        Assert.assertEquals(FormatDetector.JSON, detect("[{\"a\":1}]"));
+        Assert.assertEquals(FormatDetector.JSON, detect(" \r\n\t[]"));
+        Assert.assertEquals(FormatDetector.JSON, detect("﻿[{}]"));
+        Assert.assertEquals(FormatDetector.NDJSON,
+                detect("{\"a\":1}\n{\"a\":2}\n"));
+        Assert.assertEquals(FormatDetector.CSV, detect("a,b,c\n1,2,3\n"));
+        Assert.assertEquals(FormatDetector.CSV, detect("x^y\n"));
+        Assert.assertEquals(FormatDetector.CSV, detect("BZh9,name\n"));
+        Assert.assertNull(detect(""));
+        Assert.assertNull(detect("a,b\u0001c"));
+    }
+
+    /**
+     * Assert that BSON is recognized by its header, whether or not the
+     * length of the document is known.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testBson() throws Exception {
+        Assert.assertEquals(FormatDetector.BSON, detect(new byte[]{
+                0, 0, 0, 0, 0x03, '0', 0, 5, 0, 0, 0, 0}));
+        Assert.assertEquals(FormatDetector.BSON, detect(new byte[]{
+                16, 0, 0, 0, 0x02, 'a', 0, 2, 0, 0, 0, 'b', 0, 0}));
+        Assert.assertEquals(FormatDetector.BSON, detect(new byte[]{
+                5, 0, 0, 0, 0}));
+        Assert.assertNull(detect(new byte[]{3, 0, 0, 0, 0x02, 'a', 0}));
+        Assert.assertNull(detect(new byte[]{16, 0, 0, 0, 0x40, 'a', 0}));
+        Assert.assertNull(detect(new byte[]{16, 0, 0, 0, 0x02, 'a', 'b'}));
+    }
+
+    /**
+     * Assert that compressed formats are recognized by their magic numbers.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testCompression() throws Exception {
+        byte[] text = "a,b\n1,2\n".getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gzip), text);
+        ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+        write(new DeflaterOutputStream(zlib), text);
+
+        Assert.assertEquals(FormatDetector.GZIP, detect(gzip.toByteArray()));
+        Assert.assertEquals(FormatDetector.ZLIB, detect(zlib.toByteArray()));
+        Assert.assertEquals(FormatDetector.XZ, detect(new byte[]{
+                (byte) 0xFD, '7', 'z', 'X', 'Z', 0, 0}));
+        Assert.assertEquals(FormatDetector.ZSTD, detect(new byte[]{
+                0x28, (byte) 0xB5, 0x2F, (byte) 0xFD, 0}));
+        Assert.assertEquals(FormatDetector.LZ4, detect(new byte[]{
+                0x04, 0x22, 0x4D, 0x18, 0}));
+        Assert.assertEquals(FormatDetector.ZIP, detect(new byte[]{
+                'P', 'K', 0x03, 0x04, 0}));
+        Assert.assertEquals(FormatDetector.BZIP2, detect(new byte[]{
+                'B', 'Z', 'h', '9', 0x31, 0x41, 0x59, 0x26, 0x53, 0x59}));
+        Assert.assertTrue(FormatDetector.isCompression(FormatDetector.GZIP));
+        Assert.assertFalse(FormatDetector.isCompression(FormatDetector.CSV));
+        Assert.assertFalse(FormatDetector.isCompression(null));
+    }
+
+    /**
+     * Assert that detection does not consume the stream, and reads no more
+     * than the prefix.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testDoesNotConsume() throws Exception {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            builder.append("{\"a\":1},");
+        }
+        byte[] bytes = builder.append("{}]").toString()
+                .getBytes(StandardCharsets.UTF_8);
+        ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+        Assert.assertEquals(FormatDetector.JSON,
+                FormatDetector.detect(stream));
+        Assert.assertEquals(bytes.length, stream.available());
+        Assert.assertEquals('[', stream.read());
+    }
+
+    /**
+     * Assert that streams without mark and reset are refused by detection.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDetectUnmarkable() throws Exception {
+        FormatDetector.detect(unmarkable("a,b\n".getBytes(
+                StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Assert that decoders are not created for unknown or unsupported
+     * formats, or for formats without a decoder.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testCreateDecoderFails() throws Exception {
+        try {
+            FormatDetector.createDecoder(unmarkable(new byte[0]));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(
+                    "Unable to detect the format of the stream [null].",
+                    e.getMessage());
+        }
+        try {
+            FormatDetector.createDecoder(new ByteArrayInputStream(new byte[]{
+                    (byte) 0xFD, '7', 'z', 'X', 'Z', 0, 0}));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(
+                    "Unsupported compression [application/x-xz].",
+                    e.getMessage());
+        }
+
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gzip),
+                "[{}]".getBytes(StandardCharsets.UTF_8));
+        try {
+            FormatDetector.createDecoder(unmarkable(gzip.toByteArray()));
+            Assert.fail();
+        } catch (ClassNotFoundException e) {
+            Assert.assertEquals(
+                    "ITextDecoder for mimeType [application/json] not found.",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Detect the format of a string.
+     *
+     * @param text The string.
+     * @return The mime type.
+     * @throws IOException Unexpected exceptions.
+     */
+    private static String detect(final String text) throws IOException {
+        return detect(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Detect the format of bytes.
+     *
+     * @param bytes The bytes.
+     * @return The mime type.
+     * @throws IOException Unexpected exceptions.
+     */
+    private static String detect(final byte[] bytes) throws IOException {
+        return FormatDetector.detect(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Write and close a stream.
+     *
+     * @param stream The stream.
+     * @param bytes  The bytes to write.
+     * @throws IOException Unexpected exceptions.
+     */
+    private static void write(final OutputStream stream, final byte[] bytes)
+            throws IOException {
+        stream.write(bytes);
+        stream.close();
+    }
+
+    /**
+     * Wrap bytes in a stream that does not support mark and reset.
+     *
+     * @param bytes The bytes.
+     * @return The stream.
+     */
+    private static InputStream unmarkable(final byte[] bytes) {
+        return new ByteArrayInputStream(bytes) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+}
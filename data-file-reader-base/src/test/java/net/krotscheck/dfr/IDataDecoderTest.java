@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import net.krotscheck.dfr.compress.GzipCodec;
+import net.krotscheck.test.dfr.DirectStreamDecoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the default methods of the decoder interface.
+ *
+ * @author Michael Krotscheck
+ */
+public final class IDataDecoderTest {
+
+    /**
+     * Create test rows.
+     *
+     * @param count The number of rows.
+     * @return The rows.
+     */
+    private static List<Map<String, Object>> rows(final int count) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("id", i);
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * Assert that a decoder which implements the interface directly reads
+     * batches from its iterator, each continuing where the last ended.
+     */
+    @Test
+    public void testDefaultNextBatch() {
+        IDataDecoder decoder = new DirectStreamDecoder(rows(25));
+
+        RowBatch batch = decoder.nextBatch(10);
+        Assert.assertEquals(10, batch.size());
+        Assert.assertEquals(0, batch.getRow(0).get("id"));
+        batch = decoder.nextBatch(10);
+        Assert.assertEquals(10, batch.size());
+        Assert.assertEquals(10, batch.getRow(0).get("id"));
+        Assert.assertEquals(5, decoder.nextBatch(10).size());
+        Assert.assertEquals(0, decoder.nextBatch(10).size());
+    }
+
+    /**
+     * Assert that the default reset closes the stream, and that the default
+     * reset with a stream then reads from the new one.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testDefaultReset() throws Exception {
+        DirectStreamDecoder decoder = new DirectStreamDecoder(rows(1));
+        InputStream first = mock(InputStream.class);
+        decoder.setInputStream(first);
+
+        InputStream second = mock(InputStream.class);
+        decoder.reset(second);
+        verify(first).close();
+        Assert.assertSame(second, decoder.getInputStream());
+
+        decoder.reset();
+        verify(second).close();
+        Assert.assertNull(decoder.getInputStream());
+        Assert.assertTrue(decoder.isClosed());
+    }
+
+    /**
+     * Assert that the default reset reports a source that cannot be closed.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test(expected = UncheckedIOException.class)
+    public void testDefaultResetFails() throws Exception {
+        DirectStreamDecoder decoder = new DirectStreamDecoder(rows(1));
+        InputStream stream = mock(InputStream.class);
+        doThrow(IOException.class).when(stream).close();
+        decoder.setInputStream(stream);
+        decoder.reset();
+    }
+
+    /**
+     * Assert that a decoder without compression support reports none, and
+     * refuses a codec.
+     */
+    @Test
+    public void testDefaultCompression() {
+        DirectStreamDecoder decoder = new DirectStreamDecoder(rows(1));
+        Assert.assertNull(decoder.getCompression());
+        decoder.setCompression(null);
+        try {
+            decoder.setCompression(new GzipCodec());
+            Assert.fail("Expected an exception.");
+        } catch (UnsupportedOperationException uoe) {
+            Assert.assertNull(decoder.getCompression());
+        }
+    }
+}
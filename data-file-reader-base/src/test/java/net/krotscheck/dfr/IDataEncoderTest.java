@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import net.krotscheck.dfr.compress.GzipCodec;
+import net.krotscheck.test.dfr.DirectStreamEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.OutputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the default methods of the encoder interface.
+ *
+ * @author Michael Krotscheck
+ */
+public final class IDataEncoderTest {
+
+    /**
+     * Assert that the default reset closes the stream, and that the default
+     * reset with a stream then writes to the new one.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testDefaultReset() throws Exception {
+        DirectStreamEncoder encoder = new DirectStreamEncoder();
+        OutputStream first = mock(OutputStream.class);
+        encoder.setOutputStream(first);
+
+        OutputStream second = mock(OutputStream.class);
+        encoder.reset(second);
+        verify(first).close();
+        Assert.assertSame(second, encoder.getOutputStream());
+
+        encoder.reset();
+        verify(second).close();
+        Assert.assertNull(encoder.getOutputStream());
+    }
+
+    /**
+     * Assert that a encoder without compression support reports none, and
+     * refuses a codec.
+     */
+    @Test
+    public void testDefaultCompression() {
+        DirectStreamEncoder encoder = new DirectStreamEncoder();
+        Assert.assertNull(encoder.getCompression());
+        encoder.setCompression(null);
+        try {
+            encoder.setCompression(new GzipCodec());
+            Assert.fail("Expected an exception.");
+        } catch (UnsupportedOperationException uoe) {
+            Assert.assertNull(encoder.getCompression());
+        }
+    }
+}
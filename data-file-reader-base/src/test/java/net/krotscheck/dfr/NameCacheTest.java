@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for the name cache.
+ *
+ * @author Michael Krotscheck
+ */
+public final class NameCacheTest {
+
+    /**
+     * Assert that names are encoded once, and the names of the last schema
+     * are reused.
+     */
+    @Test
+    public void testNames() {
+        CountingCache cache = new CountingCache();
+        Assert.assertEquals("<a>", cache.name("a"));
+        Assert.assertSame(cache.name("a"), cache.name("a"));
+        Assert.assertEquals(1, cache.getEncoded());
+
+        RowSchema schema = new RowSchema(Arrays.asList("a", "b"));
+        String[] names = cache.names(schema);
+        Assert.assertArrayEquals(new String[]{"<a>", "<b>"}, names);
+        Assert.assertSame(names, cache.names(schema));
+        Assert.assertNotSame(names,
+                cache.names(new RowSchema(Arrays.asList("a", "b"))));
+        Assert.assertEquals(2, cache.getEncoded());
+    }
+
+    /**
+     * Assert that only a bounded number of names is kept.
+     */
+    @Test
+    public void testMaxNames() {
+        CountingCache cache = new CountingCache();
+        for (int i = 0; i < NameCache.MAX_NAMES; i++) {
+            cache.name("column_" + i);
+        }
+        cache.name("extra");
+        cache.name("extra");
+        cache.name("column_0");
+        Assert.assertEquals(NameCache.MAX_NAMES + 2, cache.getEncoded());
+    }
+
+    /**
+     * A cache that counts the names it encodes.
+     */
+    private static final class CountingCache extends NameCache<String> {
+
+        /**
+         * The number of names encoded.
+         */
+        private int encoded = 0;
+
+        /**
+         * Get the number of names encoded.
+         *
+         * @return The number of names encoded.
+         */
+        int getEncoded() {
+            return encoded;
+        }
+
+        /**
+         * Encode a name by wrapping it in brackets.
+         *
+         * @param name The name.
+         * @return The encoded name.
+         */
+        @Override
+        protected String encode(final String name) {
+            encoded++;
+            return "<" + name + ">";
+        }
+
+        /**
+         * Create an array of names.
+         *
+         * @param size The size of the array.
+         * @return The array.
+         */
+        @Override
+        protected String[] newArray(final int size) {
+            return new String[size];
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit tests for the predicate set.
+ *
+ * @author Michael Krotscheck
+ */
+public final class PredicateSetTest {
+
+    /**
+     * Assert that predicates are grouped into one slot per column.
+     */
+    @Test
+    public void testSlots() {
+        PredicateSet set = new PredicateSet(Arrays.asList(
+                RowPredicate.greaterThan("a", 1),
+                RowPredicate.equalTo("b", "x"),
+                RowPredicate.lessThan("a", 5)));
+
+        Assert.assertFalse(set.isEmpty());
+        Assert.assertEquals(0, set.slot("a"));
+        Assert.assertEquals(1, set.slot("b"));
+        Assert.assertEquals(-1, set.slot("c"));
+
+        Assert.assertTrue(set.test(0, 3L));
+        Assert.assertFalse(set.test(0, 5L));
+        Assert.assertFalse(set.test(0, 0.5));
+        Assert.assertTrue(set.test(0, "4"));
+        Assert.assertTrue(set.test(1, "x"));
+        Assert.assertFalse(set.test(1, true));
+        Assert.assertFalse(set.test(1, (Object) null));
+    }
+
+    /**
+     * Assert that columns a row did not contain are tested as nulls.
+     */
+    @Test
+    public void testMissing() {
+        PredicateSet set = new PredicateSet(Arrays.asList(
+                RowPredicate.isNotNull("a"),
+                RowPredicate.isNull("b")));
+
+        set.reset();
+        Assert.assertTrue(set.test(0, 1L));
+        Assert.assertTrue(set.testMissing());
+
+        set.reset();
+        Assert.assertFalse(set.testMissing());
+
+        set.reset();
+        set.defer(0);
+        Assert.assertTrue(set.testMissing());
+    }
+
+    /**
+     * Assert that an empty set selects everything.
+     */
+    @Test
+    public void testEmpty() {
+        PredicateSet set =
+                new PredicateSet(Collections.<RowPredicate>emptyList());
+
+        Assert.assertTrue(set.isEmpty());
+        Assert.assertEquals(-1, set.slot("a"));
+        Assert.assertTrue(set.testMissing());
+    }
+}
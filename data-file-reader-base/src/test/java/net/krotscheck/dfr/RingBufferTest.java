@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the single producer, single consumer ring buffer.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RingBufferTest {
+
+    /**
+     * Assert that the capacity is rounded up to a power of two.
+     */
+    @Test
+    public void testCapacity() {
+        Assert.assertEquals(1, new RingBuffer<String>(1).capacity());
+        Assert.assertEquals(8, new RingBuffer<String>(5).capacity());
+        Assert.assertEquals(16, new RingBuffer<String>(16).capacity());
+    }
+
+    /**
+     * Assert that a capacity below one is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new RingBuffer<String>(0);
+    }
+
+    /**
+     * Assert that elements come out in order, that a full buffer refuses
+     * elements, and that the buffer wraps around.
+     */
+    @Test
+    public void testOfferPoll() {
+        RingBuffer<Integer> ring = new RingBuffer<>(4);
+        Assert.assertNull(ring.poll());
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(ring.offer(i));
+            }
+            Assert.assertFalse(ring.offer(4));
+            for (int i = 0; i < 4; i++) {
+                Assert.assertEquals(Integer.valueOf(i), ring.poll());
+            }
+            Assert.assertNull(ring.poll());
+        }
+    }
+
+    /**
+     * Assert that a producer and a consumer on separate threads see every
+     * element, in order.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testConcurrent() throws Exception {
+        final RingBuffer<Integer> ring = new RingBuffer<>(8);
+        final int count = 100000;
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    while (!ring.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            }
+        });
+        producer.start();
+
+        for (int i = 0; i < count; i++) {
+            Integer value = ring.poll();
+            while (value == null) {
+                Thread.yield();
+                value = ring.poll();
+            }
+            Assert.assertEquals(i, value.intValue());
+        }
+        producer.join();
+        Assert.assertNull(ring.poll());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for columnar row batches.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowBatchTest {
+
+    /**
+     * Assert that rows of one schema land in primitive columns.
+     */
+    @Test
+    public void testTypedColumns() {
+        RowBuilder rows = new RowBuilder();
+        RowBatch.Builder builder = new RowBatch.Builder(2);
+
+        for (int i = 0; i < 5; i++) {
+            rows.addInt("int", i);
+            rows.addDouble("double", i / 2.0);
+            rows.addBoolean("bool", i % 2 == 0);
+            rows.add("string", "row " + i);
+            rows.appendTo(builder);
+        }
+        RowBatch batch = builder.build();
+
+        Assert.assertEquals(5, batch.size());
+        Assert.assertEquals(4, batch.getSchema().size());
+
+        ColumnVector ints = batch.getColumn("int");
+        Assert.assertEquals(Type.INTEGER, ints.getType());
+        Assert.assertEquals(4, ints.getLongs()[4]);
+        Assert.assertEquals(3, ints.get(3));
+
+        ColumnVector doubles = batch.getColumn(1);
+        Assert.assertEquals(Type.DOUBLE, doubles.getType());
+        Assert.assertEquals(1.5, doubles.getDoubles()[3], 0);
+
+        ColumnVector bools = batch.getColumn("bool");
+        Assert.assertEquals(Type.BOOLEAN, bools.getType());
+        Assert.assertTrue(bools.getBoolean(0));
+        Assert.assertFalse(bools.getBoolean(1));
+
+        ColumnVector strings = batch.getColumn("string");
+        Assert.assertEquals(Type.STRING, strings.getType());
+        Assert.assertEquals("row 2", strings.getObjects()[2]);
+
+        Assert.assertNull(batch.getColumn("missing"));
+
+        Row row = batch.getRow(2);
+        Assert.assertEquals(2, row.get("int"));
+        Assert.assertEquals(1.0, row.get("double"));
+        Assert.assertEquals(true, row.get("bool"));
+        Assert.assertEquals("row 2", row.get("string"));
+    }
+
+    /**
+     * Assert that differing layouts merge into a union schema, and that
+     * mixed numeric types widen.
+     */
+    @Test
+    public void testUnionSchema() {
+        RowBatch.Builder builder = new RowBatch.Builder(4);
+
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("a", 1);
+        first.put("b", "x");
+        builder.add(first);
+
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("c", true);
+        second.put("a", 2L);
+        builder.add(second);
+
+        Map<String, Object> third = new LinkedHashMap<>();
+        third.put("a", 2.5f);
+        third.put("c", 1);
+        builder.add(third);
+
+        RowBatch batch = builder.build();
+        Assert.assertEquals(3, batch.size());
+        Assert.assertEquals("[a, b, c]", batch.getSchema().toString());
+
+        ColumnVector a = batch.getColumn("a");
+        Assert.assertEquals(Type.DOUBLE, a.getType());
+        Assert.assertEquals(1.0, a.getDouble(0), 0);
+        Assert.assertEquals(2, a.getLong(1));
+        Assert.assertEquals(2.5, a.getDouble(2), 0);
+
+        ColumnVector b = batch.getColumn("b");
+        Assert.assertFalse(b.isNull(0));
+        Assert.assertTrue(b.isNull(1));
+        Assert.assertNull(b.get(2));
+
+        // Booleans mixed with numbers fall back to objects.
+        ColumnVector c = batch.getColumn("c");
+        Assert.assertEquals(Type.STRING, c.getType());
+        Assert.assertTrue(c.isNull(0));
+        Assert.assertEquals(true, c.get(1));
+        Assert.assertEquals(1, c.get(2));
+        Assert.assertEquals(1, c.getLong(2));
+        Assert.assertTrue(c.getBoolean(1));
+    }
+
+    /**
+     * Assert that aligned value arrays, short arrays and absent row cells
+     * are all handled.
+     */
+    @Test
+    public void testAppendArrays() {
+        RowSchema schema = new RowSchema(new String[]{"a", "b"});
+        RowBatch.Builder builder = new RowBatch.Builder(1);
+
+        builder.append(schema, new Object[]{"1", "2"});
+        builder.append(schema, new Object[]{"3"});
+
+        Row row = new Row(schema, new Object[]{"5", "6"});
+        row.remove("a");
+        builder.add(row);
+
+        RowBatch batch = builder.build();
+        Assert.assertEquals(3, batch.size());
+        Assert.assertEquals("3", batch.getColumn(0).get(1));
+        Assert.assertTrue(batch.getColumn(1).isNull(1));
+        Assert.assertTrue(batch.getColumn(0).isNull(2));
+        Assert.assertEquals("6", batch.getColumn(1).get(2));
+        Assert.assertEquals(0, batch.getColumn(1).getLong(0));
+    }
+
+    /**
+     * Assert that an empty builder yields an empty batch.
+     */
+    @Test
+    public void testEmpty() {
+        RowBatch batch = new RowBatch.Builder(10).build();
+        Assert.assertEquals(0, batch.size());
+        Assert.assertEquals(0, batch.getSchema().size());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for the row builder.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowBuilderTest {
+
+    /**
+     * Assert that rows with identical layouts share a schema.
+     */
+    @Test
+    public void testSchemaReuse() {
+        RowBuilder builder = new RowBuilder();
+
+        builder.add("one", 1);
+        builder.add("two", 2);
+        Row first = builder.build();
+
+        builder.add("one", 10);
+        builder.add("two", 20);
+        Row second = builder.build();
+
+        Assert.assertSame(first.getSchema(), second.getSchema());
+        Assert.assertSame(second.getSchema(), builder.getSchema());
+        Assert.assertEquals(1, first.get("one"));
+        Assert.assertEquals(20, second.get("two"));
+    }
+
+    /**
+     * Assert that a different layout creates a new schema.
+     */
+    @Test
+    public void testSchemaChange() {
+        RowBuilder builder = new RowBuilder();
+
+        builder.add("one", 1);
+        Row first = builder.build();
+
+        builder.add("two", 2);
+        builder.add("one", 1);
+        Row second = builder.build();
+
+        Assert.assertNotSame(first.getSchema(), second.getSchema());
+        Assert.assertEquals(Arrays.asList("two", "one"),
+                second.getSchema().getNames());
+    }
+
+    /**
+     * Assert that alternating layouts reuse their recent schemas, and that
+     * only a bounded number of them is kept.
+     */
+    @Test
+    public void testRecentSchemas() {
+        RowBuilder builder = new RowBuilder();
+        RowSchema[] schemas = new RowSchema[9];
+        for (int i = 0; i < schemas.length; i++) {
+            builder.add("column_" + i, i);
+            schemas[i] = builder.build().getSchema();
+        }
+
+        builder.add("column_8", 1);
+        Assert.assertSame(schemas[8], builder.build().getSchema());
+        builder.add("column_1", 1);
+        Assert.assertSame(schemas[1], builder.build().getSchema());
+        builder.add("column_8", 1);
+        Assert.assertSame(schemas[8], builder.build().getSchema());
+
+        RowBatch.Builder batch = new RowBatch.Builder(1);
+        builder.add("column_7", 1);
+        builder.appendTo(batch);
+        Assert.assertSame(schemas[7], batch.build().getRow(0).getSchema());
+
+        builder.add("column_0", 1);
+        Assert.assertNotSame(schemas[0], builder.build().getSchema());
+    }
+
+    /**
+     * Assert that duplicate names collapse like they would in a map.
+     */
+    @Test
+    public void testDuplicateNames() {
+        RowBuilder builder = new RowBuilder();
+
+        builder.add("one", 1);
+        builder.add("two", 2);
+        builder.add("one", 3);
+        Row row = builder.build();
+
+        Assert.assertEquals(2, row.size());
+        Assert.assertEquals(3, row.get("one"));
+        Assert.assertEquals(Arrays.asList("one", "two"),
+                row.getSchema().getNames());
+    }
+
+    /**
+     * Assert that primitives are carried into the row unboxed.
+     */
+    @Test
+    public void testPrimitives() {
+        RowBuilder builder = new RowBuilder();
+
+        builder.addInt("int", 1);
+        builder.addLong("long", 2L);
+        builder.addDouble("double", 3.5);
+        builder.addBoolean("true", true);
+        builder.addBoolean("false", false);
+        builder.add("string", "s");
+        builder.addInt("int", 4);
+        Row row = builder.build();
+
+        Assert.assertEquals(6, row.size());
+        Assert.assertEquals(4, row.getInt(0));
+        Assert.assertEquals(Type.INTEGER, row.getType(0));
+        Assert.assertEquals(2L, row.getLong(1));
+        Assert.assertEquals(3.5, row.getDouble(2), 0);
+        Assert.assertTrue(row.getBoolean(3));
+        Assert.assertFalse(row.getBoolean(4));
+        Assert.assertEquals("s", row.get("string"));
+
+        // The next row starts without primitives.
+        builder.add("plain", "p");
+        Assert.assertEquals("p", builder.build().get(0));
+    }
+
+    /**
+     * Assert that the buffers grow past their initial capacity.
+     */
+    @Test
+    public void testWideRow() {
+        RowBuilder builder = new RowBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            builder.add("column_" + i, i);
+            builder.addLong("long_" + i, i);
+        }
+        Row row = builder.build();
+
+        Assert.assertEquals(200, row.size());
+        Assert.assertEquals(99, row.get("column_99"));
+        Assert.assertEquals(99L, row.getLong(199));
+    }
+
+    /**
+     * Assert that reset discards the buffered pairs.
+     */
+    @Test
+    public void testReset() {
+        RowBuilder builder = new RowBuilder();
+
+        builder.add("one", 1);
+        builder.addLong("two", 2);
+        builder.reset();
+        builder.add("three", 3);
+        Row row = builder.build();
+
+        Assert.assertEquals(1, row.size());
+        Assert.assertEquals(3, row.get("three"));
+    }
+}
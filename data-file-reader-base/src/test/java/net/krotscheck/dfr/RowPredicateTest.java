@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for row predicates.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowPredicateTest {
+
+    /**
+     * Assert that comparisons order numbers numerically.
+     */
+    @Test
+    public void testNumericComparisons() {
+        Assert.assertTrue(RowPredicate.equalTo("a", 5).test(5L));
+        Assert.assertTrue(RowPredicate.equalTo("a", 5).test(5.0));
+        Assert.assertFalse(RowPredicate.equalTo("a", 5).test(6L));
+        Assert.assertTrue(RowPredicate.notEqualTo("a", 5).test(6L));
+        Assert.assertTrue(RowPredicate.lessThan("a", 5).test(4L));
+        Assert.assertFalse(RowPredicate.lessThan("a", 5).test(5L));
+        Assert.assertTrue(RowPredicate.lessThanOrEqualTo("a", 5).test(5L));
+        Assert.assertTrue(RowPredicate.greaterThan("a", 4.5).test(5L));
+        Assert.assertFalse(RowPredicate.greaterThan("a", 5).test(4.9));
+        Assert.assertTrue(RowPredicate.greaterThanOrEqualTo("a", 5)
+                .test(5.0));
+        Assert.assertTrue(RowPredicate.equalTo("a", Long.MAX_VALUE)
+                .test(Long.MAX_VALUE));
+        Assert.assertFalse(RowPredicate.equalTo("a", Long.MAX_VALUE)
+                .test(Long.MAX_VALUE - 1));
+        Assert.assertFalse(RowPredicate.equalTo("a", 1).test(Double.NaN));
+    }
+
+    /**
+     * Assert that ranges include their bounds.
+     */
+    @Test
+    public void testBetween() {
+        RowPredicate predicate = RowPredicate.between("a", 10, 20);
+
+        Assert.assertFalse(predicate.test(9L));
+        Assert.assertTrue(predicate.test(10L));
+        Assert.assertTrue(predicate.test(15.5));
+        Assert.assertTrue(predicate.test(20L));
+        Assert.assertFalse(predicate.test(21L));
+        Assert.assertTrue(predicate.test("12"));
+        Assert.assertFalse(predicate.test("twelve"));
+    }
+
+    /**
+     * Assert that IN predicates match any of their operands.
+     */
+    @Test
+    public void testIn() {
+        RowPredicate strings = RowPredicate.in("a", Arrays.asList("x", "y"));
+        Assert.assertTrue(strings.test("x"));
+        Assert.assertTrue(strings.test((Object) "y"));
+        Assert.assertFalse(strings.test("z"));
+
+        RowPredicate numbers = RowPredicate.in("a", Arrays.asList(1, 2.5));
+        Assert.assertTrue(numbers.test(1L));
+        Assert.assertTrue(numbers.test(2.5));
+        Assert.assertTrue(numbers.test("1"));
+        Assert.assertFalse(numbers.test(2L));
+    }
+
+    /**
+     * Assert that strings compare lexically with strings, and numerically
+     * with numbers.
+     */
+    @Test
+    public void testStrings() {
+        Assert.assertTrue(RowPredicate.equalTo("a", "foo").test("foo"));
+        Assert.assertTrue(RowPredicate.lessThan("a", "b").test("a"));
+        Assert.assertTrue(RowPredicate.lessThan("a", "9").test("10"));
+        Assert.assertTrue(RowPredicate.greaterThan("a", 9).test("10"));
+        Assert.assertTrue(RowPredicate.equalTo("a", "5").test(5L));
+        Assert.assertTrue(RowPredicate.equalTo("a", 5).test("5"));
+        Assert.assertFalse(RowPredicate.equalTo("a", 5).test("five"));
+        Assert.assertTrue(RowPredicate.notEqualTo("a", 5).test("five"));
+        Assert.assertFalse(RowPredicate.lessThan("a", 5).test("five"));
+        Assert.assertFalse(RowPredicate.equalTo("a", "foo").test(5L));
+    }
+
+    /**
+     * Assert that booleans compare with booleans and boolean strings.
+     */
+    @Test
+    public void testBooleans() {
+        Assert.assertTrue(RowPredicate.equalTo("a", true).test(true));
+        Assert.assertFalse(RowPredicate.equalTo("a", true).test(false));
+        Assert.assertTrue(RowPredicate.equalTo("a", true).test("TRUE"));
+        Assert.assertTrue(RowPredicate.equalTo("a", "false").test(false));
+        Assert.assertFalse(RowPredicate.equalTo("a", true).test(1L));
+    }
+
+    /**
+     * Assert that nulls only match null checks.
+     */
+    @Test
+    public void testNulls() {
+        Assert.assertTrue(RowPredicate.isNull("a").test((Object) null));
+        Assert.assertFalse(RowPredicate.isNull("a").test(""));
+        Assert.assertFalse(RowPredicate.isNull("a").test(1L));
+        Assert.assertTrue(RowPredicate.isNotNull("a").test(1.5));
+        Assert.assertTrue(RowPredicate.isNotNull("a").test(false));
+        Assert.assertFalse(RowPredicate.isNotNull("a").test((String) null));
+        Assert.assertFalse(RowPredicate.equalTo("a", 1).test((Object) null));
+        Assert.assertFalse(RowPredicate.notEqualTo("a", 1)
+                .test((Object) null));
+    }
+
+    /**
+     * Assert that null operands are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullOperand() {
+        RowPredicate.equalTo("a", null);
+    }
+
+    /**
+     * Assert that null columns are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullColumn() {
+        RowPredicate.isNull(null);
+    }
+
+    /**
+     * Assert that rows are tested by the value of their column, and that
+     * apply drops rejected rows.
+     */
+    @Test
+    public void testMatches() {
+        RowPredicate predicate = RowPredicate.greaterThan("a", 1);
+        Assert.assertEquals("a", predicate.getColumn());
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", 2);
+        Assert.assertTrue(predicate.matches(map));
+        Assert.assertSame(map, predicate.apply(map));
+
+        Row row = new Row(new RowSchema(new String[]{"b", "a"}));
+        row.setInt(1, 1);
+        Assert.assertFalse(predicate.matches(row));
+        Assert.assertNull(predicate.apply(row));
+
+        row.setDouble(1, 1.5);
+        Assert.assertTrue(predicate.matches(row));
+        row.set(1, "3");
+        Assert.assertTrue(predicate.matches(row));
+        row.setBoolean(1, true);
+        Assert.assertFalse(predicate.matches(row));
+
+        row.remove("a");
+        Assert.assertFalse(predicate.matches(row));
+        Assert.assertTrue(RowPredicate.isNull("a").matches(row));
+        Assert.assertTrue(RowPredicate.isNull("c").matches(row));
+        Assert.assertFalse(predicate.matches(null));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for the row schema.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowSchemaTest {
+
+    /**
+     * Assert that names resolve to their indices.
+     */
+    @Test
+    public void testIndexOf() {
+        RowSchema schema = new RowSchema(Arrays.asList("a", "b", "c"));
+
+        Assert.assertEquals(3, schema.size());
+        Assert.assertEquals(0, schema.indexOf("a"));
+        Assert.assertEquals(2, schema.indexOf("c"));
+        Assert.assertEquals(-1, schema.indexOf("d"));
+        Assert.assertEquals(-1, schema.indexOf(null));
+        Assert.assertEquals("b", schema.getName(1));
+    }
+
+    /**
+     * Assert that appended schemas are cached.
+     */
+    @Test
+    public void testAppend() {
+        RowSchema schema = new RowSchema(new String[]{"a"});
+        RowSchema extended = schema.append("b");
+
+        Assert.assertSame(extended, schema.append("b"));
+        Assert.assertEquals(Arrays.asList("a", "b"), extended.getNames());
+        Assert.assertEquals(1, schema.size());
+    }
+
+    /**
+     * Assert equality and matching by column names.
+     */
+    @Test
+    public void testEquality() {
+        RowSchema one = new RowSchema(new String[]{"a", "b"});
+        RowSchema two = new RowSchema(new String[]{"a", "b"});
+        RowSchema three = new RowSchema(new String[]{"b", "a"});
+
+        Assert.assertEquals(one, two);
+        Assert.assertEquals(one, one);
+        Assert.assertEquals(one.hashCode(), two.hashCode());
+        Assert.assertNotEquals(one, three);
+        Assert.assertNotEquals(one, "a,b");
+        Assert.assertEquals("[a, b]", one.toString());
+
+        Assert.assertTrue(one.matches(new Object[]{"a", "b", "c"}, 2));
+        Assert.assertFalse(one.matches(new Object[]{"a", "c"}, 2));
+        Assert.assertFalse(one.matches(new Object[]{"a"}, 1));
+    }
+
+    /**
+     * Assert that duplicate names are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicates() {
+        new RowSchema(new String[]{"a", "a"});
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for the schema-backed row.
+ *
+ * @author Michael Krotscheck
+ */
+public final class RowTest {
+
+    /**
+     * A three column schema.
+     */
+    private final RowSchema schema =
+            new RowSchema(new String[]{"one", "two", "three"});
+
+    /**
+     * Build a test row.
+     *
+     * @return A row with three values.
+     */
+    private Row buildRow() {
+        return new Row(schema, new Object[]{1, "two", 3.0});
+    }
+
+    /**
+     * Assert that a row behaves like an ordered map.
+     */
+    @Test
+    public void testMapBehavior() {
+        Row row = buildRow();
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("one", 1);
+        expected.put("two", "two");
+        expected.put("three", 3.0);
+
+        Assert.assertEquals(expected, row);
+        Assert.assertEquals(expected.hashCode(), row.hashCode());
+        Assert.assertEquals(3, row.size());
+        Assert.assertEquals("two", row.get("two"));
+        Assert.assertEquals("two", row.get(1));
+        Assert.assertNull(row.get("four"));
+        Assert.assertTrue(row.containsKey("three"));
+        Assert.assertFalse(row.containsKey("four"));
+        Assert.assertEquals(Arrays.asList("one", "two", "three"),
+                Arrays.asList(row.keySet().toArray()));
+    }
+
+    /**
+     * Assert that values may be replaced in place.
+     */
+    @Test
+    public void testPutExisting() {
+        Row row = buildRow();
+
+        Assert.assertEquals(1, row.put("one", "uno"));
+        Assert.assertEquals("uno", row.get("one"));
+        Assert.assertSame(schema, row.getSchema());
+    }
+
+    /**
+     * Assert that putting a new key extends the schema, and that rows which
+     * are extended the same way share the extended schema.
+     */
+    @Test
+    public void testPutNew() {
+        Row first = buildRow();
+        Row second = buildRow();
+
+        Assert.assertNull(first.put("four", 4));
+        second.put("four", 44);
+
+        Assert.assertEquals(4, first.size());
+        Assert.assertEquals(4, first.get("four"));
+        Assert.assertEquals(44, second.get("four"));
+        Assert.assertNotSame(schema, first.getSchema());
+        Assert.assertSame(first.getSchema(), second.getSchema());
+        Assert.assertEquals(3, schema.size());
+    }
+
+    /**
+     * Assert that removed keys disappear from the map, and may be re-added.
+     */
+    @Test
+    public void testRemove() {
+        Row row = buildRow();
+
+        Assert.assertEquals("two", row.remove("two"));
+        Assert.assertNull(row.remove("two"));
+        Assert.assertNull(row.remove("nope"));
+        Assert.assertEquals(2, row.size());
+        Assert.assertFalse(row.containsKey("two"));
+        Assert.assertFalse(row.isPresent(1));
+        Assert.assertNull(row.get("two"));
+        Assert.assertEquals(Arrays.asList("one", "three"),
+                Arrays.asList(row.keySet().toArray()));
+
+        Assert.assertNull(row.put("two", "again"));
+        Assert.assertEquals(3, row.size());
+        Assert.assertEquals("again", row.get("two"));
+
+        row.clear();
+        Assert.assertTrue(row.isEmpty());
+    }
+
+    /**
+     * Assert that the entry set writes through to the row.
+     */
+    @Test
+    public void testEntrySet() {
+        Row row = buildRow();
+
+        Iterator<Map.Entry<String, Object>> iterator =
+                row.entrySet().iterator();
+        Map.Entry<String, Object> entry = iterator.next();
+        Assert.assertEquals("one", entry.getKey());
+        Assert.assertEquals(1, entry.setValue(10));
+        Assert.assertEquals(10, row.get("one"));
+
+        iterator.remove();
+        Assert.assertFalse(row.containsKey("one"));
+        Assert.assertEquals(2, row.entrySet().size());
+    }
+
+    /**
+     * Assert that copies share the schema, but not the values.
+     */
+    @Test
+    public void testCopy() {
+        Row row = buildRow();
+        Row copy = Row.copyOf(row);
+
+        copy.put("one", 100);
+        Assert.assertEquals(1, row.get("one"));
+        Assert.assertSame(row.getSchema(), copy.getSchema());
+
+        Map<String, Object> map = new LinkedHashMap<>(row);
+        Row fromMap = Row.copyOf(map);
+        Assert.assertEquals(row, fromMap);
+        Assert.assertEquals(schema, fromMap.getSchema());
+    }
+
+    /**
+     * Assert that primitive cells read back unboxed, and box correctly
+     * through the map interface.
+     */
+    @Test
+    public void testPrimitiveCells() {
+        RowSchema wide = new RowSchema(
+                new String[]{"int", "long", "float", "double", "bool"});
+        Row row = new Row(wide);
+
+        row.setInt(0, 7);
+        row.setLong(1, Long.MAX_VALUE);
+        row.setFloat(2, 1.5f);
+        row.setDouble(3, 2.25);
+        row.setBoolean(4, true);
+
+        Assert.assertEquals(7, row.getInt(0));
+        Assert.assertEquals(Long.MAX_VALUE, row.getLong(1));
+        Assert.assertEquals(1.5, row.getDouble(2), 0);
+        Assert.assertEquals(2.25, row.getDouble(3), 0);
+        Assert.assertEquals(2, row.getLong(3));
+        Assert.assertTrue(row.getBoolean(4));
+        Assert.assertEquals(1, row.getLong(4));
+
+        Assert.assertEquals(Type.INTEGER, row.getType(0));
+        Assert.assertEquals(Type.LONG, row.getType(1));
+        Assert.assertEquals(Type.FLOAT, row.getType(2));
+        Assert.assertEquals(Type.DOUBLE, row.getType(3));
+        Assert.assertEquals(Type.BOOLEAN, row.getType(4));
+
+        Assert.assertEquals(7, row.get("int"));
+        Assert.assertEquals(Long.MAX_VALUE, row.get("long"));
+        Assert.assertEquals(1.5f, row.get("float"));
+        Assert.assertEquals(2.25, row.get("double"));
+        Assert.assertEquals(true, row.get("bool"));
+        Assert.assertEquals("7", row.getString(0));
+
+        // Copies carry the unboxed cells.
+        Row copy = new Row(row);
+        copy.setInt(0, 8);
+        Assert.assertEquals(7, row.getInt(0));
+        Assert.assertEquals(8, copy.getInt(0));
+
+        // Replacing an unboxed cell returns the boxed previous value.
+        Assert.assertEquals(7, row.put("int", "seven"));
+        Assert.assertEquals(Type.STRING, row.getType(0));
+    }
+
+    /**
+     * Assert that boxed cells convert through the typed accessors.
+     */
+    @Test
+    public void testBoxedConversions() {
+        RowSchema wide = new RowSchema(
+                new String[]{"string", "decimal", "number", "bool", "null"});
+        Row row = new Row(wide,
+                new Object[]{"12", "1.5", 3, Boolean.TRUE, null});
+
+        Assert.assertEquals(12, row.getLong(0));
+        Assert.assertEquals(1.5, row.getDouble(1), 0);
+        Assert.assertEquals(3.0, row.getDouble(2), 0);
+        Assert.assertTrue(row.getBoolean(2));
+        Assert.assertTrue(row.getBoolean(3));
+        Assert.assertEquals(1, row.getInt(3));
+        Assert.assertFalse(row.getBoolean(0));
+        Assert.assertFalse(row.getBoolean(4));
+        Assert.assertEquals(0, row.getLong(4));
+        Assert.assertNull(row.getString(4));
+
+        Assert.assertTrue(row.isNull(4));
+        Assert.assertFalse(row.isNull(0));
+        row.remove("string");
+        Assert.assertTrue(row.isNull(0));
+        Assert.assertEquals(0, row.getLong(0));
+    }
+
+    /**
+     * Assert that unsupported cell values cannot be read as numbers.
+     */
+    @Test(expected = ClassCastException.class)
+    public void testBadNumber() {
+        Row row = new Row(schema, new Object[]{new Object(), null, null});
+        row.getLong(0);
+    }
+
+    /**
+     * Assert that mismatched value arrays are rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadValueCount() {
+        new Row(schema, new Object[2]);
+    }
+
+    /**
+     * Assert that projecting copies cells by index, keeping unboxed values.
+     */
+    @Test
+    public void testProject() {
+        Row row = new Row(new RowSchema(new String[]{"a", "b", "c"}));
+        row.setDouble(0, 1.5);
+        row.set(1, "two");
+        row.remove("c");
+
+        RowSchema target = new RowSchema(new String[]{"c", "a", "x"});
+        Row projected = row.project(target, new int[]{2, 0, -1});
+
+        Assert.assertSame(target, projected.getSchema());
+        Assert.assertEquals(3, projected.size());
+        Assert.assertNull(projected.get("c"));
+        Assert.assertEquals(Type.DOUBLE, projected.getType(1));
+        Assert.assertEquals(1.5, projected.getDouble(1), 0);
+        Assert.assertNull(projected.get("x"));
+    }
+
+    /**
+     * Assert that projecting rejects a mismatched index array.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testProjectMismatch() {
+        Row row = new Row(new RowSchema(new String[]{"a"}));
+        row.project(new RowSchema(new String[]{"a"}), new int[]{0, 0});
+    }
+
+    /**
+     * A lazy cell that counts how often it is decoded.
+     */
+    private static final class CountingCell implements ILazyCell {
+
+        /**
+         * The value to decode to.
+         */
+        private final Object value;
+
+        /**
+         * The number of decodes.
+         */
+        private int decodes = 0;
+
+        /**
+         * Create a new cell.
+         *
+         * @param decoded The value to decode to.
+         */
+        CountingCell(final Object decoded) {
+            this.value = decoded;
+        }
+
+        /**
+         * Decode the cell.
+         *
+         * @return The value.
+         */
+        @Override
+        public Object decode() {
+            decodes++;
+            return value;
+        }
+    }
+
+    /**
+     * Assert that lazy cells are decoded on first read only, and that cells
+     * that are never read are never decoded.
+     */
+    @Test
+    public void testLazyCells() {
+        CountingCell number = new CountingCell(12L);
+        CountingCell text = new CountingCell("text");
+        CountingCell empty = new CountingCell(null);
+        CountingCell unread = new CountingCell("unread");
+        Row row = new Row(new RowSchema(new String[]{"a", "b", "c", "d"}),
+                new Object[]{number, text, empty, unread});
+
+        Assert.assertEquals(12L, row.getLong(0));
+        Assert.assertEquals(Type.LONG, row.getType(0));
+        Assert.assertEquals(12L, row.get("a"));
+        Assert.assertEquals(1, number.decodes);
+
+        Assert.assertEquals("text", row.put("b", "other"));
+        Assert.assertEquals("other", row.get("b"));
+        Assert.assertEquals(1, text.decodes);
+
+        Assert.assertTrue(row.isNull(2));
+        Assert.assertTrue(row.containsKey("c"));
+        Assert.assertEquals(1, empty.decodes);
+
+        Row projected = row.project(new RowSchema(new String[]{"d"}),
+                new int[]{3});
+        Assert.assertEquals(0, unread.decodes);
+        Assert.assertEquals("unread", projected.get(0));
+        Assert.assertEquals(1, unread.decodes);
+        Assert.assertEquals("unread", row.remove("d"));
+        Assert.assertEquals(2, unread.decodes);
+    }
+
+    /**
+     * Assert that lazy cells are decoded when a row is added to a batch.
+     */
+    @Test
+    public void testLazyCellsInBatch() {
+        RowSchema schema = new RowSchema(new String[]{"a", "b"});
+        RowBatch.Builder builder = new RowBatch.Builder(2);
+        builder.add(new Row(schema, new Object[]{new CountingCell(1L),
+                new CountingCell("x")}));
+        builder.append(schema, new Object[]{new CountingCell(2L),
+                new CountingCell(null)});
+        RowBatch batch = builder.build();
+
+        Assert.assertEquals(1L, batch.getRow(0).get("a"));
+        Assert.assertEquals("x", batch.getRow(0).get("b"));
+        Assert.assertEquals(2L, batch.getRow(1).get("a"));
+        Assert.assertNull(batch.getRow(1).get("b"));
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for the value writer.
+ *
+ * @author Michael Krotscheck
+ */
+public final class ValueWriterTest {
+
+    /**
+     * Assert that values are dispatched by their type.
+     *
+     * @throws Exception Should not be thrown.
+     */
+    @Test
+    public void testWriteValue() throws Exception {
+        RecordingWriter writer = new RecordingWriter();
+        writer.writeValue(null);
+        writer.writeValue("text");
+        writer.writeValue(1);
+        writer.writeValue(2L);
+        writer.writeValue(1.5f);
+        writer.writeValue(2.5);
+        writer.writeValue(true);
+        writer.writeValue((short) 3);
+        writer.writeValue(Collections.emptyMap());
+
+        Assert.assertEquals(Arrays.asList("null", "string:text", "int:1",
+                "long:2", "float:1.5", "double:2.5", "boolean:true",
+                "object:3", "object:{}"), writer.getWritten());
+    }
+
+    /**
+     * Assert that the cells of a row are dispatched by their type.
+     *
+     * @throws Exception Should not be thrown.
+     */
+    @Test
+    public void testWriteCell() throws Exception {
+        Row row = new Row(new RowSchema(Arrays.asList("a", "b", "c", "d",
+                "e", "f", "g", "h")));
+        row.setInt(0, 1);
+        row.setLong(1, 2L);
+        row.setFloat(2, 1.5f);
+        row.setDouble(3, 2.5);
+        row.setBoolean(4, false);
+        row.set(5, "text");
+        row.set(6, null);
+        row.set(7, Collections.singletonList(1));
+
+        RecordingWriter writer = new RecordingWriter();
+        for (int i = 0; i < row.size(); i++) {
+            writer.writeCell(row, i);
+        }
+        Assert.assertEquals(Arrays.asList("int:1", "long:2", "float:1.5",
+                "double:2.5", "boolean:false", "string:text", "null",
+                "object:[1]"), writer.getWritten());
+    }
+
+    /**
+     * A writer that records what it was asked to write.
+     */
+    private static final class RecordingWriter extends ValueWriter {
+
+        /**
+         * The values written, with their types.
+         */
+        private final List<String> written = new ArrayList<>();
+
+        /**
+         * Get the values written.
+         *
+         * @return The values written, with their types.
+         */
+        List<String> getWritten() {
+            return written;
+        }
+
+        /**
+         * Record a null.
+         */
+        @Override
+        protected void writeNull() {
+            written.add("null");
+        }
+
+        /**
+         * Record an int.
+         *
+         * @param value The value.
+         */
+        @Override
+        protected void writeInt(final int value) {
+            written.add("int:" + value);
+        }
+
+        /**
+         * Record a long.
+         *
+         * @param value The value.
+         */
+        @Override
+        protected void writeLong(final long value) {
+            written.add("long:" + value);
+        }
+
+        /**
+         * Record a float.
+         *
+         * @param value The value.
+         */
+        @Override
+        protected void writeFloat(final float value) {
+            written.add("float:" + value);
+        }
+
+        /**
+         * Record a double.
+         *
+         * @param value The value.
+         */
+        @Override
+        protected void writeDouble(final double value) {
+            written.add("double:" + value);
+        }
+
+        /**
+         * Record a boolean.
+         *
+         * @param value The value.
+         */
+        @Override
+        protected void writeBoolean(final boolean value) {
+            written.add("boolean:" + value);
+        }
+
+        /**
+         * Record a string.
+         *
+         * @param value The value.
+         */
+        @Override
+        protected void writeString(final String value) {
+            written.add("string:" + value);
+        }
+
+        /**
+         * Record any other value.
+         *
+         * @param value The value.
+         */
+        @Override
+        protected void writeObject(final Object value) {
+            written.add("object:" + value);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Unit tests for the compression codec lookup.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CompressionCodecsTest {
+
+    /**
+     * Assert that the codecs of this module are found.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testGet() throws Exception {
+        Assert.assertTrue(CompressionCodecs.get("application/gzip")
+                instanceof GzipCodec);
+        Assert.assertTrue(CompressionCodecs.get("application/zlib")
+                instanceof DeflateCodec);
+        Assert.assertSame(CompressionCodecs.get("application/gzip"),
+                CompressionCodecs.get("application/gzip"));
+    }
+
+    /**
+     * Assert that unknown mime types are reported.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testGetUnknown() throws Exception {
+        try {
+            CompressionCodecs.get("application/x-xz");
+            Assert.fail("Expected an exception.");
+        } catch (ClassNotFoundException cnfe) {
+            Assert.assertEquals(
+                    "ICompressionCodec for mimeType [application/x-xz] "
+                            + "not found.", cnfe.getMessage());
+        }
+    }
+
+    /**
+     * Assert which mime types are supported.
+     */
+    @Test
+    public void testIsSupported() {
+        Assert.assertTrue(CompressionCodecs.isSupported("application/gzip"));
+        Assert.assertTrue(CompressionCodecs.isSupported("application/zlib"));
+        Assert.assertFalse(CompressionCodecs.isSupported("application/zip"));
+        Assert.assertFalse(CompressionCodecs.isSupported(null));
+        Assert.assertTrue(CompressionCodecs.getMimeTypes()
+                .contains("application/gzip"));
+    }
+
+    /**
+     * Assert that discovery returns an immutable map, in the order of the
+     * service file.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void testDiscover() {
+        Map<String, ICompressionCodec> codecs = CompressionCodecs.discover(
+                CompressionCodecsTest.class.getClassLoader());
+        Assert.assertEquals("application/gzip",
+                codecs.keySet().iterator().next());
+        codecs.clear();
+    }
+}
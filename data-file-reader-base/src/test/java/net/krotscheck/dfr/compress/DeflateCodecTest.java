@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterInputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Unit tests for the deflate codec.
+ *
+ * @author Michael Krotscheck
+ */
+public final class DeflateCodecTest {
+
+    /**
+     * Assert the mime type.
+     */
+    @Test
+    public void testGetMimeType() {
+        Assert.assertEquals("application/zlib",
+                new DeflateCodec().getMimeType());
+    }
+
+    /**
+     * Assert that compressed data is readable by the JDK, and back.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("row ").append(i).append('\n');
+        }
+        byte[] data = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        DeflateCodec codec = new DeflateCodec();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = codec.compress(bytes);
+        out.write(data);
+        out.close();
+
+        Assert.assertArrayEquals(data, IOUtils.toByteArray(
+                new InflaterInputStream(
+                        new ByteArrayInputStream(bytes.toByteArray()))));
+        InputStream in = codec.decompress(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertArrayEquals(data, IOUtils.toByteArray(in));
+        in.close();
+    }
+
+    /**
+     * Assert that wrapping streams does not touch them, and that closing
+     * the wrappers closes them.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testWrapDoesNotTouch() throws Exception {
+        DeflateCodec codec = new DeflateCodec();
+        InputStream source = mock(InputStream.class);
+        OutputStream destination = mock(OutputStream.class);
+
+        InputStream in = codec.decompress(source);
+        OutputStream out = codec.compress(destination);
+        verifyZeroInteractions(source, destination);
+
+        in.close();
+        verify(source).close();
+        out.close();
+        verify(destination).close();
+    }
+}
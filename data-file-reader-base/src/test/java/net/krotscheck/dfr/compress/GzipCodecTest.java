@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+/**
+ * Unit tests for the gzip codec.
+ *
+ * @author Michael Krotscheck
+ */
+public final class GzipCodecTest {
+
+    /**
+     * Assert the mime type and the number of threads.
+     */
+    @Test
+    public void testSettings() {
+        Assert.assertEquals("application/gzip",
+                new GzipCodec().getMimeType());
+        Assert.assertEquals(Runtime.getRuntime().availableProcessors(),
+                new GzipCodec().getThreads());
+        Assert.assertEquals(3, new GzipCodec(3).getThreads());
+    }
+
+    /**
+     * Assert that invalid settings are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreads() {
+        new GzipCodec(0);
+    }
+
+    /**
+     * Assert that invalid part sizes are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPartSize() {
+        new GzipCodec(2, 0);
+    }
+
+    /**
+     * Assert that compressed data is readable by the JDK, and back.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            builder.append("row ").append(i).append('\n');
+        }
+        byte[] data = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        GzipCodec codec = new GzipCodec(4, 1024);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = codec.compress(bytes);
+        out.write(data);
+        out.close();
+
+        Assert.assertArrayEquals(data, IOUtils.toByteArray(
+                new GZIPInputStream(
+                        new ByteArrayInputStream(bytes.toByteArray()))));
+        InputStream in = codec.decompress(
+                new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertArrayEquals(data, IOUtils.toByteArray(in));
+        in.close();
+    }
+
+    /**
+     * Assert that wrapping streams does not touch them, and that closing
+     * the wrappers closes them.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testWrapDoesNotTouch() throws Exception {
+        GzipCodec codec = new GzipCodec();
+        InputStream source = mock(InputStream.class);
+        OutputStream destination = mock(OutputStream.class);
+
+        InputStream in = codec.decompress(source);
+        OutputStream out = codec.compress(destination);
+        verifyZeroInteractions(source, destination);
+
+        in.close();
+        verify(source).close();
+        out.close();
+        verify(destination).close();
+    }
+}
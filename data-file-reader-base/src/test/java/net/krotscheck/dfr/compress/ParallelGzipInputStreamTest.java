@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the parallel gzip stream.
+ *
+ * @author Michael Krotscheck
+ */
+public final class ParallelGzipInputStreamTest {
+
+    /**
+     * Compress data into a single member.
+     *
+     * @param data The data.
+     * @return The member.
+     * @throws IOException Unexpected exceptions.
+     */
+    private static byte[] gzip(final byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        out.write(data);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Compress data into a member with every optional header field.
+     *
+     * @param data  The data.
+     * @param level The compression level.
+     * @return The member.
+     */
+    private static byte[] member(final byte[] data, final int level) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] header = {0x1F, (byte) 0x8B, 8, 2 | 4 | 8 | 16,
+                0, 0, 0, 0, 0, (byte) 255,
+                3, 0, 'x', 'y', 'z', 'n', 'a', 'm', 'e', 0,
+                'c', 0, 0, 0};
+        bytes.write(header, 0, header.length);
+
+        Deflater deflater = new Deflater(level, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            bytes.write(buffer, 0, count);
+        }
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeInt(bytes, crc.getValue());
+        writeInt(bytes, data.length);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Write a little-endian integer.
+     *
+     * @param out   The destination.
+     * @param value The integer.
+     */
+    private static void writeInt(final ByteArrayOutputStream out,
+                                 final long value) {
+        for (int i = 0; i < 4; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xFF);
+        }
+    }
+
+    /**
+     * Create text data.
+     *
+     * @param first The number of the first row.
+     * @param rows  The number of rows.
+     * @return The data.
+     */
+    private static byte[] rows(final int first, final int rows) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = first; i < first + rows; i++) {
+            builder.append(i).append(",row ").append(i * 7919).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decompress bytes in parallel.
+     *
+     * @param bytes    The compressed bytes.
+     * @param threads  The number of threads.
+     * @param partSize The number of bytes per thread.
+     * @return The decompressed bytes.
+     * @throws IOException Thrown if the bytes cannot be decompressed.
+     */
+    private static byte[] decompress(final byte[] bytes, final int threads,
+                                     final int partSize)
+            throws IOException {
+        InputStream in = new ParallelGzipInputStream(
+                new ByteArrayInputStream(bytes), threads, partSize);
+        try {
+            return IOUtils.toByteArray(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Assert that many members are decompressed in parallel, to the same
+     * bytes as the JDK decompresses them sequentially.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testMultiMember() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 300; i++) {
+            byte[] data = rows(i * 50, 50 + i % 13);
+            expected.write(data);
+            compressed.write(gzip(data));
+        }
+        byte[] bytes = compressed.toByteArray();
+
+        Assert.assertArrayEquals(expected.toByteArray(),
+                IOUtils.toByteArray(new GZIPInputStream(
+                        new ByteArrayInputStream(bytes))));
+        Assert.assertArrayEquals(expected.toByteArray(),
+                decompress(bytes, 4, 2048));
+        Assert.assertArrayEquals(expected.toByteArray(),
+                decompress(bytes, 3, 1000));
+        Assert.assertArrayEquals(expected.toByteArray(),
+                decompress(bytes, 1, 4096));
+    }
+
+    /**
+     * Assert that optional header fields are skipped.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testHeaderFields() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 100; i++) {
+            byte[] data = rows(i * 20, 20);
+            expected.write(data);
+            compressed.write(member(data, Deflater.DEFAULT_COMPRESSION));
+        }
+        Assert.assertArrayEquals(expected.toByteArray(),
+                decompress(compressed.toByteArray(), 4, 1024));
+    }
+
+    /**
+     * Assert that a header that appears in stored data does not split the
+     * stream in the wrong place.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testFalseHeader() throws Exception {
+        byte[] fake = {0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0, 3};
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        for (int i = 0; i < 500; i++) {
+            data.write(fake);
+        }
+        byte[] stored = member(data.toByteArray(), Deflater.NO_COMPRESSION);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 20; i++) {
+            compressed.write(stored);
+            expected.write(data.toByteArray());
+            byte[] text = rows(i, 100);
+            compressed.write(gzip(text));
+            expected.write(text);
+        }
+        Assert.assertArrayEquals(expected.toByteArray(),
+                decompress(compressed.toByteArray(), 4, 4096));
+    }
+
+    /**
+     * Assert that a member larger than the window is decompressed
+     * sequentially, after the members before it.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testLargeMember() throws Exception {
+        byte[] small = rows(0, 10);
+        byte[] large = new byte[200000];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) ((i * 7919) ^ (i >>> 5));
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(gzip(small));
+        compressed.write(gzip(large));
+        compressed.write(gzip(small));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(small);
+        expected.write(large);
+        expected.write(small);
+
+        Assert.assertArrayEquals(expected.toByteArray(),
+                decompress(compressed.toByteArray(), 2, 1024));
+    }
+
+    /**
+     * Assert that members that do not fit into the window, and the members
+     * after them, are read to the end of a source that returns short reads
+     * and never reports any bytes as available.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testSlowSource() throws Exception {
+        Random random = new Random(42);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 40; i++) {
+            byte[] data = rows(i * 20, 20);
+            if (i % 4 == 1) {
+                data = new byte[3000 + random.nextInt(3000)];
+                random.nextBytes(data);
+            }
+            expected.write(data);
+            compressed.write(gzip(data));
+        }
+        final byte[] bytes = compressed.toByteArray();
+        InputStream source = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() {
+                if (position == bytes.length) {
+                    return -1;
+                }
+                return bytes[position++] & 0xFF;
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset,
+                            final int length) {
+                if (position == bytes.length) {
+                    return -1;
+                }
+                int count = Math.min(Math.min(length, 7),
+                        bytes.length - position);
+                System.arraycopy(bytes, position, buffer, offset, count);
+                position += count;
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return 0;
+            }
+        };
+        InputStream in = new ParallelGzipInputStream(source, 2, 1024);
+        Assert.assertArrayEquals(expected.toByteArray(),
+                IOUtils.toByteArray(in));
+        in.close();
+    }
+
+    /**
+     * Assert that a header that is larger than the window is read.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testLargeHeader() throws Exception {
+        byte[] data = rows(0, 100);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(member(data, Deflater.DEFAULT_COMPRESSION));
+        compressed.write(member(data, Deflater.BEST_SPEED));
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(data);
+        expected.write(data);
+        Assert.assertArrayEquals(expected.toByteArray(),
+                decompress(compressed.toByteArray(), 1, 8));
+    }
+
+    /**
+     * Assert that anything after the last member is ignored.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testTrailingGarbage() throws Exception {
+        byte[] data = rows(0, 10);
+        byte[] member = gzip(data);
+        byte[] bytes = Arrays.copyOf(member, member.length + 3);
+        Assert.assertArrayEquals(data, decompress(bytes, 2, 1024));
+        Assert.assertArrayEquals(data, decompress(bytes, 2, 10));
+    }
+
+    /**
+     * Assert that a stream that is not gzip is refused.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test(expected = ZipException.class)
+    public void testNotGzip() throws Exception {
+        decompress("id,name\n".getBytes(StandardCharsets.UTF_8), 2, 1024);
+    }
+
+    /**
+     * Assert that a truncated member is reported.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test(expected = EOFException.class)
+    public void testTruncated() throws Exception {
+        byte[] member = gzip(rows(0, 100));
+        decompress(Arrays.copyOf(member, member.length - 4), 2, 1024);
+    }
+
+    /**
+     * Assert that an empty stream is reported.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test(expected = EOFException.class)
+    public void testEmpty() throws Exception {
+        decompress(new byte[0], 2, 1024);
+    }
+
+    /**
+     * Assert that a member with a wrong checksum is reported.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test(expected = ZipException.class)
+    public void testCorrupt() throws Exception {
+        byte[] member = gzip(rows(0, 100));
+        member[member.length - 8] ^= 1;
+        decompress(member, 2, 1024);
+    }
+
+    /**
+     * Assert that invalid settings are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() {
+        new ParallelGzipInputStream(mock(InputStream.class), 0, 1024);
+    }
+
+    /**
+     * Assert that closing the stream closes the source, and that single
+     * bytes are read unsigned.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReadSingle() throws Exception {
+        InputStream source = mock(InputStream.class);
+        new ParallelGzipInputStream(source, 2, 1024).close();
+        verify(source).close();
+
+        InputStream in = new ParallelGzipInputStream(new ByteArrayInputStream(
+                gzip(new byte[]{(byte) 0xFF})), 2, 1024);
+        Assert.assertEquals(0xFF, in.read());
+        Assert.assertEquals(-1, in.read());
+        Assert.assertEquals(0, in.read(new byte[1], 0, 0));
+        in.close();
+    }
+
+    /**
+     * Assert that a short stream only allocates the window it needs, and is
+     * inflated without starting the thread pool.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testShortStream() throws Exception {
+        byte[] data = rows(0, 20);
+        ParallelGzipInputStream in = new ParallelGzipInputStream(
+                new ByteArrayInputStream(gzip(data)), 64, 1024 * 1024);
+        Assert.assertArrayEquals(data, IOUtils.toByteArray(in));
+        Assert.assertTrue(in.getWindowCapacity() <= 8 * 1024);
+        Assert.assertFalse(in.isParallel());
+        in.close();
+    }
+
+    /**
+     * Assert that the window grows as a long stream fills it, and the stream
+     * is inflated in parallel once it holds more than one part.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testWindowGrows() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        for (int i = 0; i < 600; i++) {
+            byte[] data = rows(i * 50, 50);
+            expected.write(data);
+            compressed.write(gzip(data));
+        }
+        ParallelGzipInputStream in = new ParallelGzipInputStream(
+                new ByteArrayInputStream(compressed.toByteArray()), 4,
+                16 * 1024);
+        Assert.assertArrayEquals(expected.toByteArray(),
+                IOUtils.toByteArray(in));
+        Assert.assertEquals(64 * 1024, in.getWindowCapacity());
+        Assert.assertTrue(in.isParallel());
+        in.close();
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.compress;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit tests for the read-ahead stream.
+ *
+ * @author Michael Krotscheck
+ */
+public final class ReadAheadInputStreamTest {
+
+    /**
+     * Create test data.
+     *
+     * @param length The number of bytes.
+     * @return The bytes.
+     */
+    private static byte[] data(final int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    /**
+     * Assert that every byte arrives, in order, through more chunks than
+     * are circulating.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testRead() throws Exception {
+        byte[] data = data(10000);
+        InputStream in = new ReadAheadInputStream(
+                new ByteArrayInputStream(data), 7, 3);
+        Assert.assertArrayEquals(data, IOUtils.toByteArray(in));
+        Assert.assertEquals(-1, in.read());
+        Assert.assertEquals(0, in.available());
+        in.close();
+    }
+
+    /**
+     * Assert that single bytes are read unsigned.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReadSingle() throws Exception {
+        InputStream in = new ReadAheadInputStream(
+                new ByteArrayInputStream(new byte[]{1, (byte) 0xFF}));
+        Assert.assertEquals(1, in.read());
+        Assert.assertEquals(0xFF, in.read());
+        Assert.assertEquals(-1, in.read());
+        Assert.assertEquals(0, in.read(new byte[1], 0, 0));
+        in.close();
+    }
+
+    /**
+     * Assert that an error of the source is thrown by the reader, after
+     * the bytes read before it.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testFailure() throws Exception {
+        InputStream source = new InputStream() {
+            private int count;
+
+            @Override
+            public int read() throws IOException {
+                if (count++ < 3) {
+                    return count;
+                }
+                throw new IOException("Broken source.");
+            }
+        };
+        InputStream in = new ReadAheadInputStream(source, 16, 2);
+        byte[] buffer = new byte[16];
+        Assert.assertEquals(3, in.read(buffer));
+        Assert.assertEquals(3, buffer[2]);
+        try {
+            in.read();
+            Assert.fail("Expected an exception.");
+        } catch (IOException ioe) {
+            Assert.assertEquals("Broken source.", ioe.getMessage());
+        }
+        in.close();
+    }
+
+    /**
+     * Assert that an unchecked error of the source ends the stream with an
+     * IOException, instead of leaving the reader waiting.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test(timeout = 10000)
+    public void testUncheckedFailure() throws Exception {
+        InputStream source = new InputStream() {
+            private boolean read;
+
+            @Override
+            public int read() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(final byte[] buffer, final int offset,
+                            final int length) {
+                if (read) {
+                    throw new IllegalStateException("Broken source.");
+                }
+                read = true;
+                buffer[offset] = 1;
+                buffer[offset + 1] = 2;
+                buffer[offset + 2] = 3;
+                return 3;
+            }
+        };
+        InputStream in = new ReadAheadInputStream(source, 16, 2);
+        byte[] buffer = new byte[16];
+        Assert.assertEquals(3, in.read(buffer));
+        try {
+            in.read();
+            Assert.fail("Expected an exception.");
+        } catch (IOException ioe) {
+            Assert.assertEquals("Read-ahead failed.", ioe.getMessage());
+            Assert.assertTrue(ioe.getCause() instanceof IllegalStateException);
+        }
+        in.close();
+    }
+
+    /**
+     * Assert that closing the stream closes the source, and that a closed
+     * stream cannot be read.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testClose() throws Exception {
+        InputStream source = mock(InputStream.class);
+        InputStream in = new ReadAheadInputStream(source);
+        in.close();
+        in.close();
+        verify(source).close();
+        try {
+            in.read();
+            Assert.fail("Expected an exception.");
+        } catch (IOException ioe) {
+            Assert.assertEquals("Stream closed.", ioe.getMessage());
+        }
+    }
+
+    /**
+     * Assert that a read-ahead of a single chunk is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalid() {
+        new ReadAheadInputStream(mock(InputStream.class), 1024, 1);
+    }
+}
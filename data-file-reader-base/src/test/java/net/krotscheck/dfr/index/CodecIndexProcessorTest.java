@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.index;
+
+import net.krotscheck.dfr.CodecRegistry;
+import net.krotscheck.dfr.IDataDecoder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for the codec index processor.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CodecIndexProcessorTest {
+
+    /**
+     * The directory sources are compiled in.
+     */
+    private Path directory;
+
+    /**
+     * The errors reported by the last compilation.
+     */
+    private List<String> errors;
+
+    /**
+     * Create the directory.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Before
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("dfr-index-");
+        errors = new ArrayList<>();
+    }
+
+    /**
+     * Delete the directory.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @After
+    public void teardown() throws Exception {
+        List<Path> paths = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(directory)) {
+            Iterator<Path> iterator = walk.iterator();
+            while (iterator.hasNext()) {
+                paths.add(iterator.next());
+            }
+        }
+        Collections.reverse(paths);
+        for (Path path : paths) {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Assert that annotated codecs are indexed by kind, sorted, and that
+     * classes implementing both interfaces are indexed twice.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testIndex() throws Exception {
+        boolean compiled = compile(
+                source("a/Decoder",
+                        "@DataCodec(\"text/a\")",
+                        "public final class Decoder extends TestBase"
+                                + " implements IDataDecoder {}"),
+                source("a/Both",
+                        "@DataCodec(\"text/b\")",
+                        "public final class Both extends TestBase"
+                                + " implements IDataDecoder, IDataEncoder {}"),
+                source("a/TestBase",
+                        "public abstract class TestBase {",
+                        "  public String getMimeType() { return null; }",
+                        "}"));
+
+        Assert.assertEquals(Collections.emptyList(), errors);
+        Assert.assertTrue(compiled);
+        Assert.assertEquals(Arrays.asList(
+                "decoder text/a a.Decoder",
+                "decoder text/b a.Both",
+                "encoder text/b a.Both"), readIndex());
+    }
+
+    /**
+     * Assert that classes that cannot be codecs are reported.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testErrors() throws Exception {
+        boolean compiled = compile(
+                source("a/NotCodec",
+                        "@DataCodec(\"text/a\")",
+                        "public final class NotCodec {}"),
+                source("a/Hidden",
+                        "@DataCodec(\"text/a\")",
+                        "public final class Hidden {",
+                        "  private Hidden() {}",
+                        "}"),
+                source("a/Abstract",
+                        "@DataCodec(\"text/a\")",
+                        "public abstract class Abstract {}"));
+
+        Assert.assertFalse(compiled);
+        Assert.assertTrue(errors.contains(
+                "A codec must implement IDataDecoder or IDataEncoder."));
+        Assert.assertTrue(errors.contains(
+                "A codec must have a public no-argument constructor."));
+        Assert.assertTrue(errors.contains(
+                "A codec must be a public, concrete class."));
+    }
+
+    /**
+     * Assert that nothing is written when no class is annotated.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testNoCodecs() throws Exception {
+        Assert.assertTrue(compile(source("a/Plain",
+                "public final class Plain {}")));
+        Assert.assertFalse(Files.exists(
+                directory.resolve(CodecRegistry.INDEX_RESOURCE)));
+    }
+
+    /**
+     * Write a source file in package "a", importing the codec types.
+     *
+     * @param name  The path of the class, without extension.
+     * @param lines The lines after the imports.
+     * @return The file.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    private File source(final String name, final String... lines)
+            throws IOException {
+        List<String> text = new ArrayList<>();
+        text.add("package a;");
+        text.add("import net.krotscheck.dfr.DataCodec;");
+        text.add("import net.krotscheck.dfr.IDataDecoder;");
+        text.add("import net.krotscheck.dfr.IDataEncoder;");
+        text.addAll(Arrays.asList(lines));
+        Path path = directory.resolve(name + ".java");
+        Files.createDirectories(path.getParent());
+        Files.write(path, text, StandardCharsets.UTF_8);
+        return path.toFile();
+    }
+
+    /**
+     * Compile sources with the processor, against the codec interfaces.
+     * The sources declare abstract methods they do not implement, so only
+     * the processor's errors are collected.
+     *
+     * @param files The sources.
+     * @return True if the processor reported no errors.
+     * @throws IOException Thrown if the sources cannot be read.
+     */
+    private boolean compile(final File... files) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics =
+                new DiagnosticCollector<>();
+        String classPath = new File(IDataDecoder.class.getProtectionDomain()
+                .getCodeSource().getLocation().getPath()).getPath();
+        try (StandardJavaFileManager fileManager =
+                     compiler.getStandardFileManager(null, null, null)) {
+            JavaCompiler.CompilationTask task = compiler.getTask(null,
+                    fileManager, diagnostics, Arrays.asList("-proc:only",
+                            "-classpath", classPath,
+                            "-d", directory.toString()),
+                    null, fileManager.getJavaFileObjects(files));
+            task.setProcessors(Collections.singletonList(
+                    new CodecIndexProcessor()));
+            task.call();
+        }
+        for (Diagnostic<? extends JavaFileObject> diagnostic
+                : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+        return errors.isEmpty();
+    }
+
+    /**
+     * Read the index the processor wrote.
+     *
+     * @return Its lines.
+     * @throws IOException Thrown if the index cannot be read.
+     */
+    private List<String> readIndex() throws IOException {
+        return Files.readAllLines(
+                directory.resolve(CodecRegistry.INDEX_RESOURCE),
+                StandardCharsets.UTF_8);
+    }
+}
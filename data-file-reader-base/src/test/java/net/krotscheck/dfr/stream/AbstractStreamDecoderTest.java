@@ -17,16 +17,25 @@
 
 package net.krotscheck.dfr.stream;
 
+import net.krotscheck.dfr.IDataFilter;
+import net.krotscheck.dfr.compress.GzipCodec;
+import net.krotscheck.dfr.compress.ICompressionCodec;
+import net.krotscheck.test.dfr.TestDataFilter;
 import net.krotscheck.test.dfr.TestStreamDecoder;
 import net.krotscheck.util.ResourceUtil;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.NullInputStream;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -34,6 +43,7 @@ import java.util.Map;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 /**
  * Unit tests for the AbstractStreamDecoder.
@@ -138,6 +148,73 @@ public final class AbstractStreamDecoderTest {
         Assert.assertNull(decoder.getInputStream());
     }
 
+    /**
+     * Assert that a reset closes the old stream, keeps the filters, and
+     * rewinds batch reads for the new stream.
+     *
+     * @throws Exception Should not throw an exception.
+     */
+    @Test
+    public void testReset() throws Exception {
+        IStreamDecoder decoder = new TestStreamDecoder(testData);
+        IDataFilter filter = new TestDataFilter();
+        decoder.addFilter(filter);
+        InputStream first = mock(InputStream.class);
+        decoder.setInputStream(first);
+        Assert.assertEquals(60, decoder.nextBatch(60).size());
+
+        InputStream second = mock(InputStream.class);
+        decoder.reset(second);
+        verify(first).close();
+        Assert.assertSame(second, decoder.getInputStream());
+        Assert.assertTrue(decoder.containsFilter(filter));
+        Assert.assertEquals(60, decoder.nextBatch(60).size());
+
+        decoder.reset();
+        verify(second).close();
+        Assert.assertNull(decoder.getInputStream());
+    }
+
+    /**
+     * Assert that a compressed stream is decompressed as it is read, and
+     * that the compression is kept across resets.
+     *
+     * @throws Exception Should not throw an exception.
+     */
+    @Test
+    public void testCompression() throws Exception {
+        IStreamDecoder decoder = new TestStreamDecoder(testData);
+        Assert.assertNull(decoder.getCompression());
+
+        ICompressionCodec codec = new GzipCodec(2);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = codec.compress(bytes);
+        out.write("compressed".getBytes(StandardCharsets.UTF_8));
+        out.close();
+
+        decoder.setCompression(codec);
+        Assert.assertSame(codec, decoder.getCompression());
+        InputStream first = new ByteArrayInputStream(bytes.toByteArray());
+        decoder.setInputStream(first);
+        InputStream decompressed = decoder.getInputStream();
+        Assert.assertNotSame(first, decompressed);
+        Assert.assertSame(decompressed, decoder.getInputStream());
+        Assert.assertEquals("compressed", IOUtils.toString(decompressed,
+                StandardCharsets.UTF_8));
+
+        InputStream second = mock(InputStream.class);
+        decoder.reset(second);
+        Assert.assertSame(codec, decoder.getCompression());
+        Assert.assertNotSame(decompressed, decoder.getInputStream());
+        decoder.close();
+        verify(second).close();
+        Assert.assertNull(decoder.getInputStream());
+
+        decoder.setCompression(null);
+        decoder.setInputStream(second);
+        Assert.assertSame(second, decoder.getInputStream());
+    }
+
     /**
      * Ensure the constructor is abstract.
      *
@@ -18,17 +18,27 @@
 package net.krotscheck.dfr.stream;
 
 import net.krotscheck.dfr.AbstractDataEncoder;
+import net.krotscheck.dfr.IDataFilter;
+import net.krotscheck.dfr.compress.GzipCodec;
+import net.krotscheck.dfr.compress.ICompressionCodec;
+import net.krotscheck.test.dfr.TestDataFilter;
 import net.krotscheck.test.dfr.TestStreamEncoder;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 /**
  * Unit tests for the abstract data decoder.
@@ -107,6 +117,66 @@ public final class AbstractStreamEncoderTest {
         Assert.assertNull(encoder.getOutputStream());
     }
 
+    /**
+     * Assert that a reset closes the old stream, keeps the filters, and
+     * writes to the new stream.
+     *
+     * @throws Exception Should not be thrown.
+     */
+    @Test
+    public void testReset() throws Exception {
+        IStreamEncoder encoder = new TestStreamEncoder();
+        IDataFilter filter = new TestDataFilter();
+        encoder.addFilter(filter);
+        OutputStream first = mock(OutputStream.class);
+        encoder.setOutputStream(first);
+
+        OutputStream second = mock(OutputStream.class);
+        encoder.reset(second);
+        verify(first).close();
+        Assert.assertSame(second, encoder.getOutputStream());
+        Assert.assertTrue(encoder.containsFilter(filter));
+
+        encoder.reset();
+        verify(second).close();
+        Assert.assertNull(encoder.getOutputStream());
+    }
+
+    /**
+     * Assert that data is compressed as it is written, that closing the
+     * encoder finishes the compressed stream, and that the compression is
+     * kept across resets.
+     *
+     * @throws Exception Should not be thrown.
+     */
+    @Test
+    public void testCompression() throws Exception {
+        IStreamEncoder encoder = new TestStreamEncoder();
+        Assert.assertNull(encoder.getCompression());
+
+        ICompressionCodec codec = new GzipCodec();
+        encoder.setCompression(codec);
+        Assert.assertSame(codec, encoder.getCompression());
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        encoder.setOutputStream(first);
+        OutputStream compressed = encoder.getOutputStream();
+        Assert.assertNotSame(first, compressed);
+        Assert.assertSame(compressed, encoder.getOutputStream());
+        compressed.write("compressed".getBytes(StandardCharsets.UTF_8));
+
+        OutputStream second = mock(OutputStream.class);
+        encoder.reset(second);
+        Assert.assertEquals("compressed", IOUtils.toString(
+                new GZIPInputStream(
+                        new ByteArrayInputStream(first.toByteArray())),
+                StandardCharsets.UTF_8));
+        Assert.assertSame(codec, encoder.getCompression());
+        Assert.assertNotSame(compressed, encoder.getOutputStream());
+        encoder.close();
+        verify(second).close();
+        Assert.assertNull(encoder.getOutputStream());
+    }
+
     /**
      * Ensure the constructor is abstract.
      *
@@ -17,6 +17,8 @@
 
 package net.krotscheck.dfr.text;
 
+import net.krotscheck.dfr.IDataFilter;
+import net.krotscheck.test.dfr.TestDataFilter;
 import net.krotscheck.test.dfr.TestTextDecoder;
 import net.krotscheck.util.ResourceUtil;
 import org.apache.commons.io.input.NullReader;
@@ -35,6 +37,7 @@ import java.util.Map;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 /**
  * Unit tests for the AbstractTextDecoder.
@@ -144,6 +147,31 @@ public final class AbstractTextDecoderTest {
         Assert.assertNull(decoder.getReader());
     }
 
+    /**
+     * Assert that a reset closes the old reader, and keeps the filters for
+     * the new reader.
+     *
+     * @throws Exception Should not throw an exception.
+     */
+    @Test
+    public void testReset() throws Exception {
+        ITextDecoder decoder = new TestTextDecoder(testData);
+        IDataFilter filter = new TestDataFilter();
+        decoder.addFilter(filter);
+        Reader first = mock(Reader.class);
+        decoder.setReader(first);
+
+        Reader second = mock(Reader.class);
+        decoder.reset(second);
+        verify(first).close();
+        Assert.assertSame(second, decoder.getReader());
+        Assert.assertTrue(decoder.containsFilter(filter));
+
+        decoder.reset();
+        verify(second).close();
+        Assert.assertNull(decoder.getReader());
+    }
+
     /**
      * Ensure the constructor is abstract.
      *
@@ -18,6 +18,8 @@
 package net.krotscheck.dfr.text;
 
 import net.krotscheck.dfr.AbstractDataEncoder;
+import net.krotscheck.dfr.IDataFilter;
+import net.krotscheck.test.dfr.TestDataFilter;
 import net.krotscheck.test.dfr.TestTextEncoder;
 import org.apache.commons.io.output.NullWriter;
 import org.junit.Assert;
@@ -29,6 +31,7 @@ import java.lang.reflect.Constructor;
 
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 /**
  * Unit tests for the abstract data decoder.
@@ -107,6 +110,31 @@ public final class AbstractTextEncoderTest {
         Assert.assertNull(encoder.getWriter());
     }
 
+    /**
+     * Assert that a reset closes the old writer, keeps the filters, and
+     * writes to the new writer.
+     *
+     * @throws Exception Should not be thrown.
+     */
+    @Test
+    public void testReset() throws Exception {
+        ITextEncoder encoder = new TestTextEncoder();
+        IDataFilter filter = new TestDataFilter();
+        encoder.addFilter(filter);
+        Writer first = mock(Writer.class);
+        encoder.setWriter(first);
+
+        Writer second = mock(Writer.class);
+        encoder.reset(second);
+        verify(first).close();
+        Assert.assertSame(second, encoder.getWriter());
+        Assert.assertTrue(encoder.containsFilter(filter));
+
+        encoder.reset();
+        verify(second).close();
+        Assert.assertNull(encoder.getWriter());
+    }
+
     /**
      * Ensure the constructor is abstract.
      *
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.test.dfr;
+
+import net.krotscheck.dfr.IDataFilter;
+import net.krotscheck.dfr.stream.IStreamDecoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A test stream decoder which implements the decoder interface directly,
+ * without the abstract base classes, and relies on its default methods.
+ * Like a decoder over a stream, every iterator continues where the last
+ * one stopped.
+ *
+ * @author Michael Krotscheck
+ */
+public final class DirectStreamDecoder implements IStreamDecoder {
+
+    /**
+     * The rows to 'decode'.
+     */
+    private final Iterator<Map<String, Object>> rows;
+
+    /**
+     * The filters.
+     */
+    private final List<IDataFilter> filters = new ArrayList<>();
+
+    /**
+     * The input stream.
+     */
+    private InputStream inputStream;
+
+    /**
+     * The maximum number of rows.
+     */
+    private Long maxRows;
+
+    /**
+     * Whether the decoder has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Create a new decoder.
+     *
+     * @param data The rows to 'decode'.
+     */
+    public DirectStreamDecoder(final List<Map<String, Object>> data) {
+        rows = data.iterator();
+    }
+
+    /**
+     * Whether the decoder has been closed.
+     *
+     * @return True once closed.
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Get the input stream.
+     *
+     * @return The input stream.
+     */
+    @Override
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    /**
+     * Set the input stream.
+     *
+     * @param stream The input stream.
+     */
+    @Override
+    public void setInputStream(final InputStream stream) {
+        inputStream = stream;
+    }
+
+    /**
+     * The test mimetype.
+     *
+     * @return A test mimetype.
+     */
+    @Override
+    public String getMimeType() {
+        return "direct/mock";
+    }
+
+    /**
+     * Get the maximum number of rows.
+     *
+     * @return The number of rows, null for all.
+     */
+    @Override
+    public Long getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * Set the maximum number of rows.
+     *
+     * @param rows The number of rows, null for all.
+     */
+    @Override
+    public void setMaxRows(final Long rows) {
+        maxRows = rows;
+    }
+
+    /**
+     * Return the iterator, which continues where the last one stopped.
+     *
+     * @return The iterator.
+     */
+    @Override
+    public Iterator<Map<String, Object>> iterator() {
+        return rows;
+    }
+
+    /**
+     * Add a filter.
+     *
+     * @param filter The filter.
+     */
+    @Override
+    public void addFilter(final IDataFilter filter) {
+        filters.add(filter);
+    }
+
+    /**
+     * Add filters.
+     *
+     * @param newFilters The filters.
+     */
+    @Override
+    public void addFilters(final List<IDataFilter> newFilters) {
+        filters.addAll(newFilters);
+    }
+
+    /**
+     * Whether a filter has been added.
+     *
+     * @param filter The filter.
+     * @return True if it has.
+     */
+    @Override
+    public Boolean containsFilter(final IDataFilter filter) {
+        return filters.contains(filter);
+    }
+
+    /**
+     * Get the filters.
+     *
+     * @return The filters.
+     */
+    @Override
+    public List<IDataFilter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Remove a filter.
+     *
+     * @param filter The filter.
+     */
+    @Override
+    public void removeFilter(final IDataFilter filter) {
+        filters.remove(filter);
+    }
+
+    /**
+     * Remove all filters.
+     */
+    @Override
+    public void clearFilters() {
+        filters.clear();
+    }
+
+    /**
+     * Filters are not applied by this decoder.
+     *
+     * @param row The row.
+     * @return The row.
+     */
+    @Override
+    public Map<String, Object> applyFilters(final Map<String, Object> row) {
+        return row;
+    }
+
+    /**
+     * Close the decoder and its stream.
+     *
+     * @throws IOException Thrown if the stream cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (inputStream != null) {
+            inputStream.close();
+            inputStream = null;
+        }
+    }
+}
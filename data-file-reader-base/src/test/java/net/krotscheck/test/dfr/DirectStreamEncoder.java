@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.test.dfr;
+
+import net.krotscheck.dfr.IDataFilter;
+import net.krotscheck.dfr.stream.IStreamEncoder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A test stream encoder which implements the encoder interface directly,
+ * without the abstract base classes, and relies on its default methods.
+ * It keeps the rows it is given.
+ *
+ * @author Michael Krotscheck
+ */
+public final class DirectStreamEncoder implements IStreamEncoder {
+
+    /**
+     * The rows written.
+     */
+    private final List<Map<String, Object>> rows = new ArrayList<>();
+
+    /**
+     * The filters.
+     */
+    private final List<IDataFilter> filters = new ArrayList<>();
+
+    /**
+     * The output stream.
+     */
+    private OutputStream outputStream;
+
+    /**
+     * Get the rows written.
+     *
+     * @return The rows.
+     */
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    /**
+     * The test mimetype.
+     *
+     * @return A test mimetype.
+     */
+    @Override
+    public String getMimeType() {
+        return "direct/mock";
+    }
+
+    /**
+     * Keep a row.
+     *
+     * @param row The row.
+     */
+    @Override
+    public void write(final Map<String, Object> row) {
+        rows.add(row);
+    }
+
+    /**
+     * Get the output stream.
+     *
+     * @return The output stream.
+     */
+    @Override
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Set the output stream.
+     *
+     * @param stream The output stream.
+     */
+    @Override
+    public void setOutputStream(final OutputStream stream) {
+        outputStream = stream;
+    }
+
+    /**
+     * Add a filter.
+     *
+     * @param filter The filter.
+     */
+    @Override
+    public void addFilter(final IDataFilter filter) {
+        filters.add(filter);
+    }
+
+    /**
+     * Add filters.
+     *
+     * @param newFilters The filters.
+     */
+    @Override
+    public void addFilters(final List<IDataFilter> newFilters) {
+        filters.addAll(newFilters);
+    }
+
+    /**
+     * Whether a filter has been added.
+     *
+     * @param filter The filter.
+     * @return True if it has.
+     */
+    @Override
+    public Boolean containsFilter(final IDataFilter filter) {
+        return filters.contains(filter);
+    }
+
+    /**
+     * Get the filters.
+     *
+     * @return The filters.
+     */
+    @Override
+    public List<IDataFilter> getFilters() {
+        return filters;
+    }
+
+    /**
+     * Remove a filter.
+     *
+     * @param filter The filter.
+     */
+    @Override
+    public void removeFilter(final IDataFilter filter) {
+        filters.remove(filter);
+    }
+
+    /**
+     * Remove all filters.
+     */
+    @Override
+    public void clearFilters() {
+        filters.clear();
+    }
+
+    /**
+     * Filters are not applied by this encoder.
+     *
+     * @param row The row.
+     * @return The row.
+     */
+    @Override
+    public Map<String, Object> applyFilters(final Map<String, Object> row) {
+        return row;
+    }
+
+    /**
+     * Close the stream.
+     *
+     * @throws IOException Thrown if the stream cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        if (outputStream != null) {
+            outputStream.close();
+            outputStream = null;
+        }
+    }
+}
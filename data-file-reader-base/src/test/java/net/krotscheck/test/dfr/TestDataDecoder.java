@@ -18,6 +18,7 @@
 package net.krotscheck.test.dfr;
 
 import net.krotscheck.dfr.AbstractDataDecoder;
+import net.krotscheck.dfr.DataCodec;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -29,6 +30,7 @@ import java.util.Map;
  *
  * @author Michael Krotscheck
  */
+@DataCodec("raw/mock")
 public final class TestDataDecoder extends AbstractDataDecoder {
 
     /**
@@ -84,4 +86,12 @@ public final class TestDataDecoder extends AbstractDataDecoder {
     public void close() {
 
     }
+
+    /**
+     * Reset, rewinding batch reads.
+     */
+    @Override
+    public void reset() {
+        rewind();
+    }
 }
@@ -55,4 +55,12 @@ public final class TestDataEncoder extends AbstractDataEncoder {
     public void close() {
 
     }
+
+    /**
+     * Reset this encoder.
+     */
+    @Override
+    public void reset() {
+
+    }
 }
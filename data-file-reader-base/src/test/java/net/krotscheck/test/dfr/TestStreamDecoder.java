@@ -17,6 +17,7 @@
 
 package net.krotscheck.test.dfr;
 
+import net.krotscheck.dfr.DataCodec;
 import net.krotscheck.dfr.stream.AbstractStreamDecoder;
 
 import java.util.ArrayList;
@@ -29,6 +30,7 @@ import java.util.Map;
  *
  * @author Michael Krotscheck
  */
+@DataCodec("stream/mock")
 public final class TestStreamDecoder extends AbstractStreamDecoder {
 
     /**
@@ -17,6 +17,7 @@
 
 package net.krotscheck.test.dfr;
 
+import net.krotscheck.dfr.DataCodec;
 import net.krotscheck.dfr.stream.AbstractStreamEncoder;
 
 import java.util.Map;
@@ -26,6 +27,7 @@ import java.util.Map;
  *
  * @author Michael Krotscheck
  */
+@DataCodec("stream/mock")
 public final class TestStreamEncoder extends AbstractStreamEncoder {
 
     /**
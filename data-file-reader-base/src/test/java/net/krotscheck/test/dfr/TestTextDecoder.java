@@ -17,6 +17,7 @@
 
 package net.krotscheck.test.dfr;
 
+import net.krotscheck.dfr.DataCodec;
 import net.krotscheck.dfr.text.AbstractTextDecoder;
 
 import java.util.ArrayList;
@@ -31,6 +32,7 @@ import static org.mockito.Mockito.mock;
  *
  * @author Michael Krotscheck
  */
+@DataCodec("text/mock")
 public final class TestTextDecoder extends AbstractTextDecoder {
 
     /**
@@ -17,6 +17,7 @@
 
 package net.krotscheck.test.dfr;
 
+import net.krotscheck.dfr.DataCodec;
 import net.krotscheck.dfr.text.AbstractTextEncoder;
 
 import java.util.Map;
@@ -26,6 +27,7 @@ import java.util.Map;
  *
  * @author Michael Krotscheck
  */
+@DataCodec("text/mock")
 public final class TestTextEncoder extends AbstractTextEncoder {
 
     /**
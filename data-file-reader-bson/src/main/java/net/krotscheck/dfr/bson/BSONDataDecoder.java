@@ -4,27 +4,40 @@
 
 package net.krotscheck.dfr.bson;
 
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.AbstractParallelIterator;
+import net.krotscheck.dfr.DataCodec;
+import net.krotscheck.dfr.IBatchIterator;
+import net.krotscheck.dfr.PredicateSet;
+import net.krotscheck.dfr.RowBatch;
+import net.krotscheck.dfr.RowBuilder;
+import net.krotscheck.dfr.RowPredicate;
 import net.krotscheck.dfr.stream.AbstractStreamDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-
-import de.undercouch.bson4jackson.BsonFactory;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * This data decoder will stream in a BSON encoded file and generate objects for
- * every row found.
+ * every row found. Rows are decoded directly from the BSON bytes, without an
+ * object mapper; fields that are not required are skipped by their length.
+ * <p>
+ * If a parallelism is set, rows are decoded on a pool of threads: the length
+ * prefix of every row is used to cut the stream into parts without parsing
+ * them, and the parts are decoded independently. Rows are still returned in
+ * stream order.
  *
  * @author Michael Krotscheck
  */
+@DataCodec("application/bson")
 public final class BSONDataDecoder extends AbstractStreamDecoder {
 
     /**
@@ -33,6 +46,21 @@ public final class BSONDataDecoder extends AbstractStreamDecoder {
     private static Logger logger =
             LoggerFactory.getLogger(BSONDataDecoder.class);
 
+    /**
+     * The default number of bytes of rows decoded as one part.
+     */
+    static final int DEFAULT_PART_SIZE = 1024 * 1024;
+
+    /**
+     * The number of threads used to decode the stream.
+     */
+    private Integer parallelism;
+
+    /**
+     * The number of bytes of rows decoded as one part.
+     */
+    private int partSize = DEFAULT_PART_SIZE;
+
     /**
      * Returns an iterator for the file.
      *
@@ -40,7 +68,39 @@ public final class BSONDataDecoder extends AbstractStreamDecoder {
      */
     @Override
     protected Iterator<Map<String, Object>> buildIterator() {
-        return new InnerRowIterator(getInputStream());
+        if (parallelism != null && parallelism > 1) {
+            return new ParallelRowIterator(getInputStream(), parallelism,
+                    partSize, getRequiredColumns(), getRowPredicates());
+        }
+        return new InnerRowIterator(getInputStream(), partSize,
+                getRequiredColumns(), getRowPredicates());
+    }
+
+    /**
+     * Get the number of threads used to decode the stream.
+     *
+     * @return The number of threads, null to decode sequentially.
+     */
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads used to decode the stream.
+     *
+     * @param threads The number of threads, default null.
+     */
+    public void setParallelism(final Integer threads) {
+        this.parallelism = threads;
+    }
+
+    /**
+     * Set the number of bytes of rows decoded as one part.
+     *
+     * @param bytes The part size.
+     */
+    void setPartSize(final int bytes) {
+        this.partSize = bytes;
     }
 
     /**
@@ -53,6 +113,15 @@ public final class BSONDataDecoder extends AbstractStreamDecoder {
         return "application/bson";
     }
 
+    /**
+     * Set the parallelism and part size back to their defaults.
+     */
+    @Override
+    protected void restoreSettings() {
+        parallelism = null;
+        partSize = DEFAULT_PART_SIZE;
+    }
+
     /**
      * Dispose of this decoder.
      */
@@ -62,58 +131,218 @@ public final class BSONDataDecoder extends AbstractStreamDecoder {
     }
 
     /**
-     * Internal iterator class, which wraps a Jackson parser.
+     * Decodes a stream in parallel. The carver copies runs of rows into
+     * parts of their own, which are parsed independently.
      */
-    private static final class InnerRowIterator
-            implements Iterator<Map<String, Object>> {
+    private static final class ParallelRowIterator
+            extends AbstractParallelIterator {
+
+        /**
+         * Cuts the stream into parts.
+         */
+        private final BSONDocumentCarver carver;
 
         /**
-         * Our jackson json parser - which is going to write BSON for us.
+         * The number of bytes of rows decoded as one part.
          */
-        private JsonParser parser;
+        private final int partSize;
 
         /**
-         * Type reference, everything's a string/object pair.
+         * The columns to decode, null for all of them.
          */
-        private TypeReference<Map<String, Object>> mapReference =
-                new TypeReference<Map<String, Object>>() {
+        private final Set<String> columns;
 
-                };
+        /**
+         * The predicates to test while reading.
+         */
+        private final List<RowPredicate> predicates;
 
         /**
-         * Create a new iterator.
+         * Create a new parallel iterator.
          *
-         * @param bsonStream The BSON Input stream.
+         * @param bsonStream      The BSON input stream.
+         * @param threads         The number of threads.
+         * @param bytes           The number of bytes of rows per part.
+         * @param requiredColumns The columns to decode, null for all.
+         * @param rowPredicates   The predicates to test while reading.
          */
-        private InnerRowIterator(final InputStream bsonStream) {
+        ParallelRowIterator(final InputStream bsonStream, final int threads,
+                            final int bytes,
+                            final Set<String> requiredColumns,
+                            final List<RowPredicate> rowPredicates) {
+            super(threads, true);
+            carver = new BSONDocumentCarver(bsonStream);
+            partSize = bytes;
+            columns = requiredColumns;
+            predicates = rowPredicates;
+        }
 
-            try {
-                // Construct our iterator.
-                ObjectMapper mapper = new ObjectMapper();
-                BsonFactory factory = new BsonFactory(mapper);
-                parser = factory.createParser(bsonStream);
-
-                // BSON formats arrays as { 0: {obj}, 1: {obj}...}
-                if (parser.nextToken() != JsonToken.START_OBJECT) {
-                    throw new IOException(
-                            "File does not contain an array of objects.");
+        /**
+         * Carve the next part, and hand out its decoder.
+         *
+         * @return The decoder, or null after the last row.
+         * @throws IOException Thrown if the stream cannot be read.
+         */
+        @Override
+        protected Callable<List<Map<String, Object>>> nextPart()
+                throws IOException {
+            final byte[] part = carver.next(partSize);
+            if (part == null) {
+                return null;
+            }
+            return new Callable<List<Map<String, Object>>>() {
+                @Override
+                public List<Map<String, Object>> call() {
+                    InnerRowIterator iterator = new InnerRowIterator(part,
+                            columns, predicates);
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    while (iterator.hasNext()) {
+                        Map<String, Object> row = iterator.next();
+                        if (row != null) {
+                            rows.add(row);
+                        }
+                    }
+                    return rows;
                 }
+            };
+        }
 
-                parser.nextToken();
+        /**
+         * The stream is closed by the decoder.
+         */
+        @Override
+        protected void dispose() {
+            // Do nothing.
+        }
+    }
+
+    /**
+     * Internal iterator class, which reads rows straight from BSON bytes.
+     * A stream is read part by part through a carver, so that every part
+     * can be decoded from memory; a part handed out by the parallel
+     * iterator is decoded on its own.
+     */
+    private static final class InnerRowIterator
+            implements IBatchIterator {
+
+        /**
+         * Cuts the stream into parts, null if there are no more parts.
+         */
+        private BSONDocumentCarver carver;
+
+        /**
+         * The number of bytes of rows read as one part.
+         */
+        private final int partSize;
+
+        /**
+         * Reads the current part, null once an error occurred.
+         */
+        private BSONReader reader;
+
+        /**
+         * Assembles rows, reusing the schema between rows of equal layout.
+         */
+        private final RowBuilder builder = new RowBuilder();
+
+        /**
+         * The columns to decode, null for all of them.
+         */
+        private final Set<String> columns;
+
+        /**
+         * The predicates tested while reading, null if there are none.
+         */
+        private final PredicateSet selection;
+
+        /**
+         * Create a new iterator over a stream.
+         *
+         * @param bsonStream      The BSON Input stream.
+         * @param bytes           The number of bytes of rows per part.
+         * @param requiredColumns The columns to decode, null for all.
+         * @param rowPredicates   The predicates to test while reading.
+         */
+        private InnerRowIterator(final InputStream bsonStream,
+                                 final int bytes,
+                                 final Set<String> requiredColumns,
+                                 final List<RowPredicate> rowPredicates) {
+            this(new byte[0], requiredColumns, rowPredicates, bytes);
+            this.carver = new BSONDocumentCarver(bsonStream);
+        }
+
+        /**
+         * Create a new iterator over a single part.
+         *
+         * @param part            The part, a complete BSON document.
+         * @param requiredColumns The columns to decode, null for all.
+         * @param rowPredicates   The predicates to test while reading.
+         */
+        private InnerRowIterator(final byte[] part,
+                                 final Set<String> requiredColumns,
+                                 final List<RowPredicate> rowPredicates) {
+            this(part, requiredColumns, rowPredicates, 0);
+            try {
+                reader.readStart();
             } catch (IOException ioe) {
                 logger.error(ioe.getMessage());
+                reader = null;
             }
         }
 
         /**
-         * Does this iterator have a next item?
+         * Shared constructor.
+         *
+         * @param part            The first part.
+         * @param requiredColumns The columns to decode, null for all.
+         * @param rowPredicates   The predicates to test while reading.
+         * @param bytes           The number of bytes of rows per part.
+         */
+        private InnerRowIterator(final byte[] part,
+                                 final Set<String> requiredColumns,
+                                 final List<RowPredicate> rowPredicates,
+                                 final int bytes) {
+            this.reader = new BSONReader(ByteBuffer.wrap(part));
+            this.partSize = bytes;
+            this.columns = requiredColumns;
+            if (rowPredicates.isEmpty()) {
+                this.selection = null;
+            } else {
+                this.selection = new PredicateSet(rowPredicates);
+            }
+        }
+
+        /**
+         * Does this iterator have a next item? When the current part is
+         * exhausted, the next one is carved from the stream.
          *
          * @return true if there's an extra item, otherwise false.
          */
         @Override
         public boolean hasNext() {
-            JsonToken token = parser.getCurrentToken();
-            return token != null && token == JsonToken.FIELD_NAME;
+            if (reader == null) {
+                return false;
+            }
+            if (reader.peekType() == BSONReader.TYPE_DOCUMENT) {
+                return true;
+            }
+            if (carver == null) {
+                return false;
+            }
+            try {
+                byte[] part = carver.next(partSize);
+                if (part == null) {
+                    carver = null;
+                    return false;
+                }
+                reader.reset(ByteBuffer.wrap(part));
+                reader.readStart();
+            } catch (IOException ioe) {
+                logger.error(ioe.getMessage());
+                reader = null;
+                return false;
+            }
+            return reader.peekType() == BSONReader.TYPE_DOCUMENT;
         }
 
         /**
@@ -123,20 +352,202 @@ public final class BSONDataDecoder extends AbstractStreamDecoder {
          */
         @Override
         public Map<String, Object> next() {
-            if (hasNext()) {
+            while (hasNext()) {
                 try {
-                    parser.nextToken();
-                    Map<String, Object> next = parser.readValueAs(mapReference);
-                    parser.nextToken();
-                    return next;
+                    if (readObject()) {
+                        return builder.build();
+                    }
                 } catch (Exception e) {
                     logger.error(e.getMessage(), e);
+                    builder.reset();
+                    reader = null;
                 }
             }
 
             return null;
         }
 
+        /**
+         * Decode up to a number of rows straight into a batch.
+         *
+         * @param batch   The batch to append rows to.
+         * @param maxRows The maximum number of rows to append.
+         * @return The number of rows appended.
+         */
+        @Override
+        public int nextBatch(final RowBatch.Builder batch, final int maxRows) {
+            int added = 0;
+            while (added < maxRows && hasNext()) {
+                try {
+                    if (!readObject()) {
+                        continue;
+                    }
+                } catch (Exception e) {
+                    logger.error(e.getMessage(), e);
+                    builder.reset();
+                    reader = null;
+                    break;
+                }
+                builder.appendTo(batch);
+                added++;
+            }
+            return added;
+        }
+
+        /**
+         * Read the fields of the next row document into the row builder.
+         * Fields that are not needed are skipped by their length. Predicate
+         * columns are tested as soon as they are read; once a row is
+         * rejected, the rest of it is skipped without being decoded.
+         *
+         * @return True if the row was read, false if it was rejected.
+         * @throws IOException Thrown if the row cannot be read.
+         */
+        private boolean readObject() throws IOException {
+            reader.readType();
+            reader.skipName();
+            int end = reader.readStart();
+            if (selection != null) {
+                selection.reset();
+            }
+
+            int ordinal = 0;
+            int type = reader.readType();
+            while (type != BSONReader.TYPE_END) {
+                String name = reader.readName(ordinal);
+                ordinal++;
+                int slot = -1;
+                if (selection != null) {
+                    slot = selection.slot(name);
+                }
+                if (slot >= 0) {
+                    if (!readTested(type, name, slot)) {
+                        reader.skipRest(end);
+                        builder.reset();
+                        return false;
+                    }
+                } else if (columns == null || columns.contains(name)) {
+                    readField(type, name);
+                } else {
+                    reader.skipValue(type);
+                }
+                type = reader.readType();
+            }
+
+            if (selection != null && !selection.testMissing()) {
+                builder.reset();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * Read a value that has predicates, test it, and keep it if its
+         * column is wanted. Nested structures are left to the filter chain.
+         *
+         * @param type The element type.
+         * @param name The name of the field.
+         * @param slot The predicate slot of the field.
+         * @return False if the row is rejected.
+         * @throws IOException Thrown if the value cannot be read.
+         */
+        private boolean readTested(final int type, final String name,
+                                   final int slot) throws IOException {
+            boolean wanted = columns == null || columns.contains(name);
+            switch (type) {
+                case BSONReader.TYPE_INT32:
+                    int intValue = reader.readInt();
+                    if (!selection.test(slot, (long) intValue)) {
+                        return false;
+                    }
+                    if (wanted) {
+                        builder.addInt(name, intValue);
+                    }
+                    return true;
+                case BSONReader.TYPE_INT64:
+                    long longValue = reader.readLong();
+                    if (!selection.test(slot, longValue)) {
+                        return false;
+                    }
+                    if (wanted) {
+                        builder.addLong(name, longValue);
+                    }
+                    return true;
+                case BSONReader.TYPE_DOUBLE:
+                    double doubleValue = reader.readDouble();
+                    if (!selection.test(slot, doubleValue)) {
+                        return false;
+                    }
+                    if (wanted) {
+                        builder.addDouble(name, doubleValue);
+                    }
+                    return true;
+                case BSONReader.TYPE_BOOLEAN:
+                    boolean booleanValue = reader.readBoolean();
+                    if (!selection.test(slot, booleanValue)) {
+                        return false;
+                    }
+                    if (wanted) {
+                        builder.addBoolean(name, booleanValue);
+                    }
+                    return true;
+                case BSONReader.TYPE_STRING:
+                    String stringValue = reader.readString();
+                    if (!selection.test(slot, stringValue)) {
+                        return false;
+                    }
+                    if (wanted) {
+                        builder.add(name, stringValue);
+                    }
+                    return true;
+                case BSONReader.TYPE_NULL:
+                    if (!selection.test(slot, (Object) null)) {
+                        return false;
+                    }
+                    if (wanted) {
+                        builder.add(name, null);
+                    }
+                    return true;
+                default:
+                    selection.defer(slot);
+                    if (wanted) {
+                        readField(type, name);
+                    } else {
+                        reader.skipValue(type);
+                    }
+                    return true;
+            }
+        }
+
+        /**
+         * Read a value into the row builder. Numbers and booleans are passed
+         * on unboxed; everything else is decoded by the reader.
+         *
+         * @param type The element type.
+         * @param name The name of the field.
+         * @throws IOException Thrown if the value cannot be read.
+         */
+        private void readField(final int type, final String name)
+                throws IOException {
+            switch (type) {
+                case BSONReader.TYPE_INT32:
+                    builder.addInt(name, reader.readInt());
+                    break;
+                case BSONReader.TYPE_INT64:
+                    builder.addLong(name, reader.readLong());
+                    break;
+                case BSONReader.TYPE_DOUBLE:
+                    builder.addDouble(name, reader.readDouble());
+                    break;
+                case BSONReader.TYPE_BOOLEAN:
+                    builder.addBoolean(name, reader.readBoolean());
+                    break;
+                default:
+                    builder.add(name, reader.readValue(type));
+                    break;
+            }
+        }
+
         /**
          * We cannot remove from a stream.
          */
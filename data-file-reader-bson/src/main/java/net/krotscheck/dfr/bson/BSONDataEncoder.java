@@ -4,8 +4,7 @@
 
 package net.krotscheck.dfr.bson;
 
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.DataCodec;
 import net.krotscheck.dfr.stream.AbstractStreamEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,14 +12,15 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.Map;
 
-import de.undercouch.bson4jackson.BsonFactory;
-import de.undercouch.bson4jackson.BsonGenerator;
-
 /**
  * BSON Data Encoder, allows us to write tuples to a data file in BSON format.
+ * Rows are encoded directly from their typed values, without going through
+ * an object mapper, and every row is written with its length so that
+ * decoders can skip over it.
  *
  * @author Michael Krotscheck
  */
+@DataCodec("application/bson")
 public final class BSONDataEncoder extends AbstractStreamEncoder {
 
     /**
@@ -30,9 +30,14 @@ public final class BSONDataEncoder extends AbstractStreamEncoder {
             LoggerFactory.getLogger(BSONDataEncoder.class);
 
     /**
-     * JSON Generator, which writes our BSON for us.
+     * The writer, created on the first row and kept across resets.
+     */
+    private BSONWriter writer;
+
+    /**
+     * Whether the writer has started an array on the current stream.
      */
-    private JsonGenerator generator;
+    private boolean writing = false;
 
     /**
      * Return the decoding mimetype which this encoder supports.
@@ -54,16 +59,15 @@ public final class BSONDataEncoder extends AbstractStreamEncoder {
     @Override
     protected void writeToOutput(final Map<String, Object> row)
             throws IOException {
-        if (generator == null) {
-            ObjectMapper mapper = new ObjectMapper();
-            BsonFactory factory = new BsonFactory(mapper);
-            factory.enable(BsonGenerator.Feature.ENABLE_STREAMING);
-            generator = factory.createJsonGenerator(getOutputStream());
-            generator.writeStartArray(); // [
+        if (!writing) {
+            if (writer == null) {
+                writer = new BSONWriter(getOutputStream());
+            } else {
+                writer.reset(getOutputStream());
+            }
+            writing = true;
         }
-
-        // Convert the tuple into a map
-        generator.writeObject(row);
+        writer.writeRow(row);
     }
 
     /**
@@ -72,16 +76,15 @@ public final class BSONDataEncoder extends AbstractStreamEncoder {
     @Override
     protected void dispose() {
         try {
-            if (generator != null) {
-                generator.writeEndArray();
-                generator.close();
+            if (writing) {
+                writer.finish();
             }
             this.getOutputStream().close();
         } catch (IOException ioe) {
             logger.error("Unable to close stream", ioe);
             logger.trace(ioe.getMessage(), ioe);
         } finally {
-            generator = null;
+            writing = false;
             this.setOutputStream(null);
         }
     }
@@ -0,0 +1,352 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.bson;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Cuts a BSON file into parts that can be decoded independently, without
+ * parsing the rows. A file is a single document whose elements are the rows,
+ * each an embedded document that starts with its own length. The carver
+ * reads each element's type, name and length, and copies it verbatim into
+ * the current part. Each part is closed off as a small top-level document of
+ * its own, which any BSON parser can read. Rows written without a length
+ * are walked element by element instead, skipping values by their type.
+ *
+ * @author Michael Krotscheck
+ */
+final class BSONDocumentCarver {
+
+    /**
+     * The BSON element type of an embedded document.
+     */
+    private static final int TYPE_DOCUMENT = 0x03;
+
+    /**
+     * The size of a BSON length prefix.
+     */
+    private static final int LENGTH_SIZE = 4;
+
+    /**
+     * The smallest buffer a part is assembled in.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The input.
+     */
+    private final InputStream input;
+
+    /**
+     * Whether the header of the file was read.
+     */
+    private boolean started = false;
+
+    /**
+     * Whether the end of the file was reached.
+     */
+    private boolean finished = false;
+
+    /**
+     * The part being assembled.
+     */
+    private byte[] part;
+
+    /**
+     * The number of bytes in the part being assembled.
+     */
+    private int size;
+
+    /**
+     * Create a new carver.
+     *
+     * @param stream The BSON input.
+     */
+    BSONDocumentCarver(final InputStream stream) {
+        this.input = new BufferedInputStream(stream);
+    }
+
+    /**
+     * Copy the next rows into a part of at least the given number of bytes,
+     * unless the file ends first. Carving stops at the end of the file, or
+     * at the first element that is not a document.
+     *
+     * @param targetSize The target size of the part.
+     * @return The part, as a complete BSON document, or null if there are
+     * no more rows.
+     * @throws IOException Thrown if the file cannot be read, or ends in the
+     *                     middle of a row.
+     */
+    byte[] next(final int targetSize) throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (!started) {
+            started = true;
+            skip(LENGTH_SIZE);
+        }
+
+        part = new byte[Math.max(targetSize, INITIAL_CAPACITY)];
+        size = LENGTH_SIZE;
+        int rows = 0;
+        while (rows == 0 || size < targetSize) {
+            int type = input.read();
+            if (type != TYPE_DOCUMENT) {
+                finished = true;
+                break;
+            }
+            append(type);
+            copyName();
+            copyDocument();
+            rows++;
+        }
+        if (rows == 0) {
+            return null;
+        }
+
+        append(0);
+        for (int i = 0; i < LENGTH_SIZE; i++) {
+            part[i] = (byte) (size >>> (8 * i));
+        }
+        return Arrays.copyOf(part, size);
+    }
+
+    /**
+     * Make room for a number of bytes at the end of the current part.
+     *
+     * @param count The number of bytes.
+     */
+    private void ensureCapacity(final int count) {
+        if (size + count > part.length) {
+            part = Arrays.copyOf(part, Math.max(part.length * 2, size + count));
+        }
+    }
+
+    /**
+     * Append a single byte to the current part.
+     *
+     * @param b The byte.
+     */
+    private void append(final int b) {
+        ensureCapacity(1);
+        part[size] = (byte) b;
+        size++;
+    }
+
+    /**
+     * Copy an element name, which is a null terminated string.
+     *
+     * @throws IOException Thrown at the end of the file.
+     */
+    private void copyName() throws IOException {
+        int b = read();
+        while (b != 0) {
+            append(b);
+            b = read();
+        }
+        append(0);
+    }
+
+    /**
+     * Copy a document or array. Documents are copied in one read, using
+     * their length prefix. Streaming writers, such as the one used by
+     * {@link BSONDataEncoder}, write a length of zero instead; such
+     * documents are walked element by element, which still only looks at
+     * types, names and lengths.
+     *
+     * @throws IOException Thrown if the document cannot be read.
+     */
+    private void copyDocument() throws IOException {
+        int length = copyLength();
+        if (length == 0) {
+            copyElements();
+        } else if (length > LENGTH_SIZE) {
+            copy(length - LENGTH_SIZE);
+        } else {
+            throw new IOException("Invalid document length: " + length);
+        }
+    }
+
+    /**
+     * Copy the elements of a document up to and including its terminator.
+     *
+     * @throws IOException Thrown if the document cannot be read.
+     */
+    private void copyElements() throws IOException {
+        int type = read();
+        while (type != 0) {
+            append(type);
+            copyName();
+            copyValue(type);
+            type = read();
+        }
+        append(0);
+    }
+
+    /**
+     * Copy the value of an element.
+     *
+     * @param type The element type.
+     * @throws IOException Thrown if the value cannot be read, or its type is
+     *                     unknown.
+     */
+    private void copyValue(final int type) throws IOException {
+        switch (type) {
+            case 0x06: // Undefined
+            case 0x0A: // Null
+            case 0x7F: // Max key
+            case 0xFF: // Min key
+                break;
+            case 0x08: // Boolean
+                copy(1);
+                break;
+            case 0x10: // Int32
+                copy(4);
+                break;
+            case 0x01: // Double
+            case 0x09: // UTC datetime
+            case 0x11: // Timestamp
+            case 0x12: // Int64
+                copy(8);
+                break;
+            case 0x07: // ObjectId
+                copy(12);
+                break;
+            case 0x13: // Decimal128
+                copy(16);
+                break;
+            case 0x02: // String
+            case 0x0D: // JavaScript
+            case 0x0E: // Symbol
+                copy(copyLength());
+                break;
+            case 0x03: // Document
+            case 0x04: // Array
+                copyDocument();
+                break;
+            case 0x05: // Binary
+                copy(copyLength() + 1);
+                break;
+            case 0x0B: // Regular expression
+                copyName();
+                copyName();
+                break;
+            case 0x0C: // DBPointer
+                copy(copyLength() + 12);
+                break;
+            case 0x0F: // JavaScript with scope
+                // The total length is not trusted, as bson4jackson writes
+                // it incorrectly; the code and scope are copied instead.
+                copyLength();
+                copy(copyLength());
+                copyDocument();
+                break;
+            default:
+                throw new IOException("Unknown BSON element type: " + type);
+        }
+    }
+
+    /**
+     * Copy a length prefix.
+     *
+     * @return The length.
+     * @throws IOException Thrown at the end of the file.
+     */
+    private int copyLength() throws IOException {
+        int start = size;
+        copy(LENGTH_SIZE);
+        int length = decodeLength(part, start);
+        if (length < 0) {
+            throw new IOException("Invalid length: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Copy a number of bytes that must exist.
+     *
+     * @param count The number of bytes.
+     * @throws IOException Thrown at the end of the file.
+     */
+    private void copy(final int count) throws IOException {
+        ensureCapacity(count);
+        readFully(count);
+    }
+
+    /**
+     * Decode a little-endian length prefix.
+     *
+     * @param bytes  The buffer holding the prefix.
+     * @param offset The offset of the prefix.
+     * @return The length.
+     */
+    private static int decodeLength(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF)
+                | (bytes[offset + 1] & 0xFF) << 8
+                | (bytes[offset + 2] & 0xFF) << 16
+                | (bytes[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Read a single byte that must exist.
+     *
+     * @return The byte.
+     * @throws IOException Thrown at the end of the file.
+     */
+    private int read() throws IOException {
+        int b = input.read();
+        if (b < 0) {
+            throw new EOFException("Unexpected end of BSON file.");
+        }
+        return b;
+    }
+
+    /**
+     * Skip a number of bytes that must exist.
+     *
+     * @param count The number of bytes.
+     * @throws IOException Thrown at the end of the file.
+     */
+    private void skip(final int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            read();
+        }
+    }
+
+    /**
+     * Read a number of bytes that must exist onto the end of the current
+     * part, which must have room for them.
+     *
+     * @param count The number of bytes.
+     * @throws IOException Thrown at the end of the file.
+     */
+    private void readFully(final int count) throws IOException {
+        int end = size + count;
+        while (size < end) {
+            int read = input.read(part, size, end - size);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of BSON file.");
+            }
+            size += read;
+        }
+    }
+}
@@ -0,0 +1,724 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.bson;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import de.undercouch.bson4jackson.types.JavaScript;
+import de.undercouch.bson4jackson.types.ObjectId;
+import de.undercouch.bson4jackson.types.Symbol;
+import de.undercouch.bson4jackson.types.Timestamp;
+
+/**
+ * Reads BSON elements straight from a buffer. The reader is driven element
+ * by element by its caller, which decides for every field whether to read
+ * the value or to skip it. Skipping a document or array jumps over it by its
+ * length prefix; only documents written without a length, as streaming
+ * writers do, are walked. Values are returned as the same types the
+ * bson4jackson parser produces, so switching between the two does not change
+ * the rows a decoder returns.
+ *
+ * @author Michael Krotscheck
+ */
+final class BSONReader {
+
+    /**
+     * The end of a document.
+     */
+    static final int TYPE_END = 0x00;
+
+    /**
+     * A 64-bit floating point value.
+     */
+    static final int TYPE_DOUBLE = 0x01;
+
+    /**
+     * A UTF-8 string.
+     */
+    static final int TYPE_STRING = 0x02;
+
+    /**
+     * An embedded document.
+     */
+    static final int TYPE_DOCUMENT = 0x03;
+
+    /**
+     * An array, encoded as a document with numeric keys.
+     */
+    static final int TYPE_ARRAY = 0x04;
+
+    /**
+     * Binary data.
+     */
+    static final int TYPE_BINARY = 0x05;
+
+    /**
+     * The deprecated undefined value.
+     */
+    static final int TYPE_UNDEFINED = 0x06;
+
+    /**
+     * An ObjectId.
+     */
+    static final int TYPE_OBJECT_ID = 0x07;
+
+    /**
+     * A boolean.
+     */
+    static final int TYPE_BOOLEAN = 0x08;
+
+    /**
+     * A UTC datetime, in milliseconds since the epoch.
+     */
+    static final int TYPE_DATETIME = 0x09;
+
+    /**
+     * Null.
+     */
+    static final int TYPE_NULL = 0x0A;
+
+    /**
+     * A regular expression.
+     */
+    static final int TYPE_REGEX = 0x0B;
+
+    /**
+     * The deprecated DBPointer.
+     */
+    static final int TYPE_DB_POINTER = 0x0C;
+
+    /**
+     * JavaScript code.
+     */
+    static final int TYPE_JAVASCRIPT = 0x0D;
+
+    /**
+     * The deprecated symbol.
+     */
+    static final int TYPE_SYMBOL = 0x0E;
+
+    /**
+     * JavaScript code with a scope.
+     */
+    static final int TYPE_JAVASCRIPT_SCOPE = 0x0F;
+
+    /**
+     * A 32-bit integer.
+     */
+    static final int TYPE_INT32 = 0x10;
+
+    /**
+     * A MongoDB timestamp.
+     */
+    static final int TYPE_TIMESTAMP = 0x11;
+
+    /**
+     * A 64-bit integer.
+     */
+    static final int TYPE_INT64 = 0x12;
+
+    /**
+     * A 128-bit decimal.
+     */
+    static final int TYPE_DECIMAL128 = 0x13;
+
+    /**
+     * The min key.
+     */
+    static final int TYPE_MIN_KEY = 0xFF;
+
+    /**
+     * The max key.
+     */
+    static final int TYPE_MAX_KEY = 0x7F;
+
+    /**
+     * The binary subtype of old style binary data.
+     */
+    private static final int SUBTYPE_OLD_BINARY = 0x02;
+
+    /**
+     * The binary subtype of old style UUIDs.
+     */
+    private static final int SUBTYPE_OLD_UUID = 0x03;
+
+    /**
+     * The size of a length prefix.
+     */
+    private static final int LENGTH_SIZE = 4;
+
+    /**
+     * The size of an ObjectId.
+     */
+    private static final int OBJECT_ID_SIZE = 12;
+
+    /**
+     * The size of a decimal128.
+     */
+    private static final int DECIMAL128_SIZE = 16;
+
+    /**
+     * The buffer being read.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Names read by position within the top-level document, so that rows
+     * of the same layout share their column name strings.
+     */
+    private String[] names = new String[0];
+
+    /**
+     * Create a new reader for a buffer.
+     *
+     * @param input The buffer, positioned at the first byte to read.
+     */
+    BSONReader(final ByteBuffer input) {
+        reset(input);
+    }
+
+    /**
+     * Continue reading from another buffer, keeping the name cache.
+     *
+     * @param input The buffer, positioned at the first byte to read.
+     */
+    void reset(final ByteBuffer input) {
+        this.buffer = input.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * The type of the next element, without consuming it.
+     *
+     * @return The element type, or {@link #TYPE_END} at the end of a
+     * document or of the buffer.
+     */
+    int peekType() {
+        if (!buffer.hasRemaining()) {
+            return TYPE_END;
+        }
+        return buffer.get(buffer.position()) & 0xFF;
+    }
+
+    /**
+     * Read the type of the next element.
+     *
+     * @return The element type, or {@link #TYPE_END} at the end of a
+     * document.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    int readType() throws IOException {
+        return readByte() & 0xFF;
+    }
+
+    /**
+     * Read the start of a document or array.
+     *
+     * @return The buffer position after the document, or -1 if it was
+     * written without a length.
+     * @throws IOException Thrown if the length is invalid.
+     */
+    int readStart() throws IOException {
+        int start = buffer.position();
+        int length = readInt();
+        if (length == 0) {
+            return -1;
+        }
+        if (length <= LENGTH_SIZE || length > buffer.limit() - start) {
+            throw new IOException("Invalid document length: " + length);
+        }
+        return start + length;
+    }
+
+    /**
+     * Skip the remaining elements of a document.
+     *
+     * @param end The end returned by {@link #readStart()}.
+     * @throws IOException Thrown if the document cannot be read.
+     */
+    void skipRest(final int end) throws IOException {
+        if (end >= 0) {
+            buffer.position(end);
+            return;
+        }
+        int type = readType();
+        while (type != TYPE_END) {
+            skipName();
+            skipValue(type);
+            type = readType();
+        }
+    }
+
+    /**
+     * Read an element name. Names are remembered by their position within
+     * the document, and reused as long as the bytes match.
+     *
+     * @param ordinal The position of the element in its document.
+     * @return The name.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    String readName(final int ordinal) throws IOException {
+        int start = buffer.position();
+        int end = findTerminator(start);
+        if (ordinal < names.length && matches(names[ordinal], start, end)) {
+            buffer.position(end + 1);
+            return names[ordinal];
+        }
+        String name = decode(start, end - start);
+        buffer.position(end + 1);
+        if (ordinal >= names.length) {
+            names = Arrays.copyOf(names, Math.max(ordinal + 1,
+                    names.length * 2));
+        }
+        names[ordinal] = name;
+        return name;
+    }
+
+    /**
+     * Read an element name without caching it.
+     *
+     * @return The name.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    String readName() throws IOException {
+        int start = buffer.position();
+        int end = findTerminator(start);
+        String name = decode(start, end - start);
+        buffer.position(end + 1);
+        return name;
+    }
+
+    /**
+     * Skip an element name.
+     *
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    void skipName() throws IOException {
+        buffer.position(findTerminator(buffer.position()) + 1);
+    }
+
+    /**
+     * Read a 32-bit integer.
+     *
+     * @return The value.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    int readInt() throws IOException {
+        try {
+            return buffer.getInt();
+        } catch (BufferUnderflowException bue) {
+            throw truncated();
+        }
+    }
+
+    /**
+     * Read a 64-bit integer.
+     *
+     * @return The value.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    long readLong() throws IOException {
+        try {
+            return buffer.getLong();
+        } catch (BufferUnderflowException bue) {
+            throw truncated();
+        }
+    }
+
+    /**
+     * Read a double.
+     *
+     * @return The value.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    double readDouble() throws IOException {
+        try {
+            return buffer.getDouble();
+        } catch (BufferUnderflowException bue) {
+            throw truncated();
+        }
+    }
+
+    /**
+     * Read a boolean.
+     *
+     * @return The value.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    /**
+     * Read a length prefixed string.
+     *
+     * @return The value.
+     * @throws IOException Thrown if the string is invalid.
+     */
+    String readString() throws IOException {
+        int length = readInt();
+        if (length <= 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        int start = buffer.position();
+        String value = decode(start, length - 1);
+        buffer.position(start + length);
+        return value;
+    }
+
+    /**
+     * Read a value of any type. Documents become maps, arrays become lists,
+     * and BSON specific values become the bson4jackson types.
+     *
+     * @param type The element type.
+     * @return The value.
+     * @throws IOException Thrown if the value cannot be read, or its type is
+     *                     unknown.
+     */
+    Object readValue(final int type) throws IOException {
+        switch (type) {
+            case TYPE_DOUBLE:
+                return readDouble();
+            case TYPE_STRING:
+                return readString();
+            case TYPE_DOCUMENT:
+                return readDocument();
+            case TYPE_ARRAY:
+                return readArray();
+            case TYPE_BINARY:
+                return readBinary();
+            case TYPE_UNDEFINED:
+            case TYPE_NULL:
+                return null;
+            case TYPE_OBJECT_ID:
+                return readObjectId();
+            case TYPE_BOOLEAN:
+                return readBoolean();
+            case TYPE_DATETIME:
+                return new Date(readLong());
+            case TYPE_REGEX:
+                String pattern = readName();
+                return Pattern.compile(pattern, readFlags(readName()));
+            case TYPE_DB_POINTER:
+                Map<String, Object> pointer = new LinkedHashMap<>();
+                pointer.put("$ns", readString());
+                pointer.put("$id", readObjectId());
+                return pointer;
+            case TYPE_JAVASCRIPT:
+                return new JavaScript(readString());
+            case TYPE_SYMBOL:
+                return new Symbol(readString());
+            case TYPE_JAVASCRIPT_SCOPE:
+                readInt();
+                String code = readString();
+                return new JavaScript(code, readDocument());
+            case TYPE_INT32:
+                return readInt();
+            case TYPE_TIMESTAMP:
+                int increment = readInt();
+                return new Timestamp(readInt(), increment);
+            case TYPE_INT64:
+                return readLong();
+            case TYPE_MIN_KEY:
+                return "MinKey";
+            case TYPE_MAX_KEY:
+                return "MaxKey";
+            default:
+                throw new IOException("Unsupported BSON element type: "
+                        + type);
+        }
+    }
+
+    /**
+     * Skip a value, without decoding it.
+     *
+     * @param type The element type.
+     * @throws IOException Thrown if the value cannot be skipped, or its type
+     *                     is unknown.
+     */
+    void skipValue(final int type) throws IOException {
+        switch (type) {
+            case TYPE_UNDEFINED:
+            case TYPE_NULL:
+            case TYPE_MIN_KEY:
+            case TYPE_MAX_KEY:
+                break;
+            case TYPE_BOOLEAN:
+                skip(1);
+                break;
+            case TYPE_INT32:
+                skip(LENGTH_SIZE);
+                break;
+            case TYPE_DOUBLE:
+            case TYPE_DATETIME:
+            case TYPE_TIMESTAMP:
+            case TYPE_INT64:
+                skip(8);
+                break;
+            case TYPE_OBJECT_ID:
+                skip(OBJECT_ID_SIZE);
+                break;
+            case TYPE_DECIMAL128:
+                skip(DECIMAL128_SIZE);
+                break;
+            case TYPE_STRING:
+            case TYPE_JAVASCRIPT:
+            case TYPE_SYMBOL:
+                skip(readInt());
+                break;
+            case TYPE_DOCUMENT:
+            case TYPE_ARRAY:
+                skipRest(readStart());
+                break;
+            case TYPE_BINARY:
+                skip(readInt() + 1);
+                break;
+            case TYPE_REGEX:
+                skipName();
+                skipName();
+                break;
+            case TYPE_DB_POINTER:
+                skip(readInt() + OBJECT_ID_SIZE);
+                break;
+            case TYPE_JAVASCRIPT_SCOPE:
+                // The total length is not trusted, as bson4jackson writes
+                // it incorrectly; the code and scope are skipped instead.
+                readInt();
+                skip(readInt());
+                skipRest(readStart());
+                break;
+            default:
+                throw new IOException("Unknown BSON element type: " + type);
+        }
+    }
+
+    /**
+     * Read an embedded document.
+     *
+     * @return The document, as a map.
+     * @throws IOException Thrown if the document cannot be read.
+     */
+    private Map<String, Object> readDocument() throws IOException {
+        readStart();
+        Map<String, Object> document = new LinkedHashMap<>();
+        int type = readType();
+        while (type != TYPE_END) {
+            String name = readName();
+            document.put(name, readValue(type));
+            type = readType();
+        }
+        return document;
+    }
+
+    /**
+     * Read an array.
+     *
+     * @return The array, as a list.
+     * @throws IOException Thrown if the array cannot be read.
+     */
+    private List<Object> readArray() throws IOException {
+        readStart();
+        List<Object> array = new ArrayList<>();
+        int type = readType();
+        while (type != TYPE_END) {
+            skipName();
+            array.add(readValue(type));
+            type = readType();
+        }
+        return array;
+    }
+
+    /**
+     * Read binary data. Old style UUIDs are returned as UUIDs, all other
+     * subtypes as byte arrays.
+     *
+     * @return The value.
+     * @throws IOException Thrown if the value cannot be read.
+     */
+    private Object readBinary() throws IOException {
+        int length = readInt();
+        int subtype = readByte();
+        if (subtype == SUBTYPE_OLD_BINARY) {
+            length = readInt();
+        } else if (subtype == SUBTYPE_OLD_UUID) {
+            long high = readLong();
+            return new UUID(high, readLong());
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid binary length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read an ObjectId, which unlike all other values is big-endian.
+     *
+     * @return The value.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    private ObjectId readObjectId() throws IOException {
+        int time = Integer.reverseBytes(readInt());
+        int machine = Integer.reverseBytes(readInt());
+        return new ObjectId(time, machine, Integer.reverseBytes(readInt()));
+    }
+
+    /**
+     * Convert the options of a BSON regular expression to pattern flags.
+     *
+     * @param options The options.
+     * @return The flags.
+     * @throws IOException Thrown for unknown options.
+     */
+    private static int readFlags(final String options) throws IOException {
+        int flags = 0;
+        for (int i = 0; i < options.length(); i++) {
+            switch (options.charAt(i)) {
+                case 'i':
+                    flags |= Pattern.CASE_INSENSITIVE;
+                    break;
+                case 'm':
+                    flags |= Pattern.MULTILINE;
+                    break;
+                case 's':
+                    flags |= Pattern.DOTALL;
+                    break;
+                case 'u':
+                    flags |= Pattern.UNICODE_CASE;
+                    break;
+                case 'l':
+                case 'x':
+                    break;
+                default:
+                    throw new IOException("Invalid regex options: "
+                            + options);
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Read a single byte.
+     *
+     * @return The byte.
+     * @throws IOException Thrown at the end of the buffer.
+     */
+    private byte readByte() throws IOException {
+        if (!buffer.hasRemaining()) {
+            throw truncated();
+        }
+        return buffer.get();
+    }
+
+    /**
+     * Skip a number of bytes.
+     *
+     * @param count The number of bytes.
+     * @throws IOException Thrown if the bytes do not exist.
+     */
+    private void skip(final int count) throws IOException {
+        if (count < 0) {
+            throw new IOException("Invalid length: " + count);
+        }
+        if (count > buffer.remaining()) {
+            throw truncated();
+        }
+        buffer.position(buffer.position() + count);
+    }
+
+    /**
+     * Find the null byte that ends a name.
+     *
+     * @param start The position of the name.
+     * @return The position of the terminator.
+     * @throws IOException Thrown if the name is not terminated.
+     */
+    private int findTerminator(final int start) throws IOException {
+        int limit = buffer.limit();
+        for (int i = start; i < limit; i++) {
+            if (buffer.get(i) == 0) {
+                return i;
+            }
+        }
+        throw truncated();
+    }
+
+    /**
+     * Whether a cached name is spelled by the bytes of a range. Only ASCII
+     * names are compared; others are always decoded again.
+     *
+     * @param name  The cached name, may be null.
+     * @param start The start of the range.
+     * @param end   The end of the range.
+     * @return True if they match.
+     */
+    private boolean matches(final String name, final int start,
+                            final int end) {
+        if (name == null || name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 0x80 || buffer.get(start + i) != c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decode a range of UTF-8 bytes.
+     *
+     * @param start  The start of the range.
+     * @param length The number of bytes.
+     * @return The string.
+     */
+    private String decode(final int start, final int length) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start,
+                    length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Create the exception for a buffer that ends in the middle of a value.
+     *
+     * @return The exception.
+     */
+    private static IOException truncated() {
+        return new EOFException("Unexpected end of BSON data.");
+    }
+}
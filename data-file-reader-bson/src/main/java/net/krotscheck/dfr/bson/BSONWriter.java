@@ -0,0 +1,525 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.bson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.NameCache;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.ValueWriter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writes a stream of rows as a BSON array, straight from typed values into a
+ * buffer. Every row is written with its real length, so readers can skip
+ * over it, while the enclosing array is written with a length of zero, as
+ * streaming writers do, because its size is not known until the stream is
+ * closed. Cells of a {@link Row} are read without boxing, and the names of
+ * its columns are encoded once per schema; the names of map keys and array
+ * indices are kept encoded as well. Values that have
+ * no direct BSON counterpart are converted by an object mapper first, so
+ * they are encoded the way Jackson would encode them.
+ *
+ * @author Michael Krotscheck
+ */
+final class BSONWriter extends ValueWriter {
+
+    /**
+     * The number of buffered bytes after which the buffer is flushed.
+     */
+    private static final int FLUSH_SIZE = 64 * 1024;
+
+    /**
+     * The initial capacity of the buffer.
+     */
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    /**
+     * The size of a length prefix.
+     */
+    private static final int LENGTH_SIZE = 4;
+
+    /**
+     * Converts values without a BSON counterpart.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /**
+     * The number of array indices whose names are encoded ahead of time.
+     */
+    private static final int INDEX_NAMES = 1024;
+
+    /**
+     * The encoded names of the first array indices.
+     */
+    private static final byte[][] INDICES = new byte[INDEX_NAMES][];
+
+    static {
+        for (int i = 0; i < INDEX_NAMES; i++) {
+            INDICES[i] = encode(Integer.toString(i));
+        }
+    }
+
+    /**
+     * The destination.
+     */
+    private OutputStream output;
+
+    /**
+     * The buffer rows are assembled in.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY)
+            .order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The number of rows written.
+     */
+    private int rows = 0;
+
+    /**
+     * The encoded names of columns and map keys seen so far.
+     */
+    private final NameCache<byte[]> names = new NameCache<byte[]>() {
+        @Override
+        protected byte[] encode(final String name) {
+            return BSONWriter.encode(name);
+        }
+
+        @Override
+        protected byte[][] newArray(final int size) {
+            return new byte[size][];
+        }
+    };
+
+    /**
+     * The encoded name of the element being written.
+     */
+    private byte[] element;
+
+    /**
+     * Create a new writer, and start the array.
+     *
+     * @param stream The destination.
+     */
+    BSONWriter(final OutputStream stream) {
+        this.output = stream;
+        buffer.putInt(0);
+    }
+
+    /**
+     * Start a new array on another destination, keeping the buffer and the
+     * names encoded so far.
+     *
+     * @param stream The destination.
+     */
+    void reset(final OutputStream stream) {
+        this.output = stream;
+        this.rows = 0;
+        buffer.clear();
+        buffer.putInt(0);
+    }
+
+    /**
+     * Write a row as the next element of the array.
+     *
+     * @param row The row.
+     * @throws IOException Thrown if the row cannot be written.
+     */
+    void writeRow(final Map<String, Object> row) throws IOException {
+        writeHeader(BSONReader.TYPE_DOCUMENT, index(rows));
+        if (row instanceof Row) {
+            writeRow((Row) row);
+        } else {
+            writeDocument(row);
+        }
+        rows++;
+        if (buffer.position() >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * End the array, and flush the buffer. The output is not closed.
+     *
+     * @throws IOException Thrown if the output cannot be written.
+     */
+    void finish() throws IOException {
+        ensureCapacity(1);
+        buffer.put((byte) 0);
+        flush();
+    }
+
+    /**
+     * Write a row document, reading typed cells without boxing them.
+     *
+     * @param row The row.
+     * @throws IOException Thrown if a value cannot be written.
+     */
+    private void writeRow(final Row row) throws IOException {
+        int start = startDocument();
+        byte[][] columns = names.names(row.getSchema());
+        for (int i = 0; i < columns.length; i++) {
+            if (row.isPresent(i)) {
+                element = columns[i];
+                writeCell(row, i);
+            }
+        }
+        endDocument(start);
+    }
+
+    /**
+     * Write a map as a document.
+     *
+     * @param map The map.
+     * @throws IOException Thrown if a value cannot be written.
+     */
+    private void writeDocument(final Map<?, ?> map) throws IOException {
+        int start = startDocument();
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            writeElement(names.name(String.valueOf(entry.getKey())),
+                    entry.getValue());
+        }
+        endDocument(start);
+    }
+
+    /**
+     * Write a collection as an array.
+     *
+     * @param values The values.
+     * @throws IOException Thrown if a value cannot be written.
+     */
+    private void writeArray(final Iterable<?> values) throws IOException {
+        int start = startDocument();
+        int index = 0;
+        for (Object value : values) {
+            writeElement(index(index), value);
+            index++;
+        }
+        endDocument(start);
+    }
+
+    /**
+     * Write a single element.
+     *
+     * @param name  The encoded element name.
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    private void writeElement(final byte[] name, final Object value)
+            throws IOException {
+        element = name;
+        writeValue(value);
+    }
+
+    /**
+     * Write a null element.
+     */
+    @Override
+    protected void writeNull() {
+        writeHeader(BSONReader.TYPE_NULL, element);
+    }
+
+    /**
+     * Write an int element.
+     *
+     * @param value The value.
+     */
+    @Override
+    protected void writeInt(final int value) {
+        writeHeader(BSONReader.TYPE_INT32, element);
+        ensureCapacity(LENGTH_SIZE);
+        buffer.putInt(value);
+    }
+
+    /**
+     * Write a long element.
+     *
+     * @param value The value.
+     */
+    @Override
+    protected void writeLong(final long value) {
+        writeHeader(BSONReader.TYPE_INT64, element);
+        ensureCapacity(8);
+        buffer.putLong(value);
+    }
+
+    /**
+     * Write a float element, as BSON has no single precision type.
+     *
+     * @param value The value.
+     */
+    @Override
+    protected void writeFloat(final float value) {
+        writeDouble(value);
+    }
+
+    /**
+     * Write a double element.
+     *
+     * @param value The value.
+     */
+    @Override
+    protected void writeDouble(final double value) {
+        writeHeader(BSONReader.TYPE_DOUBLE, element);
+        ensureCapacity(8);
+        buffer.putDouble(value);
+    }
+
+    /**
+     * Write a boolean element.
+     *
+     * @param value The value.
+     */
+    @Override
+    protected void writeBoolean(final boolean value) {
+        writeHeader(BSONReader.TYPE_BOOLEAN, element);
+        ensureCapacity(1);
+        buffer.put(toByte(value));
+    }
+
+    /**
+     * Write a string element.
+     *
+     * @param value The value.
+     */
+    @Override
+    protected void writeString(final String value) {
+        writeHeader(BSONReader.TYPE_STRING, element);
+        putString(value);
+    }
+
+    /**
+     * Write an element that is not a string, number or boolean.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeObject(final Object value) throws IOException {
+        byte[] name = element;
+        if (value instanceof Short || value instanceof Byte) {
+            writeInt(((Number) value).intValue());
+        } else if (value instanceof BigInteger) {
+            writeBigInteger(name, (BigInteger) value);
+        } else if (value instanceof BigDecimal) {
+            writeDouble(((BigDecimal) value).doubleValue());
+        } else if (value instanceof Character) {
+            writeString(value.toString());
+        } else if (value instanceof Map) {
+            writeHeader(BSONReader.TYPE_DOCUMENT, name);
+            writeDocument((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            writeHeader(BSONReader.TYPE_ARRAY, name);
+            writeArray((Collection<?>) value);
+        } else if (value instanceof byte[]) {
+            byte[] bytes = (byte[]) value;
+            writeHeader(BSONReader.TYPE_BINARY, name);
+            ensureCapacity(LENGTH_SIZE + 1 + bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.put((byte) 0);
+            buffer.put(bytes);
+        } else if (value instanceof Date) {
+            // Jackson writes dates as timestamps by default.
+            writeLong(((Date) value).getTime());
+        } else {
+            writeConverted(name, value);
+        }
+    }
+
+    /**
+     * Write a big integer as the smallest integer type that holds it, or as
+     * a string if none does.
+     *
+     * @param name  The encoded element name.
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    private void writeBigInteger(final byte[] name, final BigInteger value)
+            throws IOException {
+        int bits = value.bitLength();
+        if (bits < Integer.SIZE) {
+            writeHeader(BSONReader.TYPE_INT32, name);
+            ensureCapacity(LENGTH_SIZE);
+            buffer.putInt(value.intValue());
+        } else if (bits < Long.SIZE) {
+            writeHeader(BSONReader.TYPE_INT64, name);
+            ensureCapacity(8);
+            buffer.putLong(value.longValue());
+        } else {
+            writeHeader(BSONReader.TYPE_STRING, name);
+            putString(value.toString());
+        }
+    }
+
+    /**
+     * Write a value that has no BSON counterpart, by converting it to maps,
+     * lists and scalars first. Anything the mapper cannot break down is
+     * written as a string.
+     *
+     * @param name  The encoded element name.
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    private void writeConverted(final byte[] name, final Object value)
+            throws IOException {
+        Object converted;
+        if (value instanceof Object[]) {
+            converted = MAPPER.convertValue(value, Collection.class);
+        } else {
+            try {
+                converted = MAPPER.convertValue(value, Object.class);
+            } catch (IllegalArgumentException iae) {
+                throw new IOException(iae.getMessage(), iae);
+            }
+        }
+        if (converted == null || converted.getClass() != value.getClass()) {
+            writeElement(name, converted);
+        } else {
+            writeHeader(BSONReader.TYPE_STRING, name);
+            putString(value.toString());
+        }
+    }
+
+    /**
+     * Write the type and name of an element.
+     *
+     * @param type The element type.
+     * @param name The encoded element name.
+     */
+    private void writeHeader(final int type, final byte[] name) {
+        ensureCapacity(name.length + 1);
+        buffer.put((byte) type);
+        buffer.put(name);
+    }
+
+    /**
+     * Get the encoded name of an array index.
+     *
+     * @param index The index.
+     * @return The encoded name.
+     */
+    private static byte[] index(final int index) {
+        if (index < INDEX_NAMES) {
+            return INDICES[index];
+        }
+        return encode(Integer.toString(index));
+    }
+
+    /**
+     * Encode a name as a null terminated UTF-8 string.
+     *
+     * @param name The name.
+     * @return The encoded name.
+     */
+    private static byte[] encode(final String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, encoded, 0, bytes.length);
+        return encoded;
+    }
+
+    /**
+     * Write a length prefixed, null terminated string.
+     *
+     * @param value The string.
+     */
+    private void putString(final String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ensureCapacity(LENGTH_SIZE + bytes.length + 1);
+        buffer.putInt(bytes.length + 1);
+        buffer.put(bytes);
+        buffer.put((byte) 0);
+    }
+
+    /**
+     * Reserve the length prefix of a document.
+     *
+     * @return The position of the document.
+     */
+    private int startDocument() {
+        ensureCapacity(LENGTH_SIZE);
+        int start = buffer.position();
+        buffer.putInt(0);
+        return start;
+    }
+
+    /**
+     * Terminate a document, and fill in its length.
+     *
+     * @param start The position returned by {@link #startDocument()}.
+     */
+    private void endDocument(final int start) {
+        ensureCapacity(1);
+        buffer.put((byte) 0);
+        buffer.putInt(start, buffer.position() - start);
+    }
+
+    /**
+     * Convert a boolean to its BSON byte.
+     *
+     * @param value The value.
+     * @return 1 or 0.
+     */
+    private static byte toByte(final boolean value) {
+        if (value) {
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Make room for a number of bytes. The buffer is never flushed while a
+     * row is being written, as the row's length is patched in afterwards.
+     *
+     * @param count The number of bytes.
+     */
+    private void ensureCapacity(final int count) {
+        if (buffer.remaining() >= count) {
+            return;
+        }
+        int capacity = Math.max(buffer.capacity() * 2,
+                buffer.position() + count);
+        ByteBuffer grown = ByteBuffer.allocate(capacity)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    /**
+     * Write the buffered bytes to the output.
+     *
+     * @throws IOException Thrown if the output cannot be written.
+     */
+    private void flush() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        output.write(buffer.array(), 0, buffer.position());
+        buffer.clear();
+    }
+}
@@ -17,7 +17,15 @@
 
 package net.krotscheck.dfr.bson;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.ColumnVector;
 import net.krotscheck.dfr.IDataDecoder;
+import net.krotscheck.dfr.IProjectionFilter;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowBatch;
+import net.krotscheck.dfr.RowPredicate;
+import net.krotscheck.dfr.Type;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -27,12 +35,22 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
 
+import de.undercouch.bson4jackson.BsonFactory;
+import de.undercouch.bson4jackson.BsonGenerator;
+
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -116,7 +134,7 @@ public final class BSONDataDecoderTest {
 
         Integer count = 0;
         for (Map<String, Object> resultRow : decoder) {
-            Assert.assertTrue(resultRow instanceof LinkedHashMap);
+            Assert.assertTrue(resultRow instanceof Row);
             Assert.assertEquals(count, resultRow.get("column_1"));
             Assert.assertEquals(String.format("String %s", count),
                     resultRow.get("column_2"));
@@ -126,6 +144,107 @@ public final class BSONDataDecoderTest {
         Assert.assertEquals((int) count, 10);
     }
 
+    /**
+     * Assert that rows may be decoded in columnar batches.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testNextBatch() throws Exception {
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(bais);
+
+        RowBatch batch = decoder.nextBatch(4);
+        Assert.assertEquals(4, batch.size());
+        ColumnVector first = batch.getColumn("column_1");
+        Assert.assertEquals(Type.INTEGER, first.getType());
+        Assert.assertEquals(3, first.get(3));
+        Assert.assertEquals("foo", batch.getColumn("column_3").get(0));
+
+        Assert.assertEquals(4, decoder.nextBatch(4).size());
+        batch = decoder.nextBatch(4);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals("String 9", batch.getColumn("column_2").get(1));
+        Assert.assertEquals(0, decoder.nextBatch(4).size());
+    }
+
+    /**
+     * Assert that only the columns required by a leading projection filter
+     * are decoded.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testProjection() throws Exception {
+        Set<String> columns =
+                new HashSet<>(Arrays.asList("column_3", "column_1"));
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns()).thenReturn(columns);
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(bais);
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(2, row.size());
+            Assert.assertTrue(row.containsKey("column_1"));
+            Assert.assertTrue(row.containsKey("column_3"));
+            Assert.assertFalse(row.containsKey("column_2"));
+            count++;
+        }
+        Assert.assertEquals(10, count);
+    }
+
+    /**
+     * Assert that rows rejected by a leading predicate are skipped, also in
+     * combination with a projection that does not include the predicate
+     * column.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPredicate() throws Exception {
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns())
+                .thenReturn(Collections.singleton("column_2"));
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(bais);
+        decoder.addFilter(RowPredicate.greaterThanOrEqualTo("column_1", 7));
+        decoder.addFilter(RowPredicate.notEqualTo("column_1", "8"));
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(String.format("String %s", count * 2 + 7),
+                    row.get("column_2"));
+            Assert.assertFalse(row.containsKey("column_3"));
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+
+    /**
+     * Assert that a predicate that rejects every row ends the iteration.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testPredicateRejectsAll() throws Exception {
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(bais);
+        decoder.addFilter(RowPredicate.isNull("column_1"));
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+    }
+
     /**
      * Make sure the remove() method does nothing.
      */
@@ -272,5 +391,192 @@ public final class BSONDataDecoderTest {
         Assert.assertNull(iterator.next());
     }
 
+    /**
+     * Encode a number of rows.
+     *
+     * @param rows The number of rows.
+     * @return The BSON file.
+     * @throws IOException Thrown if the rows cannot be encoded.
+     */
+    private byte[] encodeRows(final int rows) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BSONDataEncoder encoder = new BSONDataEncoder();
+        encoder.setOutputStream(baos);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("id", i);
+            data.put("text", String.format("String %s", i));
+            data.put("even", i % 2 == 0);
+            encoder.write(data);
+        }
+        encoder.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decode a file sequentially, for comparison.
+     *
+     * @param bytes The file.
+     * @return All rows.
+     */
+    private List<Map<String, Object>> decodeSequentially(final byte[] bytes) {
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(bytes));
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        return rows;
+    }
+
+    /**
+     * Assert that a parallel decode yields the same rows, in the same order,
+     * as a sequential decode.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testParallelDecoder() throws Exception {
+        byte[] bytes = encodeRows(1000);
+        List<Map<String, Object>> expected = decodeSequentially(bytes);
+        Assert.assertEquals(1000, expected.size());
+
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(bytes));
+        decoder.setParallelism(4);
+        decoder.setPartSize(300);
+        Assert.assertEquals(Integer.valueOf(4), decoder.getParallelism());
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        Assert.assertEquals(expected, rows);
+    }
+
+    /**
+     * Assert that projections and predicates apply to every part of a
+     * parallel decode.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testParallelPredicate() throws Exception {
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns())
+                .thenReturn(Collections.singleton("id"));
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(encodeRows(1000)));
+        decoder.setParallelism(3);
+        decoder.setPartSize(1000);
+        decoder.addFilter(RowPredicate.equalTo("even", false));
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(count * 2 + 1, row.get("id"));
+            Assert.assertFalse(row.containsKey("text"));
+            count++;
+        }
+        decoder.close();
+        Assert.assertEquals(500, count);
+    }
 
+    /**
+     * Assert that a truncated stream decodes the rows before the break.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testParallelTruncated() throws Exception {
+        byte[] bytes = encodeRows(100);
+        byte[] truncated = Arrays.copyOfRange(bytes, 0, bytes.length / 2);
+
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(truncated));
+        decoder.setParallelism(2);
+        decoder.setPartSize(200);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(count, row.get("id"));
+            count++;
+        }
+        decoder.close();
+        Assert.assertTrue(count > 0);
+        Assert.assertTrue(count < 100);
+    }
+
+    /**
+     * Assert that files written by the streaming bson4jackson generator,
+     * where no document carries its length, are still decoded, and that
+     * nested values outside the projection are skipped.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testStreamingFile() throws Exception {
+        BsonFactory factory = new BsonFactory(new ObjectMapper());
+        factory.enable(BsonGenerator.Feature.ENABLE_STREAMING);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createGenerator(baos);
+        generator.writeStartArray();
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> nested = new LinkedHashMap<>();
+            nested.put("values", Arrays.asList(i, i + 1));
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("nested", nested);
+            data.put("id", i);
+            generator.writeObject(data);
+        }
+        generator.writeEndArray();
+        generator.close();
+
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Map<String, Object> nested =
+                    (Map<String, Object>) row.get("nested");
+            Assert.assertEquals(Arrays.asList(count, count + 1),
+                    nested.get("values"));
+            Assert.assertEquals(count, row.get("id"));
+            count++;
+        }
+        Assert.assertEquals(10, count);
+
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns())
+                .thenReturn(Collections.singleton("id"));
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        decoder = new BSONDataDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        decoder.addFilter(filter);
+        count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(1, row.size());
+            Assert.assertEquals(count, row.get("id"));
+            count++;
+        }
+        Assert.assertEquals(10, count);
+    }
+
+    /**
+     * Assert that restoring the settings returns them to their defaults.
+     */
+    @Test
+    public void testRestoreSettings() {
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setParallelism(4);
+
+        decoder.restoreSettings();
+        Assert.assertNull(decoder.getParallelism());
+    }
 }
@@ -131,6 +131,44 @@ public final class BSONDataEncoderTest {
         }
     }
 
+    /**
+     * Assert that a reset encoder writes a complete document to its next
+     * stream, and nothing to a stream it wrote no rows to.
+     *
+     * @throws java.lang.Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReset() throws Exception {
+        BSONDataEncoder encoder = new BSONDataEncoder();
+        encoder.setOutputStream(baos);
+        for (Map<String, Object> row : testData) {
+            encoder.write(row);
+        }
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        encoder.reset(second);
+        for (Map<String, Object> row : testData) {
+            encoder.write(row);
+        }
+
+        ByteArrayOutputStream third = new ByteArrayOutputStream();
+        encoder.reset(third);
+        encoder.close();
+
+        Assert.assertArrayEquals(baos.toByteArray(), second.toByteArray());
+        Assert.assertEquals(0, third.size());
+
+        BSONDataDecoder decoder = new BSONDataDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(
+                second.toByteArray()));
+        int count = 0;
+        for (Map<String, Object> resultRow : decoder) {
+            Assert.assertEquals(count, resultRow.get("column_1"));
+            count++;
+        }
+        Assert.assertEquals(testData.size(), count);
+    }
+
     /**
      * Assert close called prematurely.
      *
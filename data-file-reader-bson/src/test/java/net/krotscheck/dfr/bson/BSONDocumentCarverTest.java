@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.bson;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for the BSON document carver.
+ *
+ * @author Michael Krotscheck
+ */
+public final class BSONDocumentCarverTest {
+
+    /**
+     * Encode a number of rows.
+     *
+     * @param rows The number of rows.
+     * @return The BSON file.
+     * @throws Exception Thrown if the rows cannot be encoded.
+     */
+    private byte[] encodeRows(final int rows) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BSONDataEncoder encoder = new BSONDataEncoder();
+        encoder.setOutputStream(baos);
+        for (int i = 0; i < rows; i++) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("id", i);
+            encoder.write(data);
+        }
+        encoder.close();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Read the little-endian length prefix of a document.
+     *
+     * @param bytes The document.
+     * @return The length.
+     */
+    private int length(final byte[] bytes) {
+        return (bytes[0] & 0xFF) | (bytes[1] & 0xFF) << 8
+                | (bytes[2] & 0xFF) << 16 | (bytes[3] & 0xFF) << 24;
+    }
+
+    /**
+     * Assert that a file small enough for a single part is copied as is.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testSinglePart() throws Exception {
+        byte[] bytes = encodeRows(3);
+        BSONDocumentCarver carver =
+                new BSONDocumentCarver(new ByteArrayInputStream(bytes));
+
+        // The encoder streams, so it writes a length of zero.
+        Assert.assertEquals(0, length(bytes));
+        byte[] part = carver.next(1024 * 1024);
+        Assert.assertEquals(part.length, length(part));
+        Assert.assertArrayEquals(Arrays.copyOfRange(bytes, 4, bytes.length),
+                Arrays.copyOfRange(part, 4, part.length));
+        Assert.assertNull(carver.next(1024 * 1024));
+    }
+
+    /**
+     * Assert that parts hold complete rows, and are valid documents.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testParts() throws Exception {
+        byte[] bytes = encodeRows(10);
+        BSONDocumentCarver carver =
+                new BSONDocumentCarver(new ByteArrayInputStream(bytes));
+
+        int parts = 0;
+        int rowBytes = 0;
+        byte[] part = carver.next(1);
+        while (part != null) {
+            Assert.assertEquals(part.length, length(part));
+            Assert.assertEquals(0, part[part.length - 1]);
+            Assert.assertEquals(0x03, part[4]);
+            rowBytes += part.length - 5;
+            parts++;
+            part = carver.next(1);
+        }
+        Assert.assertEquals(10, parts);
+        Assert.assertEquals(bytes.length - 5, rowBytes);
+    }
+
+    /**
+     * Assert that rows with a length prefix are copied in one piece, and
+     * that values of every fixed and variable size type are skipped
+     * correctly when walking rows without one.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testElementTypes() throws Exception {
+        ByteArrayOutputStream row = new ByteArrayOutputStream();
+        row.write(new byte[]{0, 0, 0, 0});
+        // Double, string, int32, int64, boolean, null, regex, binary.
+        row.write(new byte[]{0x01, 'a', 0, 1, 2, 3, 4, 5, 6, 7, 8});
+        row.write(new byte[]{0x02, 'b', 0, 2, 0, 0, 0, 'x', 0});
+        row.write(new byte[]{0x10, 'c', 0, 1, 0, 0, 0});
+        row.write(new byte[]{0x12, 'd', 0, 1, 0, 0, 0, 0, 0, 0, 0});
+        row.write(new byte[]{0x08, 'e', 0, 1});
+        row.write(new byte[]{0x0A, 'f', 0});
+        row.write(new byte[]{0x0B, 'g', 0, 'x', 0, 'i', 0});
+        row.write(new byte[]{0x05, 'h', 0, 1, 0, 0, 0, 0, 9});
+        // An array holding a document with a length prefix.
+        row.write(new byte[]{0x04, 'i', 0, 0, 0, 0, 0,
+                0x03, '0', 0, 5, 0, 0, 0, 0, 0});
+        row.write(0);
+        byte[] rowBytes = row.toByteArray();
+
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(new byte[]{0, 0, 0, 0, 0x03, '0', 0});
+        file.write(rowBytes);
+        file.write(new byte[]{0x03, '1', 0});
+        file.write(rowBytes);
+        file.write(0);
+
+        BSONDocumentCarver carver = new BSONDocumentCarver(
+                new ByteArrayInputStream(file.toByteArray()));
+        byte[] first = carver.next(1);
+        Assert.assertEquals(4 + 3 + rowBytes.length + 1, first.length);
+        Assert.assertArrayEquals(rowBytes,
+                Arrays.copyOfRange(first, 7, first.length - 1));
+        Assert.assertNotNull(carver.next(1));
+        Assert.assertNull(carver.next(1));
+    }
+
+    /**
+     * Assert that a file that ends in the middle of a row is rejected.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test(expected = EOFException.class)
+    public void testTruncated() throws Exception {
+        byte[] bytes = encodeRows(3);
+        byte[] truncated = Arrays.copyOfRange(bytes, 0, bytes.length - 8);
+        BSONDocumentCarver carver =
+                new BSONDocumentCarver(new ByteArrayInputStream(truncated));
+        carver.next(1024 * 1024);
+    }
+}
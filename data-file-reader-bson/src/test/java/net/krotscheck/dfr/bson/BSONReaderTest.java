@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.bson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import de.undercouch.bson4jackson.BsonFactory;
+import de.undercouch.bson4jackson.BsonGenerator;
+import de.undercouch.bson4jackson.BsonModule;
+import de.undercouch.bson4jackson.types.JavaScript;
+import de.undercouch.bson4jackson.types.ObjectId;
+import de.undercouch.bson4jackson.types.Symbol;
+import de.undercouch.bson4jackson.types.Timestamp;
+
+/**
+ * Unit tests for the BSON reader.
+ *
+ * @author Michael Krotscheck
+ */
+public final class BSONReaderTest {
+
+    /**
+     * Build a document holding a value of every type bson4jackson writes.
+     *
+     * @return The document.
+     */
+    private Map<String, Object> allTypes() {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("inner", "value");
+
+        List<Object> array = new ArrayList<>();
+        array.add(1);
+        array.add("two");
+        array.add(nested);
+
+        Map<String, Object> scope = new LinkedHashMap<>();
+        scope.put("x", 1);
+
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("double", 1.5);
+        document.put("string", "text é");
+        document.put("document", nested);
+        document.put("array", array);
+        document.put("binary", new byte[]{1, 2, 3});
+        document.put("uuid", new UUID(1L, 2L));
+        document.put("objectId", new ObjectId(1, 2, 3));
+        document.put("true", true);
+        document.put("false", false);
+        document.put("date", new Date(1234567890L));
+        document.put("null", null);
+        document.put("regex", Pattern.compile("a.c", Pattern.CASE_INSENSITIVE
+                | Pattern.MULTILINE));
+        document.put("javascript", new JavaScript("return 1;"));
+        document.put("scoped", new JavaScript("return x;", scope));
+        document.put("symbol", new Symbol("symbol"));
+        document.put("int32", 42);
+        document.put("timestamp", new Timestamp(5, 6));
+        document.put("int64", Long.MAX_VALUE);
+        return document;
+    }
+
+    /**
+     * Encode a value with bson4jackson.
+     *
+     * @param value     The value.
+     * @param streaming Whether to write lengths of zero.
+     * @return The BSON bytes.
+     * @throws IOException Thrown if the value cannot be encoded.
+     */
+    private byte[] encode(final Object value, final boolean streaming)
+            throws IOException {
+        BsonFactory factory = new BsonFactory();
+        if (streaming) {
+            factory.enable(BsonGenerator.Feature.ENABLE_STREAMING);
+        }
+        ObjectMapper mapper = new ObjectMapper(factory);
+        mapper.registerModule(new BsonModule());
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mapper.writeValue(baos, value);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Read all elements of a top-level document.
+     *
+     * @param bytes The document.
+     * @return The elements.
+     * @throws IOException Thrown if the document cannot be read.
+     */
+    private Map<String, Object> read(final byte[] bytes) throws IOException {
+        BSONReader reader = new BSONReader(ByteBuffer.wrap(bytes));
+        reader.readStart();
+        Map<String, Object> result = new LinkedHashMap<>();
+        int ordinal = 0;
+        int type = reader.readType();
+        while (type != BSONReader.TYPE_END) {
+            String name = reader.readName(ordinal);
+            result.put(name, reader.readValue(type));
+            ordinal++;
+            type = reader.readType();
+        }
+        return result;
+    }
+
+    /**
+     * Assert that every value is read as the type bson4jackson produces.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testMatchesJackson() throws Exception {
+        byte[] bytes = encode(allTypes(), false);
+        ObjectMapper mapper = new ObjectMapper(new BsonFactory());
+        Map<?, ?> expected = mapper.readValue(bytes, Map.class);
+        Map<String, Object> actual = read(bytes);
+
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<String, Object> entry : actual.entrySet()) {
+            Object value = entry.getValue();
+            Object other = expected.get(entry.getKey());
+            if (value instanceof Pattern) {
+                Assert.assertEquals(((Pattern) other).pattern(),
+                        ((Pattern) value).pattern());
+                Assert.assertEquals(((Pattern) other).flags(),
+                        ((Pattern) value).flags());
+            } else if (value instanceof byte[]) {
+                Assert.assertArrayEquals((byte[]) other, (byte[]) value);
+            } else if (value instanceof ObjectId) {
+                Assert.assertEquals(((ObjectId) other).getTime(),
+                        ((ObjectId) value).getTime());
+                Assert.assertEquals(((ObjectId) other).getInc(),
+                        ((ObjectId) value).getInc());
+            } else if (value instanceof JavaScript) {
+                Assert.assertEquals(((JavaScript) other).getCode(),
+                        ((JavaScript) value).getCode());
+                Assert.assertEquals(((JavaScript) other).getScope(),
+                        ((JavaScript) value).getScope());
+            } else {
+                Assert.assertEquals(entry.getKey(), other, value);
+            }
+        }
+        Assert.assertEquals(new UUID(1L, 2L), actual.get("uuid"));
+        Assert.assertEquals(new Timestamp(5, 6), actual.get("timestamp"));
+    }
+
+    /**
+     * Assert that every value can be skipped, with and without lengths.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testSkipValues() throws Exception {
+        for (boolean streaming : new boolean[]{false, true}) {
+            byte[] bytes = encode(allTypes(), streaming);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            BSONReader reader = new BSONReader(buffer);
+            int end = reader.readStart();
+            if (streaming) {
+                Assert.assertEquals(-1, end);
+            } else {
+                Assert.assertEquals(bytes.length, end);
+            }
+
+            int count = 0;
+            int type = reader.readType();
+            while (type != BSONReader.TYPE_END) {
+                reader.skipName();
+                reader.skipValue(type);
+                count++;
+                type = reader.readType();
+            }
+            Assert.assertEquals(allTypes().size(), count);
+            Assert.assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    /**
+     * Assert that documents written without a length are read.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testStreamingDocuments() throws Exception {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("a", 1);
+        nested.put("b", Arrays.asList("x", "y"));
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("nested", nested);
+        document.put("after", "z");
+
+        Assert.assertEquals(document, read(encode(document, true)));
+    }
+
+    /**
+     * Assert that the rest of a document is skipped by its length, or by
+     * walking it if it has none.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testSkipRest() throws Exception {
+        for (boolean streaming : new boolean[]{false, true}) {
+            byte[] bytes = encode(allTypes(), streaming);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            BSONReader reader = new BSONReader(buffer);
+            int end = reader.readStart();
+            int type = reader.readType();
+            Assert.assertEquals(BSONReader.TYPE_DOUBLE, type);
+            Assert.assertEquals("double", reader.readName(0));
+            Assert.assertEquals(1.5, reader.readDouble(), 0);
+
+            reader.skipRest(end);
+            Assert.assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    /**
+     * Assert that names are shared between rows of the same layout.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testNameCache() throws Exception {
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("column", 1);
+        byte[] bytes = encode(document, false);
+
+        BSONReader reader = new BSONReader(ByteBuffer.wrap(bytes));
+        reader.readStart();
+        reader.readType();
+        String first = reader.readName(0);
+
+        reader.reset(ByteBuffer.wrap(bytes));
+        reader.readStart();
+        reader.readType();
+        Assert.assertSame(first, reader.readName(0));
+    }
+
+    /**
+     * Assert that truncated data is reported.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test(expected = EOFException.class)
+    public void testTruncated() throws Exception {
+        byte[] bytes = encode(allTypes(), true);
+        read(Arrays.copyOf(bytes, bytes.length / 2));
+    }
+
+    /**
+     * Assert that unknown types are reported.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test(expected = IOException.class)
+    public void testUnknownType() throws Exception {
+        BSONReader reader = new BSONReader(ByteBuffer.wrap(new byte[0]));
+        reader.skipValue(0x42);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.bson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowSchema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.undercouch.bson4jackson.BsonFactory;
+
+/**
+ * Unit tests for the BSON writer.
+ *
+ * @author Michael Krotscheck
+ */
+public final class BSONWriterTest {
+
+    /**
+     * Write rows, and return the bytes.
+     *
+     * @param rows The rows.
+     * @return The BSON file.
+     * @throws Exception Thrown if the rows cannot be written.
+     */
+    private byte[] write(final List<Map<String, Object>> rows)
+            throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BSONWriter writer = new BSONWriter(baos);
+        for (Map<String, Object> row : rows) {
+            writer.writeRow(row);
+        }
+        writer.finish();
+        return baos.toByteArray();
+    }
+
+    /**
+     * Read a file back with bson4jackson.
+     *
+     * @param bytes The file.
+     * @return The rows, keyed by their array index.
+     * @throws Exception Thrown if the file cannot be read.
+     */
+    private Map<?, ?> read(final byte[] bytes) throws Exception {
+        ObjectMapper mapper = new ObjectMapper(new BsonFactory());
+        return mapper.readValue(bytes, Map.class);
+    }
+
+    /**
+     * Assert that values are written the way Jackson would write them.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testValueTypes() throws Exception {
+        Map<String, Object> nested = new LinkedHashMap<>();
+        nested.put("inner", 1L);
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("string", "text é");
+        row.put("int", 1);
+        row.put("short", (short) 2);
+        row.put("long", 3L);
+        row.put("float", 1.5f);
+        row.put("double", 2.5);
+        row.put("boolean", true);
+        row.put("null", null);
+        row.put("char", 'c');
+        row.put("small", BigInteger.TEN);
+        row.put("huge", BigInteger.ONE.shiftLeft(80));
+        row.put("date", new Date(1234L));
+        row.put("map", nested);
+        row.put("list", Arrays.asList(1, "two"));
+        row.put("array", new Object[]{1, "two"});
+        row.put("enum", TimeUnit.SECONDS);
+        row.put("bytes", new byte[]{1, 2});
+
+        Map<?, ?> file = read(write(Arrays.asList(row)));
+        Map<?, ?> result = (Map<?, ?>) file.get("0");
+
+        Assert.assertEquals("text é", result.get("string"));
+        Assert.assertEquals(1, result.get("int"));
+        Assert.assertEquals(2, result.get("short"));
+        Assert.assertEquals(3L, result.get("long"));
+        Assert.assertEquals(1.5, result.get("float"));
+        Assert.assertEquals(2.5, result.get("double"));
+        Assert.assertEquals(true, result.get("boolean"));
+        Assert.assertTrue(result.containsKey("null"));
+        Assert.assertNull(result.get("null"));
+        Assert.assertEquals("c", result.get("char"));
+        Assert.assertEquals(10, result.get("small"));
+        Assert.assertEquals(BigInteger.ONE.shiftLeft(80).toString(),
+                result.get("huge"));
+        Assert.assertEquals(1234L, result.get("date"));
+        Assert.assertEquals(nested, result.get("map"));
+        Assert.assertEquals(Arrays.asList(1, "two"), result.get("list"));
+        Assert.assertEquals(Arrays.asList(1, "two"), result.get("array"));
+        Assert.assertEquals("SECONDS", result.get("enum"));
+        Assert.assertArrayEquals(new byte[]{1, 2},
+                (byte[]) result.get("bytes"));
+    }
+
+    /**
+     * Assert that unboxed cells of a row are written with their types.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testRow() throws Exception {
+        Row row = new Row(new RowSchema(
+                new String[]{"int", "long", "double", "boolean", "text"}));
+        row.setInt(0, 1);
+        row.setLong(1, 2L);
+        row.setDouble(2, 3.5);
+        row.setBoolean(3, true);
+        row.set(4, "four");
+
+        Map<?, ?> file = read(write(Arrays.<Map<String, Object>>asList(row)));
+        Map<?, ?> result = (Map<?, ?>) file.get("0");
+
+        Assert.assertEquals(1, result.get("int"));
+        Assert.assertEquals(2L, result.get("long"));
+        Assert.assertEquals(3.5, result.get("double"));
+        Assert.assertEquals(true, result.get("boolean"));
+        Assert.assertEquals("four", result.get("text"));
+    }
+
+    /**
+     * Assert that names stay right across schemas, when there are more
+     * names than are kept, and for indices past those encoded ahead.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testNames() throws Exception {
+        Row first = new Row(new RowSchema(new String[]{"a", "c"}));
+        first.setInt(0, 1);
+        first.setInt(1, 2);
+        Row second = new Row(new RowSchema(new String[]{"c", "b"}));
+        second.setInt(0, 3);
+        second.setInt(1, 4);
+
+        Map<String, Object> wide = new LinkedHashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            wide.put("key" + i, i);
+        }
+        List<Integer> list = new ArrayList<>();
+        for (int i = 0; i < 1500; i++) {
+            list.add(i);
+        }
+        Map<String, Object> listRow = new LinkedHashMap<>();
+        listRow.put("list", list);
+
+        Map<?, ?> file = read(write(Arrays.asList(first, second, first,
+                wide, wide, listRow)));
+
+        Assert.assertEquals(first, file.get("0"));
+        Assert.assertEquals(second, file.get("1"));
+        Assert.assertEquals(first, file.get("2"));
+        Assert.assertEquals(wide, file.get("3"));
+        Assert.assertEquals(wide, file.get("4"));
+        Assert.assertEquals(list, ((Map<?, ?>) file.get("5")).get("list"));
+    }
+
+    /**
+     * Assert that rows carry their length, and that the array does not.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testLengths() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        byte[] bytes = write(Arrays.asList(row, row));
+
+        // Array length, type, "0", row length, int32 "id", terminator.
+        int rowLength = 4 + 1 + 3 + 4 + 1;
+        Assert.assertEquals(4 + 2 * (1 + 2 + rowLength) + 1, bytes.length);
+        Assert.assertEquals(0, bytes[0]);
+        Assert.assertEquals(0x03, bytes[4]);
+        Assert.assertEquals('0', bytes[5]);
+        Assert.assertEquals(rowLength, bytes[7]);
+        Assert.assertEquals('1', bytes[7 + rowLength + 1]);
+    }
+
+    /**
+     * Assert that large outputs are flushed as they grow.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testFlush() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        BSONWriter writer = new BSONWriter(baos);
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("text", "some text to fill the buffer");
+        for (int i = 0; i < 10000; i++) {
+            writer.writeRow(row);
+        }
+        Assert.assertTrue(baos.size() > 0);
+        writer.finish();
+
+        Assert.assertEquals(10000, read(baos.toByteArray()).size());
+    }
+}
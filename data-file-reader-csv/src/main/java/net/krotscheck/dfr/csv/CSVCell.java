@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import net.krotscheck.dfr.ILazyCell;
+import net.krotscheck.dfr.Type;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A cell of a memory-mapped CSV file that is decoded only when it is read.
+ * It holds the offsets of its text in the mapped window, and the type its
+ * column was inferred as.
+ *
+ * @author Michael Krotscheck
+ */
+final class CSVCell implements ILazyCell {
+
+    /**
+     * The mapped window the cell was read from.
+     */
+    private final ByteBuffer window;
+
+    /**
+     * The window index of the first byte of the text.
+     */
+    private final int start;
+
+    /**
+     * The window index after the last byte of the text.
+     */
+    private final int end;
+
+    /**
+     * Whether the text contains doubled quotes.
+     */
+    private final boolean escaped;
+
+    /**
+     * The type to decode the text as.
+     */
+    private final Type type;
+
+    /**
+     * Create a new cell.
+     *
+     * @param buffer  The mapped window.
+     * @param from    The window index of the first byte of the text.
+     * @param to      The window index after the last byte of the text.
+     * @param doubled Whether the text contains doubled quotes.
+     * @param as      The type to decode the text as.
+     */
+    CSVCell(final ByteBuffer buffer, final int from, final int to,
+            final boolean doubled, final Type as) {
+        this.window = buffer;
+        this.start = from;
+        this.end = to;
+        this.escaped = doubled;
+        this.type = as;
+    }
+
+    /**
+     * Decode the text, and convert it into the cell's type. The window is
+     * only read by index, so cells may be decoded while the tokenizer
+     * carries on.
+     *
+     * @return The value.
+     */
+    @Override
+    public Object decode() {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = window.get(start + i);
+        }
+        String text = MappedTokenizer.decode(bytes, bytes.length, escaped);
+        return CSVValueParser.value(type, text);
+    }
+}
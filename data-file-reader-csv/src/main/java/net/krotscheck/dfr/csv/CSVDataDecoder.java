@@ -17,28 +17,59 @@
 
 package net.krotscheck.dfr.csv;
 
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.MappingIterator;
-import com.fasterxml.jackson.databind.ObjectReader;
-import com.fasterxml.jackson.dataformat.csv.CsvMapper;
-import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import net.krotscheck.dfr.AbstractParallelIterator;
+import net.krotscheck.dfr.DataCodec;
+import net.krotscheck.dfr.IBatchIterator;
+import net.krotscheck.dfr.ILazyCell;
+import net.krotscheck.dfr.PredicateSet;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowBatch;
+import net.krotscheck.dfr.RowPredicate;
+import net.krotscheck.dfr.RowSchema;
+import net.krotscheck.dfr.Type;
 import net.krotscheck.dfr.text.AbstractTextDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * This data decoder will stream in a CSV file and generate objects for every
  * row found. Due to the nature of java, it is assumed that column labels act as
  * schema indicators and are contained in the first row of the file.
+ * <p>
+ * By default every value is read as a string. If a number of inference rows
+ * is set, the decoder samples that many rows first, picks a
+ * {@link Type} for every column, and emits numbers and booleans as typed,
+ * unboxed values.
+ * <p>
+ * A file given with {@link #setPath(Path)} is memory-mapped and tokenized
+ * straight from its UTF-8 bytes, and only the cells that are used are
+ * decoded into strings. Such a file may also be decoded in parallel: it is
+ * split into byte ranges aligned to record boundaries, and the ranges are
+ * parsed on a pool of threads. Rows of such a file may also be returned
+ * with their cells still undecoded, see {@link #setLazy(boolean)}.
  *
  * @author Michael Krotscheck
  */
+@DataCodec("text/csv")
 public final class CSVDataDecoder extends AbstractTextDecoder {
 
     /**
@@ -47,6 +78,51 @@ public final class CSVDataDecoder extends AbstractTextDecoder {
     private static Logger logger =
             LoggerFactory.getLogger(CSVDataDecoder.class);
 
+    /**
+     * The default size of the byte ranges decoded in parallel.
+     */
+    static final long DEFAULT_RANGE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The number of rows to sample for type inference.
+     */
+    private Integer inferenceRows;
+
+    /**
+     * The file to decode, if not reading from a reader.
+     */
+    private Path path;
+
+    /**
+     * The number of threads used to decode a file.
+     */
+    private Integer parallelism;
+
+    /**
+     * Whether rows decoded in parallel are returned in file order.
+     */
+    private boolean ordered = true;
+
+    /**
+     * The size of the byte ranges decoded in parallel.
+     */
+    private long rangeSize = DEFAULT_RANGE_SIZE;
+
+    /**
+     * The size of the windows a file is mapped in.
+     */
+    private int windowSize = MappedTokenizer.DEFAULT_WINDOW_SIZE;
+
+    /**
+     * Whether cells of a mapped file are decoded when they are first read.
+     */
+    private boolean lazy = false;
+
+    /**
+     * Resources opened by this decoder, closed on dispose.
+     */
+    private final List<Closeable> resources = new ArrayList<>();
+
     /**
      * Returns an iterator for the file.
      *
@@ -54,7 +130,150 @@ public final class CSVDataDecoder extends AbstractTextDecoder {
      */
     @Override
     protected Iterator<Map<String, Object>> buildIterator() {
-        return new InnerRowIterator(getReader());
+        if (path != null && parallelism != null && parallelism > 1) {
+            ParallelRowIterator iterator = new ParallelRowIterator(path,
+                    parallelism, ordered, rangeSize, windowSize,
+                    inferenceRows, lazy, getRequiredColumns(),
+                    getRowPredicates());
+            resources.add(iterator);
+            return iterator;
+        }
+
+        ICSVTokenizer tokens = null;
+        Reader reader = getReader();
+        try {
+            if (reader != null) {
+                tokens = new JacksonTokenizer(reader);
+            } else if (path != null) {
+                FileChannel channel =
+                        FileChannel.open(path, StandardOpenOption.READ);
+                resources.add(channel);
+                tokens = new MappedTokenizer(channel, 0, channel.size(),
+                        windowSize);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Unable to open CSV file.", e);
+        }
+        return new InnerRowIterator(tokens, inferenceRows, lazy,
+                getRequiredColumns(), getRowPredicates());
+    }
+
+    /**
+     * Get the file to decode.
+     *
+     * @return The file, null if reading from the reader.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Set a file to decode instead of a reader. Files are memory-mapped and
+     * read as UTF-8.
+     *
+     * @param file The file.
+     */
+    public void setPath(final Path file) {
+        this.path = file;
+    }
+
+    /**
+     * Get the number of threads used to decode a file.
+     *
+     * @return The number of threads, null to decode sequentially.
+     */
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads used to decode a file given with
+     * {@link #setPath(Path)}. Readers are always decoded sequentially.
+     *
+     * @param threads The number of threads, default null.
+     */
+    public void setParallelism(final Integer threads) {
+        this.parallelism = threads;
+    }
+
+    /**
+     * Whether rows decoded in parallel are returned in file order.
+     *
+     * @return True if rows keep their order.
+     */
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * Set whether rows decoded in parallel keep their order. Unordered rows
+     * are returned range by range, as soon as each range is decoded.
+     *
+     * @param keepOrder True to keep rows in file order, the default.
+     */
+    public void setOrdered(final boolean keepOrder) {
+        this.ordered = keepOrder;
+    }
+
+    /**
+     * Set the size of the byte ranges decoded in parallel.
+     *
+     * @param bytes The range size.
+     */
+    void setRangeSize(final long bytes) {
+        this.rangeSize = bytes;
+    }
+
+    /**
+     * Set the size of the windows a file is mapped in.
+     *
+     * @param bytes The window size.
+     */
+    void setWindowSize(final int bytes) {
+        this.windowSize = bytes;
+    }
+
+    /**
+     * Whether cells of a mapped file are decoded when they are first read.
+     *
+     * @return True if cells are decoded lazily.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Set whether the cells of a file given with {@link #setPath(Path)} are
+     * returned undecoded. Such rows point into the mapped file, and each of
+     * their cells is turned into a string or number the first time it is
+     * read, so cells of rows or columns that a filter drops are never
+     * decoded at all. Rows keep the part of the file they were read from
+     * mapped until they are dropped. Cells read from a reader are always
+     * decoded right away.
+     *
+     * @param deferDecoding True to decode cells lazily, default false.
+     */
+    public void setLazy(final boolean deferDecoding) {
+        this.lazy = deferDecoding;
+    }
+
+    /**
+     * Get the number of rows sampled for type inference.
+     *
+     * @return The number of rows, null if inference is disabled.
+     */
+    public Integer getInferenceRows() {
+        return inferenceRows;
+    }
+
+    /**
+     * Set the number of rows to sample for type inference. Set to null to
+     * read every value as a string.
+     *
+     * @param rows The number of rows, default null.
+     */
+    public void setInferenceRows(final Integer rows) {
+        this.inferenceRows = rows;
     }
 
     /**
@@ -67,43 +286,582 @@ public final class CSVDataDecoder extends AbstractTextDecoder {
         return "text/csv";
     }
 
+    /**
+     * Set the path, parallelism, ordering, range and window sizes,
+     * laziness and type inference back to their defaults.
+     */
+    @Override
+    protected void restoreSettings() {
+        inferenceRows = null;
+        path = null;
+        parallelism = null;
+        ordered = true;
+        rangeSize = DEFAULT_RANGE_SIZE;
+        windowSize = MappedTokenizer.DEFAULT_WINDOW_SIZE;
+        lazy = false;
+    }
+
     /**
      * Dispose of the decoder.
      */
     @Override
     protected void dispose() {
-        // Do nothing, this decoder is handled by the parent class.
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException ioe) {
+                logger.error("Unable to close CSV file.", ioe);
+            }
+        }
+        resources.clear();
+    }
+
+    /**
+     * Decodes a file in parallel. The file is split into ranges aligned to
+     * record boundaries, and each range is parsed on its own.
+     */
+    private static final class ParallelRowIterator
+            extends AbstractParallelIterator {
+
+        /**
+         * The predicates to test while reading.
+         */
+        private final List<RowPredicate> predicates;
+
+        /**
+         * The size of the windows a range is mapped in.
+         */
+        private final int windowSize;
+
+        /**
+         * The file.
+         */
+        private FileChannel channel;
+
+        /**
+         * The iterator that read the header and sampled the column types.
+         */
+        private InnerRowIterator template;
+
+        /**
+         * The ranges not yet handed out.
+         */
+        private Iterator<long[]> ranges =
+                Collections.<long[]>emptyList().iterator();
+
+        /**
+         * Create a new parallel iterator.
+         *
+         * @param file            The file.
+         * @param threads         The number of threads.
+         * @param keepOrder       Whether to return rows in file order.
+         * @param rangeSize       The target size of a range.
+         * @param mapSize         The size of a mapped window.
+         * @param sampleSize      The number of rows to sample for type
+         *                        inference, or null to disable inference.
+         * @param deferDecoding   Whether to decode cells lazily.
+         * @param requiredColumns The columns to decode, null for all.
+         * @param rowPredicates   The predicates to test while reading.
+         */
+        ParallelRowIterator(final Path file, final int threads,
+                            final boolean keepOrder, final long rangeSize,
+                            final int mapSize, final Integer sampleSize,
+                            final boolean deferDecoding,
+                            final Set<String> requiredColumns,
+                            final List<RowPredicate> rowPredicates) {
+            super(threads, keepOrder);
+            predicates = rowPredicates;
+            windowSize = mapSize;
+
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+                template = new InnerRowIterator(
+                        new MappedTokenizer(channel, 0, channel.size(),
+                                windowSize),
+                        sampleSize, deferDecoding, requiredColumns,
+                        rowPredicates);
+                if (!template.hasHeader()) {
+                    return;
+                }
+                long start = CSVSplitter.headerEnd(channel);
+                ranges = CSVSplitter.split(channel, start, channel.size(),
+                        rangeSize, getPool()).iterator();
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unable to split CSV file.", e);
+                ranges = Collections.<long[]>emptyList().iterator();
+            }
+        }
+
+        /**
+         * Hand out the decoder of the next range.
+         *
+         * @return The decoder, or null after the last range.
+         */
+        @Override
+        protected Callable<List<Map<String, Object>>> nextPart() {
+            if (!ranges.hasNext()) {
+                return null;
+            }
+            return new RangeDecoder(ranges.next());
+        }
+
+        /**
+         * Close the file.
+         */
+        @Override
+        protected void dispose() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ioe) {
+                    logger.error("Unable to close CSV file.", ioe);
+                }
+                channel = null;
+            }
+        }
+
+        /**
+         * Decodes all rows of one range.
+         */
+        private final class RangeDecoder
+                implements Callable<List<Map<String, Object>>> {
+
+            /**
+             * The start and end offsets of the range.
+             */
+            private final long[] range;
+
+            /**
+             * Create a new range decoder.
+             *
+             * @param byteRange The start and end offsets of the range.
+             */
+            RangeDecoder(final long[] byteRange) {
+                this.range = byteRange;
+            }
+
+            /**
+             * Map the range, and decode its rows.
+             *
+             * @return The rows.
+             * @throws IOException Thrown if the range cannot be mapped.
+             */
+            @Override
+            public List<Map<String, Object>> call() throws IOException {
+                ICSVTokenizer tokens = new MappedTokenizer(channel,
+                        range[0], range[1], windowSize);
+                InnerRowIterator iterator =
+                        new InnerRowIterator(tokens, template, predicates);
+                List<Map<String, Object>> rows = new ArrayList<>();
+                while (iterator.hasNext()) {
+                    Map<String, Object> row = iterator.next();
+                    if (row != null) {
+                        rows.add(row);
+                    }
+                }
+                return rows;
+            }
+        }
     }
 
     /**
-     * Internal iterator class, which wraps a Jackson parser.
+     * Internal iterator class, which reads records cell by cell from a
+     * tokenizer. The header row is read once into a shared schema,
+     * after which every record is read into a plain array and wrapped in a
+     * row without any further copying. Cells of columns that are not
+     * required are skipped without ever being turned into strings, and
+     * predicates are tested while a record is read, so the remaining cells of
+     * a rejected record are skipped as well.
      */
     private static final class InnerRowIterator
-            implements Iterator<Map<String, Object>> {
+            implements IBatchIterator {
+
+        /**
+         * Marks the cells missing from the end of a short record.
+         */
+        private static final Object MISSING = new Object();
+
+        /**
+         * The CSV tokenizer, null once it cannot be read.
+         */
+        private ICSVTokenizer tokens;
+
+        /**
+         * The column names, read from the header row.
+         */
+        private List<String> header;
+
+        /**
+         * The schema, read from the header row.
+         */
+        private RowSchema schema;
+
+        /**
+         * The schema index of each file column, or -1 if it is skipped.
+         */
+        private int[] targets;
+
+        /**
+         * The predicates tested while reading, null if there are none.
+         */
+        private final PredicateSet selection;
+
+        /**
+         * The predicate slot of each file column, or -1 if it is not tested.
+         */
+        private int[] slots;
+
+        /**
+         * The predicate slots of names that appear more than once in the
+         * header, which are left to the filter chain.
+         */
+        private int[] repeatedSlots;
+
+        /**
+         * Whether cells are converted to typed values.
+         */
+        private final boolean typed;
+
+        /**
+         * Whether the last record read was shorter than the header.
+         */
+        private boolean shortRecord = false;
+
+        /**
+         * The inferred column types, null when inference is disabled.
+         */
+        private Type[] types;
+
+        /**
+         * Whether cells are handed out undecoded, if the tokenizer can.
+         */
+        private final boolean lazy;
 
         /**
-         * A mapping iterator from the CSV decoder.
+         * Records read ahead for type inference, not yet returned.
          */
-        private MappingIterator<Map<String, Object>> innerIterator;
+        private final Deque<Object[]> sample = new ArrayDeque<>();
 
         /**
-         * Create a new iterator from the given reader.
+         * Create a new iterator from the given tokenizer.
          *
-         * @param csvReader A reader of CSV rows.
+         * @param tokenizer       A tokenizer of CSV rows, or null.
+         * @param sampleSize      The number of rows to sample for type
+         *                        inference, or null to disable inference.
+         * @param deferDecoding   Whether to hand out cells undecoded.
+         * @param requiredColumns The columns to decode, null for all.
+         * @param rowPredicates   The predicates to test while reading.
          */
-        InnerRowIterator(final Reader csvReader) {
-            // Construct our schema.
-            CsvSchema schema = CsvSchema.emptySchema().withUseHeader(true);
-            CsvMapper mapper = new CsvMapper();
-            TypeReference<LinkedHashMap<String, Object>> typeRef =
-                    new TypeReference<LinkedHashMap<String, Object>>() {
+        InnerRowIterator(final ICSVTokenizer tokenizer,
+                         final Integer sampleSize,
+                         final boolean deferDecoding,
+                         final Set<String> requiredColumns,
+                         final List<RowPredicate> rowPredicates) {
+            typed = sampleSize != null && sampleSize > 0;
+            lazy = deferDecoding;
+            if (rowPredicates.isEmpty()) {
+                selection = null;
+            } else {
+                selection = new PredicateSet(rowPredicates);
+            }
 
-                    };
+            tokens = tokenizer;
             try {
-                ObjectReader reader = mapper.reader(schema).withType(typeRef);
-                innerIterator = reader.readValues(csvReader);
-            } catch (IOException ioe) {
-                logger.error("CSV File does not exist.");
+                if (tokens != null && tokens.hasRecord()) {
+                    buildSchema(readHeader(), requiredColumns);
+                } else {
+                    tokens = null;
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unable to read CSV header.", e);
+                tokens = null;
+            }
+
+            if (tokens != null && typed) {
+                inferTypes(sampleSize);
+            }
+        }
+
+        /**
+         * Create a new iterator over a part of a file that does not start
+         * with the header row. The schema and column types are taken from
+         * an iterator that read the start of the same file.
+         *
+         * @param tokenizer     A tokenizer of CSV rows, without a header.
+         * @param template      The iterator that read the header.
+         * @param rowPredicates The predicates to test while reading.
+         */
+        InnerRowIterator(final ICSVTokenizer tokenizer,
+                         final InnerRowIterator template,
+                         final List<RowPredicate> rowPredicates) {
+            typed = template.typed;
+            lazy = template.lazy;
+            types = template.types;
+            header = template.header;
+            schema = template.schema;
+            targets = template.targets;
+            if (rowPredicates.isEmpty()) {
+                selection = null;
+            } else {
+                selection = new PredicateSet(rowPredicates);
+            }
+            buildSlots();
+            tokens = tokenizer;
+        }
+
+        /**
+         * Whether the header could be read.
+         *
+         * @return True if the file has a header row.
+         */
+        boolean hasHeader() {
+            return schema != null;
+        }
+
+        /**
+         * Read the header record.
+         *
+         * @return The column names in file order.
+         * @throws IOException Thrown if the header cannot be read.
+         */
+        private List<String> readHeader() throws IOException {
+            List<String> names = new ArrayList<>();
+            while (tokens.nextCell()) {
+                names.add(tokens.getText());
+            }
+            return names;
+        }
+
+        /**
+         * Build the row schema from the header, keeping only the required
+         * columns. A name that appears more than once is one column, at
+         * the position of its first appearance; every appearance targets
+         * it, so the last cell wins, as it would in a map.
+         *
+         * @param headerNames     The header names.
+         * @param requiredColumns The columns to decode, null for all.
+         */
+        private void buildSchema(final List<String> headerNames,
+                                 final Set<String> requiredColumns) {
+            header = headerNames;
+            Map<String, Integer> positions = new HashMap<>();
+            List<String> names = new ArrayList<>(header.size());
+            targets = new int[header.size()];
+            buildSlots();
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i);
+                Integer position = positions.get(name);
+                if (position != null) {
+                    targets[i] = position;
+                } else if (requiredColumns == null
+                        || requiredColumns.contains(name)) {
+                    positions.put(name, names.size());
+                    targets[i] = names.size();
+                    names.add(name);
+                } else {
+                    targets[i] = -1;
+                }
+            }
+            schema = new RowSchema(names);
+        }
+
+        /**
+         * Assign each header column its predicate slot. Which cell of a
+         * repeated name is kept is only known once the record is read, so
+         * those columns are left to the filter chain.
+         */
+        private void buildSlots() {
+            slots = new int[header.size()];
+            Set<String> seen = new HashSet<>();
+            Set<String> repeated = new LinkedHashSet<>();
+            for (String name : header) {
+                if (!seen.add(name)) {
+                    repeated.add(name);
+                }
+            }
+            for (int i = 0; i < header.size(); i++) {
+                slots[i] = -1;
+                if (selection != null && !repeated.contains(header.get(i))) {
+                    slots[i] = selection.slot(header.get(i));
+                }
+            }
+            List<Integer> deferred = new ArrayList<>();
+            for (String name : repeated) {
+                if (selection != null && selection.slot(name) >= 0) {
+                    deferred.add(selection.slot(name));
+                }
+            }
+            repeatedSlots = new int[deferred.size()];
+            for (int i = 0; i < repeatedSlots.length; i++) {
+                repeatedSlots[i] = deferred.get(i);
+            }
+        }
+
+        /**
+         * Read ahead a number of records and pick the narrowest type that
+         * holds every sampled value of each column.
+         *
+         * @param sampleSize The number of records to sample.
+         */
+        private void inferTypes(final int sampleSize) {
+            try {
+                while (sample.size() < sampleSize && hasRecord()) {
+                    Object[] record = readRecord();
+                    if (record != null) {
+                        sample.add(record);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unable to sample CSV rows.", e);
+                tokens = null;
+            }
+
+            types = new Type[schema.size()];
+            for (Object[] record : sample) {
+                for (int i = 0; i < types.length; i++) {
+                    if (record[i] != MISSING) {
+                        types[i] = CSVValueParser.widen(types[i],
+                                CSVValueParser.classify((String) record[i]));
+                    }
+                }
+            }
+            for (int i = 0; i < types.length; i++) {
+                if (types[i] == null) {
+                    types[i] = Type.STRING;
+                }
+            }
+        }
+
+        /**
+         * Read the record at the tokenizer's current position, and advance
+         * the tokenizer to the start of the next one. Surplus cells of long
+         * records are dropped, cells missing from short records are marked.
+         *
+         * @return The values of the required columns in schema order, or
+         * null if a predicate rejected the record.
+         * @throws IOException Thrown if the record cannot be read.
+         */
+        private Object[] readRecord() throws IOException {
+            Object[] values = new Object[schema.size()];
+            if (selection != null) {
+                selection.reset();
+                for (int slot : repeatedSlots) {
+                    selection.defer(slot);
+                }
+            }
+            int cell = 0;
+            while (tokens.nextCell()) {
+                if (cell < targets.length) {
+                    String text = null;
+                    if (slots[cell] >= 0) {
+                        text = tokens.getText();
+                        if (!testCell(slots[cell], targets[cell], text)) {
+                            skipRecord();
+                            return null;
+                        }
+                    }
+                    if (targets[cell] >= 0) {
+                        values[targets[cell]] = readCell(targets[cell], text);
+                    }
+                }
+                cell++;
+            }
+
+            shortRecord = cell < targets.length;
+            for (int i = cell; i < targets.length; i++) {
+                if (targets[i] >= 0 && values[targets[i]] == null) {
+                    values[targets[i]] = MISSING;
+                }
+            }
+            if (selection != null && !selection.testMissing()) {
+                return null;
+            }
+            return values;
+        }
+
+        /**
+         * Read the current cell. Once the column types are known, cells are
+         * handed out undecoded if possible; sampled cells are always decoded,
+         * as their text is needed to infer the types.
+         *
+         * @param index The schema index of the cell's column.
+         * @param text  The text of the cell, if already decoded.
+         * @return The text, or an undecoded cell.
+         * @throws IOException Thrown if the cell cannot be read.
+         */
+        private Object readCell(final int index, final String text)
+                throws IOException {
+            if (text != null) {
+                return text;
+            }
+            if (lazy && (!typed || types != null)) {
+                Type type = Type.STRING;
+                if (types != null) {
+                    type = types[index];
+                }
+                ILazyCell cell = tokens.getLazyCell(type);
+                if (cell != null) {
+                    return cell;
+                }
+            }
+            return tokens.getText();
+        }
+
+        /**
+         * Test a cell against the predicates of its column. Once the column
+         * types are known, the cell is tested as the value it will be
+         * decoded to. Cells read while the types are still being sampled,
+         * and empty cells of typed records, which may still become nulls,
+         * are left to the filter chain.
+         *
+         * @param slot  The predicate slot of the cell's column.
+         * @param index The schema index of the cell's column.
+         * @param text  The text of the cell.
+         * @return False if the record is rejected.
+         */
+        private boolean testCell(final int slot, final int index,
+                                 final String text) {
+            if (!typed) {
+                return selection.test(slot, text);
+            }
+            if (types == null || text.isEmpty()) {
+                selection.defer(slot);
+                return true;
+            }
+            switch (types[index]) {
+                case INTEGER:
+                case LONG:
+                    if (CSVValueParser.isInteger(text)) {
+                        return selection.test(slot,
+                                CSVValueParser.parseLong(text));
+                    }
+                    break;
+                case DOUBLE:
+                    if (CSVValueParser.isDecimal(text)) {
+                        return selection.test(slot,
+                                CSVValueParser.parseDouble(text));
+                    }
+                    break;
+                case BOOLEAN:
+                    if (CSVValueParser.isBoolean(text)) {
+                        return selection.test(slot, text.length() == 4);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            return selection.test(slot, text);
+        }
+
+        /**
+         * Skip the remaining cells of a rejected record.
+         *
+         * @throws IOException Thrown if the record cannot be read.
+         */
+        private void skipRecord() throws IOException {
+            boolean more = tokens.nextCell();
+            while (more) {
+                more = tokens.nextCell();
             }
         }
 
@@ -114,11 +872,41 @@ public final class CSVDataDecoder extends AbstractTextDecoder {
          */
         @Override
         public boolean hasNext() {
-            if (innerIterator != null) {
-                return innerIterator.hasNext();
-            } else {
-                return false;
+            return !sample.isEmpty() || hasRecord();
+        }
+
+        /**
+         * Is the tokenizer positioned at the start of another record?
+         *
+         * @return true if another record can be read.
+         */
+        private boolean hasRecord() {
+            return tokens != null && tokens.hasRecord();
+        }
+
+        /**
+         * Return the next selected record, draining the inference sample
+         * first.
+         *
+         * @return The next record, or null if there is none left or it
+         * cannot be read.
+         */
+        private Object[] nextRecord() {
+            if (!sample.isEmpty()) {
+                return sample.poll();
             }
+            try {
+                while (hasRecord()) {
+                    Object[] values = readRecord();
+                    if (values != null) {
+                        return values;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.error("Unable to read CSV row.", e);
+                tokens = null;
+            }
+            return null;
         }
 
         /**
@@ -128,10 +916,80 @@ public final class CSVDataDecoder extends AbstractTextDecoder {
          */
         @Override
         public Map<String, Object> next() {
-            if (hasNext()) {
-                return innerIterator.next();
+            if (!hasNext()) {
+                return null;
             }
-            return null;
+
+            Object[] values = nextRecord();
+            if (values == null) {
+                return null;
+            }
+            if (types != null) {
+                return typedRow(values);
+            }
+
+            // Short records leave their trailing columns out of the row.
+            Row row = new Row(schema, values);
+            if (shortRecord) {
+                for (int i = 0; i < values.length; i++) {
+                    if (values[i] == MISSING) {
+                        row.remove(schema.getName(i));
+                    }
+                }
+            }
+            return row;
+        }
+
+        /**
+         * Convert a record into a row of typed values.
+         *
+         * @param values The record.
+         * @return The row.
+         */
+        private Row typedRow(final Object[] values) {
+            Row row = new Row(schema);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] == MISSING) {
+                    row.remove(schema.getName(i));
+                } else if (values[i] instanceof ILazyCell) {
+                    row.set(i, values[i]);
+                } else {
+                    CSVValueParser.set(row, i, types[i], (String) values[i]);
+                }
+            }
+            return row;
+        }
+
+        /**
+         * Decode up to a number of records straight into a batch.
+         *
+         * @param batch   The batch to append rows to.
+         * @param maxRows The maximum number of rows to append.
+         * @return The number of rows appended.
+         */
+        @Override
+        public int nextBatch(final RowBatch.Builder batch, final int maxRows) {
+            int added = 0;
+            while (added < maxRows && hasNext()) {
+                Object[] values = nextRecord();
+                if (values == null) {
+                    break;
+                }
+                if (types != null) {
+                    batch.add(typedRow(values));
+                } else {
+                    if (shortRecord) {
+                        for (int i = 0; i < values.length; i++) {
+                            if (values[i] == MISSING) {
+                                values[i] = null;
+                            }
+                        }
+                    }
+                    batch.append(schema, values);
+                }
+                added++;
+            }
+            return added;
         }
 
         /**
@@ -4,28 +4,144 @@
 
 package net.krotscheck.dfr.csv;
 
-import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.ObjectWriter;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvGenerator;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import net.krotscheck.dfr.DataCodec;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowSchema;
+import net.krotscheck.dfr.ValueWriter;
 import net.krotscheck.dfr.text.AbstractTextEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 /**
  * CSV Data Encoder, allows us to write tuples to a data file in CSV format.
+ * <p>
+ * A single CSV generator is created for the first row, with the columns of
+ * that row or with columns set ahead of time, and every row is then streamed
+ * through it cell by cell. Cells are matched to the header by name, so rows
+ * with missing columns leave those cells empty, and columns that are not in
+ * the header are left out. Cells of a {@link Row} are written by their
+ * type, so numbers and booleans are never boxed. The generator writes into
+ * a buffer of its own, which is only flushed to the writer when it is full,
+ * and when the encoder is closed.
+ * <p>
+ * Rows whose columns differ may instead be written under the union of all
+ * their columns. Rows are then held back until the encoder is closed; past
+ * a memory limit, they are spilled to a temporary file.
  *
  * @author Michael Krotscheck
  */
+@DataCodec("text/csv")
 public final class CSVDataEncoder extends AbstractTextEncoder {
 
     /**
-     * The writer.
+     * The default size of the output buffer, in characters.
      */
-    private ObjectWriter writer;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The default estimated memory held by rows in union mode, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_LIMIT = 64L * 1024 * 1024;
+
+    /**
+     * The text of a null cell. Nulls are written as empty strings, as the
+     * generator leaves null array elements out of the row entirely.
+     */
+    private static final String NULL = "";
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(CSVDataEncoder.class);
+
+    /**
+     * The size of the output buffer, in characters.
+     */
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    /**
+     * The output buffer, null until the first row is written.
+     */
+    private Writer buffer;
+
+    /**
+     * The generator, null until the first row is written.
+     */
+    private CsvGenerator generator;
+
+    /**
+     * The columns set ahead of time, null to take them from the first row.
+     */
+    private List<String> columns;
+
+    /**
+     * Whether rows are written under the union of all their columns.
+     */
+    private boolean unionSchema = false;
+
+    /**
+     * The estimated memory held by rows in union mode before they are
+     * spilled to disk, in bytes.
+     */
+    private long memoryLimit = DEFAULT_MEMORY_LIMIT;
+
+    /**
+     * The rows held back in union mode, null until the first row.
+     */
+    private CSVRowBuffer rows;
+
+    /**
+     * The header, null until the generator is created.
+     */
+    private String[] header;
+
+    /**
+     * The index of every column of the header.
+     */
+    private Map<String, Integer> headerIndex;
+
+    /**
+     * The cells of the current row, in header order.
+     */
+    private Object[] cells;
+
+    /**
+     * Writes single cells and values through the generator.
+     */
+    private final CellWriter values = new CellWriter();
+
+    /**
+     * The schema of the last row written.
+     */
+    private RowSchema lastSchema;
+
+    /**
+     * For each header column, its index in the last schema, or -1.
+     */
+    private int[] lastMapping;
+
+    /**
+     * The indices of the last schema that are not in the header.
+     */
+    private int[] lastExtras;
+
+    /**
+     * Whether a row with columns outside the header has been reported.
+     */
+    private boolean reported = false;
 
     /**
      * Return the decoding mimetype which this encoder supports.
@@ -38,7 +154,92 @@ public final class CSVDataEncoder extends AbstractTextEncoder {
     }
 
     /**
-     * Write a row to the destination.
+     * Get the size of the output buffer.
+     *
+     * @return The size, in characters.
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Set the size of the output buffer. Takes effect if set before the
+     * first row is written.
+     *
+     * @param chars The size, in characters.
+     */
+    public void setBufferSize(final int chars) {
+        this.bufferSize = chars;
+    }
+
+    /**
+     * Get the columns set ahead of time.
+     *
+     * @return The columns, or null if they are taken from the first row.
+     */
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Set the columns of the header ahead of time, instead of taking them
+     * from the first row. In union mode, the union starts with them. Takes
+     * effect if set before the first row is written.
+     *
+     * @param names The columns, or null to take them from the first row.
+     */
+    public void setColumns(final List<String> names) {
+        if (names == null) {
+            this.columns = null;
+        } else {
+            this.columns = new ArrayList<>(names);
+        }
+    }
+
+    /**
+     * Are rows written under the union of all their columns?
+     *
+     * @return True if rows are held back until the encoder is closed.
+     */
+    public boolean isUnionSchema() {
+        return unionSchema;
+    }
+
+    /**
+     * Write rows under the union of all their columns. Rows are then held
+     * back until the encoder is closed, when the header is known. Takes
+     * effect if set before the first row is written.
+     *
+     * @param union True to write under the union of all columns.
+     */
+    public void setUnionSchema(final boolean union) {
+        this.unionSchema = union;
+    }
+
+    /**
+     * Get the memory limit of union mode.
+     *
+     * @return The estimated memory held by rows before they are spilled to
+     * disk, in bytes.
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Set the memory limit of union mode. Takes effect if set before the
+     * first row is written.
+     *
+     * @param bytes The estimated memory held by rows before they are
+     *              spilled to disk, in bytes.
+     */
+    public void setMemoryLimit(final long bytes) {
+        this.memoryLimit = bytes;
+    }
+
+    /**
+     * Write a row to the destination. The first row also writes the header.
+     * In union mode, the row is held back instead.
      *
      * @param row The row to write.
      * @throws java.io.IOException Exception thrown when there's problems
@@ -47,25 +248,236 @@ public final class CSVDataEncoder extends AbstractTextEncoder {
     @Override
     protected void writeToOutput(final Map<String, Object> row)
             throws IOException {
-        if (writer == null) {
-            CsvMapper mapper = new CsvMapper();
-            mapper.disable(SerializationFeature.CLOSE_CLOSEABLE);
-            mapper.getFactory()
-                    .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET,
-                            false);
-            CsvSchema schema = buildCsvSchema(row);
-            writer = mapper.writer(schema);
-            writer.writeValue(getWriter(), row.keySet());
+        if (unionSchema) {
+            if (rows == null) {
+                rows = new CSVRowBuffer(columns, memoryLimit);
+            }
+            rows.add(row);
+            return;
+        }
+        if (generator == null) {
+            if (columns == null) {
+                open(new ArrayList<>(row.keySet()));
+            } else {
+                open(columns);
+            }
+        }
+
+        generator.writeStartArray();
+        if (row instanceof Row) {
+            Row typed = (Row) row;
+            int[] mapping = mapping(typed.getSchema());
+            for (int i : lastExtras) {
+                if (typed.isPresent(i)) {
+                    reportExtra();
+                }
+            }
+            writeCells(typed, mapping);
+        } else {
+            writeAligned(row);
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Create the generator for a header, and write it.
+     *
+     * @param names The columns of the header.
+     * @throws IOException Thrown if the header cannot be written.
+     */
+    private void open(final List<String> names) throws IOException {
+        buffer = new BufferedWriter(getWriter(), bufferSize);
+        generator = CSVMappers.getCsvMapper().getFactory()
+                .createGenerator(buffer);
+
+        CsvSchema.Builder builder = CsvSchema.builder();
+        header = names.toArray(new String[names.size()]);
+        headerIndex = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            builder.addColumn(header[i]);
+            headerIndex.put(header[i], i);
+        }
+        cells = new Object[header.length];
+        generator.setSchema(builder.build());
+
+        generator.writeStartArray();
+        for (String name : header) {
+            generator.writeString(name);
+        }
+        generator.writeEndArray();
+    }
+
+    /**
+     * Map the columns of the header to the columns of a schema. The
+     * mapping of the last schema is kept, as rows usually share one.
+     *
+     * @param schema The schema of a row.
+     * @return For each header column, its index in the schema, or -1.
+     */
+    private int[] mapping(final RowSchema schema) {
+        if (schema == lastSchema) {
+            return lastMapping;
+        }
+        int[] mapping = new int[header.length];
+        Arrays.fill(mapping, -1);
+        List<Integer> extras = new ArrayList<>();
+        for (int i = 0; i < schema.size(); i++) {
+            Integer index = headerIndex.get(schema.getName(i));
+            if (index == null) {
+                extras.add(i);
+            } else {
+                mapping[index] = i;
+            }
+        }
+        lastSchema = schema;
+        lastMapping = mapping;
+        lastExtras = new int[extras.size()];
+        for (int i = 0; i < lastExtras.length; i++) {
+            lastExtras[i] = extras.get(i);
+        }
+        return mapping;
+    }
+
+    /**
+     * Report, once, that a row has columns outside the header.
+     */
+    private void reportExtra() {
+        if (!reported) {
+            reported = true;
+            logger.warn("Rows have columns that are not in the CSV header;"
+                    + " those columns are left out.");
+        }
+    }
+
+    /**
+     * Write the cells of a row in header order, reading numbers and
+     * booleans without boxing them. Cells the row does not have are
+     * written empty.
+     *
+     * @param row     The row.
+     * @param mapping For each header column, its index in the row, or -1.
+     * @throws IOException Thrown if a cell cannot be written.
+     */
+    private void writeCells(final Row row, final int[] mapping)
+            throws IOException {
+        for (int i : mapping) {
+            if (i < 0 || !row.isPresent(i)) {
+                generator.writeString(NULL);
+            } else {
+                values.writeCell(row, i);
+            }
         }
-        writer.writeValue(getWriter(), row.values());
     }
 
     /**
-     * Closes the output stream.
+     * Write the values of a map in header order. Values are matched to the
+     * header by name, unless their key is at the same position.
+     *
+     * @param row The row.
+     * @throws IOException Thrown if a value cannot be written.
+     */
+    private void writeAligned(final Map<String, Object> row)
+            throws IOException {
+        Arrays.fill(cells, null);
+        int position = 0;
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            String key = entry.getKey();
+            if (position < header.length && header[position].equals(key)) {
+                cells[position] = entry.getValue();
+            } else {
+                Integer index = headerIndex.get(key);
+                if (index == null) {
+                    reportExtra();
+                } else {
+                    cells[index] = entry.getValue();
+                }
+            }
+            position++;
+        }
+        for (Object value : cells) {
+            values.writeValue(value);
+        }
+    }
+
+    /**
+     * Write the rows held back in union mode, under the union of their
+     * columns.
+     *
+     * @throws IOException Thrown if the rows cannot be written.
+     */
+    private void writeBuffered() throws IOException {
+        open(rows.getColumns());
+        rows.finish();
+        Object[] row = rows.next();
+        while (row != null) {
+            generator.writeStartArray();
+            for (Object value : row) {
+                values.writeValue(value);
+            }
+            generator.writeEndArray();
+            row = rows.next();
+        }
+    }
+
+    /**
+     * Set the buffer size, columns, union mode and memory limit back to
+     * their defaults.
+     */
+    @Override
+    protected void restoreSettings() {
+        bufferSize = DEFAULT_BUFFER_SIZE;
+        columns = null;
+        unionSchema = false;
+        memoryLimit = DEFAULT_MEMORY_LIMIT;
+    }
+
+    /**
+     * Write any rows held back, and flush the generator and its buffer. The
+     * writer itself is closed by the parent class.
      */
     @Override
     public void dispose() {
-        writer = null;
+        try {
+            if (rows != null) {
+                writeBuffered();
+            }
+        } catch (IOException ioe) {
+            logger.error("Unable to write buffered CSV rows.", ioe);
+        } finally {
+            closeRows();
+        }
+        try {
+            if (generator != null) {
+                generator.close();
+                buffer.flush();
+            }
+        } catch (IOException ioe) {
+            logger.error("Unable to flush CSV output.", ioe);
+        } finally {
+            generator = null;
+            buffer = null;
+            header = null;
+            lastSchema = null;
+            lastMapping = null;
+            lastExtras = null;
+            reported = false;
+        }
+    }
+
+    /**
+     * Release the rows held back, and their spill file.
+     */
+    private void closeRows() {
+        if (rows == null) {
+            return;
+        }
+        try {
+            rows.close();
+        } catch (IOException ioe) {
+            logger.error("Unable to delete CSV spill file.", ioe);
+        } finally {
+            rows = null;
+        }
     }
 
     /**
@@ -84,4 +496,99 @@ public final class CSVDataEncoder extends AbstractTextEncoder {
 
         return builder.build();
     }
+
+    /**
+     * Writes single cells through the generator. Nulls are written as empty
+     * strings, and values that are not strings, numbers or booleans are
+     * handed to the object mapper.
+     */
+    private final class CellWriter extends ValueWriter {
+
+        /**
+         * Write a null, as an empty cell.
+         *
+         * @throws IOException Thrown if the value cannot be written.
+         */
+        @Override
+        protected void writeNull() throws IOException {
+            generator.writeString(NULL);
+        }
+
+        /**
+         * Write an int.
+         *
+         * @param value The value.
+         * @throws IOException Thrown if the value cannot be written.
+         */
+        @Override
+        protected void writeInt(final int value) throws IOException {
+            generator.writeNumber(value);
+        }
+
+        /**
+         * Write a long.
+         *
+         * @param value The value.
+         * @throws IOException Thrown if the value cannot be written.
+         */
+        @Override
+        protected void writeLong(final long value) throws IOException {
+            generator.writeNumber(value);
+        }
+
+        /**
+         * Write a float.
+         *
+         * @param value The value.
+         * @throws IOException Thrown if the value cannot be written.
+         */
+        @Override
+        protected void writeFloat(final float value) throws IOException {
+            generator.writeNumber(value);
+        }
+
+        /**
+         * Write a double.
+         *
+         * @param value The value.
+         * @throws IOException Thrown if the value cannot be written.
+         */
+        @Override
+        protected void writeDouble(final double value) throws IOException {
+            generator.writeNumber(value);
+        }
+
+        /**
+         * Write a boolean.
+         *
+         * @param value The value.
+         * @throws IOException Thrown if the value cannot be written.
+         */
+        @Override
+        protected void writeBoolean(final boolean value) throws IOException {
+            generator.writeBoolean(value);
+        }
+
+        /**
+         * Write a string.
+         *
+         * @param value The value.
+         * @throws IOException Thrown if the value cannot be written.
+         */
+        @Override
+        protected void writeString(final String value) throws IOException {
+            generator.writeString(value);
+        }
+
+        /**
+         * Hand a value to the object mapper.
+         *
+         * @param value The value.
+         * @throws IOException Thrown if the value cannot be written.
+         */
+        @Override
+        protected void writeObject(final Object value) throws IOException {
+            generator.writeObject(value);
+        }
+    }
 }
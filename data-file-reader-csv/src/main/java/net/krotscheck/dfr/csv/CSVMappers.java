@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.csv;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The Jackson mappers shared by every CSV decoder and encoder of this
+ * module. They are thread safe once configured, and creating them is
+ * expensive; sharing them also keeps their caches of serializers across
+ * files. Both are warmed up when this class is loaded.
+ *
+ * @author Michael Krotscheck
+ */
+final class CSVMappers {
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(CSVMappers.class);
+
+    /**
+     * The shared CSV mapper. Its generators leave their writer open, as
+     * the encoders close their writers themselves.
+     */
+    private static final CsvMapper CSV = new CsvMapper();
+
+    /**
+     * The shared JSON mapper, which converts values that are not strings,
+     * numbers or booleans.
+     */
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    static {
+        CSV.disable(SerializationFeature.CLOSE_CLOSEABLE);
+        CSV.getFactory()
+                .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        warmUp();
+    }
+
+    /**
+     * Utility class, private constructor.
+     */
+    private CSVMappers() {
+    }
+
+    /**
+     * Get the shared CSV mapper.
+     *
+     * @return The mapper.
+     */
+    static CsvMapper getCsvMapper() {
+        return CSV;
+    }
+
+    /**
+     * Get the shared JSON mapper.
+     *
+     * @return The mapper.
+     */
+    static ObjectMapper getJsonMapper() {
+        return JSON;
+    }
+
+    /**
+     * Convert a value of each kind the encoders hand to a mapper, so that
+     * their serializers are already cached.
+     */
+    private static void warmUp() {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("date", new Date(0L));
+        row.put("list", Arrays.asList(0, ""));
+        try {
+            JSON.writeValueAsString(JSON.convertValue(row, Object.class));
+            CSV.writeValueAsString(new Date(0L));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Unable to warm up the CSV mappers.", e);
+        }
+    }
+}
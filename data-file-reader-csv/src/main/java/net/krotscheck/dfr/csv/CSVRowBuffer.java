@@ -0,0 +1,479 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.csv;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.Row;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects rows of differing columns, so that they may be written under
+ * the union of all their columns once every row has been seen. Rows are
+ * kept in memory up to a limit; past it, the rows held so far are spilled
+ * to a temporary file as typed binary cells, and read back in order when
+ * the buffer is replayed.
+ *
+ * @author Michael Krotscheck
+ */
+final class CSVRowBuffer implements Closeable {
+
+    /**
+     * The estimated memory held by a row, apart from its cells.
+     */
+    private static final int ROW_BYTES = 48;
+
+    /**
+     * The estimated memory held by a cell, apart from the text of strings.
+     */
+    private static final int CELL_BYTES = 24;
+
+    /**
+     * Tag of a null cell in the spill file.
+     */
+    private static final int TAG_NULL = 0;
+
+    /**
+     * Tag of a string cell in the spill file.
+     */
+    private static final int TAG_STRING = 1;
+
+    /**
+     * Tag of an integer cell in the spill file.
+     */
+    private static final int TAG_INTEGER = 2;
+
+    /**
+     * Tag of a long cell in the spill file.
+     */
+    private static final int TAG_LONG = 3;
+
+    /**
+     * Tag of a float cell in the spill file.
+     */
+    private static final int TAG_FLOAT = 4;
+
+    /**
+     * Tag of a double cell in the spill file.
+     */
+    private static final int TAG_DOUBLE = 5;
+
+    /**
+     * Tag of a boolean cell in the spill file.
+     */
+    private static final int TAG_BOOLEAN = 6;
+
+    /**
+     * The union of all columns, in order of first appearance.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * The index of every column in the union.
+     */
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    /**
+     * The rows held in memory, which follow all spilled rows.
+     */
+    private final List<BufferedRow> rows = new ArrayList<>();
+
+    /**
+     * The estimated memory that may be held before rows are spilled.
+     */
+    private final long memoryLimit;
+
+    /**
+     * The estimated memory held by the rows in memory.
+     */
+    private long memory = 0;
+
+    /**
+     * The spill file, null until rows are first spilled.
+     */
+    private Path file;
+
+    /**
+     * The stream rows are spilled to, null unless rows are being added.
+     */
+    private DataOutputStream spill;
+
+    /**
+     * The stream spilled rows are replayed from, null unless replaying.
+     */
+    private DataInputStream replay;
+
+    /**
+     * The number of rows in the spill file not yet replayed.
+     */
+    private long spilled = 0;
+
+    /**
+     * The index of the next row in memory to replay.
+     */
+    private int position = 0;
+
+    /**
+     * The cells of the row last replayed, in union order.
+     */
+    private Object[] cells;
+
+    /**
+     * Create a new buffer.
+     *
+     * @param columns The columns the union starts with, null for none.
+     * @param limit   The estimated memory, in bytes, that may be held
+     *                before rows are spilled to disk.
+     */
+    CSVRowBuffer(final List<String> columns, final long limit) {
+        this.memoryLimit = limit;
+        if (columns != null) {
+            for (String name : columns) {
+                indexOf(name);
+            }
+        }
+    }
+
+    /**
+     * Get the union of the columns of all rows added so far.
+     *
+     * @return The columns, in order of first appearance.
+     */
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Add a row. Its values are copied, so the row may be reused by the
+     * caller.
+     *
+     * @param row The row.
+     * @throws IOException Thrown if rows cannot be spilled.
+     */
+    public void add(final Map<String, Object> row) throws IOException {
+        int size = row.size();
+        int[] columns = new int[size];
+        Object[] values = new Object[size];
+        int count = 0;
+        if (row instanceof Row) {
+            Row typed = (Row) row;
+            int width = typed.getSchema().size();
+            for (int i = 0; i < width; i++) {
+                if (typed.isPresent(i)) {
+                    columns[count] = indexOf(typed.getSchema().getName(i));
+                    values[count] = scalar(typed.get(i));
+                    count++;
+                }
+            }
+        } else {
+            for (Map.Entry<String, Object> entry : row.entrySet()) {
+                columns[count] = indexOf(entry.getKey());
+                values[count] = scalar(entry.getValue());
+                count++;
+            }
+        }
+
+        rows.add(new BufferedRow(columns, values, count));
+        memory += ROW_BYTES + estimate(values, count);
+        if (memory > memoryLimit) {
+            spillRows();
+        }
+    }
+
+    /**
+     * Prepare to replay the rows, in the order they were added. No rows
+     * may be added afterwards.
+     *
+     * @throws IOException Thrown if the spill file cannot be read.
+     */
+    public void finish() throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            replay = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(file)));
+        }
+        cells = new Object[names.size()];
+    }
+
+    /**
+     * Replay the next row, aligned to the union of all columns. Columns
+     * the row does not have are null.
+     *
+     * @return The cells of the row, which are overwritten by the next call,
+     * or null if all rows have been replayed.
+     * @throws IOException Thrown if the spill file cannot be read.
+     */
+    public Object[] next() throws IOException {
+        Arrays.fill(cells, null);
+        if (spilled > 0) {
+            spilled--;
+            int count = replay.readInt();
+            for (int i = 0; i < count; i++) {
+                int column = replay.readInt();
+                cells[column] = readValue(replay);
+            }
+            return cells;
+        }
+        if (position < rows.size()) {
+            BufferedRow row = rows.get(position);
+            rows.set(position, null);
+            position++;
+            for (int i = 0; i < row.count; i++) {
+                cells[row.columns[i]] = row.values[i];
+            }
+            return cells;
+        }
+        return null;
+    }
+
+    /**
+     * Release the rows, and delete the spill file.
+     *
+     * @throws IOException Thrown if the spill file cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        rows.clear();
+        try {
+            if (spill != null) {
+                spill.close();
+            }
+            if (replay != null) {
+                replay.close();
+            }
+        } finally {
+            spill = null;
+            replay = null;
+            if (file != null) {
+                Files.deleteIfExists(file);
+                file = null;
+            }
+        }
+    }
+
+    /**
+     * Get the index of a column, adding it to the union if it is new.
+     *
+     * @param name The name of the column.
+     * @return Its index.
+     */
+    private int indexOf(final String name) {
+        Integer index = indices.get(name);
+        if (index == null) {
+            index = names.size();
+            names.add(name);
+            indices.put(name, index);
+        }
+        return index;
+    }
+
+    /**
+     * Write the rows held in memory to the end of the spill file.
+     *
+     * @throws IOException Thrown if the rows cannot be written.
+     */
+    private void spillRows() throws IOException {
+        if (spill == null) {
+            file = Files.createTempFile("dfr-csv-", ".rows");
+            spill = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(file)));
+        }
+        for (BufferedRow row : rows) {
+            spill.writeInt(row.count);
+            for (int i = 0; i < row.count; i++) {
+                spill.writeInt(row.columns[i]);
+                writeValue(spill, row.values[i]);
+            }
+        }
+        spilled += rows.size();
+        rows.clear();
+        memory = 0;
+    }
+
+    /**
+     * Reduce a value to a string, number, boolean or null, so that it can
+     * be spilled. Other values are converted the way the object mapper
+     * would write them; structures become their JSON text.
+     *
+     * @param value The value.
+     * @return The reduced value.
+     * @throws IOException Thrown if the value cannot be converted.
+     */
+    static Object scalar(final Object value) throws IOException {
+        if (isScalar(value)) {
+            return value;
+        }
+        ObjectMapper mapper = CSVMappers.getJsonMapper();
+        Object converted = mapper.convertValue(value, Object.class);
+        if (isScalar(converted)) {
+            return converted;
+        }
+        return mapper.writeValueAsString(converted);
+    }
+
+    /**
+     * Is this value one that can be spilled as it is?
+     *
+     * @param value The value.
+     * @return True for null, strings, booleans, and boxed primitive numbers.
+     */
+    private static boolean isScalar(final Object value) {
+        return value == null
+                || value instanceof String
+                || value instanceof Integer
+                || value instanceof Long
+                || value instanceof Float
+                || value instanceof Double
+                || value instanceof Boolean;
+    }
+
+    /**
+     * Estimate the memory held by the values of a row.
+     *
+     * @param values The values.
+     * @param count  The number of values.
+     * @return The estimate, in bytes.
+     */
+    private static long estimate(final Object[] values, final int count) {
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            bytes += CELL_BYTES;
+            if (values[i] instanceof String) {
+                bytes += 2L * ((String) values[i]).length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Write a tagged value to the spill file.
+     *
+     * @param out   The spill file.
+     * @param value The value, as reduced by {@link #scalar(Object)}.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    private static void writeValue(final DataOutputStream out,
+                                   final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            out.writeByte(TAG_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        }
+    }
+
+    /**
+     * Read a tagged value from the spill file.
+     *
+     * @param in The spill file.
+     * @return The value.
+     * @throws IOException Thrown if the value cannot be read.
+     */
+    private static Object readValue(final DataInputStream in)
+            throws IOException {
+        int tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            case TAG_INTEGER:
+                return in.readInt();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_FLOAT:
+                return in.readFloat();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IOException("Corrupt CSV spill file.");
+        }
+    }
+
+    /**
+     * A row held in memory: the union index and value of each cell.
+     */
+    private static final class BufferedRow {
+
+        /**
+         * The union index of each cell.
+         */
+        private final int[] columns;
+
+        /**
+         * The value of each cell.
+         */
+        private final Object[] values;
+
+        /**
+         * The number of cells.
+         */
+        private final int count;
+
+        /**
+         * Create a new row.
+         *
+         * @param rowColumns The union index of each cell.
+         * @param rowValues  The value of each cell.
+         * @param rowCount   The number of cells.
+         */
+        private BufferedRow(final int[] rowColumns, final Object[] rowValues,
+                            final int rowCount) {
+            this.columns = rowColumns;
+            this.values = rowValues;
+            this.count = rowCount;
+        }
+    }
+}
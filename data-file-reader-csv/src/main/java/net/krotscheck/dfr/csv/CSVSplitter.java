@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Splits a CSV file into byte ranges that each start and end on a record
+ * boundary, so the ranges can be parsed independently.
+ * <p>
+ * A newline only ends a record if it is outside quotes, and whether a
+ * position is inside quotes depends on every quote before it. Rather than
+ * scanning the file from the start, each range is scanned on its own, once,
+ * for both possible states at its start: for each state the scan records the
+ * first newline outside quotes, and whether the range holds an odd number of
+ * quotes. A short sequential pass then walks the ranges from the start of the
+ * data, where the state is known, and picks the right answer for each. This
+ * relies on quotes only appearing around quoted fields and doubled within
+ * them, as RFC 4180 requires; an escaped quote counts twice and so does not
+ * change the state.
+ *
+ * @author Michael Krotscheck
+ */
+final class CSVSplitter {
+
+    /**
+     * The size of the buffer used to scan a range.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Utility class, private constructor.
+     */
+    private CSVSplitter() {
+
+    }
+
+    /**
+     * Find the end of the first record of a file, which is the header.
+     *
+     * @param channel The file.
+     * @return The offset of the first byte after the header.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    static long headerEnd(final FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        boolean quoted = false;
+        long position = 0;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return position;
+            }
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '"') {
+                    quoted = !quoted;
+                } else if (bytes[i] == '\n' && !quoted) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Split a region of a file into ranges of roughly the given size, each
+     * aligned to a record boundary. Ranges are scanned on the executor.
+     *
+     * @param channel   The file.
+     * @param start     The start of the region, which must be the start of a
+     *                  record.
+     * @param end       The end of the region.
+     * @param rangeSize The target size of a range.
+     * @param executor  The executor to scan ranges on.
+     * @return The ranges, as pairs of start and end offsets, in file order.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    static List<long[]> split(final FileChannel channel, final long start,
+                              final long end, final long rangeSize,
+                              final ExecutorService executor)
+            throws IOException {
+        List<Future<Scan>> scans = new ArrayList<>();
+        for (long offset = start; offset < end; offset += rangeSize) {
+            final long from = offset;
+            final long to = Math.min(offset + rangeSize, end);
+            scans.add(executor.submit(new Callable<Scan>() {
+                @Override
+                public Scan call() throws IOException {
+                    return scan(channel, from, to);
+                }
+            }));
+        }
+
+        List<long[]> ranges = new ArrayList<>();
+        long rangeStart = start;
+        boolean quoted = false;
+        for (int i = 0; i < scans.size(); i++) {
+            Scan scan = await(scans.get(i));
+            if (i > 0) {
+                long boundary = scan.firstUnquoted;
+                if (quoted) {
+                    boundary = scan.firstQuoted;
+                }
+                // A range without a boundary is part of the previous one.
+                if (boundary >= 0 && boundary < end) {
+                    ranges.add(new long[]{rangeStart, boundary});
+                    rangeStart = boundary;
+                }
+            }
+            quoted = quoted ^ scan.oddQuotes;
+        }
+        if (rangeStart < end) {
+            ranges.add(new long[]{rangeStart, end});
+        }
+        return ranges;
+    }
+
+    /**
+     * Wait for a scan.
+     *
+     * @param future The pending scan.
+     * @return The scan.
+     * @throws IOException Thrown if the scan could not read the file.
+     */
+    private static Scan await(final Future<Scan> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while splitting file.", ie);
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException("Unable to split file.", ee.getCause());
+        }
+    }
+
+    /**
+     * Scan a range of a file for quotes and newlines.
+     *
+     * @param channel The file.
+     * @param from    The start of the range.
+     * @param to      The end of the range.
+     * @return The scan result.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    static Scan scan(final FileChannel channel, final long from,
+                     final long to) throws IOException {
+        Scan scan = new Scan();
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        boolean odd = false;
+        long position = from;
+        while (position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(BUFFER_SIZE, to - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = bytes[i];
+                if (b == '"') {
+                    odd = !odd;
+                } else if (b == '\n') {
+                    if (!odd && scan.firstUnquoted < 0) {
+                        scan.firstUnquoted = position + i + 1;
+                    } else if (odd && scan.firstQuoted < 0) {
+                        scan.firstQuoted = position + i + 1;
+                    }
+                }
+            }
+            position += read;
+        }
+        scan.oddQuotes = odd;
+        return scan;
+    }
+
+    /**
+     * The result of scanning a range.
+     */
+    static final class Scan {
+
+        /**
+         * The offset after the first newline outside quotes, assuming the
+         * range starts outside quotes, or -1 if there is none.
+         */
+        private long firstUnquoted = -1;
+
+        /**
+         * The offset after the first newline outside quotes, assuming the
+         * range starts inside quotes, or -1 if there is none.
+         */
+        private long firstQuoted = -1;
+
+        /**
+         * Whether the range contains an odd number of quotes.
+         */
+        private boolean oddQuotes;
+    }
+}
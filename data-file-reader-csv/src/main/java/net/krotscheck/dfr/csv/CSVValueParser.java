@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.Type;
+
+/**
+ * Classifies and parses CSV cell text. Validation is done by scanning the
+ * characters, so no exception is ever thrown for a cell that is not a number,
+ * and plain decimals with up to 15 significant digits are converted without
+ * going through {@link Double#parseDouble(String)}.
+ *
+ * @author Michael Krotscheck
+ */
+final class CSVValueParser {
+
+    /**
+     * The most significant digits a long can hold without overflow checks.
+     */
+    private static final int SAFE_LONG_DIGITS = 18;
+
+    /**
+     * The most significant digits a double can represent exactly.
+     */
+    private static final int SAFE_DOUBLE_DIGITS = 15;
+
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * Utility class, private constructor.
+     */
+    private CSVValueParser() {
+
+    }
+
+    /**
+     * Return the narrowest type that can hold a cell's text. Numbers padded
+     * with leading zeros, such as zip codes, are strings, as a number
+     * would lose the padding.
+     *
+     * @param text The cell text.
+     * @return The type, or null for an empty cell.
+     */
+    static Type classify(final String text) {
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        if (isBoolean(text)) {
+            return Type.BOOLEAN;
+        }
+        if (isZeroPadded(text)) {
+            return Type.STRING;
+        }
+        if (isInteger(text)) {
+            long value = parseLong(text);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                return Type.INTEGER;
+            }
+            return Type.LONG;
+        }
+        if (isDecimal(text)) {
+            return Type.DOUBLE;
+        }
+        return Type.STRING;
+    }
+
+    /**
+     * Merge the type seen so far in a column with the type of another cell.
+     *
+     * @param current The type so far, null if only empty cells were seen.
+     * @param next    The type of the next cell, null if empty.
+     * @return The type that can hold both.
+     */
+    static Type widen(final Type current, final Type next) {
+        if (current == null) {
+            return next;
+        }
+        if (next == null || current == next) {
+            return current;
+        }
+        if (current == Type.STRING || next == Type.STRING
+                || current == Type.BOOLEAN || next == Type.BOOLEAN) {
+            return Type.STRING;
+        }
+        if (current == Type.DOUBLE || next == Type.DOUBLE) {
+            return Type.DOUBLE;
+        }
+        return Type.LONG;
+    }
+
+    /**
+     * Store a cell's text into a row as the given type. Empty cells become
+     * null; cells that do not fit the type are kept as strings.
+     *
+     * @param row   The row to write to.
+     * @param index The column index.
+     * @param type  The column type.
+     * @param text  The cell text.
+     */
+    static void set(final Row row, final int index, final Type type,
+                    final String text) {
+        if (type == Type.STRING || text == null) {
+            row.set(index, text);
+            return;
+        }
+        if (text.isEmpty()) {
+            row.set(index, null);
+            return;
+        }
+        switch (type) {
+            case INTEGER:
+                if (isInteger(text)) {
+                    long value = parseLong(text);
+                    if (value == (int) value) {
+                        row.setInt(index, (int) value);
+                    } else {
+                        row.setLong(index, value);
+                    }
+                    return;
+                }
+                break;
+            case LONG:
+                if (isInteger(text)) {
+                    row.setLong(index, parseLong(text));
+                    return;
+                }
+                break;
+            case DOUBLE:
+                if (isDecimal(text)) {
+                    row.setDouble(index, parseDouble(text));
+                    return;
+                }
+                break;
+            case BOOLEAN:
+                if (isBoolean(text)) {
+                    row.setBoolean(index, text.length() == 4);
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        row.set(index, text);
+    }
+
+    /**
+     * Convert a cell's text into a value of the given type, with the same
+     * rules as {@link #set(Row, int, Type, String)}.
+     *
+     * @param type The column type.
+     * @param text The cell text.
+     * @return The boxed value, the text itself, or null for an empty cell
+     * of a typed column.
+     */
+    static Object value(final Type type, final String text) {
+        if (type == Type.STRING || text == null) {
+            return text;
+        }
+        if (text.isEmpty()) {
+            return null;
+        }
+        switch (type) {
+            case INTEGER:
+                if (isInteger(text)) {
+                    long value = parseLong(text);
+                    if (value == (int) value) {
+                        return (int) value;
+                    }
+                    return value;
+                }
+                break;
+            case LONG:
+                if (isInteger(text)) {
+                    return parseLong(text);
+                }
+                break;
+            case DOUBLE:
+                if (isDecimal(text)) {
+                    return parseDouble(text);
+                }
+                break;
+            case BOOLEAN:
+                if (isBoolean(text)) {
+                    return text.length() == 4;
+                }
+                break;
+            default:
+                break;
+        }
+        return text;
+    }
+
+    /**
+     * Whether the text is a case-insensitive "true" or "false".
+     *
+     * @param text The text.
+     * @return True if it is a boolean literal.
+     */
+    static boolean isBoolean(final String text) {
+        return "true".equalsIgnoreCase(text) || "false".equalsIgnoreCase(text);
+    }
+
+    /**
+     * Whether the text starts with a zero followed by another digit, after
+     * an optional sign.
+     *
+     * @param text The text.
+     * @return True if the digits are padded with leading zeros.
+     */
+    static boolean isZeroPadded(final String text) {
+        int start = 0;
+        if (text.charAt(0) == '-' || text.charAt(0) == '+') {
+            start = 1;
+        }
+        return text.length() > start + 1
+                && text.charAt(start) == '0'
+                && isDigit(text.charAt(start + 1));
+    }
+
+    /**
+     * Whether the text is an integer that fits into a long.
+     *
+     * @param text The text.
+     * @return True if it can be parsed by {@link #parseLong(String)}.
+     */
+    static boolean isInteger(final String text) {
+        int length = text.length();
+        int start = 0;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            start = 1;
+        }
+        if (start == length) {
+            return false;
+        }
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        if (length - start <= SAFE_LONG_DIGITS) {
+            return true;
+        }
+        // Only long digit runs need the overflow check.
+        try {
+            Long.parseLong(text);
+            return true;
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
+    /**
+     * Parse text already validated by {@link #isInteger(String)}.
+     *
+     * @param text The text.
+     * @return The value.
+     */
+    static long parseLong(final String text) {
+        int length = text.length();
+        if (length > SAFE_LONG_DIGITS) {
+            return Long.parseLong(text);
+        }
+        boolean negative = text.charAt(0) == '-';
+        int start = 0;
+        if (negative || text.charAt(0) == '+') {
+            start = 1;
+        }
+        long value = 0;
+        for (int i = start; i < length; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        if (negative) {
+            return -value;
+        }
+        return value;
+    }
+
+    /**
+     * Whether the text is a decimal number: an optional sign, digits with an
+     * optional fraction, and an optional exponent.
+     *
+     * @param text The text.
+     * @return True if it can be parsed by {@link #parseDouble(String)}.
+     */
+    static boolean isDecimal(final String text) {
+        int length = text.length();
+        int i = 0;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            i++;
+        }
+        int digits = 0;
+        while (i < length && isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < length && text.charAt(i) == '.') {
+            i++;
+            while (i < length && isDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < length
+                    && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+                i++;
+            }
+            int exponentDigits = 0;
+            while (i < length && isDigit(text.charAt(i))) {
+                i++;
+                exponentDigits++;
+            }
+            if (exponentDigits == 0) {
+                return false;
+            }
+        }
+        return i == length;
+    }
+
+    /**
+     * Parse text already validated by {@link #isDecimal(String)}. Plain
+     * decimals with few enough digits are computed exactly from their
+     * integer mantissa; everything else is handed to the JDK.
+     *
+     * @param text The text.
+     * @return The value.
+     */
+    static double parseDouble(final String text) {
+        int length = text.length();
+        boolean negative = text.charAt(0) == '-';
+        int i = 0;
+        if (negative || text.charAt(0) == '+') {
+            i = 1;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fraction = -1;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.') {
+                fraction = 0;
+            } else if (isDigit(c)) {
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (fraction >= 0) {
+                    fraction++;
+                }
+            } else {
+                // Exponents take the slow path.
+                return Double.parseDouble(text);
+            }
+            if (digits > SAFE_DOUBLE_DIGITS) {
+                return Double.parseDouble(text);
+            }
+        }
+
+        double value = mantissa;
+        if (fraction > 0) {
+            if (fraction >= POWERS_OF_TEN.length) {
+                return Double.parseDouble(text);
+            }
+            value = value / POWERS_OF_TEN[fraction];
+        }
+        if (negative) {
+            return -value;
+        }
+        return value;
+    }
+
+    /**
+     * Whether a character is an ASCII digit.
+     *
+     * @param c The character.
+     * @return True for 0-9.
+     */
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+}
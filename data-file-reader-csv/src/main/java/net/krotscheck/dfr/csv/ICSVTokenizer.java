@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import net.krotscheck.dfr.ILazyCell;
+import net.krotscheck.dfr.Type;
+
+import java.io.IOException;
+
+/**
+ * Reads the cells of a CSV file record by record. A tokenizer is positioned
+ * at the start of a record, or at the end of its input; the cells of the
+ * record are then visited in order, and the text of a cell is only
+ * produced when it is asked for.
+ *
+ * @author Michael Krotscheck
+ */
+interface ICSVTokenizer {
+
+    /**
+     * Whether the tokenizer is positioned at the start of a record.
+     *
+     * @return True if another record can be read.
+     */
+    boolean hasRecord();
+
+    /**
+     * Advance to the next cell of the current record. Once the record has
+     * no more cells, the tokenizer moves to the start of the next record,
+     * and false is returned.
+     *
+     * @return True if the tokenizer is positioned on a cell.
+     * @throws IOException Thrown if the input cannot be read.
+     */
+    boolean nextCell() throws IOException;
+
+    /**
+     * Return the text of the current cell.
+     *
+     * @return The text, unquoted and unescaped.
+     * @throws IOException Thrown if the input cannot be read.
+     */
+    String getText() throws IOException;
+
+    /**
+     * Return the current cell without decoding it. This is only possible if
+     * the tokenizer's input outlives the cell.
+     *
+     * @param type The type to decode the cell as.
+     * @return A cell that decodes itself when first read, or null if the
+     * tokenizer cannot defer decoding.
+     */
+    ILazyCell getLazyCell(Type type);
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import net.krotscheck.dfr.ILazyCell;
+import net.krotscheck.dfr.Type;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Tokenizes CSV characters from a reader with Jackson's CSV parser, which
+ * reports every record as an array of strings.
+ *
+ * @author Michael Krotscheck
+ */
+final class JacksonTokenizer implements ICSVTokenizer {
+
+    /**
+     * The CSV parser.
+     */
+    private final CsvParser parser;
+
+    /**
+     * Create a new tokenizer, positioned at the first record.
+     *
+     * @param reader A reader of CSV records.
+     * @throws IOException Thrown if the reader cannot be read.
+     */
+    JacksonTokenizer(final Reader reader) throws IOException {
+        parser = CSVMappers.getCsvMapper().getFactory()
+                .createParser(reader);
+        parser.nextToken();
+    }
+
+    /**
+     * Whether the parser is positioned at the start of a record.
+     *
+     * @return True if another record can be read.
+     */
+    @Override
+    public boolean hasRecord() {
+        return parser.getCurrentToken() == JsonToken.START_ARRAY;
+    }
+
+    /**
+     * Advance to the next cell of the current record.
+     *
+     * @return True if the parser is positioned on a cell.
+     * @throws IOException Thrown if the input cannot be read.
+     */
+    @Override
+    public boolean nextCell() throws IOException {
+        if (parser.nextToken() == JsonToken.VALUE_STRING) {
+            return true;
+        }
+        parser.nextToken();
+        return false;
+    }
+
+    /**
+     * Return the text of the current cell.
+     *
+     * @return The text.
+     * @throws IOException Thrown if the input cannot be read.
+     */
+    @Override
+    public String getText() throws IOException {
+        return parser.getText();
+    }
+
+    /**
+     * Jackson reuses its buffers, so cells cannot be decoded later.
+     *
+     * @param type The type to decode the cell as.
+     * @return Null.
+     */
+    @Override
+    public ILazyCell getLazyCell(final Type type) {
+        return null;
+    }
+}
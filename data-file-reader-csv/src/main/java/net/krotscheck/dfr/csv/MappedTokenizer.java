@@ -0,0 +1,476 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import net.krotscheck.dfr.ILazyCell;
+import net.krotscheck.dfr.Type;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tokenizes a region of a UTF-8 CSV file straight from memory-mapped bytes,
+ * without decoding the file to characters first.
+ * <p>
+ * The region is mapped one window at a time, so files of any size can be
+ * read; a cell that runs past the end of a window is read again from a new
+ * window that starts with the cell. Delimiters, newlines and quotes are
+ * looked for eight bytes at a time: every byte of a word is compared with
+ * the byte sought using integer arithmetic, and the lowest matching byte is
+ * found from the number of trailing zeros. Only the offsets of a cell are
+ * recorded while it is scanned; its text is decoded when it is asked for,
+ * so cells that are skipped are never turned into strings. Windows are
+ * never reused, so a cell may also be handed out undecoded, as a
+ * {@link CSVCell} that keeps its window.
+ * <p>
+ * Quoting follows the rules of Jackson's CSV parser: a quote only opens a
+ * quoted value at the start of a cell, quotes inside quoted values are
+ * doubled, and blanks may follow the closing quote.
+ *
+ * @author Michael Krotscheck
+ */
+final class MappedTokenizer implements ICSVTokenizer {
+
+    /**
+     * The default size of a mapped window.
+     */
+    static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of bytes compared at once.
+     */
+    private static final int WORD = 8;
+
+    /**
+     * A word with every byte set to one.
+     */
+    private static final long ONES = 0x0101010101010101L;
+
+    /**
+     * A word with the high bit of every byte set.
+     */
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * A word of delimiters.
+     */
+    private static final long COMMAS = ONES * ',';
+
+    /**
+     * A word of quotes.
+     */
+    private static final long QUOTES = ONES * '"';
+
+    /**
+     * A word of newlines.
+     */
+    private static final long NEWLINES = ONES * '\n';
+
+    /**
+     * A word of carriage returns.
+     */
+    private static final long RETURNS = ONES * '\r';
+
+    /**
+     * The initial size of the buffer cells are copied into.
+     */
+    private static final int SCRATCH_SIZE = 256;
+
+    /**
+     * The file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The offset of the end of the region.
+     */
+    private final long end;
+
+    /**
+     * The size of a mapped window.
+     */
+    private final int windowSize;
+
+    /**
+     * The mapped window.
+     */
+    private ByteBuffer window;
+
+    /**
+     * The file offset of the start of the window.
+     */
+    private long windowStart;
+
+    /**
+     * The number of bytes in the window.
+     */
+    private int limit;
+
+    /**
+     * The window index of the next byte to read.
+     */
+    private int position;
+
+    /**
+     * Whether the current record has cells left to read.
+     */
+    private boolean open;
+
+    /**
+     * Whether the tokenizer is positioned at the start of a record.
+     */
+    private boolean atRecord;
+
+    /**
+     * The window index of the first byte of the current cell's text.
+     */
+    private int cellStart;
+
+    /**
+     * The window index after the last byte of the current cell's text.
+     */
+    private int cellEnd;
+
+    /**
+     * Whether the current cell's text contains doubled quotes.
+     */
+    private boolean escaped;
+
+    /**
+     * The buffer cells are copied into before they are decoded.
+     */
+    private byte[] scratch = new byte[SCRATCH_SIZE];
+
+    /**
+     * Create a new tokenizer over a region of a file. The region must start
+     * at the start of a record; a byte order mark at the start of the file
+     * is skipped.
+     *
+     * @param file   The file.
+     * @param start  The offset of the start of the region.
+     * @param finish The offset of the end of the region.
+     * @param size   The size of a mapped window.
+     * @throws IOException Thrown if the file cannot be mapped.
+     */
+    MappedTokenizer(final FileChannel file, final long start,
+                    final long finish, final int size) throws IOException {
+        channel = file;
+        end = finish;
+        windowSize = size;
+        map(start, size);
+        if (start == 0 && limit >= 3 && window.get(0) == (byte) 0xEF
+                && window.get(1) == (byte) 0xBB
+                && window.get(2) == (byte) 0xBF) {
+            position = 3;
+        }
+        open = windowStart + position < end;
+        atRecord = open;
+    }
+
+    /**
+     * Whether the tokenizer is positioned at the start of a record.
+     *
+     * @return True if another record can be read.
+     */
+    @Override
+    public boolean hasRecord() {
+        return atRecord;
+    }
+
+    /**
+     * Advance to the next cell of the current record.
+     *
+     * @return True if the tokenizer is positioned on a cell.
+     * @throws IOException Thrown if the file cannot be read, or a quoted
+     *                     value is malformed.
+     */
+    @Override
+    public boolean nextCell() throws IOException {
+        if (!open) {
+            open = windowStart + position < end;
+            atRecord = open;
+            return false;
+        }
+        atRecord = false;
+        while (!readCell()) {
+            remap();
+        }
+        return true;
+    }
+
+    /**
+     * Decode the text of the current cell.
+     *
+     * @return The text.
+     */
+    @Override
+    public String getText() {
+        int length = cellEnd - cellStart;
+        if (length == 0) {
+            return "";
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        window.position(cellStart);
+        window.get(scratch, 0, length);
+        return decode(scratch, length, escaped);
+    }
+
+    /**
+     * Return the current cell undecoded. The cell keeps the window it was
+     * read from.
+     *
+     * @param type The type to decode the cell as.
+     * @return The cell.
+     */
+    @Override
+    public ILazyCell getLazyCell(final Type type) {
+        return new CSVCell(window, cellStart, cellEnd, escaped, type);
+    }
+
+    /**
+     * Decode the UTF-8 bytes of a cell, collapsing doubled quotes in place.
+     *
+     * @param bytes   The bytes of the cell.
+     * @param length  The number of bytes.
+     * @param doubled Whether the cell contains doubled quotes.
+     * @return The text.
+     */
+    static String decode(final byte[] bytes, final int length,
+                         final boolean doubled) {
+        int out = length;
+        if (doubled) {
+            out = 0;
+            for (int i = 0; i < length; i++) {
+                bytes[out] = bytes[i];
+                out++;
+                if (bytes[i] == '"') {
+                    i++;
+                }
+            }
+        }
+        return new String(bytes, 0, out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the cell at the current position. Nothing is changed if the cell
+     * does not end within the window.
+     *
+     * @return False if the cell runs past the end of the window.
+     * @throws IOException Thrown if a quoted value is malformed.
+     */
+    private boolean readCell() throws IOException {
+        int from = position;
+        if (from == limit || window.get(from) != '"') {
+            int stop = findDelimiter(from);
+            if (stop < 0) {
+                if (hasMore()) {
+                    return false;
+                }
+                stop = limit;
+            }
+            cellStart = from;
+            cellEnd = stop;
+            escaped = false;
+            return endCell(stop);
+        }
+
+        boolean doubled = false;
+        int quote = findQuote(from + 1);
+        while (quote >= 0 && quote + 1 < limit
+                && window.get(quote + 1) == '"') {
+            doubled = true;
+            quote = findQuote(quote + 2);
+        }
+        if (quote < 0) {
+            if (hasMore()) {
+                return false;
+            }
+            throw new IOException("Missing closing quote for value at "
+                    + "offset " + (windowStart + from) + ".");
+        }
+        int stop = quote + 1;
+        while (stop < limit && isBlank(window.get(stop))) {
+            stop++;
+        }
+        if (stop == limit && hasMore()) {
+            return false;
+        }
+        cellStart = from + 1;
+        cellEnd = quote;
+        escaped = doubled;
+        return endCell(stop);
+    }
+
+    /**
+     * Move past the byte that ends a cell.
+     *
+     * @param stop The window index of the byte.
+     * @return False if the byte is a carriage return at the end of the
+     * window, which may be followed by a newline in the next one.
+     * @throws IOException Thrown if the byte does not end a cell.
+     */
+    private boolean endCell(final int stop) throws IOException {
+        if (stop == limit) {
+            position = stop;
+            open = false;
+            return true;
+        }
+        byte b = window.get(stop);
+        if (b == ',') {
+            position = stop + 1;
+            return true;
+        }
+        if (b == '\n') {
+            position = stop + 1;
+            open = false;
+            return true;
+        }
+        if (b == '\r') {
+            if (stop + 1 == limit && hasMore()) {
+                return false;
+            }
+            position = stop + 1;
+            if (position < limit && window.get(position) == '\n') {
+                position++;
+            }
+            open = false;
+            return true;
+        }
+        throw new IOException("Unexpected character after quoted value at "
+                + "offset " + (windowStart + stop) + ".");
+    }
+
+    /**
+     * Find the first delimiter, newline or carriage return.
+     *
+     * @param from The window index to start at.
+     * @return The window index of the byte, or -1 if there is none.
+     */
+    private int findDelimiter(final int from) {
+        int i = from;
+        for (; i + WORD <= limit; i += WORD) {
+            long word = window.getLong(i);
+            long hits = match(word, COMMAS) | match(word, NEWLINES)
+                    | match(word, RETURNS);
+            if (hits != 0) {
+                return i + (Long.numberOfTrailingZeros(hits) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            byte b = window.get(i);
+            if (b == ',' || b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first quote.
+     *
+     * @param from The window index to start at.
+     * @return The window index of the quote, or -1 if there is none.
+     */
+    private int findQuote(final int from) {
+        int i = from;
+        for (; i + WORD <= limit; i += WORD) {
+            long hits = match(window.getLong(i), QUOTES);
+            if (hits != 0) {
+                return i + (Long.numberOfTrailingZeros(hits) >>> 3);
+            }
+        }
+        for (; i < limit; i++) {
+            if (window.get(i) == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Mark the bytes of a little-endian word that equal a byte. The lowest
+     * marked byte is always a match; bytes above it may be marked
+     * falsely, which does not matter when only the first match is used.
+     *
+     * @param word    The word.
+     * @param pattern The byte sought, repeated in every byte of a word.
+     * @return A word with the high bit of the matching bytes set.
+     */
+    private static long match(final long word, final long pattern) {
+        long x = word ^ pattern;
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    /**
+     * Whether a byte is a blank that may follow a closing quote.
+     *
+     * @param b The byte.
+     * @return True for spaces and tabs.
+     */
+    private static boolean isBlank(final byte b) {
+        return b == ' ' || b == '\t';
+    }
+
+    /**
+     * Whether the region continues past the end of the window.
+     *
+     * @return True if there are more bytes to map.
+     */
+    private boolean hasMore() {
+        return windowStart + limit < end;
+    }
+
+    /**
+     * Map the next window, starting at the current cell. If the cell
+     * already starts the window, the window is doubled in size.
+     *
+     * @throws IOException Thrown if the cell is larger than any window.
+     */
+    private void remap() throws IOException {
+        int size = windowSize;
+        if (position == 0) {
+            if (limit == Integer.MAX_VALUE) {
+                throw new IOException("CSV cell at offset " + windowStart
+                        + " is too large to be mapped.");
+            }
+            size = (int) Math.min(Integer.MAX_VALUE,
+                    Math.max(2L * limit, windowSize));
+        }
+        map(windowStart + position, size);
+    }
+
+    /**
+     * Map a window of the region.
+     *
+     * @param from The file offset of the window.
+     * @param size The largest size of the window.
+     * @throws IOException Thrown if the file cannot be mapped.
+     */
+    private void map(final long from, final int size) throws IOException {
+        limit = (int) Math.min(size, end - from);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, from, limit);
+        window.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = from;
+        position = 0;
+    }
+}
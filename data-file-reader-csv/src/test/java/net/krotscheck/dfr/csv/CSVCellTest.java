@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import net.krotscheck.dfr.Type;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for lazily decoded CSV cells.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CSVCellTest {
+
+    /**
+     * Assert that a cell decodes the slice of its window, as its type.
+     */
+    @Test
+    public void testDecode() {
+        ByteBuffer window = ByteBuffer.wrap(
+                "12,\"a \"\"b\"\"\",日本,x".getBytes(StandardCharsets.UTF_8));
+
+        Assert.assertEquals(12,
+                new CSVCell(window, 0, 2, false, Type.INTEGER).decode());
+        Assert.assertEquals("12",
+                new CSVCell(window, 0, 2, false, Type.STRING).decode());
+        Assert.assertEquals("a \"b\"",
+                new CSVCell(window, 4, 11, true, Type.STRING).decode());
+        Assert.assertEquals("日本",
+                new CSVCell(window, 13, 19, false, Type.STRING).decode());
+        Assert.assertEquals("x",
+                new CSVCell(window, 20, 21, false, Type.LONG).decode());
+        Assert.assertNull(
+                new CSVCell(window, 2, 2, false, Type.DOUBLE).decode());
+    }
+
+    /**
+     * Assert that decoding does not move the window.
+     */
+    @Test
+    public void testWindowUntouched() {
+        ByteBuffer window = ByteBuffer.wrap(
+                "abc".getBytes(StandardCharsets.UTF_8));
+        window.position(1);
+        new CSVCell(window, 0, 3, false, Type.STRING).decode();
+        Assert.assertEquals(1, window.position());
+    }
+}
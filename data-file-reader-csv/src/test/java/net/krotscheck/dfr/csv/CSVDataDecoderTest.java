@@ -17,10 +17,18 @@
 
 package net.krotscheck.dfr.csv;
 
+import net.krotscheck.dfr.ColumnVector;
 import net.krotscheck.dfr.IDataDecoder;
+import net.krotscheck.dfr.IProjectionFilter;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowBatch;
+import net.krotscheck.dfr.RowPredicate;
+import net.krotscheck.dfr.Type;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -29,11 +37,22 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
 
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -47,6 +66,12 @@ import static org.mockito.Mockito.when;
  */
 public final class CSVDataDecoderTest {
 
+    /**
+     * Temporary files for parallel decoding.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * A list of pregenerated test data for our encoder.
      */
@@ -129,6 +154,107 @@ public final class CSVDataDecoderTest {
         Assert.assertEquals((int) count, 10);
     }
 
+    /**
+     * Assert that rows may be decoded in columnar batches.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testNextBatch() throws Exception {
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setReader(new InputStreamReader(bais));
+
+        RowBatch batch = decoder.nextBatch(4);
+        Assert.assertEquals(4, batch.size());
+        ColumnVector first = batch.getColumn("column_1");
+        Assert.assertEquals(Type.STRING, first.getType());
+        Assert.assertEquals("3", first.get(3));
+        Assert.assertEquals("foo", batch.getColumn("column_3").get(0));
+
+        Assert.assertEquals(4, decoder.nextBatch(4).size());
+        batch = decoder.nextBatch(4);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals("String 9", batch.getColumn("column_2").get(1));
+        Assert.assertEquals(0, decoder.nextBatch(4).size());
+    }
+
+    /**
+     * Assert that only the columns required by a leading projection filter
+     * are decoded.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testProjection() throws Exception {
+        Set<String> columns =
+                new HashSet<>(Arrays.asList("column_3", "column_1"));
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns()).thenReturn(columns);
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setReader(new InputStreamReader(bais));
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(2, row.size());
+            Assert.assertTrue(row.containsKey("column_1"));
+            Assert.assertTrue(row.containsKey("column_3"));
+            Assert.assertFalse(row.containsKey("column_2"));
+            count++;
+        }
+        Assert.assertEquals(10, count);
+    }
+
+    /**
+     * Assert that rows rejected by a leading predicate are skipped, also in
+     * combination with a projection that does not include the predicate
+     * column.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPredicate() throws Exception {
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns())
+                .thenReturn(Collections.singleton("column_2"));
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setReader(new InputStreamReader(bais));
+        decoder.addFilter(RowPredicate.greaterThanOrEqualTo("column_1", 7));
+        decoder.addFilter(RowPredicate.notEqualTo("column_1", "8"));
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(String.format("String %s", count * 2 + 7),
+                    row.get("column_2"));
+            Assert.assertFalse(row.containsKey("column_3"));
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+
+    /**
+     * Assert that a predicate that rejects every row ends the iteration.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testPredicateRejectsAll() throws Exception {
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setReader(new InputStreamReader(bais));
+        decoder.addFilter(RowPredicate.isNull("column_1"));
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+    }
+
     /**
      * Make sure the remove() method does nothing.
      */
@@ -262,10 +388,100 @@ public final class CSVDataDecoderTest {
         decoder.setReader(orderedReader);
 
         for (Map<String, Object> row : decoder) {
-            Assert.assertTrue(row instanceof LinkedHashMap);
+            Assert.assertTrue(row instanceof Row);
+            Assert.assertArrayEquals(
+                    new String[]{"one", "two", "three", "four", "five", "six"},
+                    row.keySet().toArray());
         }
     }
 
+    /**
+     * Assert that short records leave out their missing columns, and that
+     * all rows share the header's schema.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testShortRecords() throws Exception {
+        StringReader reader = new StringReader("one,two,three\n"
+                + "1,2,3\n"
+                + "1,2\n");
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setReader(reader);
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Row first = (Row) iterator.next();
+        Row second = (Row) iterator.next();
+
+        Assert.assertEquals(3, first.size());
+        Assert.assertEquals(2, second.size());
+        Assert.assertFalse(second.containsKey("three"));
+        Assert.assertSame(first.getSchema(), second.getSchema());
+    }
+
+    /**
+     * Assert that sampled type inference emits typed values, including for
+     * the rows that were sampled.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testTypeInference() throws Exception {
+        StringReader reader = new StringReader("id,price,flag,name,empty\n"
+                + "1,2.5,true,one,\n"
+                + "2,3,false,two,\n"
+                + "3,,TRUE,3,\n"
+                + "4,oops,false,four,\n");
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        Assert.assertNull(decoder.getInferenceRows());
+        decoder.setInferenceRows(2);
+        Assert.assertEquals(2, (int) decoder.getInferenceRows());
+        decoder.setReader(reader);
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Row row = (Row) iterator.next();
+        Assert.assertEquals(1, row.get("id"));
+        Assert.assertEquals(Type.INTEGER, row.getType(0));
+        Assert.assertEquals(2.5, row.get("price"));
+        Assert.assertEquals(true, row.get("flag"));
+        Assert.assertEquals("one", row.get("name"));
+        Assert.assertEquals("", row.get("empty"));
+
+        row = (Row) iterator.next();
+        Assert.assertEquals(3.0, row.get("price"));
+
+        row = (Row) iterator.next();
+        Assert.assertTrue(row.isNull(1));
+        Assert.assertEquals(true, row.get("flag"));
+        Assert.assertEquals("3", row.get("name"));
+
+        row = (Row) iterator.next();
+        Assert.assertEquals("oops", row.get("price"));
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * Assert that inferred types also apply to batches, and to short rows.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testTypeInferenceBatch() throws Exception {
+        StringReader reader = new StringReader("a,b\n1,2\n3\n");
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setInferenceRows(10);
+        decoder.setReader(reader);
+
+        RowBatch batch = decoder.nextBatch(10);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals(Type.INTEGER, batch.getColumn("a").getType());
+        Assert.assertEquals(3, batch.getColumn("a").getLongs()[1]);
+        Assert.assertTrue(batch.getColumn("b").isNull(1));
+    }
+
     /**
      * Test with an invalid csv string.
      *
@@ -303,4 +519,382 @@ public final class CSVDataDecoderTest {
         Assert.assertFalse(iterator.hasNext());
         Assert.assertNull(iterator.next());
     }
+
+    /**
+     * Write a CSV file whose quoted fields contain newlines, commas and
+     * escaped quotes, so that many range boundaries fall inside quotes.
+     *
+     * @param rows The number of rows.
+     * @return The file.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    private Path writeQuotedFile(final int rows) throws IOException {
+        StringBuilder csv = new StringBuilder("id,text,flag\n");
+        for (int i = 0; i < rows; i++) {
+            csv.append(i).append(',');
+            if (i % 3 == 0) {
+                csv.append("\"line ").append(i)
+                        .append("\nsays \"\"hi\"\", twice\n\"");
+            } else {
+                csv.append("plain ").append(i);
+            }
+            csv.append(',').append(i % 2 == 0).append("\r\n");
+        }
+        Path file = folder.newFile().toPath();
+        Files.write(file, csv.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Decode a file sequentially, for comparison.
+     *
+     * @param file The file.
+     * @return All rows.
+     */
+    private List<Map<String, Object>> decodeSequentially(final Path file) {
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setPath(file);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        return rows;
+    }
+
+    /**
+     * Assert that a file may be decoded from a path.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testPath() throws Exception {
+        Path file = writeQuotedFile(4);
+        List<Map<String, Object>> rows = decodeSequentially(file);
+
+        Assert.assertEquals(4, rows.size());
+        Assert.assertEquals("0", rows.get(0).get("id"));
+        Assert.assertEquals("line 0\nsays \"hi\", twice\n",
+                rows.get(0).get("text"));
+        Assert.assertEquals("plain 1", rows.get(1).get("text"));
+        Assert.assertEquals("false", rows.get(3).get("flag"));
+    }
+
+    /**
+     * Assert that a mapped file decodes to the same rows as the same file
+     * read through a reader, even if cells straddle the mapped windows.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testMappedWindows() throws Exception {
+        Path file = writeQuotedFile(200);
+
+        CSVDataDecoder readerDecoder = new CSVDataDecoder();
+        readerDecoder.setReader(Files.newBufferedReader(file,
+                StandardCharsets.UTF_8));
+        List<Map<String, Object>> expected = new ArrayList<>();
+        for (Map<String, Object> row : readerDecoder) {
+            expected.add(row);
+        }
+        readerDecoder.close();
+        Assert.assertEquals(200, expected.size());
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setPath(file);
+        decoder.setWindowSize(7);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        Assert.assertEquals(expected, rows);
+    }
+
+    /**
+     * Decode every row of a configured decoder, and close it.
+     *
+     * @param decoder The configured decoder.
+     * @return All rows.
+     */
+    private List<Map<String, Object>> decodeAll(final CSVDataDecoder decoder) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        return rows;
+    }
+
+    /**
+     * Assert that lazily decoded rows read the same as eagerly decoded
+     * ones, both as strings and with inferred types, and that they stay
+     * readable after the decoder has moved on and been closed.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testLazy() throws Exception {
+        Path file = writeQuotedFile(300);
+
+        CSVDataDecoder eager = new CSVDataDecoder();
+        eager.setPath(file);
+        CSVDataDecoder lazy = new CSVDataDecoder();
+        lazy.setPath(file);
+        Assert.assertFalse(lazy.isLazy());
+        lazy.setLazy(true);
+        Assert.assertTrue(lazy.isLazy());
+        Assert.assertEquals(decodeAll(eager), decodeAll(lazy));
+
+        eager = new CSVDataDecoder();
+        eager.setPath(file);
+        eager.setInferenceRows(5);
+        lazy = new CSVDataDecoder();
+        lazy.setPath(file);
+        lazy.setInferenceRows(5);
+        lazy.setLazy(true);
+        List<Map<String, Object>> rows = decodeAll(lazy);
+        Assert.assertEquals(decodeAll(eager), rows);
+        Row row = (Row) rows.get(299);
+        Assert.assertEquals(Type.INTEGER, row.getType(0));
+        Assert.assertEquals(299, row.getInt(0));
+        Assert.assertEquals(false, row.get("flag"));
+    }
+
+    /**
+     * Assert that lazy cells of a parallel decode, of a batch, and of a
+     * predicate column are decoded correctly, and that readers ignore the
+     * option.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testLazyParallelBatchAndReader() throws Exception {
+        Path file = writeQuotedFile(1000);
+        List<Map<String, Object>> expected = decodeSequentially(file);
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setPath(file);
+        decoder.setParallelism(3);
+        decoder.setRangeSize(512);
+        decoder.setLazy(true);
+        Assert.assertEquals(expected, decodeAll(decoder));
+
+        decoder = new CSVDataDecoder();
+        decoder.setPath(file);
+        decoder.setInferenceRows(10);
+        decoder.setLazy(true);
+        RowBatch batch = decoder.nextBatch(2000);
+        decoder.close();
+        Assert.assertEquals(1000, batch.size());
+        Assert.assertEquals(999, batch.getRow(999).get("id"));
+        Assert.assertEquals(expected.get(3).get("text"),
+                batch.getRow(3).get("text"));
+
+        decoder = new CSVDataDecoder();
+        decoder.setPath(file);
+        decoder.setLazy(true);
+        decoder.addFilter(RowPredicate.equalTo("id", "3"));
+        List<Map<String, Object>> rows = decodeAll(decoder);
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(expected.get(3), rows.get(0));
+
+        decoder = new CSVDataDecoder();
+        decoder.setReader(new StringReader("a,b\n1,2\n"));
+        decoder.setLazy(true);
+        rows = decodeAll(decoder);
+        Assert.assertEquals("2", rows.get(0).get("b"));
+    }
+
+    /**
+     * Assert that a file decoded in parallel yields the same rows, in the
+     * same order, as a sequential decode.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testParallelDecoder() throws Exception {
+        Path file = writeQuotedFile(2000);
+        List<Map<String, Object>> expected = decodeSequentially(file);
+        Assert.assertEquals(2000, expected.size());
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setPath(file);
+        decoder.setParallelism(4);
+        decoder.setRangeSize(100);
+        Assert.assertEquals(file, decoder.getPath());
+        Assert.assertEquals(Integer.valueOf(4), decoder.getParallelism());
+        Assert.assertTrue(decoder.isOrdered());
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        Assert.assertEquals(expected, rows);
+    }
+
+    /**
+     * Assert that an unordered parallel decode yields every row once.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testParallelUnordered() throws Exception {
+        Path file = writeQuotedFile(2000);
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setPath(file);
+        decoder.setParallelism(4);
+        decoder.setOrdered(false);
+        decoder.setRangeSize(256);
+        Assert.assertFalse(decoder.isOrdered());
+
+        boolean[] seen = new boolean[2000];
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            int id = Integer.parseInt((String) row.get("id"));
+            Assert.assertFalse(seen[id]);
+            seen[id] = true;
+            count++;
+        }
+        decoder.close();
+        Assert.assertEquals(2000, count);
+    }
+
+    /**
+     * Assert that type inference, projections and predicates apply to every
+     * range of a parallel decode.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testParallelTypedPredicate() throws Exception {
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns())
+                .thenReturn(Collections.singleton("id"));
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setPath(writeQuotedFile(1000));
+        decoder.setParallelism(3);
+        decoder.setRangeSize(512);
+        decoder.setInferenceRows(10);
+        decoder.addFilter(RowPredicate.equalTo("flag", true));
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(2, row.size());
+            Assert.assertEquals(count * 2, row.get("id"));
+            Assert.assertEquals(true, row.get("flag"));
+            Assert.assertFalse(row.containsKey("text"));
+            count++;
+        }
+        decoder.close();
+        Assert.assertEquals(500, count);
+    }
+
+    /**
+     * Assert that a header with a repeated name yields every row, with the
+     * last cell of the name winning, as it would in a map.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testDuplicateHeader() throws Exception {
+        String csv = "a,a,b\n1,2,3\n4,5\n7\n";
+        Map<String, Object> first = new LinkedHashMap<>();
+        first.put("a", "2");
+        first.put("b", "3");
+        Map<String, Object> second = new LinkedHashMap<>();
+        second.put("a", "5");
+        Map<String, Object> third = new LinkedHashMap<>();
+        third.put("a", "7");
+
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setReader(new StringReader(csv));
+        List<Map<String, Object>> rows = decodeAll(decoder);
+        Assert.assertEquals(Arrays.asList(first, second, third), rows);
+        Assert.assertEquals(Arrays.asList("a", "b"),
+                ((Row) rows.get(0)).getSchema().getNames());
+
+        decoder = new CSVDataDecoder();
+        decoder.setReader(new StringReader(csv));
+        decoder.addFilter(RowPredicate.equalTo("a", "2"));
+        Assert.assertEquals(Collections.singletonList(first),
+                decodeAll(decoder));
+
+        decoder = new CSVDataDecoder();
+        decoder.setReader(new StringReader(csv));
+        decoder.addFilter(RowPredicate.equalTo("a", "7"));
+        Assert.assertEquals(Collections.singletonList(third),
+                decodeAll(decoder));
+    }
+
+    /**
+     * Assert that pushed down predicates test typed cells as the values
+     * they decode to, rather than as their text.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testTypedPushdown() throws Exception {
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setReader(new StringReader("x\n1.5\n2.5\n1.50\n3\n"));
+        decoder.setInferenceRows(2);
+        decoder.addFilter(RowPredicate.equalTo("x", "1.5"));
+        List<Map<String, Object>> rows = decodeAll(decoder);
+        Assert.assertEquals(2, rows.size());
+        Assert.assertEquals(1.5, rows.get(0).get("x"));
+        Assert.assertEquals(1.5, rows.get(1).get("x"));
+
+        decoder = new CSVDataDecoder();
+        decoder.setReader(new StringReader("b\nfalse\nTRUE\nfalse\n"));
+        decoder.setInferenceRows(1);
+        decoder.addFilter(RowPredicate.equalTo("b", "true"));
+        rows = decodeAll(decoder);
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(true, rows.get(0).get("b"));
+    }
+
+    /**
+     * Assert that a missing file decodes to no rows.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testParallelMissingFile() throws Exception {
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setPath(folder.getRoot().toPath().resolve("missing.csv"));
+        decoder.setParallelism(2);
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+        decoder.close();
+    }
+
+    /**
+     * Assert that restoring the settings returns them to their defaults.
+     *
+     * @throws Exception Should not be thrown.
+     */
+    @Test
+    public void testRestoreSettings() throws Exception {
+        CSVDataDecoder decoder = new CSVDataDecoder();
+        decoder.setInferenceRows(10);
+        decoder.setPath(Files.createTempFile("restore", ".csv"));
+        decoder.setParallelism(4);
+        decoder.setOrdered(false);
+        decoder.setLazy(true);
+
+        decoder.restoreSettings();
+        Assert.assertNull(decoder.getInferenceRows());
+        Assert.assertNull(decoder.getPath());
+        Assert.assertNull(decoder.getParallelism());
+        Assert.assertTrue(decoder.isOrdered());
+        Assert.assertFalse(decoder.isLazy());
+    }
 }
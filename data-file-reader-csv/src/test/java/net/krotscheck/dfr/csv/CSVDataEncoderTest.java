@@ -18,6 +18,8 @@
 package net.krotscheck.dfr.csv;
 
 import net.krotscheck.dfr.IDataEncoder;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowSchema;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -28,6 +30,8 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -131,6 +135,238 @@ public final class CSVDataEncoderTest {
         }
     }
 
+    /**
+     * Assert that the cells of a row are written by their type, and that
+     * absent cells are left out.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testTypedRow() throws Exception {
+        Row row = new Row(new RowSchema(new String[]{"i", "l", "f", "d", "b",
+                "n", "s", "gone"}));
+        row.setInt(0, 1);
+        row.setLong(1, 5000000000L);
+        row.setFloat(2, 1.5f);
+        row.setDouble(3, 0.25);
+        row.setBoolean(4, true);
+        row.set(6, "a, \"b\"");
+        row.remove("gone");
+
+        CSVDataEncoder encoder = new CSVDataEncoder();
+        StringWriter writer = new StringWriter();
+        encoder.setWriter(writer);
+        encoder.write(row);
+        encoder.close();
+
+        Assert.assertEquals("i,l,f,d,b,n,s\n"
+                + "1,5000000000,1.5,0.25,true,,\"a, \"\"b\"\"\"\n",
+                writer.toString());
+    }
+
+    /**
+     * Assert that the values of plain maps are written by their type, and
+     * that other values are handed to the object mapper.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testMapValues() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("i", 1);
+        row.put("l", 2L);
+        row.put("f", 1.5f);
+        row.put("d", 0.5);
+        row.put("b", false);
+        row.put("n", null);
+        row.put("date", new Date(1000L));
+
+        CSVDataEncoder encoder = new CSVDataEncoder();
+        StringWriter writer = new StringWriter();
+        encoder.setWriter(writer);
+        encoder.write(row);
+        encoder.close();
+
+        Assert.assertEquals("i,l,f,d,b,n,date\n1,2,1.5,0.5,false,,1000\n",
+                writer.toString());
+    }
+
+    /**
+     * Assert that output is buffered until the encoder is closed, and that
+     * a small buffer yields the same output.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testBufferSize() throws Exception {
+        CSVDataEncoder encoder = new CSVDataEncoder();
+        Assert.assertEquals(CSVDataEncoder.DEFAULT_BUFFER_SIZE,
+                encoder.getBufferSize());
+        StringWriter writer = new StringWriter();
+        encoder.setWriter(writer);
+        for (Map<String, Object> row : testData) {
+            encoder.write(row);
+        }
+        Assert.assertEquals(0, writer.getBuffer().length());
+        encoder.close();
+        String expected = writer.toString();
+
+        encoder = new CSVDataEncoder();
+        encoder.setBufferSize(8);
+        Assert.assertEquals(8, encoder.getBufferSize());
+        writer = new StringWriter();
+        encoder.setWriter(writer);
+        for (Map<String, Object> row : testData) {
+            encoder.write(row);
+        }
+        encoder.close();
+        Assert.assertEquals(expected, writer.toString());
+        Assert.assertTrue(expected.startsWith("column_1,column_2,column_3\n"
+                + "0,\"String 0\",foo\n"));
+    }
+
+    /**
+     * Assert that rows are matched to the header by name: missing columns
+     * are left empty, and extra columns are left out.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testAlignedRows() throws Exception {
+        RowSchema schema = new RowSchema(new String[]{"b", "a", "c"});
+        Row row = new Row(schema);
+        row.setInt(0, 2);
+        row.setInt(1, 1);
+        row.setInt(2, 3);
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("c", "z");
+        map.put("a", "x");
+
+        CSVDataEncoder encoder = new CSVDataEncoder();
+        StringWriter writer = new StringWriter();
+        encoder.setWriter(writer);
+        encoder.write(testData.get(0));
+        encoder.write(row);
+        encoder.write(map);
+        encoder.close();
+
+        Assert.assertEquals("column_1,column_2,column_3\n"
+                + "0,\"String 0\",foo\n,,\n,,\n", writer.toString());
+
+        encoder = new CSVDataEncoder();
+        encoder.setColumns(Arrays.asList("a", "b", "c"));
+        Assert.assertEquals(Arrays.asList("a", "b", "c"),
+                encoder.getColumns());
+        writer = new StringWriter();
+        encoder.setWriter(writer);
+        encoder.write(row);
+        encoder.write(map);
+        encoder.write(testData.get(0));
+        encoder.close();
+
+        Assert.assertEquals("a,b,c\n1,2,3\nx,,z\n,,\n", writer.toString());
+    }
+
+    /**
+     * Assert that rows are written under the union of their columns, in
+     * order of first appearance, whether or not they were spilled.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testUnionSchema() throws Exception {
+        String expected = "column_1,column_2,column_3,extra,date\n"
+                + "0,\"String 0\",foo,,\n"
+                + "1,,,true,1000\n"
+                + ",,bar,,\n";
+
+        for (long limit : new long[]{CSVDataEncoder.DEFAULT_MEMORY_LIMIT,
+                1, 200}) {
+            CSVDataEncoder encoder = new CSVDataEncoder();
+            Assert.assertFalse(encoder.isUnionSchema());
+            encoder.setUnionSchema(true);
+            Assert.assertTrue(encoder.isUnionSchema());
+            encoder.setMemoryLimit(limit);
+            Assert.assertEquals(limit, encoder.getMemoryLimit());
+            StringWriter writer = new StringWriter();
+            encoder.setWriter(writer);
+            writeUnionRows(encoder);
+            Assert.assertEquals(0, writer.getBuffer().length());
+            encoder.close();
+
+            Assert.assertEquals(expected, writer.toString());
+        }
+    }
+
+    /**
+     * Assert that the union starts with columns set ahead of time.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testUnionSchemaWithColumns() throws Exception {
+        CSVDataEncoder encoder = new CSVDataEncoder();
+        encoder.setUnionSchema(true);
+        encoder.setColumns(Arrays.asList("date", "column_3", "first"));
+        StringWriter writer = new StringWriter();
+        encoder.setWriter(writer);
+        writeUnionRows(encoder);
+        encoder.close();
+
+        Assert.assertEquals("date,column_3,first,column_1,column_2,extra\n"
+                + ",foo,,0,\"String 0\",\n"
+                + "1000,,,1,,true\n"
+                + ",bar,,,,\n", writer.toString());
+    }
+
+    /**
+     * Write three rows of differing columns.
+     *
+     * @param encoder The encoder.
+     * @throws IOException Unexpected exceptions.
+     */
+    private void writeUnionRows(final CSVDataEncoder encoder)
+            throws IOException {
+        encoder.write(testData.get(0));
+
+        Row row = new Row(new RowSchema(new String[]{"column_1", "extra",
+                "date"}));
+        row.setLong(0, 1L);
+        row.setBoolean(1, true);
+        row.set(2, new Date(1000L));
+        encoder.write(row);
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("column_3", "bar");
+        encoder.write(map);
+    }
+
+    /**
+     * Assert that a reset encoder starts its next writer with the header of
+     * the rows written to it.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReset() throws Exception {
+        CSVDataEncoder encoder = new CSVDataEncoder();
+        StringWriter first = new StringWriter();
+        encoder.setWriter(first);
+        encoder.write(testData.get(0));
+
+        Map<String, Object> other = new LinkedHashMap<>();
+        other.put("a", 1);
+        other.put("b", "two");
+        StringWriter second = new StringWriter();
+        encoder.reset(second);
+        encoder.write(other);
+        encoder.close();
+
+        Assert.assertEquals("column_1,column_2,column_3\n0,\"String 0\",foo\n",
+                first.toString());
+        Assert.assertEquals("a,b\n1,two\n", second.toString());
+    }
+
     /**
      * Assert close called prematurely.
      *
@@ -169,4 +405,24 @@ public final class CSVDataEncoderTest {
         // Write for header and data.
         verify(writer, times(1)).close();
     }
+
+    /**
+     * Assert that restoring the settings returns them to their defaults.
+     */
+    @Test
+    public void testRestoreSettings() {
+        CSVDataEncoder encoder = new CSVDataEncoder();
+        encoder.setBufferSize(16);
+        encoder.setColumns(Arrays.asList("a", "b"));
+        encoder.setUnionSchema(true);
+        encoder.setMemoryLimit(1024);
+
+        encoder.restoreSettings();
+        Assert.assertEquals(CSVDataEncoder.DEFAULT_BUFFER_SIZE,
+                encoder.getBufferSize());
+        Assert.assertNull(encoder.getColumns());
+        Assert.assertFalse(encoder.isUnionSchema());
+        Assert.assertEquals(CSVDataEncoder.DEFAULT_MEMORY_LIMIT,
+                encoder.getMemoryLimit());
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.csv;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Unit tests for the shared CSV mappers.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CSVMappersTest {
+
+    /**
+     * Assert that the mappers are shared, and that CSV generators leave
+     * their writers open.
+     */
+    @Test
+    public void testShared() {
+        Assert.assertSame(CSVMappers.getCsvMapper(),
+                CSVMappers.getCsvMapper());
+        Assert.assertSame(CSVMappers.getJsonMapper(),
+                CSVMappers.getJsonMapper());
+        Assert.assertNotSame(CSVMappers.getCsvMapper(),
+                CSVMappers.getJsonMapper());
+        Assert.assertFalse(CSVMappers.getCsvMapper()
+                .isEnabled(SerializationFeature.CLOSE_CLOSEABLE));
+        Assert.assertFalse(CSVMappers.getCsvMapper().getFactory()
+                .isEnabled(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+    }
+
+    /**
+     * Assert that the JSON mapper writes JSON, not CSV.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testJsonMapper() throws Exception {
+        Assert.assertEquals("[1,\"a\"]", CSVMappers.getJsonMapper()
+                .writeValueAsString(Arrays.asList(1, "a")));
+    }
+}
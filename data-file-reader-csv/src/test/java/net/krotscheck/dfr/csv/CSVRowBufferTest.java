@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.csv;
+
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowSchema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Unit tests for the CSV row buffer.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CSVRowBufferTest {
+
+    /**
+     * Assert that rows are replayed in order, aligned to the union of
+     * their columns, whether they were kept in memory or spilled.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        for (long limit : new long[]{Long.MAX_VALUE, 0, 150}) {
+            int before = countSpillFiles();
+            CSVRowBuffer buffer = new CSVRowBuffer(
+                    Collections.singletonList("s"), limit);
+            addRows(buffer);
+            Assert.assertEquals(Arrays.asList("s", "i", "l", "f", "d", "b"),
+                    buffer.getColumns());
+            if (limit == 0) {
+                Assert.assertEquals(before + 1, countSpillFiles());
+            }
+
+            buffer.finish();
+            Assert.assertArrayEquals(new Object[]{"hé", 1, null, null,
+                    null, null}, buffer.next());
+            Assert.assertArrayEquals(new Object[]{null, null, 2L, 1.5f, 0.5,
+                    true}, buffer.next());
+            Assert.assertArrayEquals(new Object[]{null, 3, null, null, null,
+                    null}, buffer.next());
+            Assert.assertNull(buffer.next());
+            buffer.close();
+
+            Assert.assertEquals(before, countSpillFiles());
+        }
+    }
+
+    /**
+     * Assert that values are reduced to strings, numbers and booleans.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testScalar() throws Exception {
+        Assert.assertNull(CSVRowBuffer.scalar(null));
+        Assert.assertEquals("a", CSVRowBuffer.scalar("a"));
+        Assert.assertEquals(1, CSVRowBuffer.scalar(1));
+        Assert.assertEquals(1000L, CSVRowBuffer.scalar(new Date(1000L)));
+        Assert.assertEquals("[1,2]",
+                CSVRowBuffer.scalar(Arrays.asList(1, 2)));
+    }
+
+    /**
+     * Add three rows of differing columns.
+     *
+     * @param buffer The buffer.
+     * @throws IOException Unexpected exceptions.
+     */
+    private void addRows(final CSVRowBuffer buffer) throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("s", "hé");
+        map.put("i", 1);
+        buffer.add(map);
+
+        Row row = new Row(new RowSchema(new String[]{"l", "f", "d", "b",
+                "gone"}));
+        row.setLong(0, 2L);
+        row.setFloat(1, 1.5f);
+        row.setDouble(2, 0.5);
+        row.setBoolean(3, true);
+        row.remove("gone");
+        buffer.add(row);
+
+        map.clear();
+        map.put("i", 3);
+        buffer.add(map);
+    }
+
+    /**
+     * Count the spill files in the temporary directory.
+     *
+     * @return The number of spill files.
+     * @throws IOException Unexpected exceptions.
+     */
+    private int countSpillFiles() throws IOException {
+        Path dir = Paths.get(System.getProperty("java.io.tmpdir"));
+        int count = 0;
+        try (DirectoryStream<Path> files =
+                     Files.newDirectoryStream(dir, "dfr-csv-*.rows")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Unit tests for the CSV range splitter.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CSVSplitterTest {
+
+    /**
+     * Temporary files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Open a file with the given content.
+     *
+     * @param content The content.
+     * @return The open file.
+     * @throws Exception Thrown if the file cannot be written.
+     */
+    private FileChannel open(final String content) throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Assert that the header ends after its first unquoted newline.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testHeaderEnd() throws Exception {
+        try (FileChannel channel = open("a,\"b\nc\"\n1,2\n")) {
+            Assert.assertEquals(8, CSVSplitter.headerEnd(channel));
+        }
+        try (FileChannel channel = open("a,b")) {
+            Assert.assertEquals(3, CSVSplitter.headerEnd(channel));
+        }
+    }
+
+    /**
+     * Assert that ranges are aligned to record boundaries, even if the
+     * nominal split point lies inside a quoted field, and that a range
+     * without a record boundary is merged into the previous one.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testSplit() throws Exception {
+        // Records start at 0, 4, 22 and 26.
+        String csv = "1,a\n2,\"x\n\"\"y\"\"\nzzzzz\"\n3,b\n4,c\n";
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (FileChannel channel = open(csv)) {
+            List<long[]> ranges =
+                    CSVSplitter.split(channel, 0, csv.length(), 5, executor);
+            Assert.assertEquals(3, ranges.size());
+            Assert.assertArrayEquals(new long[]{0, 22}, ranges.get(0));
+            Assert.assertArrayEquals(new long[]{22, 26}, ranges.get(1));
+            Assert.assertArrayEquals(new long[]{26, 30}, ranges.get(2));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Assert that a region smaller than the range size is a single range.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testSingleRange() throws Exception {
+        String csv = "1,a\n2,b\n";
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (FileChannel channel = open(csv)) {
+            List<long[]> ranges =
+                    CSVSplitter.split(channel, 4, csv.length(), 1024, executor);
+            Assert.assertEquals(1, ranges.size());
+            Assert.assertArrayEquals(new long[]{4, 8}, ranges.get(0));
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowSchema;
+import net.krotscheck.dfr.Type;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+
+/**
+ * Unit tests for the CSV value parser.
+ *
+ * @author Michael Krotscheck
+ */
+public final class CSVValueParserTest {
+
+    /**
+     * Assert that cells are classified into their narrowest type.
+     */
+    @Test
+    public void testClassify() {
+        Assert.assertNull(CSVValueParser.classify(null));
+        Assert.assertNull(CSVValueParser.classify(""));
+        Assert.assertEquals(Type.BOOLEAN, CSVValueParser.classify("TRUE"));
+        Assert.assertEquals(Type.BOOLEAN, CSVValueParser.classify("false"));
+        Assert.assertEquals(Type.INTEGER, CSVValueParser.classify("-42"));
+        Assert.assertEquals(Type.INTEGER, CSVValueParser.classify("+7"));
+        Assert.assertEquals(Type.LONG,
+                CSVValueParser.classify("9223372036854775807"));
+        Assert.assertEquals(Type.DOUBLE,
+                CSVValueParser.classify("9223372036854775808"));
+        Assert.assertEquals(Type.DOUBLE, CSVValueParser.classify("1.5"));
+        Assert.assertEquals(Type.DOUBLE, CSVValueParser.classify(".5"));
+        Assert.assertEquals(Type.DOUBLE, CSVValueParser.classify("1e-3"));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("1e"));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("-"));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("."));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("1.2.3"));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("abc"));
+        Assert.assertEquals(Type.INTEGER, CSVValueParser.classify("0"));
+        Assert.assertEquals(Type.DOUBLE, CSVValueParser.classify("0.5"));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("00501"));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("02134"));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("-07"));
+        Assert.assertEquals(Type.STRING, CSVValueParser.classify("00.5"));
+    }
+
+    /**
+     * Assert that column types widen correctly.
+     */
+    @Test
+    public void testWiden() {
+        Assert.assertEquals(Type.INTEGER,
+                CSVValueParser.widen(null, Type.INTEGER));
+        Assert.assertEquals(Type.INTEGER,
+                CSVValueParser.widen(Type.INTEGER, null));
+        Assert.assertEquals(Type.LONG,
+                CSVValueParser.widen(Type.INTEGER, Type.LONG));
+        Assert.assertEquals(Type.DOUBLE,
+                CSVValueParser.widen(Type.LONG, Type.DOUBLE));
+        Assert.assertEquals(Type.STRING,
+                CSVValueParser.widen(Type.BOOLEAN, Type.INTEGER));
+        Assert.assertEquals(Type.STRING,
+                CSVValueParser.widen(Type.DOUBLE, Type.STRING));
+    }
+
+    /**
+     * Assert that numbers parse to the same values as the JDK.
+     */
+    @Test
+    public void testParse() {
+        String[] longs = {"0", "-1", "123456789012345678",
+                "-9223372036854775808", "+15"};
+        for (String text : longs) {
+            Assert.assertEquals(Long.parseLong(text),
+                    CSVValueParser.parseLong(text));
+        }
+
+        String[] doubles = {"0.1", "-2.5", "123456.789", "1e10", "-0.0",
+                "0.30000000000000004", "12345678901234567890.5",
+                "0.0000000000000000000000001", "7", "3.14159"};
+        for (String text : doubles) {
+            Assert.assertEquals(text, Double.parseDouble(text),
+                    CSVValueParser.parseDouble(text), 0);
+        }
+    }
+
+    /**
+     * Assert that typed cells land in the row unboxed, and that cells which
+     * do not fit the column type stay strings.
+     */
+    @Test
+    public void testSet() {
+        RowSchema schema = new RowSchema(new String[]{"a"});
+        Row row = new Row(schema);
+
+        CSVValueParser.set(row, 0, Type.INTEGER, "12");
+        Assert.assertEquals(Type.INTEGER, row.getType(0));
+        CSVValueParser.set(row, 0, Type.INTEGER, "12345678901");
+        Assert.assertEquals(Type.LONG, row.getType(0));
+        CSVValueParser.set(row, 0, Type.LONG, "-5");
+        Assert.assertEquals(-5L, row.get(0));
+        CSVValueParser.set(row, 0, Type.DOUBLE, "2.5");
+        Assert.assertEquals(2.5, row.get(0));
+        CSVValueParser.set(row, 0, Type.BOOLEAN, "True");
+        Assert.assertEquals(true, row.get(0));
+        CSVValueParser.set(row, 0, Type.BOOLEAN, "false");
+        Assert.assertEquals(false, row.get(0));
+        CSVValueParser.set(row, 0, Type.DOUBLE, "");
+        Assert.assertTrue(row.isNull(0));
+        CSVValueParser.set(row, 0, Type.LONG, "n/a");
+        Assert.assertEquals("n/a", row.get(0));
+        CSVValueParser.set(row, 0, Type.STRING, "12");
+        Assert.assertEquals("12", row.get(0));
+        CSVValueParser.set(row, 0, Type.INTEGER, null);
+        Assert.assertTrue(row.isNull(0));
+    }
+
+    /**
+     * Assert that cell text is converted into boxed values by the same
+     * rules as typed row cells.
+     */
+    @Test
+    public void testValue() {
+        Assert.assertEquals(12, CSVValueParser.value(Type.INTEGER, "12"));
+        Assert.assertEquals(5000000000L,
+                CSVValueParser.value(Type.INTEGER, "5000000000"));
+        Assert.assertEquals(-3L, CSVValueParser.value(Type.LONG, "-3"));
+        Assert.assertEquals(2.5, CSVValueParser.value(Type.DOUBLE, "2.5"));
+        Assert.assertEquals(true, CSVValueParser.value(Type.BOOLEAN, "TRUE"));
+        Assert.assertEquals(false,
+                CSVValueParser.value(Type.BOOLEAN, "false"));
+        Assert.assertNull(CSVValueParser.value(Type.DOUBLE, ""));
+        Assert.assertNull(CSVValueParser.value(Type.LONG, null));
+        Assert.assertEquals("n/a", CSVValueParser.value(Type.LONG, "n/a"));
+        Assert.assertEquals("n/a", CSVValueParser.value(Type.BOOLEAN, "n/a"));
+        Assert.assertEquals("1.5x",
+                CSVValueParser.value(Type.DOUBLE, "1.5x"));
+        Assert.assertEquals("", CSVValueParser.value(Type.STRING, ""));
+        Assert.assertEquals("12", CSVValueParser.value(Type.STRING, "12"));
+    }
+
+    /**
+     * Assert that the constructor is private.
+     *
+     * @throws Exception Tests throw exceptions.
+     */
+    @Test
+    public void testPrivateConstructor() throws Exception {
+        Constructor<CSVValueParser> constructor =
+                CSVValueParser.class.getDeclaredConstructor();
+        Assert.assertTrue(Modifier.isPrivate(constructor.getModifiers()));
+        constructor.setAccessible(true);
+        constructor.newInstance();
+    }
+}
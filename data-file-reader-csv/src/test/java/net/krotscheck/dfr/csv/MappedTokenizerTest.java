@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.csv;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unit tests for the memory-mapped CSV tokenizer.
+ *
+ * @author Michael Krotscheck
+ */
+public final class MappedTokenizerTest {
+
+    /**
+     * Inputs that exercise quoting, line endings and empty cells.
+     */
+    private static final String[] INPUTS = {
+            "a,b\n1,2\n",
+            "a,b\r\n1,2\r\n",
+            "a,b\r1,2",
+            "a,b\n\n1,2\n\n",
+            "a,b\nx\"y\"z,2\n",
+            "a,b\n \"q\",2\n",
+            "a,b\n\"\",\n",
+            "a,b\n1,",
+            "a,b\n\"x\ny\",\"p\"\"q\"\"\"\n",
+            "a,b\n\"x\" ,2\n",
+            "\n\na,b\n1\n",
+            "a,b\n1,2\r\n\r\n3,4",
+            "long header name,\"quoted, header\"\n"
+                    + "some longer cell text,\"with \"\"quotes\"\" inside\"\n"
+                    + "ünïcödé,日本語\n"
+    };
+
+    /**
+     * Temporary files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Open a file with the given content.
+     *
+     * @param content The content.
+     * @return The open file.
+     * @throws Exception Thrown if the file cannot be written.
+     */
+    private FileChannel open(final String content) throws Exception {
+        return open(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Open a file with the given bytes.
+     *
+     * @param content The content.
+     * @return The open file.
+     * @throws Exception Thrown if the file cannot be written.
+     */
+    private FileChannel open(final byte[] content) throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content);
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Read every record of a tokenizer.
+     *
+     * @param tokens The tokenizer.
+     * @return The records, as lists of cells.
+     * @throws IOException Thrown if the input cannot be read.
+     */
+    private List<List<String>> read(final ICSVTokenizer tokens)
+            throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        while (tokens.hasRecord()) {
+            List<String> cells = new ArrayList<>();
+            while (tokens.nextCell()) {
+                cells.add(tokens.getText());
+            }
+            records.add(cells);
+        }
+        return records;
+    }
+
+    /**
+     * Assert that mapped files are tokenized exactly like Jackson tokenizes
+     * the same text, whatever the window size.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testMatchesJackson() throws Exception {
+        int[] windowSizes = {1, 3, 8, 13, MappedTokenizer.DEFAULT_WINDOW_SIZE};
+        for (String input : INPUTS) {
+            List<List<String>> expected =
+                    read(new JacksonTokenizer(new StringReader(input)));
+            for (int windowSize : windowSizes) {
+                try (FileChannel channel = open(input)) {
+                    MappedTokenizer tokens = new MappedTokenizer(channel, 0,
+                            channel.size(), windowSize);
+                    Assert.assertEquals(input + " / " + windowSize,
+                            expected, read(tokens));
+                }
+            }
+        }
+    }
+
+    /**
+     * Assert that an empty file has no records.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testEmpty() throws Exception {
+        try (FileChannel channel = open("")) {
+            MappedTokenizer tokens =
+                    new MappedTokenizer(channel, 0, 0, 16);
+            Assert.assertFalse(tokens.hasRecord());
+            Assert.assertFalse(tokens.nextCell());
+            Assert.assertFalse(tokens.hasRecord());
+        }
+    }
+
+    /**
+     * Assert that only the given region of a file is tokenized.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testRegion() throws Exception {
+        try (FileChannel channel = open("a,b\n1,2\n3,4\n5,6\n")) {
+            MappedTokenizer tokens = new MappedTokenizer(channel, 4, 12, 5);
+            List<List<String>> records = read(tokens);
+            Assert.assertEquals(2, records.size());
+            Assert.assertEquals("[1, 2]", records.get(0).toString());
+            Assert.assertEquals("[3, 4]", records.get(1).toString());
+        }
+    }
+
+    /**
+     * Assert that a byte order mark at the start of the file is skipped.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testByteOrderMark() throws Exception {
+        byte[] content = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, 'a', ',',
+                'b'};
+        try (FileChannel channel = open(content)) {
+            MappedTokenizer tokens = new MappedTokenizer(channel, 0,
+                    channel.size(), 16);
+            Assert.assertEquals("[[a, b]]", read(tokens).toString());
+        }
+    }
+
+    /**
+     * Assert that a cell larger than a window is read from a larger one.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testCellLargerThanWindow() throws Exception {
+        StringBuilder cell = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            cell.append((char) ('a' + i % 26));
+        }
+        String input = "a,b\n\"" + cell + "\"," + cell + "\n";
+        try (FileChannel channel = open(input)) {
+            MappedTokenizer tokens = new MappedTokenizer(channel, 0,
+                    channel.size(), 4);
+            List<List<String>> records = read(tokens);
+            Assert.assertEquals(2, records.size());
+            Assert.assertEquals(cell.toString(), records.get(1).get(0));
+            Assert.assertEquals(cell.toString(), records.get(1).get(1));
+        }
+    }
+
+    /**
+     * Assert that cells are only decoded when they are asked for, and that
+     * skipped cells are still passed over correctly.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testSkipCells() throws Exception {
+        try (FileChannel channel = open("\"x\ny\",2\n3,4\n")) {
+            MappedTokenizer tokens = new MappedTokenizer(channel, 0,
+                    channel.size(), 16);
+            Assert.assertTrue(tokens.nextCell());
+            Assert.assertTrue(tokens.nextCell());
+            Assert.assertEquals("2", tokens.getText());
+            Assert.assertFalse(tokens.nextCell());
+            Assert.assertTrue(tokens.hasRecord());
+            Assert.assertEquals("[[3, 4]]", read(tokens).toString());
+        }
+    }
+
+    /**
+     * Assert that a quoted value without a closing quote is an error.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test(expected = IOException.class)
+    public void testMissingClosingQuote() throws Exception {
+        try (FileChannel channel = open("a,b\n1,\"2")) {
+            read(new MappedTokenizer(channel, 0, channel.size(), 4));
+        }
+    }
+
+    /**
+     * Assert that text after a closing quote is an error.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test(expected = IOException.class)
+    public void testTextAfterQuote() throws Exception {
+        try (FileChannel channel = open("a,b\n\"x\"y,2\n")) {
+            read(new MappedTokenizer(channel, 0, channel.size(), 4));
+        }
+    }
+}
@@ -18,26 +18,44 @@
 package net.krotscheck.dfr.json;
 
 import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.AbstractParallelIterator;
+import net.krotscheck.dfr.DataCodec;
+import net.krotscheck.dfr.RowPredicate;
 import net.krotscheck.dfr.text.AbstractTextDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 /**
  * This data decoder will read in a Json encoded file and generate objects for
  * every row found. Note that no significant error checking is performed here,
  * the file is assumed to be an array of un-nested objects.
+ * <p>
+ * A file given with {@link #setPath(Path)} may be decoded in parallel: a
+ * quick scan finds where each object of the array starts and ends, and runs
+ * of objects are parsed on a pool of threads. Rows are still returned in
+ * file order. Parallel decoding expects UTF-8 files. The same parts may be
+ * used to return rows whose string values are still undecoded, see
+ * {@link #setLazy(boolean)}.
  *
  * @author Michael Krotscheck
  */
+@DataCodec("application/json")
 public final class JSONDataDecoder extends AbstractTextDecoder {
 
     /**
@@ -46,6 +64,36 @@ public final class JSONDataDecoder extends AbstractTextDecoder {
     private static Logger logger =
             LoggerFactory.getLogger(JSONDataDecoder.class);
 
+    /**
+     * The default number of bytes of objects parsed as one part.
+     */
+    static final long DEFAULT_PART_SIZE = 1024 * 1024;
+
+    /**
+     * The file to decode, if not reading from a reader.
+     */
+    private Path path;
+
+    /**
+     * The number of threads used to decode a file.
+     */
+    private Integer parallelism;
+
+    /**
+     * The number of bytes of objects parsed as one part.
+     */
+    private long partSize = DEFAULT_PART_SIZE;
+
+    /**
+     * Whether string values of a file are decoded when they are first read.
+     */
+    private boolean lazy = false;
+
+    /**
+     * Resources opened by this decoder, closed on dispose.
+     */
+    private final List<Closeable> resources = new ArrayList<>();
+
     /**
      * Create the iterator for the JSON file.
      *
@@ -53,7 +101,108 @@ public final class JSONDataDecoder extends AbstractTextDecoder {
      */
     @Override
     protected Iterator<Map<String, Object>> buildIterator() {
-        return new InnerRowIterator(getReader());
+        boolean parallel = parallelism != null && parallelism > 1;
+        if (path != null && (parallel || lazy)) {
+            int threads = 1;
+            if (parallel) {
+                threads = parallelism;
+            }
+            ParallelRowIterator iterator = new ParallelRowIterator(path,
+                    threads, partSize, lazy, getRequiredColumns(),
+                    getRowPredicates());
+            resources.add(iterator);
+            return iterator;
+        }
+
+        JSONRowIterator iterator = new JSONRowIterator(getRequiredColumns(),
+                getRowPredicates());
+        try {
+            JsonFactory factory = JSONMappers.getFactory();
+            Reader reader = getReader();
+            if (reader == null && path != null) {
+                // Files are parsed from their bytes, skipping the decoding
+                // into characters.
+                InputStream stream = Files.newInputStream(path);
+                resources.add(stream);
+                iterator.open(factory.createParser(stream));
+            } else {
+                iterator.open(factory.createParser(reader));
+            }
+        } catch (IOException ioe) {
+            logger.error(ioe.getMessage());
+        }
+        return iterator;
+    }
+
+    /**
+     * Get the file to decode.
+     *
+     * @return The file, null if reading from the reader.
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Set a file to decode instead of a reader. Files are parsed from their
+     * bytes, and must be UTF-8 encoded to be decoded in parallel.
+     *
+     * @param file The file.
+     */
+    public void setPath(final Path file) {
+        this.path = file;
+    }
+
+    /**
+     * Get the number of threads used to decode a file.
+     *
+     * @return The number of threads, null to decode sequentially.
+     */
+    public Integer getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads used to decode a file given with
+     * {@link #setPath(Path)}. Readers are always decoded sequentially.
+     *
+     * @param threads The number of threads, default null.
+     */
+    public void setParallelism(final Integer threads) {
+        this.parallelism = threads;
+    }
+
+    /**
+     * Whether string values of a file are decoded when they are first read.
+     *
+     * @return True if string values are decoded lazily.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Set whether the string values of a file given with
+     * {@link #setPath(Path)} are returned undecoded. The file is then read
+     * in parts, as if decoded in parallel, and rows point into the part
+     * they were read from; each string is decoded the first time it is
+     * read, so strings of rows or columns that a filter drops are never
+     * decoded at all. Rows keep their part in memory until they are
+     * dropped. Values read from a reader are always decoded right away.
+     *
+     * @param deferDecoding True to decode strings lazily, default false.
+     */
+    public void setLazy(final boolean deferDecoding) {
+        this.lazy = deferDecoding;
+    }
+
+    /**
+     * Set the number of bytes of objects parsed as one part.
+     *
+     * @param bytes The part size.
+     */
+    void setPartSize(final long bytes) {
+        this.partSize = bytes;
     }
 
     /**
@@ -66,99 +215,194 @@ public final class JSONDataDecoder extends AbstractTextDecoder {
         return "application/json";
     }
 
+    /**
+     * Set the path, parallelism, part size and laziness back to their
+     * defaults.
+     */
+    @Override
+    protected void restoreSettings() {
+        path = null;
+        parallelism = null;
+        partSize = DEFAULT_PART_SIZE;
+        lazy = false;
+    }
+
     /**
      * Dispose of this decoder.
      */
     @Override
     protected void dispose() {
-        // Do nothing.
+        for (Closeable resource : resources) {
+            try {
+                resource.close();
+            } catch (IOException ioe) {
+                logger.error("Unable to close JSON file.", ioe);
+            }
+        }
+        resources.clear();
     }
 
     /**
-     * Internal iterator class, which wraps a Jackson parser.
+     * Decodes a file in parallel. The structural index hands out runs of
+     * complete objects, which are wrapped into arrays of their own and
+     * parsed independently.
      */
-    private static final class InnerRowIterator
-            implements Iterator<Map<String, Object>> {
+    private static final class ParallelRowIterator
+            extends AbstractParallelIterator {
 
         /**
-         * The JSON Parser.
+         * The columns to decode, null for all of them.
          */
-        private JsonParser parser;
+        private final Set<String> columns;
 
         /**
-         * Type reference, for object mapping.
+         * The predicates to test while reading.
          */
-        private TypeReference<Map<String, Object>> mapReference =
-                new TypeReference<Map<String, Object>>() {
+        private final List<RowPredicate> predicates;
 
-                };
+        /**
+         * The number of bytes of objects parsed as one part.
+         */
+        private final long partSize;
 
         /**
-         * Create a new instance of the iterator, wrapping an reader that is
-         * assumed to be pointed at a properly formatted json data file.
-         *
-         * @param jsonReader The reader.
+         * Whether string values are kept undecoded.
          */
-        private InnerRowIterator(final Reader jsonReader) {
+        private final boolean lazy;
 
-            try {
-                ObjectMapper mapper = new ObjectMapper();
-                JsonFactory factory = new JsonFactory(mapper);
-                parser = factory.createParser(jsonReader);
+        /**
+         * The file.
+         */
+        private FileChannel channel;
 
-                if (parser.nextToken() != JsonToken.START_ARRAY) {
-                    throw new IOException(
-                            "File does not contains an array of objects.");
-                }
+        /**
+         * The object boundaries of the file.
+         */
+        private JSONStructuralIndex index;
 
-                parser.nextToken();
+        /**
+         * Create a new parallel iterator.
+         *
+         * @param file            The file.
+         * @param threads         The number of threads.
+         * @param bytes           The number of bytes of objects per part.
+         * @param deferDecoding   Whether to keep string values undecoded.
+         * @param requiredColumns The columns to decode, null for all.
+         * @param rowPredicates   The predicates to test while reading.
+         */
+        ParallelRowIterator(final Path file, final int threads,
+                            final long bytes, final boolean deferDecoding,
+                            final Set<String> requiredColumns,
+                            final List<RowPredicate> rowPredicates) {
+            super(threads, true);
+            columns = requiredColumns;
+            predicates = rowPredicates;
+            partSize = bytes;
+            lazy = deferDecoding;
+            try {
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+                index = new JSONStructuralIndex(channel);
             } catch (IOException ioe) {
-                logger.error(ioe.getMessage());
-                parser = null;
+                logger.error("Unable to open JSON file.", ioe);
             }
         }
 
         /**
-         * Do we have another row?
+         * Find the next run of objects, and hand out its decoder.
          *
-         * @return True if we have one, otherwise false.
+         * @return The decoder, or null after the last object.
+         * @throws IOException Thrown if the file cannot be scanned.
          */
         @Override
-        public boolean hasNext() {
-            if (parser != null) {
-                JsonToken token = parser.getCurrentToken();
-                return token == JsonToken.START_OBJECT;
-            } else {
-                return false;
+        protected Callable<List<Map<String, Object>>> nextPart()
+                throws IOException {
+            if (index == null) {
+                return null;
+            }
+            long[] range = index.next(partSize);
+            if (range == null) {
+                return null;
             }
+            return new PartDecoder(range);
         }
 
         /**
-         * Retrieve the next item.
-         *
-         * @return The next row.
+         * Close the file.
          */
         @Override
-        public Map<String, Object> next() {
-            if (parser != null && hasNext()) {
+        protected void dispose() {
+            if (channel != null) {
                 try {
-                    Map<String, Object> next = parser.readValueAs(mapReference);
-                    parser.nextToken();
-                    return next;
-                } catch (Exception e) {
-                    logger.error(e.getMessage(), e);
+                    channel.close();
+                } catch (IOException ioe) {
+                    logger.error("Unable to close JSON file.", ioe);
                 }
+                channel = null;
             }
-
-            return null;
         }
 
         /**
-         * Unimplemented.
+         * Decodes all objects of one run.
          */
-        @Override
-        public void remove() {
-            // Do nothing- we can't remove from a reader.
+        private final class PartDecoder
+                implements Callable<List<Map<String, Object>>> {
+
+            /**
+             * The start and end offsets of the run.
+             */
+            private final long[] range;
+
+            /**
+             * Create a new part decoder.
+             *
+             * @param byteRange The start and end offsets of the run.
+             */
+            PartDecoder(final long[] byteRange) {
+                this.range = byteRange;
+            }
+
+            /**
+             * Read the run into a new array, and decode its objects.
+             *
+             * @return The rows.
+             * @throws IOException Thrown if the run cannot be read.
+             */
+            @Override
+            public List<Map<String, Object>> call() throws IOException {
+                int length = (int) (range[1] - range[0]);
+                ByteBuffer buffer = ByteBuffer.allocate(length + 2);
+                buffer.put((byte) '[');
+                buffer.limit(length + 1);
+                long position = range[0];
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position);
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of file.");
+                    }
+                    position += read;
+                }
+                buffer.limit(length + 2);
+                buffer.put((byte) ']');
+
+                JSONRowIterator iterator =
+                        new JSONRowIterator(columns, predicates);
+                byte[] input = buffer.array();
+                if (lazy) {
+                    iterator.open(JSONMappers.getFactory()
+                            .createParser(input), input);
+                } else {
+                    iterator.open(JSONMappers.getFactory()
+                            .createParser(input));
+                }
+                List<Map<String, Object>> rows = new ArrayList<>();
+                while (iterator.hasNext()) {
+                    Map<String, Object> row = iterator.next();
+                    if (row != null) {
+                        rows.add(row);
+                    }
+                }
+                return rows;
+            }
         }
     }
 }
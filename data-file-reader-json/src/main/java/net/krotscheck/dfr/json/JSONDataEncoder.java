@@ -4,9 +4,8 @@
 
 package net.krotscheck.dfr.json;
 
-import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.DataCodec;
 import net.krotscheck.dfr.text.AbstractTextEncoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +18,7 @@ import java.util.Map;
  *
  * @author Michael Krotscheck
  */
+@DataCodec("application/json")
 public final class JSONDataEncoder extends AbstractTextEncoder {
 
     /**
@@ -32,6 +32,12 @@ public final class JSONDataEncoder extends AbstractTextEncoder {
      */
     private JsonGenerator generator;
 
+    /**
+     * Writes rows through the generator, kept across resets along with the
+     * names it has encoded.
+     */
+    private JSONRowWriter rowWriter;
+
     /**
      * Return the decoding mimetype which this encoder supports.
      *
@@ -53,14 +59,17 @@ public final class JSONDataEncoder extends AbstractTextEncoder {
     protected void writeToOutput(final Map<String, Object> row)
             throws IOException {
         if (generator == null) {
-            ObjectMapper mapper = new ObjectMapper();
-            JsonFactory factory = new JsonFactory(mapper);
-            generator = factory.createGenerator(getWriter());
+            generator = JSONMappers.getFactory()
+                    .createGenerator(getWriter());
             generator.writeStartArray(); // [
+            if (rowWriter == null) {
+                rowWriter = new JSONRowWriter(generator);
+            } else {
+                rowWriter.setGenerator(generator);
+            }
         }
 
-        // Convert the row into a map
-        generator.writeObject(row);
+        rowWriter.writeRow(row);
     }
 
     /**
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Jackson mapper and factory shared by every JSON decoder and encoder
+ * of this module. Both are thread safe once configured, and creating them
+ * is expensive; sharing them also keeps the mapper's caches of serializers
+ * and deserializers across files. The mapper is warmed up when this class
+ * is loaded, by writing and reading back a row of every common value type.
+ *
+ * @author Michael Krotscheck
+ */
+final class JSONMappers {
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(JSONMappers.class);
+
+    /**
+     * The shared mapper.
+     */
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static {
+        warmUp();
+    }
+
+    /**
+     * Utility class, private constructor.
+     */
+    private JSONMappers() {
+    }
+
+    /**
+     * Get the shared mapper.
+     *
+     * @return The mapper.
+     */
+    static ObjectMapper getMapper() {
+        return MAPPER;
+    }
+
+    /**
+     * Get the shared factory, whose parsers and generators use the shared
+     * mapper as their codec.
+     *
+     * @return The factory.
+     */
+    static JsonFactory getFactory() {
+        return MAPPER.getFactory();
+    }
+
+    /**
+     * Write and read back a row of common values, so that the serializers
+     * and deserializers a decoder or encoder needs are already cached.
+     */
+    private static void warmUp() {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("string", "");
+        row.put("int", 0);
+        row.put("long", 0L);
+        row.put("double", 0.0);
+        row.put("boolean", false);
+        row.put("null", null);
+        row.put("map", new LinkedHashMap<String, Object>());
+        row.put("list", Arrays.asList(0, ""));
+        try {
+            byte[] bytes = MAPPER.writeValueAsBytes(row);
+            MAPPER.readValue(bytes, Map.class);
+            MAPPER.readValue(bytes, Object.class);
+            MAPPER.readValue("[]", List.class);
+        } catch (IOException ioe) {
+            logger.warn("Unable to warm up the JSON mapper.", ioe);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import net.krotscheck.dfr.IBatchIterator;
+import net.krotscheck.dfr.PredicateSet;
+import net.krotscheck.dfr.RowBatch;
+import net.krotscheck.dfr.RowBuilder;
+import net.krotscheck.dfr.RowPredicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads rows from a Jackson parser positioned on a JSON array of objects.
+ * The parser may be character or byte based, which is how the text and the
+ * stream decoders share a single implementation. If the parser reads a byte
+ * array that is handed to the iterator as well, string values are not
+ * decoded but kept as offsets into the array, see {@link JSONStringCell}.
+ *
+ * @author Michael Krotscheck
+ */
+final class JSONRowIterator implements IBatchIterator {
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(JSONRowIterator.class);
+
+    /**
+     * The JSON Parser.
+     */
+    private JsonParser parser;
+
+    /**
+     * The input the parser reads, if string values are decoded lazily.
+     */
+    private byte[] source;
+
+    /**
+     * Assembles rows, reusing the schema between rows of equal layout.
+     */
+    private final RowBuilder builder = new RowBuilder();
+
+    /**
+     * The columns to decode, null for all of them.
+     */
+    private final Set<String> columns;
+
+    /**
+     * The predicates tested while reading, null if there are none.
+     */
+    private final PredicateSet selection;
+
+    /**
+     * Create a new iterator. It is empty until a parser is opened.
+     *
+     * @param requiredColumns The columns to decode, null for all.
+     * @param rowPredicates   The predicates to test while reading.
+     */
+    JSONRowIterator(final Set<String> requiredColumns,
+                    final List<RowPredicate> rowPredicates) {
+        this.columns = requiredColumns;
+        if (rowPredicates.isEmpty()) {
+            this.selection = null;
+        } else {
+            this.selection = new PredicateSet(rowPredicates);
+        }
+    }
+
+    /**
+     * Read from a parser, advancing it into the top-level array. If the
+     * input does not hold an array, the iterator stays empty.
+     *
+     * @param jsonParser The parser.
+     * @throws IOException Thrown if the input does not hold an array.
+     */
+    void open(final JsonParser jsonParser) throws IOException {
+        open(jsonParser, null);
+    }
+
+    /**
+     * Read from a parser over a byte array, advancing it into the top-level
+     * array. String values are kept undecoded, as offsets into the array.
+     *
+     * @param jsonParser The parser.
+     * @param input      The array the parser reads, or null to decode
+     *                   string values right away.
+     * @throws IOException Thrown if the input does not hold an array.
+     */
+    void open(final JsonParser jsonParser, final byte[] input)
+            throws IOException {
+        if (jsonParser.nextToken() != JsonToken.START_ARRAY) {
+            throw new IOException(
+                    "File does not contains an array of objects.");
+        }
+
+        jsonParser.nextToken();
+        this.parser = jsonParser;
+        this.source = input;
+    }
+
+    /**
+     * Read from a parser over a sequence of top-level objects, such as
+     * newline-delimited JSON. The objects may be separated by any
+     * whitespace.
+     *
+     * @param jsonParser The parser.
+     * @throws IOException Thrown if the first object cannot be read.
+     */
+    void openSequence(final JsonParser jsonParser) throws IOException {
+        jsonParser.nextToken();
+        this.parser = jsonParser;
+        this.source = null;
+    }
+
+    /**
+     * Do we have another row?
+     *
+     * @return True if we have one, otherwise false.
+     */
+    @Override
+    public boolean hasNext() {
+        if (parser != null) {
+            JsonToken token = parser.getCurrentToken();
+            return token == JsonToken.START_OBJECT;
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * Retrieve the next item.
+     *
+     * @return The next row.
+     */
+    @Override
+    public Map<String, Object> next() {
+        while (hasNext()) {
+            try {
+                if (readObject()) {
+                    return builder.build();
+                }
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+                parser = null;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Decode up to a number of rows straight into a batch.
+     *
+     * @param batch   The batch to append rows to.
+     * @param maxRows The maximum number of rows to append.
+     * @return The number of rows appended.
+     */
+    @Override
+    public int nextBatch(final RowBatch.Builder batch, final int maxRows) {
+        int added = 0;
+        while (added < maxRows && hasNext()) {
+            try {
+                if (!readObject()) {
+                    continue;
+                }
+            } catch (Exception e) {
+                logger.error(e.getMessage(), e);
+                parser = null;
+                break;
+            }
+            builder.appendTo(batch);
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Read the fields of the next object into the row builder, and
+     * advance the parser past it. Predicate columns are tested as soon
+     * as they are read; once a row is rejected, the rest of it is
+     * skipped without being decoded.
+     *
+     * @return True if the row was read, false if it was rejected.
+     * @throws IOException Thrown if the object cannot be read.
+     */
+    private boolean readObject() throws IOException {
+        if (selection != null) {
+            selection.reset();
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            int slot = -1;
+            if (selection != null) {
+                slot = selection.slot(name);
+            }
+            if (slot >= 0 && !testField(slot)) {
+                skipObject();
+                return false;
+            }
+            if (columns == null || columns.contains(name)) {
+                readField(name, slot < 0);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        parser.nextToken();
+
+        if (selection != null && !selection.testMissing()) {
+            builder.reset();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Test the value at the parser's current token against the
+     * predicates of its column, without consuming it. Nested structures
+     * are left to the filter chain.
+     *
+     * @param slot The predicate slot of the field.
+     * @return False if the row is rejected.
+     * @throws IOException Thrown if the value cannot be read.
+     */
+    private boolean testField(final int slot) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_STRING:
+                return selection.test(slot, parser.getText());
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                    case LONG:
+                        return selection.test(slot,
+                                parser.getLongValue());
+                    default:
+                        return selection.test(slot,
+                                (Object) parser.getNumberValue());
+                }
+            case VALUE_NUMBER_FLOAT:
+                return selection.test(slot, parser.getDoubleValue());
+            case VALUE_TRUE:
+                return selection.test(slot, true);
+            case VALUE_FALSE:
+                return selection.test(slot, false);
+            case VALUE_NULL:
+                return selection.test(slot, (Object) null);
+            default:
+                selection.defer(slot);
+                return true;
+        }
+    }
+
+    /**
+     * Skip the rest of a rejected object, starting at the value of its
+     * current field, and discard what was read of it so far.
+     *
+     * @throws IOException Thrown if the object cannot be read.
+     */
+    private void skipObject() throws IOException {
+        parser.skipChildren();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        parser.nextToken();
+        builder.reset();
+    }
+
+    /**
+     * Read the value at the parser's current token into the row builder.
+     * Numbers and booleans are passed on unboxed. Nested structures
+     * are handed to the object mapper. Strings are kept undecoded if
+     * possible; the parser has not decoded them yet either, so its
+     * position is still just past the opening quote.
+     *
+     * @param name     The name of the field.
+     * @param deferred Whether the value has not been read yet.
+     * @throws IOException Thrown if the value cannot be read.
+     */
+    private void readField(final String name, final boolean deferred)
+            throws IOException {
+        switch (parser.getCurrentToken()) {
+            case VALUE_STRING:
+                if (source != null && deferred) {
+                    int offset = (int) parser.getCurrentLocation()
+                            .getByteOffset();
+                    builder.add(name, new JSONStringCell(source, offset));
+                } else {
+                    builder.add(name, parser.getText());
+                }
+                break;
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        builder.addInt(name, parser.getIntValue());
+                        break;
+                    case LONG:
+                        builder.addLong(name, parser.getLongValue());
+                        break;
+                    default:
+                        builder.add(name, parser.getNumberValue());
+                        break;
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                builder.addDouble(name, parser.getDoubleValue());
+                break;
+            case VALUE_TRUE:
+                builder.addBoolean(name, true);
+                break;
+            case VALUE_FALSE:
+                builder.addBoolean(name, false);
+                break;
+            case VALUE_NULL:
+                builder.add(name, null);
+                break;
+            default:
+                builder.add(name, parser.readValueAs(Object.class));
+                break;
+        }
+    }
+
+    /**
+     * Unimplemented.
+     */
+    @Override
+    public void remove() {
+        // Do nothing- we can't remove from a parser.
+    }
+}
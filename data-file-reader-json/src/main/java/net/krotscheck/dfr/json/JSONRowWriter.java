@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.json;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import net.krotscheck.dfr.NameCache;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.ValueWriter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes rows as JSON objects through a generator, without looking up a
+ * serializer for every row and value. The names of columns are kept as
+ * serialized strings, which hold their quoted and encoded forms, so a name
+ * is only escaped and encoded the first time it is written. Cells of a
+ * {@link Row} are written by their type without boxing; other values are
+ * written by their class, and only values that are not strings, numbers
+ * or booleans are handed to the generator's object mapper.
+ *
+ * @author Michael Krotscheck
+ */
+final class JSONRowWriter extends ValueWriter {
+
+    /**
+     * The generator.
+     */
+    private JsonGenerator generator;
+
+    /**
+     * The serialized names of the columns seen so far.
+     */
+    private final NameCache<SerializedString> names =
+            new NameCache<SerializedString>() {
+                @Override
+                protected SerializedString encode(final String name) {
+                    return new SerializedString(name);
+                }
+
+                @Override
+                protected SerializedString[] newArray(final int size) {
+                    return new SerializedString[size];
+                }
+            };
+
+    /**
+     * Create a new row writer.
+     *
+     * @param jsonGenerator The generator, with an object mapper as codec.
+     */
+    JSONRowWriter(final JsonGenerator jsonGenerator) {
+        this.generator = jsonGenerator;
+    }
+
+    /**
+     * Write to another generator, keeping the names seen so far.
+     *
+     * @param jsonGenerator The generator, with an object mapper as codec.
+     */
+    void setGenerator(final JsonGenerator jsonGenerator) {
+        this.generator = jsonGenerator;
+    }
+
+    /**
+     * Write a row as an object.
+     *
+     * @param row The row.
+     * @throws IOException Thrown if the row cannot be written.
+     */
+    void writeRow(final Map<String, Object> row) throws IOException {
+        generator.writeStartObject();
+        if (row instanceof Row) {
+            writeCells((Row) row);
+        } else {
+            for (Map.Entry<String, Object> entry : row.entrySet()) {
+                generator.writeFieldName(names.name(entry.getKey()));
+                writeValue(entry.getValue());
+            }
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Write the present cells of a row, reading numbers and booleans
+     * without boxing them.
+     *
+     * @param row The row.
+     * @throws IOException Thrown if a cell cannot be written.
+     */
+    private void writeCells(final Row row) throws IOException {
+        SerializedString[] columns = names.names(row.getSchema());
+        for (int i = 0; i < columns.length; i++) {
+            if (row.isPresent(i)) {
+                generator.writeFieldName(columns[i]);
+                writeCell(row, i);
+            }
+        }
+    }
+
+    /**
+     * Write a null.
+     *
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeNull() throws IOException {
+        generator.writeNull();
+    }
+
+    /**
+     * Write an int.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeInt(final int value) throws IOException {
+        generator.writeNumber(value);
+    }
+
+    /**
+     * Write a long.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeLong(final long value) throws IOException {
+        generator.writeNumber(value);
+    }
+
+    /**
+     * Write a float.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeFloat(final float value) throws IOException {
+        generator.writeNumber(value);
+    }
+
+    /**
+     * Write a double.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeDouble(final double value) throws IOException {
+        generator.writeNumber(value);
+    }
+
+    /**
+     * Write a boolean.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeBoolean(final boolean value) throws IOException {
+        generator.writeBoolean(value);
+    }
+
+    /**
+     * Write a string.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeString(final String value) throws IOException {
+        generator.writeString(value);
+    }
+
+    /**
+     * Hand a value that is not a string, number or boolean to the object
+     * mapper.
+     *
+     * @param value The value.
+     * @throws IOException Thrown if the value cannot be written.
+     */
+    @Override
+    protected void writeObject(final Object value) throws IOException {
+        generator.writeObject(value);
+    }
+}
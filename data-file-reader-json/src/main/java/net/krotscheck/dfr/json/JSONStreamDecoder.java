@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.json;
+
+import net.krotscheck.dfr.DataCodec;
+import net.krotscheck.dfr.stream.AbstractStreamDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * This data decoder reads a JSON encoded input stream, and generates objects
+ * for every row found. Unlike {@link JSONDataDecoder}, it parses the raw
+ * bytes of the stream, which saves decoding the input into characters
+ * first. The encoding is detected from the first bytes of the stream, and
+ * is UTF-8 unless a byte order mark says otherwise.
+ *
+ * @author Michael Krotscheck
+ */
+@DataCodec("application/json")
+public final class JSONStreamDecoder extends AbstractStreamDecoder {
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(JSONStreamDecoder.class);
+
+    /**
+     * Create the iterator for the JSON stream.
+     *
+     * @return An iterator.
+     */
+    @Override
+    protected Iterator<Map<String, Object>> buildIterator() {
+        JSONRowIterator iterator = new JSONRowIterator(getRequiredColumns(),
+                getRowPredicates());
+        InputStream stream = getInputStream();
+        if (stream == null) {
+            logger.error("No input stream set.");
+            return iterator;
+        }
+        try {
+            iterator.open(JSONMappers.getFactory().createParser(stream));
+        } catch (IOException ioe) {
+            logger.error(ioe.getMessage());
+        }
+        return iterator;
+    }
+
+    /**
+     * Return the decoding mimetype which this decoder supports.
+     *
+     * @return "application/json"
+     */
+    @Override
+    public String getMimeType() {
+        return "application/json";
+    }
+
+    /**
+     * Dispose of this decoder.
+     */
+    @Override
+    protected void dispose() {
+        // Do nothing.
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.json;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import net.krotscheck.dfr.DataCodec;
+import net.krotscheck.dfr.stream.AbstractStreamEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * JSON Data Encoder for output streams. Unlike {@link JSONDataEncoder}, it
+ * writes UTF-8 bytes directly, which saves encoding the output through a
+ * character writer.
+ *
+ * @author Michael Krotscheck
+ */
+@DataCodec("application/json")
+public final class JSONStreamEncoder extends AbstractStreamEncoder {
+
+    /**
+     * Logger instance.
+     */
+    private static Logger logger =
+            LoggerFactory.getLogger(JSONStreamEncoder.class);
+
+    /**
+     * The JSON generation engine.
+     */
+    private JsonGenerator generator;
+
+    /**
+     * Writes rows through the generator, kept across resets along with the
+     * names it has encoded.
+     */
+    private JSONRowWriter rowWriter;
+
+    /**
+     * Return the decoding mimetype which this encoder supports.
+     *
+     * @return "application/json"
+     */
+    @Override
+    public String getMimeType() {
+        return "application/json";
+    }
+
+    /**
+     * Write a row to the stream.
+     *
+     * @param row A row of data.
+     * @throws java.io.IOException Thrown if there's a problem writing to the
+     *                             destination.
+     */
+    @Override
+    protected void writeToOutput(final Map<String, Object> row)
+            throws IOException {
+        if (generator == null) {
+            generator = JSONMappers.getFactory()
+                    .createGenerator(getOutputStream(), JsonEncoding.UTF8);
+            generator.writeStartArray(); // [
+            if (rowWriter == null) {
+                rowWriter = new JSONRowWriter(generator);
+            } else {
+                rowWriter.setGenerator(generator);
+            }
+        }
+
+        rowWriter.writeRow(row);
+    }
+
+    /**
+     * Closes the output stream.
+     */
+    @Override
+    protected void dispose() {
+        try {
+            if (generator != null) {
+                generator.writeEndArray();
+                generator.close();
+            }
+            this.getOutputStream().close();
+        } catch (IOException ioe) {
+            logger.error("Unable to close stream", ioe);
+            logger.trace(ioe.getMessage(), ioe);
+        } finally {
+            generator = null;
+            this.setOutputStream(null);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.json;
+
+import net.krotscheck.dfr.ILazyCell;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A JSON string value that is decoded only when it is read. It holds the
+ * UTF-8 input it was parsed from and the offset of its first character,
+ * and finds the closing quote when it is decoded.
+ *
+ * @author Michael Krotscheck
+ */
+final class JSONStringCell implements ILazyCell {
+
+    /**
+     * The number of hex digits of a unicode escape.
+     */
+    private static final int HEX_DIGITS = 4;
+
+    /**
+     * The hex radix.
+     */
+    private static final int HEX = 16;
+
+    /**
+     * The input.
+     */
+    private final byte[] source;
+
+    /**
+     * The offset of the first byte after the opening quote.
+     */
+    private final int start;
+
+    /**
+     * Create a new cell.
+     *
+     * @param input  The input.
+     * @param offset The offset of the first byte after the opening quote.
+     */
+    JSONStringCell(final byte[] input, final int offset) {
+        this.source = input;
+        this.start = offset;
+    }
+
+    /**
+     * Decode the string. Strings without escapes are decoded in one go.
+     *
+     * @return The string.
+     */
+    @Override
+    public Object decode() {
+        int end = start;
+        boolean escaped = false;
+        while (source[end] != '"') {
+            if (source[end] == '\\') {
+                escaped = true;
+                end++;
+            }
+            end++;
+        }
+        if (!escaped) {
+            return new String(source, start, end - start,
+                    StandardCharsets.UTF_8);
+        }
+        return unescape(end);
+    }
+
+    /**
+     * Decode a string with escapes. The bytes between escapes are decoded
+     * as runs; a backslash never occurs inside a multi-byte UTF-8 sequence,
+     * so no sequence is split.
+     *
+     * @param end The offset of the closing quote.
+     * @return The string.
+     */
+    private String unescape(final int end) {
+        StringBuilder text = new StringBuilder(end - start);
+        int run = start;
+        int i = start;
+        while (i < end) {
+            if (source[i] != '\\') {
+                i++;
+                continue;
+            }
+            text.append(new String(source, run, i - run,
+                    StandardCharsets.UTF_8));
+            char escape = (char) source[i + 1];
+            i += 2;
+            switch (escape) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    text.append((char) Integer.parseInt(new String(source, i,
+                            HEX_DIGITS, StandardCharsets.US_ASCII), HEX));
+                    i += HEX_DIGITS;
+                    break;
+                default:
+                    text.append(escape);
+                    break;
+            }
+            run = i;
+        }
+        text.append(new String(source, run, end - run,
+                StandardCharsets.UTF_8));
+        return text.toString();
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Finds the boundaries of the objects in a JSON file that holds a single
+ * top-level array, without parsing them. The file is scanned byte by byte,
+ * tracking only strings, escapes and nesting depth, which is enough to tell
+ * where each element of the array starts and ends. Consecutive elements are
+ * grouped into ranges of roughly a given size, so that each range can be
+ * parsed on its own.
+ * <p>
+ * Only UTF-8 is supported. Multi-byte characters never contain bytes in the
+ * ASCII range, so they cannot be mistaken for structural characters.
+ *
+ * @author Michael Krotscheck
+ */
+final class JSONStructuralIndex {
+
+    /**
+     * The size of the scan buffer.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The UTF-8 byte order mark, which may precede the array.
+     */
+    private static final byte[] BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
+    /**
+     * The file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The scan buffer.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * The file offset of the first byte in the buffer.
+     */
+    private long bufferOffset = 0;
+
+    /**
+     * The index of the next byte to scan in the buffer.
+     */
+    private int index = 0;
+
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    private int limit = 0;
+
+    /**
+     * The current nesting depth; the top-level array is depth one.
+     */
+    private int depth = 0;
+
+    /**
+     * Whether the scan is inside a string.
+     */
+    private boolean inString = false;
+
+    /**
+     * Whether the previous byte was an escape inside a string.
+     */
+    private boolean escaped = false;
+
+    /**
+     * Whether the scan reached the end of the array.
+     */
+    private boolean finished = false;
+
+    /**
+     * Create a new index over a file.
+     *
+     * @param file The file.
+     */
+    JSONStructuralIndex(final FileChannel file) {
+        this.channel = file;
+    }
+
+    /**
+     * Find the next run of complete objects, at least the given number of
+     * bytes long unless the array ends first. The scan stops at the end of
+     * the array, or at the first element that is not an object.
+     *
+     * @param targetSize The target size of the run.
+     * @return The start and end offsets of the run, or null if there are no
+     * more objects.
+     * @throws IOException Thrown if the file cannot be read, or does not
+     *                     start with an array.
+     */
+    long[] next(final long targetSize) throws IOException {
+        if (finished) {
+            return null;
+        }
+        if (depth == 0) {
+            openArray();
+        }
+
+        long start = -1;
+        long end = -1;
+        byte[] bytes = buffer.array();
+        while (!finished) {
+            if (index == limit && !fill()) {
+                finished = true;
+                break;
+            }
+            byte b = bytes[index];
+            long offset = bufferOffset + index;
+            index++;
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (b) {
+                case '"':
+                    inString = true;
+                    finished = depth == 1;
+                    break;
+                case '{':
+                    if (depth == 1 && start < 0) {
+                        start = offset;
+                    }
+                    depth++;
+                    break;
+                case '[':
+                    finished = depth == 1;
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    if (depth == 1) {
+                        end = offset + 1;
+                        if (end - start >= targetSize) {
+                            return new long[]{start, end};
+                        }
+                    } else if (depth == 0) {
+                        finished = true;
+                    }
+                    break;
+                case ',':
+                case ' ':
+                case '\t':
+                case '\n':
+                case '\r':
+                    break;
+                default:
+                    finished = depth == 1;
+                    break;
+            }
+        }
+
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        return new long[]{start, end};
+    }
+
+    /**
+     * Skip whitespace up to the opening bracket of the top-level array.
+     *
+     * @throws IOException Thrown if the file does not start with an array.
+     */
+    private void openArray() throws IOException {
+        byte[] bytes = buffer.array();
+        while (index < limit || fill()) {
+            byte b = bytes[index];
+            index++;
+            if (b == '[') {
+                depth = 1;
+                return;
+            }
+            boolean bom = bufferOffset + index <= BOM.length
+                    && b == BOM[(int) (bufferOffset + index - 1)];
+            if (!bom && b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                break;
+            }
+        }
+        finished = true;
+        throw new IOException("File does not contains an array of objects.");
+    }
+
+    /**
+     * Read the next block of the file into the buffer.
+     *
+     * @return False at the end of the file.
+     * @throws IOException Thrown if the file cannot be read.
+     */
+    private boolean fill() throws IOException {
+        bufferOffset += limit;
+        buffer.clear();
+        int read = channel.read(buffer, bufferOffset);
+        index = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
@@ -17,10 +17,18 @@
 
 package net.krotscheck.dfr.json;
 
+import net.krotscheck.dfr.ColumnVector;
 import net.krotscheck.dfr.IDataDecoder;
+import net.krotscheck.dfr.IProjectionFilter;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowBatch;
+import net.krotscheck.dfr.RowPredicate;
+import net.krotscheck.dfr.Type;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
@@ -30,11 +38,22 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
 
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.anyMap;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -48,6 +67,12 @@ import static org.mockito.Mockito.when;
  */
 public final class JSONDataDecoderTest {
 
+    /**
+     * Temporary files for parallel decoding.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     /**
      * A list of pregenerated test data for our encoder.
      */
@@ -122,7 +147,9 @@ public final class JSONDataDecoderTest {
 
         Integer count = 0;
         for (Map<String, Object> resultRow : decoder) {
-            Assert.assertTrue(resultRow instanceof LinkedHashMap);
+            Assert.assertTrue(resultRow instanceof Row);
+            Assert.assertEquals(Type.INTEGER, ((Row) resultRow).getType(0));
+            Assert.assertEquals((long) count, ((Row) resultRow).getLong(0));
             Assert.assertEquals(count, resultRow.get("column_1"));
             Assert.assertEquals(String.format("String %s", count),
                     resultRow.get("column_2"));
@@ -132,6 +159,107 @@ public final class JSONDataDecoderTest {
         Assert.assertEquals((int) count, 10);
     }
 
+    /**
+     * Assert that rows may be decoded in columnar batches.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testNextBatch() throws Exception {
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setReader(new InputStreamReader(bais));
+
+        RowBatch batch = decoder.nextBatch(4);
+        Assert.assertEquals(4, batch.size());
+        ColumnVector first = batch.getColumn("column_1");
+        Assert.assertEquals(Type.INTEGER, first.getType());
+        Assert.assertEquals(3, first.get(3));
+        Assert.assertEquals("foo", batch.getColumn("column_3").get(0));
+
+        Assert.assertEquals(4, decoder.nextBatch(4).size());
+        batch = decoder.nextBatch(4);
+        Assert.assertEquals(2, batch.size());
+        Assert.assertEquals("String 9", batch.getColumn("column_2").get(1));
+        Assert.assertEquals(0, decoder.nextBatch(4).size());
+    }
+
+    /**
+     * Assert that only the columns required by a leading projection filter
+     * are decoded.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testProjection() throws Exception {
+        Set<String> columns =
+                new HashSet<>(Arrays.asList("column_3", "column_1"));
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns()).thenReturn(columns);
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setReader(new InputStreamReader(bais));
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(2, row.size());
+            Assert.assertTrue(row.containsKey("column_1"));
+            Assert.assertTrue(row.containsKey("column_3"));
+            Assert.assertFalse(row.containsKey("column_2"));
+            count++;
+        }
+        Assert.assertEquals(10, count);
+    }
+
+    /**
+     * Assert that rows rejected by a leading predicate are skipped, also in
+     * combination with a projection that does not include the predicate
+     * column.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPredicate() throws Exception {
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns())
+                .thenReturn(Collections.singleton("column_2"));
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setReader(new InputStreamReader(bais));
+        decoder.addFilter(RowPredicate.greaterThanOrEqualTo("column_1", 7));
+        decoder.addFilter(RowPredicate.notEqualTo("column_1", "8"));
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(String.format("String %s", count * 2 + 7),
+                    row.get("column_2"));
+            Assert.assertFalse(row.containsKey("column_3"));
+            count++;
+        }
+        Assert.assertEquals(2, count);
+    }
+
+    /**
+     * Assert that a predicate that rejects every row ends the iteration.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testPredicateRejectsAll() throws Exception {
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setReader(new InputStreamReader(bais));
+        decoder.addFilter(RowPredicate.isNull("column_1"));
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+    }
+
     /**
      * Make sure the remove() method does nothing.
      */
@@ -308,4 +436,186 @@ public final class JSONDataDecoderTest {
         Assert.assertFalse(iterator.hasNext());
         Assert.assertNull(iterator.next());
     }
+
+    /**
+     * Write a JSON array whose strings contain braces, brackets, commas,
+     * escaped quotes and non-ASCII text, and whose objects nest.
+     *
+     * @param rows The number of objects.
+     * @return The file.
+     * @throws IOException Thrown if the file cannot be written.
+     */
+    private Path writeTrickyFile(final int rows) throws IOException {
+        StringBuilder json = new StringBuilder("\n[ ");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                json.append(",\n  ");
+            }
+            json.append("{\"id\": ").append(i)
+                    .append(", \"text\": \"}{ ][, \\\"q\\\" \\\\ ")
+                    .append("\u00fcber ").append(i).append("\"")
+                    .append(", \"nested\": {\"list\": [1, {\"a\": \"]\"}]}")
+                    .append(", \"even\": ").append(i % 2 == 0).append('}');
+        }
+        json.append(" ]\n");
+        Path file = folder.newFile().toPath();
+        Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    /**
+     * Decode a file sequentially, for comparison.
+     *
+     * @param file The file.
+     * @return All rows.
+     */
+    private List<Map<String, Object>> decodeSequentially(final Path file) {
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setPath(file);
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        return rows;
+    }
+
+    /**
+     * Assert that a file decoded in parallel yields the same rows, in the
+     * same order, as a sequential decode.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testParallelDecoder() throws Exception {
+        Path file = writeTrickyFile(1000);
+        List<Map<String, Object>> expected = decodeSequentially(file);
+        Assert.assertEquals(1000, expected.size());
+        Assert.assertEquals("}{ ][, \"q\" \\ \u00fcber 7",
+                expected.get(7).get("text"));
+
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setPath(file);
+        decoder.setParallelism(4);
+        decoder.setPartSize(500);
+        Assert.assertEquals(file, decoder.getPath());
+        Assert.assertEquals(Integer.valueOf(4), decoder.getParallelism());
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        Assert.assertEquals(expected, rows);
+    }
+
+    /**
+     * Assert that projections and predicates apply to every part of a
+     * parallel decode.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testParallelPredicate() throws Exception {
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns())
+                .thenReturn(Collections.singleton("id"));
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setPath(writeTrickyFile(1000));
+        decoder.setParallelism(3);
+        decoder.setPartSize(1000);
+        decoder.addFilter(RowPredicate.equalTo("even", false));
+        decoder.addFilter(filter);
+
+        int count = 0;
+        for (Map<String, Object> row : decoder) {
+            Assert.assertEquals(count * 2 + 1, row.get("id"));
+            Assert.assertFalse(row.containsKey("text"));
+            count++;
+        }
+        decoder.close();
+        Assert.assertEquals(500, count);
+    }
+
+    /**
+     * Assert that a file that does not hold an array decodes to no rows.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testParallelWithoutArray() throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, "{\"id\": 1}".getBytes(StandardCharsets.UTF_8));
+
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setPath(file);
+        decoder.setParallelism(2);
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+        decoder.close();
+    }
+
+    /**
+     * Assert that rows with lazily decoded strings read the same as eagerly
+     * decoded ones, sequentially and in parallel, and that predicates on
+     * string columns still see the decoded text.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testLazy() throws Exception {
+        Path file = writeTrickyFile(500);
+        List<Map<String, Object>> expected = decodeSequentially(file);
+
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setPath(file);
+        decoder.setPartSize(700);
+        Assert.assertFalse(decoder.isLazy());
+        decoder.setLazy(true);
+        Assert.assertTrue(decoder.isLazy());
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        Assert.assertEquals(expected, rows);
+
+        decoder = new JSONDataDecoder();
+        decoder.setPath(file);
+        decoder.setParallelism(3);
+        decoder.setPartSize(700);
+        decoder.setLazy(true);
+        decoder.addFilter(RowPredicate.equalTo("text",
+                "}{ ][, \"q\" \\ \u00fcber 42"));
+        rows.clear();
+        for (Map<String, Object> row : decoder) {
+            rows.add(row);
+        }
+        decoder.close();
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(expected.get(42), rows.get(0));
+    }
+
+    /**
+     * Assert that restoring the settings returns them to their defaults.
+     *
+     * @throws Exception Should not be thrown.
+     */
+    @Test
+    public void testRestoreSettings() throws Exception {
+        JSONDataDecoder decoder = new JSONDataDecoder();
+        decoder.setPath(Files.createTempFile("restore", ".json"));
+        decoder.setParallelism(4);
+        decoder.setLazy(true);
+
+        decoder.restoreSettings();
+        Assert.assertNull(decoder.getPath());
+        Assert.assertNull(decoder.getParallelism());
+        Assert.assertFalse(decoder.isLazy());
+    }
 }
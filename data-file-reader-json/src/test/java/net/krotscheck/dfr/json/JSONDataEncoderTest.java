@@ -27,6 +27,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
@@ -134,6 +135,32 @@ public final class JSONDataEncoderTest {
         }
     }
 
+    /**
+     * Assert that a reset encoder writes a complete document to its next
+     * writer.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReset() throws Exception {
+        JSONDataEncoder encoder = new JSONDataEncoder();
+        StringWriter first = new StringWriter();
+        encoder.setWriter(first);
+        encoder.write(testData.get(0));
+
+        StringWriter second = new StringWriter();
+        encoder.reset(second);
+        encoder.write(testData.get(1));
+        encoder.write(testData.get(2));
+        encoder.close();
+
+        Assert.assertEquals("[{\"column_1\":0,\"column_2\":\"String 0\","
+                + "\"column_3\":\"foo\"}]", first.toString());
+        Assert.assertEquals("[{\"column_1\":1,\"column_2\":\"String 1\","
+                + "\"column_3\":\"foo\"},{\"column_1\":2,\"column_2\":"
+                + "\"String 2\",\"column_3\":\"foo\"}]", second.toString());
+    }
+
     /**
      * Assert close called prematurely.
      *
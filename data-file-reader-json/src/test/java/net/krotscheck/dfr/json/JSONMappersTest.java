@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.json;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Unit tests for the shared JSON mappers.
+ *
+ * @author Michael Krotscheck
+ */
+public final class JSONMappersTest {
+
+    /**
+     * Assert that the mapper and factory are shared, and that the factory
+     * uses the mapper as its codec.
+     */
+    @Test
+    public void testShared() {
+        Assert.assertNotNull(JSONMappers.getMapper());
+        Assert.assertSame(JSONMappers.getMapper(), JSONMappers.getMapper());
+        Assert.assertSame(JSONMappers.getFactory(),
+                JSONMappers.getFactory());
+        Assert.assertSame(JSONMappers.getMapper(),
+                JSONMappers.getFactory().getCodec());
+    }
+}
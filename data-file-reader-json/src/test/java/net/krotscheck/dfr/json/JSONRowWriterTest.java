@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowSchema;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit tests for the JSON row writer.
+ *
+ * @author Michael Krotscheck
+ */
+public final class JSONRowWriterTest {
+
+    /**
+     * Write rows as a JSON array.
+     *
+     * @param rows The rows.
+     * @return The JSON text.
+     * @throws Exception Thrown if the rows cannot be written.
+     */
+    private String write(final List<Map<String, Object>> rows)
+            throws Exception {
+        StringWriter writer = new StringWriter();
+        JsonGenerator generator = new JsonFactory(new ObjectMapper())
+                .createGenerator(writer);
+        JSONRowWriter rowWriter = new JSONRowWriter(generator);
+        generator.writeStartArray();
+        for (Map<String, Object> row : rows) {
+            rowWriter.writeRow(row);
+        }
+        generator.writeEndArray();
+        generator.close();
+        return writer.toString();
+    }
+
+    /**
+     * Assert that rows are written the way the object mapper writes them.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testMatchesMapper() throws Exception {
+        Row typed = new Row(new RowSchema(new String[]{"i", "l", "f", "d",
+                "b", "n", "s", "date", "gone", "quote\"é"}));
+        typed.setInt(0, 1);
+        typed.setLong(1, 5000000000L);
+        typed.setFloat(2, 1.5f);
+        typed.setDouble(3, 0.25);
+        typed.setBoolean(4, true);
+        typed.set(6, "text \"é\"\n");
+        typed.set(7, new Date(1000L));
+        typed.remove("gone");
+        typed.set(9, Arrays.asList(1, "two"));
+
+        Row other = new Row(new RowSchema(new String[]{"s", "i"}));
+        other.set(0, "x");
+        other.setInt(1, 2);
+
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("i", 1);
+        map.put("l", 2L);
+        map.put("f", 1.5f);
+        map.put("d", 0.5);
+        map.put("b", false);
+        map.put("n", null);
+        map.put("quote\"é", "y");
+        map.put("nested", new LinkedHashMap<>(map));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        rows.add(typed);
+        rows.add(other);
+        rows.add(typed);
+        rows.add(map);
+        rows.add(map);
+
+        Assert.assertEquals(new ObjectMapper().writeValueAsString(rows),
+                write(rows));
+    }
+
+    /**
+     * Assert that names past those kept are still written.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testManyNames() throws Exception {
+        Map<String, Object> wide = new LinkedHashMap<>();
+        for (int i = 0; i < 5000; i++) {
+            wide.put("key" + i, i);
+        }
+        List<Map<String, Object>> rows = new ArrayList<>();
+        rows.add(wide);
+        rows.add(wide);
+
+        Assert.assertEquals(new ObjectMapper().writeValueAsString(rows),
+                write(rows));
+    }
+}
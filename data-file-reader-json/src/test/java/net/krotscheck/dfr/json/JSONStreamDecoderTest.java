@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.json;
+
+import net.krotscheck.dfr.DecoderCache;
+import net.krotscheck.dfr.IDataDecoder;
+import net.krotscheck.dfr.IProjectionFilter;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowPredicate;
+import net.krotscheck.dfr.Type;
+import net.krotscheck.dfr.stream.IStreamDecoder;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import static org.mockito.AdditionalAnswers.returnsFirstArg;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Test the JSON Stream Decoder.
+ *
+ * @author Michael Krotscheck
+ */
+public final class JSONStreamDecoderTest {
+
+    /**
+     * The encoded test data.
+     */
+    private ByteArrayInputStream bais;
+
+    /**
+     * Reset our test data.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Before
+    public void setup() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JSONStreamEncoder encoder = new JSONStreamEncoder();
+        encoder.setOutputStream(baos);
+
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> data = new LinkedHashMap<>();
+            data.put("column_1", i);
+            data.put("column_2", String.format("Strïng %s", i));
+            data.put("column_3", "foo");
+            encoder.write(data);
+        }
+        encoder.close();
+
+        bais = new ByteArrayInputStream(baos.toByteArray());
+    }
+
+    /**
+     * Make sure the decoder is autodiscoverable by the java ServiceLoader.
+     */
+    @Test
+    public void testDecoderDiscovery() {
+        ServiceLoader<IDataDecoder> loader
+                = ServiceLoader.load(IDataDecoder.class);
+
+        for (IDataDecoder decoder : loader) {
+            if (decoder instanceof JSONStreamDecoder) {
+                Assert.assertTrue(true);
+                return;
+            }
+        }
+
+        Assert.fail();
+    }
+
+    /**
+     * Assert that the decoder cache hands out either variant.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testDecoderCache() throws Exception {
+        Assert.assertTrue(DecoderCache.getDecoder("application/json")
+                instanceof JSONDataDecoder);
+        Assert.assertTrue(DecoderCache.getDecoder("application/json",
+                IStreamDecoder.class) instanceof JSONStreamDecoder);
+    }
+
+    /**
+     * Assert that the mimetype is correct.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testMimeType() throws Exception {
+        JSONStreamDecoder decoder = new JSONStreamDecoder();
+        Assert.assertEquals("application/json", decoder.getMimeType());
+    }
+
+    /**
+     * Decode a stream of UTF-8 bytes.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testSimpleDecoder() throws Exception {
+        JSONStreamDecoder decoder = new JSONStreamDecoder();
+        decoder.setInputStream(bais);
+
+        Integer count = 0;
+        for (Map<String, Object> resultRow : decoder) {
+            Assert.assertTrue(resultRow instanceof Row);
+            Assert.assertEquals(Type.INTEGER, ((Row) resultRow).getType(0));
+            Assert.assertEquals(count, resultRow.get("column_1"));
+            Assert.assertEquals(String.format("Strïng %s", count),
+                    resultRow.get("column_2"));
+            Assert.assertEquals("foo", resultRow.get("column_3"));
+            count++;
+        }
+        Assert.assertEquals(10, (int) count);
+        decoder.close();
+    }
+
+    /**
+     * Assert that projections and predicates apply to the stream decoder.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPredicate() throws Exception {
+        IProjectionFilter filter = mock(IProjectionFilter.class);
+        when(filter.getRequiredColumns())
+                .thenReturn(Collections.singleton("column_2"));
+        when(filter.apply(anyMap())).then(returnsFirstArg());
+
+        JSONStreamDecoder decoder = new JSONStreamDecoder();
+        decoder.setInputStream(bais);
+        decoder.addFilter(RowPredicate.equalTo("column_1", 3));
+        decoder.addFilter(filter);
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Map<String, Object> row = iterator.next();
+        Assert.assertEquals(3, row.get("column_1"));
+        Assert.assertEquals("Strïng 3", row.get("column_2"));
+        Assert.assertFalse(row.containsKey("column_3"));
+        Assert.assertNull(iterator.next());
+    }
+
+    /**
+     * Assert that UTF-16 input is detected from its byte order mark.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testUtf16() throws Exception {
+        byte[] bytes = "[{\"a\":\"é\"}]".getBytes(StandardCharsets.UTF_16);
+        JSONStreamDecoder decoder = new JSONStreamDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(bytes));
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertEquals("é", iterator.next().get("a"));
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * Test with an invalid json stream.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testBadJson() throws Exception {
+        byte[] bytes = "[{\"foo\":\"bar\"},{".getBytes(StandardCharsets.UTF_8);
+        JSONStreamDecoder decoder = new JSONStreamDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(bytes));
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertEquals("bar", iterator.next().get("foo"));
+        Assert.assertNull(iterator.next());
+    }
+
+    /**
+     * Test with a stream that does not hold an array.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testBadJsonWithoutArray() throws Exception {
+        byte[] bytes = "{}".getBytes(StandardCharsets.UTF_8);
+        JSONStreamDecoder decoder = new JSONStreamDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(bytes));
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+    }
+
+    /**
+     * Test without an input stream.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testNoInputStream() throws Exception {
+        JSONStreamDecoder decoder = new JSONStreamDecoder();
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+    }
+
+    /**
+     * Make sure that throwing an exception on close still exits cleanly.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testCloseException() throws Exception {
+        JSONStreamDecoder decoder = new JSONStreamDecoder();
+
+        InputStream input = mock(InputStream.class);
+        doThrow(IOException.class).when(input).close();
+
+        decoder.setInputStream(input);
+        decoder.close();
+
+        verify(input, times(1)).close();
+        Assert.assertNull(decoder.getInputStream());
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.krotscheck.dfr.json;
+
+import net.krotscheck.dfr.EncoderCache;
+import net.krotscheck.dfr.IDataEncoder;
+import net.krotscheck.dfr.stream.IStreamEncoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Test our JSON Stream Encoder.
+ *
+ * @author Michael Krotscheck
+ */
+public final class JSONStreamEncoderTest {
+
+    /**
+     * Make sure the encoder is autodiscoverable by the java ServiceLoader.
+     */
+    @Test
+    public void testEncoderDiscovery() {
+        ServiceLoader<IDataEncoder> loader
+                = ServiceLoader.load(IDataEncoder.class);
+
+        for (IDataEncoder encoder : loader) {
+            if (encoder instanceof JSONStreamEncoder) {
+                Assert.assertTrue(true);
+                return;
+            }
+        }
+
+        Assert.fail();
+    }
+
+    /**
+     * Assert that the encoder cache hands out either variant.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testEncoderCache() throws Exception {
+        Assert.assertTrue(EncoderCache.getEncoder("application/json")
+                instanceof JSONDataEncoder);
+        Assert.assertTrue(EncoderCache.getEncoder("application/json",
+                IStreamEncoder.class) instanceof JSONStreamEncoder);
+    }
+
+    /**
+     * Assert that the mimetype is correct.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testMimeType() throws Exception {
+        JSONStreamEncoder encoder = new JSONStreamEncoder();
+        Assert.assertEquals("application/json", encoder.getMimeType());
+    }
+
+    /**
+     * Assert that rows are written as UTF-8 bytes.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testSimpleEncoder() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        JSONStreamEncoder encoder = new JSONStreamEncoder();
+        encoder.setOutputStream(baos);
+
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("text", "é");
+        encoder.write(row);
+        encoder.close();
+
+        Assert.assertEquals("[{\"id\":1,\"text\":\"é\"}]",
+                new String(baos.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertNull(encoder.getOutputStream());
+    }
+
+    /**
+     * Assert that a reset encoder writes a complete document to its next
+     * stream.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testReset() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("text", "é");
+
+        JSONStreamEncoder encoder = new JSONStreamEncoder();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        encoder.setOutputStream(first);
+        encoder.write(row);
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        encoder.reset(second);
+        encoder.write(row);
+        encoder.close();
+
+        Assert.assertEquals("[{\"id\":1,\"text\":\"é\"}]",
+                new String(first.toByteArray(), StandardCharsets.UTF_8));
+        Assert.assertArrayEquals(first.toByteArray(), second.toByteArray());
+    }
+
+    /**
+     * Assert close called prematurely.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testPrematureClose() throws Exception {
+        JSONStreamEncoder encoder = new JSONStreamEncoder();
+        OutputStream mockStream = mock(OutputStream.class);
+        encoder.setOutputStream(mockStream);
+        encoder.close();
+
+        Assert.assertNull(encoder.getOutputStream());
+        verify(mockStream, times(1)).close();
+    }
+
+    /**
+     * Assert close called with exception doesn't blow up in our faces.
+     *
+     * @throws Exception Unexpected exceptions.
+     */
+    @Test
+    public void testExceptionClose() throws Exception {
+        JSONStreamEncoder encoder = new JSONStreamEncoder();
+        OutputStream mockStream = mock(OutputStream.class);
+        doThrow(IOException.class).when(mockStream).close();
+        encoder.setOutputStream(mockStream);
+        encoder.close();
+
+        Assert.assertNull(encoder.getOutputStream());
+        verify(mockStream, times(1)).close();
+    }
+}
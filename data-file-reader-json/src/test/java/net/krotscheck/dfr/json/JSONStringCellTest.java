@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.json;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for lazily decoded JSON strings.
+ *
+ * @author Michael Krotscheck
+ */
+public final class JSONStringCellTest {
+
+    /**
+     * Decode the first string of a JSON fragment.
+     *
+     * @param json The fragment, starting with a quote.
+     * @return The decoded string.
+     */
+    private Object decode(final String json) {
+        byte[] input = json.getBytes(StandardCharsets.UTF_8);
+        return new JSONStringCell(input, 1).decode();
+    }
+
+    /**
+     * Assert that plain strings are decoded up to their closing quote.
+     */
+    @Test
+    public void testPlain() {
+        Assert.assertEquals("", decode("\"\", \"x\""));
+        Assert.assertEquals("abc", decode("\"abc\"}"));
+        Assert.assertEquals("\u00fcber \u65e5\u672c",
+                decode("\"\u00fcber \u65e5\u672c\""));
+    }
+
+    /**
+     * Assert that every JSON escape is decoded.
+     */
+    @Test
+    public void testEscapes() {
+        Assert.assertEquals("a\"b\\c/d", decode("\"a\\\"b\\\\c\\/d\""));
+        Assert.assertEquals("\b\f\n\r\t", decode("\"\\b\\f\\n\\r\\t\""));
+        Assert.assertEquals("\u00e9\u00fc!", decode("\"\\u00e9\u00fc!\""));
+        Assert.assertEquals("\ud83d\ude00", decode("\"\\ud83d\\ude00\""));
+        Assert.assertEquals("\\", decode("\"\\\\\""));
+    }
+}
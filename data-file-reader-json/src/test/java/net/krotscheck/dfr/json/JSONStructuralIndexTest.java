@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.krotscheck.dfr.json;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Unit tests for the JSON structural index.
+ *
+ * @author Michael Krotscheck
+ */
+public final class JSONStructuralIndexTest {
+
+    /**
+     * Temporary files.
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Open a file with the given content.
+     *
+     * @param content The content.
+     * @return The open file.
+     * @throws Exception Thrown if the file cannot be written.
+     */
+    private FileChannel open(final String content) throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Assert that each object is found, ignoring structural characters in
+     * strings and nested values.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testObjects() throws Exception {
+        String json = "[{\"a\":\"}\\\"\"}, {\"b\":[{}]},{}]";
+        try (FileChannel channel = open(json)) {
+            JSONStructuralIndex index = new JSONStructuralIndex(channel);
+            Assert.assertArrayEquals(new long[]{1, 12}, index.next(1));
+            Assert.assertArrayEquals(new long[]{14, 24}, index.next(1));
+            Assert.assertArrayEquals(new long[]{25, 27}, index.next(1));
+            Assert.assertNull(index.next(1));
+        }
+    }
+
+    /**
+     * Assert that objects are grouped into runs of the target size.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testRuns() throws Exception {
+        String json = "﻿ [{}, {}, {},\n{}]";
+        try (FileChannel channel = open(json)) {
+            JSONStructuralIndex index = new JSONStructuralIndex(channel);
+            Assert.assertArrayEquals(new long[]{5, 11}, index.next(5));
+            Assert.assertArrayEquals(new long[]{13, 19}, index.next(100));
+            Assert.assertNull(index.next(100));
+        }
+    }
+
+    /**
+     * Assert that the scan stops at the first element that is not an
+     * object.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test
+    public void testNonObject() throws Exception {
+        try (FileChannel channel = open("[{}, 1, {}]")) {
+            JSONStructuralIndex index = new JSONStructuralIndex(channel);
+            Assert.assertArrayEquals(new long[]{1, 3}, index.next(100));
+            Assert.assertNull(index.next(100));
+        }
+    }
+
+    /**
+     * Assert that a file without an array is rejected.
+     *
+     * @throws Exception Unexpected exception.
+     */
+    @Test(expected = IOException.class)
+    public void testWithoutArray() throws Exception {
+        try (FileChannel channel = open("{}")) {
+            new JSONStructuralIndex(channel).next(100);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014 Michael Krotscheck
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy
+ * of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.krotscheck.dfr.json;
+
+import net.krotscheck.dfr.CodecRegistry;
+import net.krotscheck.dfr.IDataDecoder;
+import net.krotscheck.dfr.Row;
+import net.krotscheck.dfr.RowPredicate;
+import net.krotscheck.dfr.Type;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Test the newline-delimited JSON stream decoder.
+ *
+ * @author Michael Krotscheck
+ */
+public final class NDJSONStreamDecoderTest {
+
+    /**
+     * Make sure the decoder is registered for its mime type.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testDecoderDiscovery() throws Exception {
+        IDataDecoder decoder = CodecRegistry.decoders()
+                .create("application/x-ndjson");
+        Assert.assertTrue(decoder instanceof NDJSONStreamDecoder);
+        Assert.assertEquals("application/x-ndjson", decoder.getMimeType());
+    }
+
+    /**
+     * Decode one object per line.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testSimpleDecoder() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            builder.append(String.format(
+                    "{\"column_1\":%s,\"column_2\":\"Strïng %s\"}\r\n", i, i));
+        }
+        NDJSONStreamDecoder decoder = new NDJSONStreamDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(
+                builder.toString().getBytes(StandardCharsets.UTF_8)));
+
+        Integer count = 0;
+        for (Map<String, Object> resultRow : decoder) {
+            Assert.assertTrue(resultRow instanceof Row);
+            Assert.assertEquals(Type.INTEGER, ((Row) resultRow).getType(0));
+            Assert.assertEquals(count, resultRow.get("column_1"));
+            Assert.assertEquals(String.format("Strïng %s", count),
+                    resultRow.get("column_2"));
+            count++;
+        }
+        Assert.assertEquals(10, (int) count);
+        decoder.close();
+    }
+
+    /**
+     * Assert that predicates apply, and that blank lines are skipped.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testPredicate() throws Exception {
+        byte[] bytes = "{\"a\":1}\n\n{\"a\":2}\n{\"a\":3}\n"
+                .getBytes(StandardCharsets.UTF_8);
+        NDJSONStreamDecoder decoder = new NDJSONStreamDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(bytes));
+        decoder.addFilter(RowPredicate.greaterThan("a", 1));
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertEquals(2, iterator.next().get("a"));
+        Assert.assertEquals(3, iterator.next().get("a"));
+        Assert.assertFalse(iterator.hasNext());
+    }
+
+    /**
+     * Test with a truncated last line.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testBadJson() throws Exception {
+        byte[] bytes = "{\"foo\":\"bar\"}\n{\"foo\":"
+                .getBytes(StandardCharsets.UTF_8);
+        NDJSONStreamDecoder decoder = new NDJSONStreamDecoder();
+        decoder.setInputStream(new ByteArrayInputStream(bytes));
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertEquals("bar", iterator.next().get("foo"));
+        Assert.assertNull(iterator.next());
+    }
+
+    /**
+     * Test without an input stream.
+     *
+     * @throws Exception Any unexpected exceptions.
+     */
+    @Test
+    public void testNoInputStream() throws Exception {
+        NDJSONStreamDecoder decoder = new NDJSONStreamDecoder();
+
+        Iterator<Map<String, Object>> iterator = decoder.iterator();
+        Assert.assertFalse(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+    }
+}